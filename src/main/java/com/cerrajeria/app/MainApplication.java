@@ -1,5 +1,10 @@
 package com.cerrajeria.app;
 
+import com.cerrajeria.app.services.ComisionWorker;
+import com.cerrajeria.app.services.CompactacionStockWorker;
+import com.cerrajeria.app.services.DiarioVentasOffline;
+import com.cerrajeria.app.services.MasVendidosEnVivo;
+import com.cerrajeria.app.services.SnapshotStockWorker;
 import javafx.application.Application;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Scene;
@@ -38,10 +43,29 @@ public class MainApplication extends Application {
         }
 
 
+        // Generación de comisiones automáticas en segundo plano (cola 'comision_pendiente').
+        ComisionWorker.getInstance().iniciar();
+        // Reproducción de las ventas anotadas sin conexión a la base de datos.
+        DiarioVentasOffline.getInstance().iniciar();
+        // Ranking en vivo de más vendidos del panel de administración (se carga con las ventas del día).
+        MasVendidosEnVivo.getInstance().iniciar();
+        // Foto diaria del stock para las consultas de inventario a fecha.
+        SnapshotStockWorker.getInstance().iniciar();
+        // Compactación del libro de movimientos y conciliación diaria de producto.stock con el libro.
+        CompactacionStockWorker.getInstance().iniciar();
+
         // Cargar la escena de Login inicialmente al iniciar la aplicación.
         showLoginScreen();
     }
 
+    @Override
+    public void stop() {
+        ComisionWorker.getInstance().detener();
+        DiarioVentasOffline.getInstance().detener();
+        SnapshotStockWorker.getInstance().detener();
+        CompactacionStockWorker.getInstance().detener();
+    }
+
     /**
      * Muestra la pantalla de Login.
      * Carga el archivo FXML correspondiente y lo establece como la escena principal.
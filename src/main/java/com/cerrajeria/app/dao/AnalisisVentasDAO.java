@@ -0,0 +1,121 @@
+package com.cerrajeria.app.dao;
+
+import com.cerrajeria.app.database.ConsultaCancelable;
+import com.cerrajeria.app.database.DatabaseManager;
+
+import java.sql.*;
+import java.time.LocalDateTime;
+
+/**
+ * Clase DAO de lectura masiva de líneas de venta para el almacén analítico en memoria.
+ * Recorre las líneas con un cursor de solo avance y las entrega campo a campo, sin crear
+ * un objeto por fila; los importes llegan ya convertidos a centavos por la base de datos.
+ */
+public class AnalisisVentasDAO {
+
+    public static final int TIPO_PRODUCTO = 0;
+    public static final int TIPO_SERVICIO = 1;
+
+    /**
+     * Receptor de una línea de venta leída.
+     */
+    @FunctionalInterface
+    public interface LectorLinea {
+        void leer(int idVenta, int idUsuario, long epochDia, int tipo, int idItem, int idCategoria,
+                  int cantidad, long importeCentavos, long costoCentavos);
+    }
+
+    /**
+     * Receptor de las unidades vendidas de un producto o servicio en un minuto.
+     */
+    @FunctionalInterface
+    public interface LectorUnidades {
+        void leer(int tipo, int idItem, LocalDateTime minuto, int unidades);
+    }
+
+    /**
+     * Recorre las unidades vendidas desde un instante, agregadas por producto/servicio y minuto.
+     * @param desde Instante inicial (inclusive).
+     * @param lector Receptor de cada agregado.
+     * @return true si la lectura terminó; false si hubo un error.
+     */
+    public boolean recorrerUnidadesPorMinutoDesde(LocalDateTime desde, LectorUnidades lector) {
+        String minuto = "DATEADD(MINUTE, DATEDIFF(MINUTE, 0, v.fecha_creacion), 0)";
+        String sql = "SELECT 0 AS tipo, d.id_producto AS id_item, " + minuto + " AS minuto, SUM(d.cantidad) AS unidades " +
+                "FROM detalle_venta_producto d JOIN venta v ON v.id_venta = d.id_venta " +
+                "WHERE v.fecha_creacion >= ? GROUP BY d.id_producto, " + minuto + " " +
+                "UNION ALL " +
+                "SELECT 1, d.id_servicio, " + minuto + ", SUM(d.cantidad) " +
+                "FROM detalle_venta_servicio d JOIN venta v ON v.id_venta = d.id_venta " +
+                "WHERE v.fecha_creacion >= ? GROUP BY d.id_servicio, " + minuto;
+
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setTimestamp(1, Timestamp.valueOf(desde));
+            pstmt.setTimestamp(2, Timestamp.valueOf(desde));
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    lector.leer(rs.getInt(1), rs.getInt(2), rs.getTimestamp(3).toLocalDateTime(), rs.getInt(4));
+                }
+            }
+            return true;
+        } catch (SQLException e) {
+            System.err.println("Error al leer unidades vendidas por minuto: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Recorre, en orden de venta, todas las líneas de producto y servicio de las ventas con ID mayor que el indicado.
+     * Los IDs no se confirman en orden: una venta con ID menor que el devuelto puede aparecer en una
+     * lectura posterior, así que el llamador debe volver a leer un margen por debajo y saltar las ya leídas.
+     * @param idVentaDesde Se leen las ventas con id_venta mayor que este valor (0 para todas).
+     * @param lector Receptor de cada línea.
+     * @return El mayor ID de venta leído (idVentaDesde si no hubo ventas nuevas), o -1 si la lectura
+     *         falló a medias y el llamador debe descartar las líneas recibidas.
+     */
+    public int recorrerLineasDesde(int idVentaDesde, LectorLinea lector) {
+        String sql = "SELECT v.id_venta, v.id_usuario, DATEDIFF(DAY, '1970-01-01', v.fecha_creacion) AS epoch_dia, " +
+                "0 AS tipo, d.id_producto AS id_item, p.id_categoria_producto AS id_categoria, d.cantidad, " +
+                "CAST(ROUND(d.cantidad * d.precio_unitario_final * 100, 0) AS BIGINT) AS importe, " +
+                "CAST(ROUND(d.cantidad * d.costo_unitario * 100, 0) AS BIGINT) AS costo " +
+                "FROM detalle_venta_producto d " +
+                "JOIN venta v ON v.id_venta = d.id_venta " +
+                "JOIN producto p ON p.id_producto = d.id_producto " +
+                "WHERE v.id_venta > ? " +
+                "UNION ALL " +
+                "SELECT v.id_venta, v.id_usuario, DATEDIFF(DAY, '1970-01-01', v.fecha_creacion), " +
+                "1, d.id_servicio, s.id_categoria_servicio, d.cantidad, " +
+                "CAST(ROUND(d.cantidad * d.precio_unitario_final * 100, 0) AS BIGINT), CAST(0 AS BIGINT) " +
+                "FROM detalle_venta_servicio d " +
+                "JOIN venta v ON v.id_venta = d.id_venta " +
+                "JOIN servicio s ON s.id_servicio = d.id_servicio " +
+                "WHERE v.id_venta > ? " +
+                "ORDER BY 1";
+        int ultimoIdVenta = idVentaDesde;
+
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            ConsultaCancelable.registrar(pstmt);
+
+            pstmt.setInt(1, idVentaDesde);
+            pstmt.setInt(2, idVentaDesde);
+            pstmt.setFetchSize(5000);
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    int idVenta = rs.getInt(1);
+                    lector.leer(idVenta, rs.getInt(2), rs.getLong(3), rs.getInt(4), rs.getInt(5), rs.getInt(6),
+                            rs.getInt(7), rs.getLong(8), rs.getLong(9));
+                    ultimoIdVenta = Math.max(ultimoIdVenta, idVenta);
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error al recorrer líneas de venta para análisis: " + e.getMessage());
+            return -1;
+        }
+        return ultimoIdVenta;
+    }
+}
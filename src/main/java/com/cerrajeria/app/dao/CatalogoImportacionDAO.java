@@ -0,0 +1,172 @@
+package com.cerrajeria.app.dao;
+
+import com.cerrajeria.app.database.DatabaseManager;
+import com.cerrajeria.app.models.EstadoStock;
+import com.microsoft.sqlserver.jdbc.SQLServerDataTable;
+import com.microsoft.sqlserver.jdbc.SQLServerPreparedStatement;
+
+import java.math.BigDecimal;
+import java.sql.*;
+import java.util.List;
+
+/**
+ * Clase DAO para la importación masiva del catálogo (ver sql/importacion_catalogo.sql).
+ * Cada método aplica un lote de filas ya validadas con un único MERGE sobre el nombre, enviando
+ * el lote como parámetro con valores de tabla, usando la conexión (y la transacción) del llamador.
+ * Las filas que ya existen y no cambian no se reescriben.
+ */
+public class CatalogoImportacionDAO {
+
+    /**
+     * Fila de producto a importar. El stock solo se usa si el producto es nuevo.
+     */
+    public record FilaProducto(String nombre, int idCategoriaProducto, BigDecimal precio, BigDecimal costoInterno,
+                               int stockMinimo, int stock) { }
+
+    /**
+     * Fila de servicio a importar.
+     */
+    public record FilaServicio(String nombre, int idCategoriaServicio, BigDecimal precio, String descripcion) { }
+
+    /**
+     * Resultado de un lote: filas insertadas y actualizadas (el resto ya estaba igual).
+     */
+    public record ResultadoLote(int insertados, int actualizados) { }
+
+    // El MERGE deja en @resultado la acción de cada fila; el lote termina con un SELECT de los recuentos
+    private static final String RECUENTO_RESULTADO =
+            "SELECT ISNULL(SUM(CASE WHEN accion = 'INSERT' THEN 1 ELSE 0 END), 0), " +
+            "ISNULL(SUM(CASE WHEN accion = 'UPDATE' THEN 1 ELSE 0 END), 0) FROM @resultado;";
+
+    /**
+     * Inserta las categorías de producto nuevas y reactiva las que estaban desactivadas.
+     * @throws SQLException Si falla el lote; el llamador decide si revierte.
+     */
+    public ResultadoLote fusionarCategoriasProducto(Connection conn, List<String> nombres) throws SQLException {
+        return fusionarCategorias(conn, "categoria_producto", nombres);
+    }
+
+    /**
+     * Inserta las categorías de servicio nuevas y reactiva las que estaban desactivadas.
+     * @throws SQLException Si falla el lote; el llamador decide si revierte.
+     */
+    public ResultadoLote fusionarCategoriasServicio(Connection conn, List<String> nombres) throws SQLException {
+        return fusionarCategorias(conn, "categoria_servicio", nombres);
+    }
+
+    private ResultadoLote fusionarCategorias(Connection conn, String tabla, List<String> nombres) throws SQLException {
+        String sql = "DECLARE @resultado TABLE (accion NVARCHAR(10) NOT NULL); " +
+                "MERGE " + tabla + " AS c USING ? AS f ON c.nombre = f.nombre " +
+                "WHEN MATCHED AND c.activo = 0 THEN UPDATE SET activo = 1, fecha_actualizacion = GETDATE() " +
+                "WHEN NOT MATCHED THEN INSERT (nombre, activo) VALUES (f.nombre, 1) " +
+                "OUTPUT $action INTO @resultado (accion); " +
+                RECUENTO_RESULTADO;
+
+        SQLServerDataTable tablaNombres = new SQLServerDataTable();
+        tablaNombres.addColumnMetadata("nombre", Types.NVARCHAR);
+        for (String nombre : nombres) {
+            tablaNombres.addRow(nombre);
+        }
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.unwrap(SQLServerPreparedStatement.class).setStructured(1, "tipo_importacion_categoria", tablaNombres);
+            return leerResultado(pstmt);
+        }
+    }
+
+    /**
+     * Inserta los productos nuevos, con su fila de stock en cada sucursal y el movimiento 'Entrada'
+     * de su stock inicial en esta sucursal, y actualiza categoría, precio, costo y stock mínimo de los
+     * existentes. El stock de los productos existentes no se toca: se ajusta con recepciones o conteos.
+     * @throws SQLException Si falla el lote; el llamador decide si revierte.
+     */
+    public ResultadoLote fusionarProductos(Connection conn, List<FilaProducto> filas) throws SQLException {
+        String sql = "DECLARE @resultado TABLE (accion NVARCHAR(10) NOT NULL, id_producto INT NOT NULL, stock INT NOT NULL); " +
+                "MERGE producto AS p USING ? AS f ON p.nombre = f.nombre " +
+                "WHEN MATCHED AND EXISTS (SELECT p.id_categoria_producto, p.precio, p.costo_interno, p.stock_minimo " +
+                "EXCEPT SELECT f.id_categoria_producto, f.precio, f.costo_interno, f.stock_minimo) THEN " +
+                "UPDATE SET id_categoria_producto = f.id_categoria_producto, precio = f.precio, " +
+                "costo_interno = f.costo_interno, stock_minimo = f.stock_minimo, fecha_actualizacion = GETDATE() " +
+                "WHEN NOT MATCHED THEN " +
+                "INSERT (nombre, id_categoria_producto, precio, stock, stock_minimo, estado, costo_interno, activo) " +
+                "VALUES (f.nombre, f.id_categoria_producto, f.precio, f.stock, f.stock_minimo, " +
+                EstadoStock.expresionSql("f.stock", "f.stock_minimo") + ", " +
+                "f.costo_interno, 1) " +
+                "OUTPUT $action, inserted.id_producto, f.stock INTO @resultado (accion, id_producto, stock); " +
+                // Igual que ProductoDAO.insertarProducto: el stock inicial es de esta sucursal, el resto empieza en 0
+                "INSERT INTO stock_sucursal (id_sucursal, id_producto, stock) " +
+                "SELECT s.id_sucursal, r.id_producto, CASE WHEN s.id_sucursal = ? THEN r.stock ELSE 0 END " +
+                "FROM @resultado r CROSS JOIN sucursal s WHERE r.accion = 'INSERT'; " +
+                "INSERT INTO movimiento_stock (id_producto, tipo, cantidad, motivo, id_sucursal) " +
+                "SELECT r.id_producto, 'Entrada', r.stock, 'Stock inicial (importación de catálogo)', ? " +
+                "FROM @resultado r WHERE r.accion = 'INSERT' AND r.stock > 0; " +
+                RECUENTO_RESULTADO;
+
+        SQLServerDataTable tabla = new SQLServerDataTable();
+        tabla.addColumnMetadata("nombre", Types.NVARCHAR);
+        tabla.addColumnMetadata("id_categoria_producto", Types.INTEGER);
+        tabla.addColumnMetadata("precio", Types.DECIMAL);
+        tabla.addColumnMetadata("costo_interno", Types.DECIMAL);
+        tabla.addColumnMetadata("stock_minimo", Types.INTEGER);
+        tabla.addColumnMetadata("stock", Types.INTEGER);
+        for (FilaProducto f : filas) {
+            tabla.addRow(f.nombre(), f.idCategoriaProducto(), f.precio(), f.costoInterno(), f.stockMinimo(), f.stock());
+        }
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.unwrap(SQLServerPreparedStatement.class).setStructured(1, "tipo_importacion_producto", tabla);
+            pstmt.setInt(2, DatabaseManager.ID_SUCURSAL);
+            pstmt.setInt(3, DatabaseManager.ID_SUCURSAL);
+            return leerResultado(pstmt);
+        }
+    }
+
+    /**
+     * Inserta los servicios nuevos y actualiza categoría, precio y descripción de los existentes.
+     * @throws SQLException Si falla el lote; el llamador decide si revierte.
+     */
+    public ResultadoLote fusionarServicios(Connection conn, List<FilaServicio> filas) throws SQLException {
+        String sql = "DECLARE @resultado TABLE (accion NVARCHAR(10) NOT NULL); " +
+                "MERGE servicio AS s USING ? AS f ON s.nombre = f.nombre " +
+                "WHEN MATCHED AND EXISTS (SELECT s.id_categoria_servicio, s.precio, s.descripcion " +
+                "EXCEPT SELECT f.id_categoria_servicio, f.precio, f.descripcion) THEN " +
+                "UPDATE SET id_categoria_servicio = f.id_categoria_servicio, precio = f.precio, " +
+                "descripcion = f.descripcion, fecha_actualizacion = GETDATE() " +
+                "WHEN NOT MATCHED THEN " +
+                "INSERT (nombre, descripcion, precio, id_categoria_servicio, activo) " +
+                "VALUES (f.nombre, f.descripcion, f.precio, f.id_categoria_servicio, 1) " +
+                "OUTPUT $action INTO @resultado (accion); " +
+                RECUENTO_RESULTADO;
+
+        SQLServerDataTable tabla = new SQLServerDataTable();
+        tabla.addColumnMetadata("nombre", Types.NVARCHAR);
+        tabla.addColumnMetadata("id_categoria_servicio", Types.INTEGER);
+        tabla.addColumnMetadata("precio", Types.DECIMAL);
+        tabla.addColumnMetadata("descripcion", Types.NVARCHAR);
+        for (FilaServicio f : filas) {
+            tabla.addRow(f.nombre(), f.idCategoriaServicio(), f.precio(), f.descripcion());
+        }
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.unwrap(SQLServerPreparedStatement.class).setStructured(1, "tipo_importacion_servicio", tabla);
+            return leerResultado(pstmt);
+        }
+    }
+
+    private static ResultadoLote leerResultado(PreparedStatement pstmt) throws SQLException {
+        ResultadoLote resultado = null;
+        // El lote devuelve primero los recuentos del MERGE y los INSERT y al final el SELECT
+        boolean hayResultado = pstmt.execute();
+        while (hayResultado || pstmt.getUpdateCount() != -1) {
+            if (hayResultado) {
+                try (ResultSet rs = pstmt.getResultSet()) {
+                    if (rs.next()) {
+                        resultado = new ResultadoLote(rs.getInt(1), rs.getInt(2));
+                    }
+                }
+            }
+            hayResultado = pstmt.getMoreResults();
+        }
+        if (resultado == null) {
+            throw new SQLException("El lote de importación no devolvió su resultado.");
+        }
+        return resultado;
+    }
+}
@@ -1,5 +1,6 @@
 package com.cerrajeria.app.dao;
 
+import com.cerrajeria.app.database.ConsultaCancelable;
 import com.cerrajeria.app.database.DatabaseManager;
 import com.cerrajeria.app.models.Comision;
 
@@ -7,7 +8,9 @@ import java.math.BigDecimal;
 import java.sql.*;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Clase DAO (Data Access Object) para interactuar con la tabla 'comision' en la base de datos.
@@ -207,11 +210,13 @@ public class ComisionDAO {
         List<Comision> comisiones = new ArrayList<>();
 
         try (Connection conn = DatabaseManager.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
+             Statement stmt = conn.createStatement()) {
+            ConsultaCancelable.registrar(stmt);
 
-            while (rs.next()) {
-                comisiones.add(mapearResultSetAComision(rs));
+            try (ResultSet rs = stmt.executeQuery(sql)) {
+                while (rs.next()) {
+                    comisiones.add(mapearResultSetAComision(rs));
+                }
             }
         } catch (SQLException e) {
             System.err.println("Error al obtener todas las comisiones: " + e.getMessage());
@@ -219,6 +224,69 @@ public class ComisionDAO {
         return comisiones;
     }
 
+    /**
+     * Inserta un lote de comisiones con una sola ida y vuelta por lote (JDBC batch),
+     * dentro de la transacción del llamador.
+     * @param conn Conexión con la transacción abierta.
+     * @param comisiones Comisiones a insertar.
+     * @throws SQLException Si falla alguna inserción; el llamador debe revertir la transacción.
+     */
+    public void insertarComisionesLote(Connection conn, List<Comision> comisiones) throws SQLException {
+        if (comisiones.isEmpty()) {
+            return;
+        }
+        String sql = "INSERT INTO comision (id_usuario, id_venta, id_servicio, monto_comision, estado, comentario, es_manual, comentario_admin) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            for (Comision comision : comisiones) {
+                pstmt.setInt(1, comision.getIdUsuario());
+                if (comision.getIdVenta() != null) {
+                    pstmt.setInt(2, comision.getIdVenta());
+                } else {
+                    pstmt.setNull(2, Types.INTEGER);
+                }
+                if (comision.getIdServicio() != null) {
+                    pstmt.setInt(3, comision.getIdServicio());
+                } else {
+                    pstmt.setNull(3, Types.INTEGER);
+                }
+                pstmt.setBigDecimal(4, comision.getMontoComision());
+                pstmt.setString(5, comision.getEstado());
+                pstmt.setString(6, comision.getComentario());
+                pstmt.setBoolean(7, comision.isEsManual());
+                pstmt.setString(8, comision.getComentarioAdmin());
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        }
+    }
+
+    /**
+     * Devuelve, de entre las ventas indicadas, las que ya tienen comisiones automáticas.
+     * @param conn Conexión con la transacción abierta.
+     * @param idsVenta IDs de venta a comprobar.
+     * @return Conjunto de IDs de venta que ya tienen comisiones automáticas.
+     * @throws SQLException Si falla la consulta.
+     */
+    public Set<Integer> obtenerVentasConComisionAutomatica(Connection conn, List<Integer> idsVenta) throws SQLException {
+        Set<Integer> ventas = new HashSet<>();
+        if (idsVenta.isEmpty()) {
+            return ventas;
+        }
+        String sql = "SELECT DISTINCT id_venta FROM comision WHERE es_manual = 0 AND id_venta IN (" +
+                DatabaseManager.marcadores(idsVenta.size()) + ")";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            for (int i = 0; i < idsVenta.size(); i++) {
+                pstmt.setInt(i + 1, idsVenta.get(i));
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    ventas.add(rs.getInt("id_venta"));
+                }
+            }
+        }
+        return ventas;
+    }
+
     /**
      * Método auxiliar para mapear un ResultSet a un objeto Comision.
      * @param rs El ResultSet actual.
@@ -0,0 +1,224 @@
+package com.cerrajeria.app.dao;
+
+import com.cerrajeria.app.database.DatabaseManager;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Clase DAO para la tabla 'comision_pendiente', la cola persistente de ventas
+ * cuyas comisiones automáticas se generan en segundo plano (ver sql/comision_pendiente.sql).
+ * Cada marcador lleva además, por separado, si la venta ya se sumó al resumen diario
+ * (ver sql/resumen_venta_diario.sql): un fallo de comisiones no deja la venta fuera del resumen.
+ */
+public class ComisionPendienteDAO {
+
+    /**
+     * Encola una venta para la generación de comisiones dentro de la transacción que la registra,
+     * de modo que toda venta confirmada tiene su marcador en la cola.
+     * @param conn Conexión con la transacción de la venta abierta.
+     * @param idVenta El ID de la venta recién insertada.
+     * @throws SQLException Si falla la inserción (la venta debe revertirse).
+     */
+    public void encolar(Connection conn, int idVenta) throws SQLException {
+        String sql = "INSERT INTO comision_pendiente (id_venta) VALUES (?)";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, idVenta);
+            pstmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Encola las ventas recientes que no tienen marcador en la cola. Las ventas se encolan en su propia
+     * transacción; esto cubre las registradas antes de existir la cola. Las que ya tienen comisiones
+     * automáticas se encolan como procesadas, solo para sumarlas al resumen diario.
+     * @param diasAtras Antigüedad máxima, en días, de las ventas a revisar.
+     * @return Número de ventas encoladas, o -1 si hubo un error.
+     */
+    public int encolarVentasSinMarcador(int diasAtras) {
+        String sql = "INSERT INTO comision_pendiente (id_venta, procesada) " +
+                "SELECT v.id_venta, " +
+                "CASE WHEN EXISTS (SELECT 1 FROM comision c WHERE c.id_venta = v.id_venta AND c.es_manual = 0) THEN 1 ELSE 0 END " +
+                "FROM venta v " +
+                "WHERE v.fecha_creacion >= DATEADD(DAY, -?, GETDATE()) " +
+                "AND NOT EXISTS (SELECT 1 FROM comision_pendiente cp WHERE cp.id_venta = v.id_venta)";
+
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setInt(1, diasAtras);
+            return pstmt.executeUpdate();
+        } catch (SQLException e) {
+            System.err.println("Error al encolar ventas sin marcador de comisión: " + e.getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * Obtiene el siguiente lote de ventas pendientes, en orden de llegada.
+     * @param limite Tamaño máximo del lote.
+     * @param maxIntentos Las ventas que alcanzaron este número de intentos se dejan de reintentar.
+     * @return Lista de IDs de venta pendientes.
+     */
+    public List<Integer> obtenerPendientes(int limite, int maxIntentos) {
+        String sql = "SELECT TOP (?) id_venta FROM comision_pendiente " +
+                "WHERE procesada = 0 AND intentos < ? ORDER BY fecha_creacion, id_venta";
+        List<Integer> ids = new ArrayList<>();
+
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setInt(1, limite);
+            pstmt.setInt(2, maxIntentos);
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(rs.getInt("id_venta"));
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error al obtener ventas pendientes de comisión: " + e.getMessage());
+        }
+        return ids;
+    }
+
+    /**
+     * Obtiene el siguiente lote de ventas que aún no se han sumado al resumen diario, en orden de llegada.
+     * Es independiente del estado de sus comisiones.
+     * @param limite Tamaño máximo del lote.
+     * @param maxIntentos Las ventas que alcanzaron este número de intentos se dejan de reintentar.
+     * @return Lista de IDs de venta pendientes de resumir.
+     */
+    public List<Integer> obtenerPendientesResumen(int limite, int maxIntentos) {
+        String sql = "SELECT TOP (?) id_venta FROM comision_pendiente " +
+                "WHERE resumida = 0 AND intentos_resumen < ? ORDER BY fecha_creacion, id_venta";
+        List<Integer> ids = new ArrayList<>();
+
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setInt(1, limite);
+            pstmt.setInt(2, maxIntentos);
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(rs.getInt("id_venta"));
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error al obtener ventas pendientes del resumen diario: " + e.getMessage());
+        }
+        return ids;
+    }
+
+    /**
+     * Cuenta las ventas que aún esperan la generación de comisiones.
+     * @return Número de ventas pendientes, o -1 si hubo un error.
+     */
+    public int contarPendientes() {
+        String sql = "SELECT COUNT(*) FROM comision_pendiente WHERE procesada = 0";
+
+        try (Connection conn = DatabaseManager.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+
+            return rs.next() ? rs.getInt(1) : 0;
+        } catch (SQLException e) {
+            System.err.println("Error al contar ventas pendientes de comisión: " + e.getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * Marca un lote de ventas como procesado dentro de la transacción del llamador.
+     * @param conn Conexión con la transacción abierta.
+     * @param idsVenta IDs de las ventas procesadas.
+     * @throws SQLException Si falla la actualización.
+     */
+    public void marcarProcesadas(Connection conn, List<Integer> idsVenta) throws SQLException {
+        if (idsVenta.isEmpty()) {
+            return;
+        }
+        String sql = "UPDATE comision_pendiente SET procesada = 1, ultimo_error = NULL, fecha_actualizacion = GETDATE() " +
+                "WHERE id_venta IN (" + DatabaseManager.marcadores(idsVenta.size()) + ")";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            for (int i = 0; i < idsVenta.size(); i++) {
+                pstmt.setInt(i + 1, idsVenta.get(i));
+            }
+            pstmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Marca como sumadas al resumen diario, dentro de la transacción del llamador, las ventas del lote
+     * que aún no lo estaban. Solo las devueltas deben sumarse: las demás ya las sumó otro proceso
+     * (por ejemplo, una reconstrucción del resumen).
+     * @param conn Conexión con la transacción abierta.
+     * @param idsVenta IDs de las ventas a resumir.
+     * @return IDs de las ventas marcadas ahora.
+     * @throws SQLException Si falla la actualización.
+     */
+    public List<Integer> marcarResumidas(Connection conn, List<Integer> idsVenta) throws SQLException {
+        List<Integer> marcadas = new ArrayList<>();
+        if (idsVenta.isEmpty()) {
+            return marcadas;
+        }
+        String sql = "UPDATE comision_pendiente SET resumida = 1, fecha_actualizacion = GETDATE() " +
+                "OUTPUT inserted.id_venta " +
+                "WHERE resumida = 0 AND id_venta IN (" + DatabaseManager.marcadores(idsVenta.size()) + ")";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            for (int i = 0; i < idsVenta.size(); i++) {
+                pstmt.setInt(i + 1, idsVenta.get(i));
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    marcadas.add(rs.getInt(1));
+                }
+            }
+        }
+        return marcadas;
+    }
+
+    /**
+     * Registra un intento fallido de una venta, para reintentarla más tarde.
+     * @param idVenta ID de la venta.
+     * @param error Mensaje del error producido.
+     */
+    public void registrarFallo(int idVenta, String error) {
+        String sql = "UPDATE comision_pendiente SET intentos = intentos + 1, ultimo_error = ?, fecha_actualizacion = GETDATE() " +
+                "WHERE id_venta = ?";
+
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            String mensaje = (error != null && error.length() > 500) ? error.substring(0, 500) : error;
+            pstmt.setString(1, mensaje);
+            pstmt.setInt(2, idVenta);
+            pstmt.executeUpdate();
+        } catch (SQLException e) {
+            System.err.println("Error al registrar fallo de generación de comisiones: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Registra un intento fallido de sumar una venta al resumen diario, para reintentarlo más tarde.
+     * @param idVenta ID de la venta.
+     * @param error Mensaje del error producido.
+     */
+    public void registrarFalloResumen(int idVenta, String error) {
+        String sql = "UPDATE comision_pendiente SET intentos_resumen = intentos_resumen + 1, ultimo_error = ?, " +
+                "fecha_actualizacion = GETDATE() WHERE id_venta = ?";
+
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            String mensaje = (error != null && error.length() > 500) ? error.substring(0, 500) : error;
+            pstmt.setString(1, mensaje);
+            pstmt.setInt(2, idVenta);
+            pstmt.executeUpdate();
+        } catch (SQLException e) {
+            System.err.println("Error al registrar fallo del resumen diario: " + e.getMessage());
+        }
+    }
+}
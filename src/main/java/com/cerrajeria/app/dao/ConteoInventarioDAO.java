@@ -0,0 +1,269 @@
+package com.cerrajeria.app.dao;
+
+import com.cerrajeria.app.database.DatabaseManager;
+import com.cerrajeria.app.models.LineaConteo;
+
+import java.sql.*;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Clase DAO para las tablas 'conteo_inventario' y 'conteo_inventario_detalle' (ver sql/conteo_inventario.sql).
+ * Cada sucursal tiene su propio conteo: se cuenta y se ajusta el stock de la sucursal de esta terminal.
+ * Abrir un conteo y aplicar sus ajustes son sentencias sobre todo el conjunto de productos, y las
+ * cantidades contadas se guardan por lotes: el número de viajes a la base de datos no depende
+ * del número de productos.
+ */
+public class ConteoInventarioDAO {
+
+    /**
+     * Cabecera de un conteo de inventario.
+     */
+    public record Conteo(int idConteo, String estado, String comentario, LocalDateTime fechaCreacion) { }
+
+    // Líneas contadas cuya cantidad difiere de la esperada: son las que generan ajuste
+    private static final String LINEAS_CON_DIFERENCIA = "d.id_conteo_inventario = ? " +
+            "AND d.cantidad_contada IS NOT NULL AND d.cantidad_contada <> d.stock_esperado";
+
+    /**
+     * @return El conteo abierto de esta sucursal, o null si no hay ninguno (o hubo un error).
+     */
+    public Conteo obtenerConteoAbierto() {
+        String sql = "SELECT id_conteo_inventario, estado, comentario, fecha_creacion " +
+                "FROM conteo_inventario WHERE estado = 'Abierto' AND id_sucursal = ?";
+
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setInt(1, DatabaseManager.ID_SUCURSAL);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    return new Conteo(rs.getInt(1), rs.getString(2), rs.getString(3),
+                            rs.getTimestamp(4).toLocalDateTime());
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error al obtener el conteo de inventario abierto: " + e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Abre un conteo y congela, en una sola sentencia, el stock actual en esta sucursal de todos los
+     * productos activos como stock esperado.
+     * @param comentario Comentario del conteo (opcional).
+     * @return El conteo creado, o null si hubo un error (por ejemplo, si ya hay otro abierto).
+     */
+    public Conteo abrirConteo(String comentario) {
+        String sqlCabecera = "INSERT INTO conteo_inventario (comentario, id_sucursal) VALUES (?, ?)";
+        // Bloqueo de rango sobre las filas de la sucursal (la clave de stock_sucursal empieza por ella):
+        // la foto es coherente entre productos y la otra sucursal sigue vendiendo
+        String sqlDetalle = "INSERT INTO conteo_inventario_detalle (id_conteo_inventario, id_producto, stock_esperado) " +
+                "SELECT ?, p.id_producto, s.stock FROM stock_sucursal s WITH (HOLDLOCK) " +
+                "JOIN producto p ON p.id_producto = s.id_producto " +
+                "WHERE s.id_sucursal = ? AND p.activo = 1";
+
+        try (Connection conn = DatabaseManager.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement cabecera = conn.prepareStatement(sqlCabecera, Statement.RETURN_GENERATED_KEYS);
+                 PreparedStatement detalle = conn.prepareStatement(sqlDetalle)) {
+
+                cabecera.setString(1, comentario);
+                cabecera.setInt(2, DatabaseManager.ID_SUCURSAL);
+                cabecera.executeUpdate();
+                int idConteo;
+                try (ResultSet rs = cabecera.getGeneratedKeys()) {
+                    if (!rs.next()) {
+                        throw new SQLException("No se obtuvo el ID del conteo.");
+                    }
+                    idConteo = rs.getInt(1);
+                }
+
+                detalle.setInt(1, idConteo);
+                detalle.setInt(2, DatabaseManager.ID_SUCURSAL);
+                int productos = detalle.executeUpdate();
+                conn.commit();
+                System.out.println("Conteo de inventario " + idConteo + " abierto con " + productos + " productos.");
+                return new Conteo(idConteo, "Abierto", comentario, LocalDateTime.now());
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            System.err.println("Error al abrir el conteo de inventario: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Obtiene todas las líneas de un conteo, ordenadas por nombre de producto.
+     * @param idConteo ID del conteo.
+     * @return Lista de líneas (vacía si hubo un error).
+     */
+    public List<LineaConteo> obtenerLineas(int idConteo) {
+        String sql = "SELECT d.id_producto, p.nombre, d.stock_esperado, d.cantidad_contada " +
+                "FROM conteo_inventario_detalle d JOIN producto p ON p.id_producto = d.id_producto " +
+                "WHERE d.id_conteo_inventario = ? ORDER BY p.nombre";
+        List<LineaConteo> lineas = new ArrayList<>();
+
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+
+            pstmt.setInt(1, idConteo);
+            pstmt.setFetchSize(5000);
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    int contada = rs.getInt(4);
+                    lineas.add(new LineaConteo(rs.getInt(1), rs.getString(2), rs.getInt(3),
+                            rs.wasNull() ? null : contada));
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error al obtener las líneas del conteo de inventario: " + e.getMessage());
+        }
+        return lineas;
+    }
+
+    /**
+     * Guarda en un solo lote las cantidades contadas de las líneas indicadas.
+     * @param idConteo ID del conteo.
+     * @param lineas Líneas a guardar (normalmente solo las modificadas).
+     * @return true si se guardaron, false si hubo un error.
+     */
+    public boolean guardarCantidades(int idConteo, List<LineaConteo> lineas) {
+        try (Connection conn = DatabaseManager.getConnection()) {
+            guardarCantidades(conn, idConteo, lineas);
+            return true;
+        } catch (SQLException e) {
+            System.err.println("Error al guardar las cantidades del conteo de inventario: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Guarda las cantidades contadas usando la conexión (y la transacción) del llamador, con el momento
+     * en que se contó cada línea. Se envía como segundos transcurridos y se resta a la hora del servidor,
+     * para compararlo con las fechas de movimiento_stock sin depender del reloj de esta terminal.
+     * @throws SQLException Si falla el lote.
+     */
+    public void guardarCantidades(Connection conn, int idConteo, List<LineaConteo> lineas) throws SQLException {
+        if (lineas.isEmpty()) {
+            return;
+        }
+        String sql = "UPDATE conteo_inventario_detalle SET cantidad_contada = ?, " +
+                "fecha_conteo = DATEADD(SECOND, -?, GETDATE()) " +
+                "WHERE id_conteo_inventario = ? AND id_producto = ?";
+
+        Instant ahora = Instant.now();
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            for (LineaConteo linea : lineas) {
+                if (linea.getCantidadContada() != null) {
+                    pstmt.setInt(1, linea.getCantidadContada());
+                    Instant momento = (linea.getMomentoConteo() != null) ? linea.getMomentoConteo() : ahora;
+                    pstmt.setInt(2, (int) Math.min(Integer.MAX_VALUE, Math.max(0, Duration.between(momento, ahora).getSeconds())));
+                } else {
+                    pstmt.setNull(1, Types.INTEGER);
+                    pstmt.setNull(2, Types.INTEGER); // Sin cantidad no hay momento de conteo
+                }
+                pstmt.setInt(3, idConteo);
+                pstmt.setInt(4, linea.getIdProducto());
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        }
+    }
+
+    /**
+     * Cierra el conteo como aplicado y lleva sus ajustes a stock_sucursal y movimiento_stock, usando la
+     * conexión (y la transacción) del llamador. Primero el esperado de cada línea contada pasa a ser el
+     * stock en el momento de contarla: el congelado al abrir más los movimientos de la sucursal hasta
+     * fecha_conteo (una venta anterior al conteo ya falta en el estante y en el stock; sin esta
+     * corrección se restaría dos veces). Cada ajuste es contado - esperado y se suma al stock actual,
+     * así los movimientos posteriores al conteo de la línea se conservan. Son cuatro sentencias sobre
+     * todo el conjunto, sin importar cuántos productos tenga el conteo.
+     * @param conn Conexión abierta por el llamador, con autoCommit desactivado.
+     * @param idConteo ID del conteo.
+     * @param motivo Motivo de los movimientos de ajuste.
+     * @return Ajuste aplicado a cada producto corregido (id_producto -> unidades), para actualizar la caché
+     * con lo que de verdad se registró y no con la diferencia provisional calculada en memoria.
+     * @throws SQLException Si el conteo ya no está abierto o falla alguna sentencia.
+     */
+    public Map<Integer, Integer> aplicarConteo(Connection conn, int idConteo, String motivo) throws SQLException {
+        String sqlCierre = "UPDATE conteo_inventario SET estado = 'Aplicado', fecha_cierre = GETDATE() " +
+                "WHERE id_conteo_inventario = ? AND estado = 'Abierto'";
+        String sqlEsperado = "UPDATE d SET stock_esperado = d.stock_esperado + ISNULL(( " +
+                "SELECT SUM(CASE WHEN m.tipo = 'Entrada' THEN m.cantidad ELSE -m.cantidad END) " +
+                "FROM movimiento_stock m WHERE m.id_sucursal = ? AND m.id_producto = d.id_producto " +
+                "AND m.fecha_creacion > c.fecha_creacion AND m.fecha_creacion <= d.fecha_conteo), 0) " +
+                "FROM conteo_inventario_detalle d " +
+                "JOIN conteo_inventario c ON c.id_conteo_inventario = d.id_conteo_inventario " +
+                "WHERE d.id_conteo_inventario = ? AND d.cantidad_contada IS NOT NULL";
+        String sqlStock = "UPDATE s SET stock = s.stock + (d.cantidad_contada - d.stock_esperado), " +
+                "fecha_actualizacion = GETDATE() " +
+                "OUTPUT inserted.id_producto, d.cantidad_contada - d.stock_esperado " +
+                "FROM stock_sucursal s JOIN conteo_inventario_detalle d ON d.id_producto = s.id_producto " +
+                "WHERE s.id_sucursal = ? AND " + LINEAS_CON_DIFERENCIA;
+        String sqlMovimientos = "INSERT INTO movimiento_stock (id_producto, tipo, cantidad, motivo, id_sucursal) " +
+                "SELECT d.id_producto, CASE WHEN d.cantidad_contada > d.stock_esperado THEN 'Entrada' ELSE 'Salida' END, " +
+                "ABS(d.cantidad_contada - d.stock_esperado), ?, ? " +
+                "FROM conteo_inventario_detalle d WHERE " + LINEAS_CON_DIFERENCIA;
+
+        // El cierre va primero: si otro equipo ya aplicó el conteo, no se ajusta dos veces
+        try (PreparedStatement cierre = conn.prepareStatement(sqlCierre)) {
+            cierre.setInt(1, idConteo);
+            if (cierre.executeUpdate() == 0) {
+                throw new SQLException("El conteo " + idConteo + " ya no está abierto.");
+            }
+        }
+        try (PreparedStatement esperado = conn.prepareStatement(sqlEsperado)) {
+            esperado.setInt(1, DatabaseManager.ID_SUCURSAL);
+            esperado.setInt(2, idConteo);
+            esperado.executeUpdate();
+        }
+        Map<Integer, Integer> ajustes = new HashMap<>();
+        try (PreparedStatement stock = conn.prepareStatement(sqlStock)) {
+            stock.setInt(1, DatabaseManager.ID_SUCURSAL);
+            stock.setInt(2, idConteo);
+            try (ResultSet rs = stock.executeQuery()) {
+                while (rs.next()) {
+                    ajustes.put(rs.getInt(1), rs.getInt(2));
+                }
+            }
+        }
+        try (PreparedStatement movimientos = conn.prepareStatement(sqlMovimientos)) {
+            movimientos.setString(1, motivo);
+            movimientos.setInt(2, DatabaseManager.ID_SUCURSAL);
+            movimientos.setInt(3, idConteo);
+            movimientos.executeUpdate();
+        }
+        return ajustes;
+    }
+
+    /**
+     * Cancela un conteo abierto sin aplicar ningún ajuste.
+     * @param idConteo ID del conteo.
+     * @return true si se canceló, false si no estaba abierto o hubo un error.
+     */
+    public boolean cancelarConteo(int idConteo) {
+        String sql = "UPDATE conteo_inventario SET estado = 'Cancelado', fecha_cierre = GETDATE() " +
+                "WHERE id_conteo_inventario = ? AND estado = 'Abierto'";
+
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setInt(1, idConteo);
+            return pstmt.executeUpdate() > 0;
+        } catch (SQLException e) {
+            System.err.println("Error al cancelar el conteo de inventario: " + e.getMessage());
+            return false;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.cerrajeria.app.dao;
 
+import com.cerrajeria.app.database.ConsultaCancelable;
 import com.cerrajeria.app.database.DatabaseManager;
 import com.cerrajeria.app.models.ControlFinanciero;
 
@@ -70,6 +71,7 @@ public class ControlFinancieroDAO {
 
         try (Connection conn = DatabaseManager.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            ConsultaCancelable.registrar(pstmt);
 
             pstmt.setString(1, tipo);
 
@@ -1,13 +1,17 @@
 package com.cerrajeria.app.dao;
 
+import com.cerrajeria.app.database.ConsultaCancelable;
 import com.cerrajeria.app.database.DatabaseManager;
 import com.cerrajeria.app.models.DetalleVentaProducto;
+import com.cerrajeria.app.models.ItemMasVendido;
 
 import java.math.BigDecimal;
 import java.sql.*;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Clase DAO (Data Access Object) para interactuar con la tabla 'detalle_venta_producto' en la base de datos.
@@ -15,22 +19,51 @@ import java.util.List;
 public class DetalleVentaProductoDAO {
 
     /**
-     * Inserta un nuevo detalle de venta de producto en la base de datos.
+     * Inserta un nuevo detalle de venta de producto en la base de datos y recalcula el total de la venta
+     * en la misma transacción (ver sql/total_venta_aplicacion.sql).
      * @param detalle El objeto DetalleVentaProducto a insertar.
      * @return El ID del detalle recién insertado, o -1 si hubo un error.
      */
     public int insertarDetalleVentaProducto(DetalleVentaProducto detalle) {
-        String sql = "INSERT INTO detalle_venta_producto (id_venta, id_producto, cantidad, precio_unitario_final, descripcion) VALUES (?, ?, ?, ?, ?)";
+        try (Connection conn = DatabaseManager.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                int idGenerado = insertarDetalleVentaProducto(conn, detalle);
+                VentaDAO.recalcularTotal(conn, detalle.getIdVenta());
+                conn.commit();
+                return idGenerado;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            System.err.println("Error al insertar detalle de venta de producto: " + e.getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * Inserta el detalle de venta de producto usando la conexión (y la transacción) del llamador.
+     * El costo unitario de la línea se fija con el costo_interno vigente del producto (ver sql/detalle_venta_costo.sql).
+     * @param conn Conexión abierta por el llamador.
+     * @param detalle El objeto a insertar.
+     * @return El ID generado, o -1 si no se insertó ninguna fila.
+     * @throws SQLException Si falla la inserción; el llamador decide si revierte la transacción.
+     */
+    public int insertarDetalleVentaProducto(Connection conn, DetalleVentaProducto detalle) throws SQLException {
+        String sql = "INSERT INTO detalle_venta_producto (id_venta, id_producto, cantidad, precio_unitario_final, descripcion, costo_unitario) " +
+                "SELECT ?, p.id_producto, ?, ?, ?, ISNULL(p.costo_interno, 0) FROM producto p WHERE p.id_producto = ?";
         int idGenerado = -1;
 
-        try (Connection conn = DatabaseManager.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+        try (PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
 
             pstmt.setInt(1, detalle.getIdVenta());
-            pstmt.setInt(2, detalle.getIdProducto());
-            pstmt.setInt(3, detalle.getCantidad());
-            pstmt.setBigDecimal(4, detalle.getPrecioUnitarioFinal());
-            pstmt.setString(5, detalle.getDescripcion());
+            pstmt.setInt(2, detalle.getCantidad());
+            pstmt.setBigDecimal(3, detalle.getPrecioUnitarioFinal());
+            pstmt.setString(4, detalle.getDescripcion());
+            pstmt.setInt(5, detalle.getIdProducto());
 
             int filasAfectadas = pstmt.executeUpdate();
 
@@ -43,8 +76,6 @@ public class DetalleVentaProductoDAO {
                     }
                 }
             }
-        } catch (SQLException e) {
-            System.err.println("Error al insertar detalle de venta de producto: " + e.getMessage());
         }
         return idGenerado;
     }
@@ -56,7 +87,7 @@ public class DetalleVentaProductoDAO {
      */
     public DetalleVentaProducto obtenerDetalleVentaProductoPorId(int idDetalle) {
         String sql = "SELECT id_detalle_venta_producto, id_venta, id_producto, cantidad, " +
-                "fecha_creacion, fecha_actualizacion, precio_unitario_final, descripcion FROM detalle_venta_producto WHERE id_detalle_venta_producto = ?";
+                "fecha_creacion, fecha_actualizacion, precio_unitario_final, descripcion, costo_unitario FROM detalle_venta_producto WHERE id_detalle_venta_producto = ?";
         DetalleVentaProducto detalle = null;
 
         try (Connection conn = DatabaseManager.getConnection();
@@ -82,7 +113,7 @@ public class DetalleVentaProductoDAO {
      */
     public List<DetalleVentaProducto> obtenerDetallesPorVenta(int idVenta) {
         String sql = "SELECT id_detalle_venta_producto, id_venta, id_producto, cantidad, " +
-                "fecha_creacion, fecha_actualizacion, precio_unitario_final, descripcion FROM detalle_venta_producto WHERE id_venta = ? ORDER BY id_detalle_venta_producto";
+                "fecha_creacion, fecha_actualizacion, precio_unitario_final, descripcion, costo_unitario FROM detalle_venta_producto WHERE id_venta = ? ORDER BY id_detalle_venta_producto";
         List<DetalleVentaProducto> detalles = new ArrayList<>();
 
         try (Connection conn = DatabaseManager.getConnection();
@@ -102,26 +133,48 @@ public class DetalleVentaProductoDAO {
     }
 
     /**
-     * Actualiza los datos de un detalle de venta de producto existente.
+     * Actualiza los datos de un detalle de venta de producto existente y recalcula en la misma transacción
+     * el total de la venta (y el de la venta anterior, si el detalle cambia de venta).
      * @param detalle El objeto DetalleVentaProducto con los datos actualizados (el ID debe estar establecido).
      * @return true si la actualización fue exitosa, false en caso contrario.
      */
     public boolean actualizarDetalleVentaProducto(DetalleVentaProducto detalle) {
-        String sql = "UPDATE detalle_venta_producto SET id_venta = ?, id_producto = ?, cantidad = ?, precio_unitario_final = ?, descripcion = ?, fecha_actualizacion = GETDATE() WHERE id_detalle_venta_producto = ?";
+        // Si cambia el producto, la línea toma el costo vigente del nuevo; si no, conserva el de la venta
+        String sql = "UPDATE detalle_venta_producto SET id_venta = ?, id_producto = ?, cantidad = ?, precio_unitario_final = ?, descripcion = ?, " +
+                "costo_unitario = CASE WHEN id_producto = ? THEN costo_unitario " +
+                "ELSE (SELECT ISNULL(p.costo_interno, 0) FROM producto p WHERE p.id_producto = ?) END, " +
+                "fecha_actualizacion = GETDATE() WHERE id_detalle_venta_producto = ?";
 
-        try (Connection conn = DatabaseManager.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        try (Connection conn = DatabaseManager.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                int idVentaAnterior = obtenerIdVenta(conn, detalle.getIdDetalleVentaProducto());
 
-            pstmt.setInt(1, detalle.getIdVenta());
-            pstmt.setInt(2, detalle.getIdProducto());
-            pstmt.setInt(3, detalle.getCantidad());
-            pstmt.setBigDecimal(4, detalle.getPrecioUnitarioFinal());
-            pstmt.setString(5, detalle.getDescripcion());
-            pstmt.setInt(6, detalle.getIdDetalleVentaProducto());
+                pstmt.setInt(1, detalle.getIdVenta());
+                pstmt.setInt(2, detalle.getIdProducto());
+                pstmt.setInt(3, detalle.getCantidad());
+                pstmt.setBigDecimal(4, detalle.getPrecioUnitarioFinal());
+                pstmt.setString(5, detalle.getDescripcion());
+                pstmt.setInt(6, detalle.getIdProducto());
+                pstmt.setInt(7, detalle.getIdProducto());
+                pstmt.setInt(8, detalle.getIdDetalleVentaProducto());
 
-            int filasAfectadas = pstmt.executeUpdate();
-            System.out.println("Filas afectadas al actualizar detalle de venta de producto: " + filasAfectadas);
-            return filasAfectadas > 0;
+                int filasAfectadas = pstmt.executeUpdate();
+                System.out.println("Filas afectadas al actualizar detalle de venta de producto: " + filasAfectadas);
+                if (filasAfectadas > 0) {
+                    VentaDAO.recalcularTotal(conn, detalle.getIdVenta());
+                    if (idVentaAnterior != detalle.getIdVenta()) {
+                        VentaDAO.recalcularTotal(conn, idVentaAnterior);
+                    }
+                }
+                conn.commit();
+                return filasAfectadas > 0;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
         } catch (SQLException e) {
             System.err.println("Error al actualizar detalle de venta de producto: " + e.getMessage());
             return false;
@@ -129,24 +182,50 @@ public class DetalleVentaProductoDAO {
     }
 
     /**
-     * Elimina un detalle de venta de producto.
+     * Elimina un detalle de venta de producto y recalcula el total de su venta en la misma transacción.
      * @param idDetalle El ID del detalle a eliminar.
      * @return true si la eliminación fue exitosa, false en caso contrario.
      */
     public boolean eliminarDetalleVentaProducto(int idDetalle) {
         String sql = "DELETE FROM detalle_venta_producto WHERE id_detalle_venta_producto = ?";
-        try (Connection conn = DatabaseManager.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setInt(1, idDetalle);
-            int filasAfectadas = pstmt.executeUpdate();
-            System.out.println("Detalle de venta de producto con ID " + idDetalle + " eliminado.");
-            return filasAfectadas > 0;
+        try (Connection conn = DatabaseManager.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                int idVenta = obtenerIdVenta(conn, idDetalle);
+                pstmt.setInt(1, idDetalle);
+                int filasAfectadas = pstmt.executeUpdate();
+                if (filasAfectadas > 0) {
+                    VentaDAO.recalcularTotal(conn, idVenta);
+                }
+                conn.commit();
+                System.out.println("Detalle de venta de producto con ID " + idDetalle + " eliminado.");
+                return filasAfectadas > 0;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
         } catch (SQLException e) {
             System.err.println("Error al eliminar detalle de venta de producto: " + e.getMessage());
             return false;
         }
     }
 
+    /**
+     * Lee, bloqueándola hasta el fin de la transacción, la venta a la que pertenece un detalle.
+     * @return El ID de la venta, o -1 si el detalle no existe.
+     */
+    private int obtenerIdVenta(Connection conn, int idDetalle) throws SQLException {
+        String sql = "SELECT id_venta FROM detalle_venta_producto WITH (UPDLOCK) WHERE id_detalle_venta_producto = ?";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, idDetalle);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : -1;
+            }
+        }
+    }
+
 
     /**
      * Obtiene una lista de todos los detalles de venta de producto.
@@ -154,7 +233,7 @@ public class DetalleVentaProductoDAO {
      */
     public List<DetalleVentaProducto> obtenerTodosLosDetallesVentaProducto() {
         String sql = "SELECT id_detalle_venta_producto, id_venta, id_producto, cantidad, " +
-                "fecha_creacion, fecha_actualizacion, precio_unitario_final, descripcion FROM detalle_venta_producto ORDER BY id_venta, id_detalle_venta_producto";
+                "fecha_creacion, fecha_actualizacion, precio_unitario_final, descripcion, costo_unitario FROM detalle_venta_producto ORDER BY id_venta, id_detalle_venta_producto";
         List<DetalleVentaProducto> detalles = new ArrayList<>();
 
         try (Connection conn = DatabaseManager.getConnection();
@@ -170,6 +249,84 @@ public class DetalleVentaProductoDAO {
         return detalles;
     }
 
+    /**
+     * Obtiene los productos más vendidos, agregados en la base de datos en una sola consulta
+     * (GROUP BY con el nombre ya resuelto por JOIN), con unidades, ingresos y costo.
+     * El costo es el fijado en cada línea al vender (costo_unitario).
+     * @param limite Número máximo de filas (TOP n).
+     * @param desde Fecha de inicio de las ventas a considerar (puede ser null).
+     * @param hasta Fecha de fin de las ventas a considerar (puede ser null).
+     * @param idUsuario Vendedor cuyas ventas se consideran (puede ser null para todos).
+     * @return Lista ordenada por unidades vendidas, de mayor a menor.
+     */
+    public List<ItemMasVendido> obtenerMasVendidos(int limite, LocalDateTime desde, LocalDateTime hasta, Integer idUsuario) {
+        StringBuilder sql = new StringBuilder(
+                "SELECT TOP (?) d.id_producto AS id_item, i.nombre, SUM(d.cantidad) AS unidades, " +
+                "SUM(d.cantidad * d.precio_unitario_final) AS ingresos, " +
+                "SUM(d.cantidad * d.costo_unitario) AS costo " +
+                "FROM detalle_venta_producto d " +
+                "JOIN venta v ON v.id_venta = d.id_venta " +
+                "JOIN producto i ON i.id_producto = d.id_producto " +
+                "WHERE 1 = 1");
+        List<Object> parametros = new ArrayList<>();
+        parametros.add(limite);
+        VentaDAO.agregarFiltrosVenta(sql, parametros, desde, hasta, idUsuario);
+        sql.append(" GROUP BY d.id_producto, i.nombre ORDER BY unidades DESC, ingresos DESC");
+
+        List<ItemMasVendido> items = new ArrayList<>();
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql.toString())) {
+            ConsultaCancelable.registrar(pstmt);
+
+            for (int i = 0; i < parametros.size(); i++) {
+                pstmt.setObject(i + 1, parametros.get(i));
+            }
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    items.add(new ItemMasVendido(rs.getInt("id_item"), rs.getString("nombre"), rs.getInt("unidades"),
+                            rs.getBigDecimal("ingresos"), rs.getBigDecimal("costo")));
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error al obtener productos más vendidos: " + e.getMessage());
+        }
+        return items;
+    }
+
+    /**
+     * Obtiene los detalles de varias ventas en una sola consulta, agrupados por venta.
+     * @param idsVenta Los IDs de las ventas.
+     * @return Un mapa de ID de venta a su lista de DetalleVentaProducto.
+     */
+    public Map<Integer, List<DetalleVentaProducto>> obtenerDetallesPorVentas(List<Integer> idsVenta) {
+        Map<Integer, List<DetalleVentaProducto>> detallesPorVenta = new HashMap<>();
+        if (idsVenta.isEmpty()) {
+            return detallesPorVenta;
+        }
+        String sql = "SELECT id_detalle_venta_producto, id_venta, id_producto, cantidad, " +
+                "fecha_creacion, fecha_actualizacion, precio_unitario_final, descripcion, costo_unitario FROM detalle_venta_producto WHERE id_venta IN (" +
+                DatabaseManager.marcadores(idsVenta.size()) + ") ORDER BY id_venta, id_detalle_venta_producto";
+
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            for (int i = 0; i < idsVenta.size(); i++) {
+                pstmt.setInt(i + 1, idsVenta.get(i));
+            }
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    DetalleVentaProducto detalle = mapearResultSetADetalleVentaProducto(rs);
+                    detallesPorVenta.computeIfAbsent(detalle.getIdVenta(), k -> new ArrayList<>()).add(detalle);
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error al obtener detalles de venta de producto por ventas: " + e.getMessage());
+        }
+        return detallesPorVenta;
+    }
+
     /**
      * Método auxiliar para mapear un ResultSet a un objeto DetalleVentaProducto.
      * @param rs El ResultSet actual.
@@ -191,7 +348,9 @@ public class DetalleVentaProductoDAO {
         BigDecimal precioUnitarioFinal = rs.getBigDecimal("precio_unitario_final");
         String descripcion = rs.getString("descripcion"); // Puede ser nula
 
-        return new DetalleVentaProducto(id, idVenta, idProducto, cantidad,
+        DetalleVentaProducto detalle = new DetalleVentaProducto(id, idVenta, idProducto, cantidad,
                 fechaCreacion, fechaActualizacion, precioUnitarioFinal, descripcion);
+        detalle.setCostoUnitario(rs.getBigDecimal("costo_unitario"));
+        return detalle;
     }
 }
\ No newline at end of file
@@ -1,13 +1,17 @@
 package com.cerrajeria.app.dao;
 
+import com.cerrajeria.app.database.ConsultaCancelable;
 import com.cerrajeria.app.database.DatabaseManager;
 import com.cerrajeria.app.models.DetalleVentaServicio;
+import com.cerrajeria.app.models.ItemMasVendido;
 
 import java.math.BigDecimal;
 import java.sql.*;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Clase DAO (Data Access Object) para interactuar con la tabla 'detalle_venta_servicio' en la base de datos.
@@ -15,16 +19,43 @@ import java.util.List;
 public class DetalleVentaServicioDAO {
 
     /**
-     * Inserta un nuevo detalle de venta de servicio en la base de datos.
+     * Inserta un nuevo detalle de venta de servicio en la base de datos y recalcula el total de la venta
+     * en la misma transacción (ver sql/total_venta_aplicacion.sql).
      * @param detalle El objeto DetalleVentaServicio a insertar.
      * @return El ID del detalle recién insertado, o -1 si hubo un error.
      */
     public int insertarDetalleVentaServicio(DetalleVentaServicio detalle) {
+        try (Connection conn = DatabaseManager.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                int idGenerado = insertarDetalleVentaServicio(conn, detalle);
+                VentaDAO.recalcularTotal(conn, detalle.getIdVenta());
+                conn.commit();
+                return idGenerado;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            System.err.println("Error al insertar detalle de venta de servicio: " + e.getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * Inserta el detalle de venta de servicio usando la conexión (y la transacción) del llamador.
+     * @param conn Conexión abierta por el llamador.
+     * @param detalle El objeto a insertar.
+     * @return El ID generado, o -1 si no se insertó ninguna fila.
+     * @throws SQLException Si falla la inserción; el llamador decide si revierte la transacción.
+     */
+    public int insertarDetalleVentaServicio(Connection conn, DetalleVentaServicio detalle) throws SQLException {
         String sql = "INSERT INTO detalle_venta_servicio (id_venta, id_servicio, cantidad, precio_unitario_final, descripcion) VALUES (?, ?, ?, ?, ?)";
         int idGenerado = -1;
 
-        try (Connection conn = DatabaseManager.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+        try (PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
 
             pstmt.setInt(1, detalle.getIdVenta());
             pstmt.setInt(2, detalle.getIdServicio());
@@ -43,8 +74,6 @@ public class DetalleVentaServicioDAO {
                     }
                 }
             }
-        } catch (SQLException e) {
-            System.err.println("Error al insertar detalle de venta de servicio: " + e.getMessage());
         }
         return idGenerado;
     }
@@ -102,26 +131,42 @@ public class DetalleVentaServicioDAO {
     }
 
     /**
-     * Actualiza los datos de un detalle de venta de servicio existente.
+     * Actualiza los datos de un detalle de venta de servicio existente y recalcula en la misma transacción
+     * el total de la venta (y el de la venta anterior, si el detalle cambia de venta).
      * @param detalle El objeto DetalleVentaServicio con los datos actualizados (el ID debe estar establecido).
      * @return true si la actualización fue exitosa, false en caso contrario.
      */
     public boolean actualizarDetalleVentaServicio(DetalleVentaServicio detalle) {
         String sql = "UPDATE detalle_venta_servicio SET id_venta = ?, id_servicio = ?, cantidad = ?, precio_unitario_final = ?, descripcion = ?, fecha_actualizacion = GETDATE() WHERE id_detalle_venta_servicio = ?";
 
-        try (Connection conn = DatabaseManager.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        try (Connection conn = DatabaseManager.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                int idVentaAnterior = obtenerIdVenta(conn, detalle.getIdDetalleVentaServicio());
 
-            pstmt.setInt(1, detalle.getIdVenta());
-            pstmt.setInt(2, detalle.getIdServicio());
-            pstmt.setInt(3, detalle.getCantidad());
-            pstmt.setBigDecimal(4, detalle.getPrecioUnitarioFinal());
-            pstmt.setString(5, detalle.getDescripcion());
-            pstmt.setInt(6, detalle.getIdDetalleVentaServicio());
+                pstmt.setInt(1, detalle.getIdVenta());
+                pstmt.setInt(2, detalle.getIdServicio());
+                pstmt.setInt(3, detalle.getCantidad());
+                pstmt.setBigDecimal(4, detalle.getPrecioUnitarioFinal());
+                pstmt.setString(5, detalle.getDescripcion());
+                pstmt.setInt(6, detalle.getIdDetalleVentaServicio());
 
-            int filasAfectadas = pstmt.executeUpdate();
-            System.out.println("Filas afectadas al actualizar detalle de venta de servicio: " + filasAfectadas);
-            return filasAfectadas > 0;
+                int filasAfectadas = pstmt.executeUpdate();
+                System.out.println("Filas afectadas al actualizar detalle de venta de servicio: " + filasAfectadas);
+                if (filasAfectadas > 0) {
+                    VentaDAO.recalcularTotal(conn, detalle.getIdVenta());
+                    if (idVentaAnterior != detalle.getIdVenta()) {
+                        VentaDAO.recalcularTotal(conn, idVentaAnterior);
+                    }
+                }
+                conn.commit();
+                return filasAfectadas > 0;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
         } catch (SQLException e) {
             System.err.println("Error al actualizar detalle de venta de servicio: " + e.getMessage());
             return false;
@@ -129,24 +174,50 @@ public class DetalleVentaServicioDAO {
     }
 
     /**
-     * Elimina un detalle de venta de servicio.
+     * Elimina un detalle de venta de servicio y recalcula el total de su venta en la misma transacción.
      * @param idDetalle El ID del detalle a eliminar.
      * @return true si la eliminación fue exitosa, false en caso contrario.
      */
     public boolean eliminarDetalleVentaServicio(int idDetalle) {
         String sql = "DELETE FROM detalle_venta_servicio WHERE id_detalle_venta_servicio = ?";
-        try (Connection conn = DatabaseManager.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setInt(1, idDetalle);
-            int filasAfectadas = pstmt.executeUpdate();
-            System.out.println("Detalle de venta de servicio con ID " + idDetalle + " eliminado.");
-            return filasAfectadas > 0;
+        try (Connection conn = DatabaseManager.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                int idVenta = obtenerIdVenta(conn, idDetalle);
+                pstmt.setInt(1, idDetalle);
+                int filasAfectadas = pstmt.executeUpdate();
+                if (filasAfectadas > 0) {
+                    VentaDAO.recalcularTotal(conn, idVenta);
+                }
+                conn.commit();
+                System.out.println("Detalle de venta de servicio con ID " + idDetalle + " eliminado.");
+                return filasAfectadas > 0;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
         } catch (SQLException e) {
             System.err.println("Error al eliminar detalle de venta de servicio: " + e.getMessage());
             return false;
         }
     }
 
+    /**
+     * Lee, bloqueándola hasta el fin de la transacción, la venta a la que pertenece un detalle.
+     * @return El ID de la venta, o -1 si el detalle no existe.
+     */
+    private int obtenerIdVenta(Connection conn, int idDetalle) throws SQLException {
+        String sql = "SELECT id_venta FROM detalle_venta_servicio WITH (UPDLOCK) WHERE id_detalle_venta_servicio = ?";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, idDetalle);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : -1;
+            }
+        }
+    }
+
 
     /**
      * Obtiene una lista de todos los detalles de venta de servicio.
@@ -170,6 +241,84 @@ public class DetalleVentaServicioDAO {
         return detalles;
     }
 
+    /**
+     * Obtiene los servicios más vendidos, agregados en la base de datos en una sola consulta
+     * (GROUP BY con el nombre ya resuelto por JOIN), con unidades, ingresos y costo.
+     * Los servicios no tienen costo registrado, por lo que su margen es igual a sus ingresos.
+     * @param limite Número máximo de filas (TOP n).
+     * @param desde Fecha de inicio de las ventas a considerar (puede ser null).
+     * @param hasta Fecha de fin de las ventas a considerar (puede ser null).
+     * @param idUsuario Vendedor cuyas ventas se consideran (puede ser null para todos).
+     * @return Lista ordenada por unidades vendidas, de mayor a menor.
+     */
+    public List<ItemMasVendido> obtenerMasVendidos(int limite, LocalDateTime desde, LocalDateTime hasta, Integer idUsuario) {
+        StringBuilder sql = new StringBuilder(
+                "SELECT TOP (?) d.id_servicio AS id_item, i.nombre, SUM(d.cantidad) AS unidades, " +
+                "SUM(d.cantidad * d.precio_unitario_final) AS ingresos, " +
+                "CAST(0 AS DECIMAL(18, 2)) AS costo " +
+                "FROM detalle_venta_servicio d " +
+                "JOIN venta v ON v.id_venta = d.id_venta " +
+                "JOIN servicio i ON i.id_servicio = d.id_servicio " +
+                "WHERE 1 = 1");
+        List<Object> parametros = new ArrayList<>();
+        parametros.add(limite);
+        VentaDAO.agregarFiltrosVenta(sql, parametros, desde, hasta, idUsuario);
+        sql.append(" GROUP BY d.id_servicio, i.nombre ORDER BY unidades DESC, ingresos DESC");
+
+        List<ItemMasVendido> items = new ArrayList<>();
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql.toString())) {
+            ConsultaCancelable.registrar(pstmt);
+
+            for (int i = 0; i < parametros.size(); i++) {
+                pstmt.setObject(i + 1, parametros.get(i));
+            }
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    items.add(new ItemMasVendido(rs.getInt("id_item"), rs.getString("nombre"), rs.getInt("unidades"),
+                            rs.getBigDecimal("ingresos"), rs.getBigDecimal("costo")));
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error al obtener servicios más vendidos: " + e.getMessage());
+        }
+        return items;
+    }
+
+    /**
+     * Obtiene los detalles de varias ventas en una sola consulta, agrupados por venta.
+     * @param idsVenta Los IDs de las ventas.
+     * @return Un mapa de ID de venta a su lista de DetalleVentaServicio.
+     */
+    public Map<Integer, List<DetalleVentaServicio>> obtenerDetallesPorVentas(List<Integer> idsVenta) {
+        Map<Integer, List<DetalleVentaServicio>> detallesPorVenta = new HashMap<>();
+        if (idsVenta.isEmpty()) {
+            return detallesPorVenta;
+        }
+        String sql = "SELECT id_detalle_venta_servicio, id_venta, id_servicio, cantidad, " +
+                "fecha_creacion, fecha_actualizacion, precio_unitario_final, descripcion FROM detalle_venta_servicio WHERE id_venta IN (" +
+                DatabaseManager.marcadores(idsVenta.size()) + ") ORDER BY id_venta, id_detalle_venta_servicio";
+
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            for (int i = 0; i < idsVenta.size(); i++) {
+                pstmt.setInt(i + 1, idsVenta.get(i));
+            }
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    DetalleVentaServicio detalle = mapearResultSetADetalleVentaServicio(rs);
+                    detallesPorVenta.computeIfAbsent(detalle.getIdVenta(), k -> new ArrayList<>()).add(detalle);
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error al obtener detalles de venta de servicio por ventas: " + e.getMessage());
+        }
+        return detallesPorVenta;
+    }
+
     /**
      * Método auxiliar para mapear un ResultSet a un objeto DetalleVentaServicio.
      * @param rs El ResultSet actual.
@@ -0,0 +1,243 @@
+package com.cerrajeria.app.dao;
+
+import com.cerrajeria.app.database.DatabaseManager;
+
+import java.sql.*;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Clase DAO de lectura para exportar historiales (ventas, comisiones, movimientos de stock) y el catálogo.
+ * Recorre los resultados con un cursor de solo avance y entrega cada fila al llamador sin
+ * acumularlas, de modo que la memoria usada no depende del número de filas.
+ */
+public class ExportacionDAO {
+
+    private static final int FILAS_POR_LECTURA = 1000;
+
+    /**
+     * Receptor de una fila leída. El arreglo de valores se reutiliza entre filas.
+     */
+    @FunctionalInterface
+    public interface LectorFila {
+        /**
+         * @return false para detener el recorrido (por ejemplo, si se canceló la exportación).
+         */
+        boolean leer(Object[] valores) throws Exception;
+    }
+
+    public static final String[] COLUMNAS_VENTAS = {"ID venta", "ID vendedor", "Vendedor", "Fecha", "Total"};
+    public static final String[] COLUMNAS_COMISIONES = {"ID comisión", "ID vendedor", "Vendedor", "ID venta",
+            "Monto", "Estado", "Manual", "Comentario", "Fecha"};
+    public static final String[] COLUMNAS_MOVIMIENTOS = {"ID movimiento", "ID producto", "Producto", "Tipo",
+            "Cantidad", "Motivo", "Fecha"};
+    // Las primeras columnas del catálogo son las que lee ImportacionCatalogoService, en el mismo orden
+    public static final String[] COLUMNAS_PRODUCTOS = {"Nombre", "Categoría", "Precio", "Costo interno",
+            "Stock mínimo", "Stock", "Activo", "ID producto"};
+    public static final String[] COLUMNAS_SERVICIOS = {"Nombre", "Categoría", "Precio", "Descripción",
+            "Activo", "ID servicio"};
+    public static final String[] COLUMNAS_CATEGORIAS = {"Nombre", "Activo", "ID categoría"};
+
+    // --- Ventas (mismos filtros que ReportsController) ---
+
+    public int contarVentas(LocalDateTime desde, LocalDateTime hasta, Integer idUsuario) {
+        StringBuilder sql = new StringBuilder("SELECT COUNT(*) FROM venta v WHERE 1 = 1");
+        List<Object> parametros = new ArrayList<>();
+        VentaDAO.agregarFiltrosVenta(sql, parametros, desde, hasta, idUsuario);
+        return contar(sql.toString(), parametros);
+    }
+
+    /**
+     * Recorre las ventas filtradas, de la más antigua a la más reciente, con las columnas de {@link #COLUMNAS_VENTAS}.
+     * @return true si se recorrieron todas las filas o el lector pidió detenerse; false si hubo un error.
+     */
+    public boolean recorrerVentas(LocalDateTime desde, LocalDateTime hasta, Integer idUsuario, LectorFila lector) {
+        StringBuilder sql = new StringBuilder(
+                "SELECT v.id_venta, v.id_usuario, u.nombre, v.fecha_creacion, v.total_venta " +
+                "FROM venta v LEFT JOIN usuario u ON u.id_usuario = v.id_usuario WHERE 1 = 1");
+        List<Object> parametros = new ArrayList<>();
+        VentaDAO.agregarFiltrosVenta(sql, parametros, desde, hasta, idUsuario);
+        sql.append(" ORDER BY v.fecha_creacion, v.id_venta");
+        return recorrer(sql.toString(), parametros, COLUMNAS_VENTAS.length, lector);
+    }
+
+    // --- Comisiones (mismos filtros que ReportsController) ---
+
+    public int contarComisiones(Integer idUsuario, String estado) {
+        StringBuilder sql = new StringBuilder("SELECT COUNT(*) FROM comision c WHERE 1 = 1");
+        List<Object> parametros = new ArrayList<>();
+        agregarFiltrosComision(sql, parametros, idUsuario, estado);
+        return contar(sql.toString(), parametros);
+    }
+
+    /**
+     * Recorre las comisiones filtradas con las columnas de {@link #COLUMNAS_COMISIONES}.
+     * @return true si se recorrieron todas las filas o el lector pidió detenerse; false si hubo un error.
+     */
+    public boolean recorrerComisiones(Integer idUsuario, String estado, LectorFila lector) {
+        StringBuilder sql = new StringBuilder(
+                "SELECT c.id_comision, c.id_usuario, u.nombre, c.id_venta, c.monto_comision, c.estado, " +
+                "c.es_manual, c.comentario, c.fecha_creacion " +
+                "FROM comision c LEFT JOIN usuario u ON u.id_usuario = c.id_usuario WHERE 1 = 1");
+        List<Object> parametros = new ArrayList<>();
+        agregarFiltrosComision(sql, parametros, idUsuario, estado);
+        sql.append(" ORDER BY c.fecha_creacion, c.id_comision");
+        return recorrer(sql.toString(), parametros, COLUMNAS_COMISIONES.length, lector);
+    }
+
+    private static void agregarFiltrosComision(StringBuilder sql, List<Object> parametros, Integer idUsuario, String estado) {
+        if (idUsuario != null) {
+            sql.append(" AND c.id_usuario = ?");
+            parametros.add(idUsuario);
+        }
+        if (estado != null) {
+            sql.append(" AND c.estado = ?");
+            parametros.add(estado);
+        }
+    }
+
+    // --- Movimientos de stock ---
+
+    public int contarMovimientos(LocalDateTime desde, LocalDateTime hasta) {
+        StringBuilder sql = new StringBuilder("SELECT COUNT(*) FROM movimiento_stock_historico m WHERE 1 = 1");
+        List<Object> parametros = new ArrayList<>();
+        agregarFiltrosMovimiento(sql, parametros, desde, hasta);
+        return contar(sql.toString(), parametros);
+    }
+
+    /**
+     * Recorre los movimientos de stock del periodo con las columnas de {@link #COLUMNAS_MOVIMIENTOS},
+     * incluidos los que la compactación pasó a movimiento_stock_archivo.
+     * @return true si se recorrieron todas las filas o el lector pidió detenerse; false si hubo un error.
+     */
+    public boolean recorrerMovimientos(LocalDateTime desde, LocalDateTime hasta, LectorFila lector) {
+        StringBuilder sql = new StringBuilder(
+                "SELECT m.id_movimiento_stock, m.id_producto, p.nombre, m.tipo, m.cantidad, m.motivo, m.fecha_creacion " +
+                "FROM movimiento_stock_historico m LEFT JOIN producto p ON p.id_producto = m.id_producto WHERE 1 = 1");
+        List<Object> parametros = new ArrayList<>();
+        agregarFiltrosMovimiento(sql, parametros, desde, hasta);
+        sql.append(" ORDER BY m.fecha_creacion, m.id_movimiento_stock");
+        return recorrer(sql.toString(), parametros, COLUMNAS_MOVIMIENTOS.length, lector);
+    }
+
+    private static void agregarFiltrosMovimiento(StringBuilder sql, List<Object> parametros,
+                                                 LocalDateTime desde, LocalDateTime hasta) {
+        if (desde != null) {
+            sql.append(" AND m.fecha_creacion >= ?");
+            parametros.add(Timestamp.valueOf(desde));
+        }
+        if (hasta != null) {
+            sql.append(" AND m.fecha_creacion <= ?");
+            parametros.add(Timestamp.valueOf(hasta));
+        }
+    }
+
+    // --- Catálogo (mismo formato que la importación) ---
+
+    public int contarProductos() {
+        return contar("SELECT COUNT(*) FROM producto", List.of());
+    }
+
+    /**
+     * Recorre los productos por nombre con las columnas de {@link #COLUMNAS_PRODUCTOS}
+     * (el stock es el de la sucursal de esta terminal).
+     * @return true si se recorrieron todas las filas o el lector pidió detenerse; false si hubo un error.
+     */
+    public boolean recorrerProductos(LectorFila lector) {
+        String sql = "SELECT p.nombre, c.nombre, p.precio, p.costo_interno, p.stock_minimo, ISNULL(ss.stock, 0), " +
+                "p.activo, p.id_producto " +
+                "FROM producto p LEFT JOIN categoria_producto c ON c.id_categoria_producto = p.id_categoria_producto " +
+                "LEFT JOIN stock_sucursal ss ON ss.id_sucursal = ? AND ss.id_producto = p.id_producto " +
+                "ORDER BY p.nombre";
+        return recorrer(sql, List.of(DatabaseManager.ID_SUCURSAL), COLUMNAS_PRODUCTOS.length, lector);
+    }
+
+    public int contarServicios() {
+        return contar("SELECT COUNT(*) FROM servicio", List.of());
+    }
+
+    /**
+     * Recorre los servicios por nombre con las columnas de {@link #COLUMNAS_SERVICIOS}.
+     * @return true si se recorrieron todas las filas o el lector pidió detenerse; false si hubo un error.
+     */
+    public boolean recorrerServicios(LectorFila lector) {
+        String sql = "SELECT s.nombre, c.nombre, s.precio, s.descripcion, s.activo, s.id_servicio " +
+                "FROM servicio s LEFT JOIN categoria_servicio c ON c.id_categoria_servicio = s.id_categoria_servicio " +
+                "ORDER BY s.nombre";
+        return recorrer(sql, List.of(), COLUMNAS_SERVICIOS.length, lector);
+    }
+
+    public int contarCategoriasProducto() {
+        return contar("SELECT COUNT(*) FROM categoria_producto", List.of());
+    }
+
+    /**
+     * Recorre las categorías de producto por nombre con las columnas de {@link #COLUMNAS_CATEGORIAS}.
+     * @return true si se recorrieron todas las filas o el lector pidió detenerse; false si hubo un error.
+     */
+    public boolean recorrerCategoriasProducto(LectorFila lector) {
+        return recorrer("SELECT nombre, activo, id_categoria_producto FROM categoria_producto ORDER BY nombre",
+                List.of(), COLUMNAS_CATEGORIAS.length, lector);
+    }
+
+    public int contarCategoriasServicio() {
+        return contar("SELECT COUNT(*) FROM categoria_servicio", List.of());
+    }
+
+    /**
+     * Recorre las categorías de servicio por nombre con las columnas de {@link #COLUMNAS_CATEGORIAS}.
+     * @return true si se recorrieron todas las filas o el lector pidió detenerse; false si hubo un error.
+     */
+    public boolean recorrerCategoriasServicio(LectorFila lector) {
+        return recorrer("SELECT nombre, activo, id_categoria_servicio FROM categoria_servicio ORDER BY nombre",
+                List.of(), COLUMNAS_CATEGORIAS.length, lector);
+    }
+
+    // --- Ayudantes ---
+
+    private int contar(String sql, List<Object> parametros) {
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            for (int i = 0; i < parametros.size(); i++) {
+                pstmt.setObject(i + 1, parametros.get(i));
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        } catch (SQLException e) {
+            System.err.println("Error al contar filas para exportar: " + e.getMessage());
+            return -1;
+        }
+    }
+
+    private boolean recorrer(String sql, List<Object> parametros, int columnas, LectorFila lector) {
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+
+            for (int i = 0; i < parametros.size(); i++) {
+                pstmt.setObject(i + 1, parametros.get(i));
+            }
+            pstmt.setFetchSize(FILAS_POR_LECTURA);
+
+            Object[] valores = new Object[columnas];
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    for (int i = 0; i < columnas; i++) {
+                        Object valor = rs.getObject(i + 1);
+                        valores[i] = (valor instanceof Timestamp ts) ? ts.toLocalDateTime() : valor;
+                    }
+                    if (!lector.leer(valores)) {
+                        pstmt.cancel(); // No seguir enviando filas que nadie va a leer
+                        break;
+                    }
+                }
+            }
+            return true;
+        } catch (Exception e) {
+            System.err.println("Error al recorrer filas para exportar: " + e.getMessage());
+            return false;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.cerrajeria.app.dao;
+
+import com.cerrajeria.app.database.DatabaseManager;
+
+import java.sql.*;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Clase DAO del libro de stock (ver sql/libro_stock.sql): el stock de cada producto en cada sucursal es
+ * stock_compactado.stock_base más la suma de sus movimientos en movimiento_stock.
+ * Permite conciliar stock_sucursal con el libro, corregir la proyección y compactar el libro.
+ */
+public class LibroStockDAO {
+
+    /**
+     * Producto cuyo stock no coincide con el que resulta del libro de movimientos.
+     */
+    public record Descuadre(int idSucursal, int idProducto, String nombre, int stockProducto, int stockLibro) {
+        public int diferencia() {
+            return stockProducto - stockLibro;
+        }
+    }
+
+    // Efecto de un movimiento sobre el stock
+    private static final String DELTA_MOVIMIENTO = "CASE WHEN tipo = 'Entrada' THEN cantidad ELSE -cantidad END";
+
+    // Stock según el libro para cada sucursal × producto: una sola agrupación de movimiento_stock
+    private static final String STOCK_LIBRO =
+            "SELECT s.id_sucursal, s.id_producto, p.nombre, s.stock, ISNULL(c.stock_base, 0) + ISNULL(m.delta, 0) AS stock_libro " +
+            "FROM stock_sucursal s " +
+            "JOIN producto p ON p.id_producto = s.id_producto " +
+            "LEFT JOIN stock_compactado c ON c.id_sucursal = s.id_sucursal AND c.id_producto = s.id_producto " +
+            "LEFT JOIN (SELECT id_sucursal, id_producto, SUM(" + DELTA_MOVIMIENTO + ") AS delta " +
+            "FROM movimiento_stock GROUP BY id_sucursal, id_producto) m " +
+            "ON m.id_sucursal = s.id_sucursal AND m.id_producto = s.id_producto ";
+
+    /**
+     * Compara el stock de cada sucursal con el libro para todos los productos (o solo los indicados) en una consulta.
+     * @param idsProducto Productos a comprobar, o null para todos.
+     * @return Productos descuadrados (vacía si todo cuadra o si hubo un error).
+     */
+    public List<Descuadre> obtenerDescuadres(Collection<Integer> idsProducto) {
+        List<Descuadre> descuadres = new ArrayList<>();
+        if (idsProducto != null && idsProducto.isEmpty()) {
+            return descuadres;
+        }
+        List<Integer> ids = (idsProducto != null) ? new ArrayList<>(idsProducto) : List.of();
+        String sql = "SELECT * FROM (" + STOCK_LIBRO +
+                (idsProducto != null ? "WHERE s.id_producto IN (" + DatabaseManager.marcadores(ids.size()) + ")" : "") +
+                ") l WHERE l.stock <> l.stock_libro ORDER BY l.id_sucursal, l.nombre";
+
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            for (int i = 0; i < ids.size(); i++) {
+                pstmt.setInt(i + 1, ids.get(i));
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    descuadres.add(new Descuadre(rs.getInt("id_sucursal"), rs.getInt("id_producto"), rs.getString("nombre"),
+                            rs.getInt("stock"), rs.getInt("stock_libro")));
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error al conciliar el stock con el libro de movimientos: " + e.getMessage());
+        }
+        return descuadres;
+    }
+
+    /**
+     * Rehace stock_sucursal a partir del libro para los productos descuadrados de todas las sucursales,
+     * en una sola sentencia.
+     * @return Número de productos corregidos, o -1 si hubo un error.
+     */
+    public int corregirDesdeLibro() {
+        String sql = "UPDATE t SET stock = l.stock_libro, fecha_actualizacion = GETDATE() " +
+                "FROM stock_sucursal t JOIN (" + STOCK_LIBRO + ") l " +
+                "ON l.id_sucursal = t.id_sucursal AND l.id_producto = t.id_producto " +
+                "WHERE t.stock <> l.stock_libro";
+
+        try (Connection conn = DatabaseManager.getConnection();
+             Statement stmt = conn.createStatement()) {
+            return stmt.executeUpdate(sql);
+        } catch (SQLException e) {
+            System.err.println("Error al corregir el stock desde el libro de movimientos: " + e.getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * Compacta un lote de movimientos anteriores a la fecha de corte: los pasa de movimiento_stock a
+     * movimiento_stock_archivo y suma su efecto a stock_compactado en la misma transacción, así el stock
+     * del libro no cambia y el historial completo sigue disponible en movimiento_stock_historico.
+     * @param corte Se compactan los movimientos con fecha_creacion anterior a este instante.
+     * @param tamanoLote Máximo de movimientos por transacción (acota bloqueos y el tamaño del log).
+     * @return Movimientos compactados (0 si no quedan), o -1 si hubo un error.
+     */
+    public int compactarLote(LocalDateTime corte, int tamanoLote) {
+        String sql = "SET XACT_ABORT ON; " +
+                "DECLARE @lote TABLE (id_movimiento_stock INT NOT NULL PRIMARY KEY, id_sucursal INT NOT NULL, " +
+                "id_producto INT NOT NULL, delta INT NOT NULL); " +
+                "INSERT INTO movimiento_stock_archivo (id_movimiento_stock, id_sucursal, id_producto, tipo, cantidad, " +
+                "motivo, fecha_creacion, fecha_actualizacion) " +
+                "OUTPUT inserted.id_movimiento_stock, inserted.id_sucursal, inserted.id_producto, " +
+                "CASE WHEN inserted.tipo = 'Entrada' THEN inserted.cantidad ELSE -inserted.cantidad END " +
+                "INTO @lote (id_movimiento_stock, id_sucursal, id_producto, delta) " +
+                "SELECT TOP (?) id_movimiento_stock, id_sucursal, id_producto, tipo, cantidad, motivo, " +
+                "fecha_creacion, fecha_actualizacion " +
+                "FROM movimiento_stock WHERE fecha_creacion < ? ORDER BY id_movimiento_stock; " +
+                "DELETE m FROM movimiento_stock m JOIN @lote l ON l.id_movimiento_stock = m.id_movimiento_stock; " +
+                "MERGE stock_compactado AS c " +
+                "USING (SELECT id_sucursal, id_producto, SUM(delta) AS delta FROM @lote GROUP BY id_sucursal, id_producto) AS l " +
+                "ON c.id_sucursal = l.id_sucursal AND c.id_producto = l.id_producto " +
+                "WHEN MATCHED THEN UPDATE SET stock_base = c.stock_base + l.delta, fecha_actualizacion = GETDATE() " +
+                "WHEN NOT MATCHED THEN INSERT (id_sucursal, id_producto, stock_base) VALUES (l.id_sucursal, l.id_producto, l.delta); " +
+                "SELECT COUNT(*) FROM @lote;";
+
+        try (Connection conn = DatabaseManager.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setInt(1, tamanoLote);
+                pstmt.setTimestamp(2, Timestamp.valueOf(corte));
+
+                int compactados = 0;
+                // El lote devuelve primero los recuentos de INSERT, DELETE y MERGE y al final el SELECT
+                boolean hayResultado = pstmt.execute();
+                while (hayResultado || pstmt.getUpdateCount() != -1) {
+                    if (hayResultado) {
+                        try (ResultSet rs = pstmt.getResultSet()) {
+                            if (rs.next()) {
+                                compactados = rs.getInt(1);
+                            }
+                        }
+                    }
+                    hayResultado = pstmt.getMoreResults();
+                }
+                conn.commit();
+                return compactados;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            System.err.println("Error al compactar movimientos de stock: " + e.getMessage());
+            return -1;
+        }
+    }
+}
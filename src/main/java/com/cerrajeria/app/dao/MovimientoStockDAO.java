@@ -1,5 +1,6 @@
 package com.cerrajeria.app.dao;
 
+import com.cerrajeria.app.database.ConsultaCancelable;
 import com.cerrajeria.app.database.DatabaseManager;
 import com.cerrajeria.app.models.MovimientoStock;
 
@@ -13,22 +14,85 @@ import java.util.List;
  */
 public class MovimientoStockDAO {
 
+    // Las salidas por venta se reconocen por su motivo (ver VentaService y sql/venta_rapida.sql)
+    private static final String PREFIJO_MOTIVO_VENTA = "Venta ID ";
+
+    /**
+     * Receptor de las unidades que salieron por venta de un producto en un día.
+     */
+    @FunctionalInterface
+    public interface LectorSalida {
+        void leer(int idProducto, int epochDia, int cantidad);
+    }
+
+    /**
+     * Recorre, en una sola pasada con un cursor de solo avance, las salidas de stock por venta de esta
+     * sucursal desde una fecha, sumadas por producto y día. El rango (tipo, fecha_creacion) se busca en
+     * ix_movimiento_stock_tipo_fecha (sql/planificador_reposicion.sql), que cubre la consulta.
+     * @param desde Fecha inicial (inclusive).
+     * @param lector Receptor de cada suma por producto y día.
+     * @return true si la lectura terminó; false si hubo un error.
+     */
+    public boolean recorrerSalidasPorVenta(LocalDateTime desde, LectorSalida lector) {
+        String dia = "DATEDIFF(DAY, '1970-01-01', m.fecha_creacion)";
+        String sql = "SELECT m.id_producto, " + dia + ", SUM(m.cantidad) " +
+                "FROM movimiento_stock m " +
+                "WHERE m.tipo = 'Salida' AND m.fecha_creacion >= ? AND m.motivo LIKE ? AND m.id_sucursal = ? " +
+                "GROUP BY m.id_producto, " + dia;
+
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            ConsultaCancelable.registrar(pstmt);
+
+            pstmt.setTimestamp(1, Timestamp.valueOf(desde));
+            pstmt.setString(2, PREFIJO_MOTIVO_VENTA + "%");
+            pstmt.setInt(3, DatabaseManager.ID_SUCURSAL);
+            pstmt.setFetchSize(5000);
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    lector.leer(rs.getInt(1), rs.getInt(2), rs.getInt(3));
+                }
+            }
+            return true;
+        } catch (SQLException e) {
+            System.err.println("Error al recorrer salidas de stock por venta: " + e.getMessage());
+            return false;
+        }
+    }
+
     /**
      * Inserta un nuevo movimiento de stock en la base de datos.
      * @param movimiento El objeto MovimientoStock a insertar.
      * @return El ID del movimiento recién insertado, o -1 si hubo un error.
      */
     public int insertarMovimientoStock(MovimientoStock movimiento) {
-        String sql = "INSERT INTO movimiento_stock (id_producto, tipo, cantidad, motivo) VALUES (?, ?, ?, ?)";
+        try (Connection conn = DatabaseManager.getConnection()) {
+            return insertarMovimientoStock(conn, movimiento);
+        } catch (SQLException e) {
+            System.err.println("Error al insertar movimiento de stock: " + e.getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * Inserta el movimiento de stock usando la conexión (y la transacción) del llamador.
+     * @param conn Conexión abierta por el llamador.
+     * @param movimiento El objeto a insertar.
+     * @return El ID generado, o -1 si no se insertó ninguna fila.
+     * @throws SQLException Si falla la inserción; el llamador decide si revierte la transacción.
+     */
+    public int insertarMovimientoStock(Connection conn, MovimientoStock movimiento) throws SQLException {
+        String sql = "INSERT INTO movimiento_stock (id_producto, tipo, cantidad, motivo, id_sucursal) VALUES (?, ?, ?, ?, ?)";
         int idGenerado = -1;
 
-        try (Connection conn = DatabaseManager.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+        try (PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
 
             pstmt.setInt(1, movimiento.getIdProducto());
             pstmt.setString(2, movimiento.getTipo());
             pstmt.setInt(3, movimiento.getCantidad());
             pstmt.setString(4, movimiento.getMotivo());
+            pstmt.setInt(5, DatabaseManager.ID_SUCURSAL); // Los movimientos son de la sucursal de esta terminal
 
             int filasAfectadas = pstmt.executeUpdate();
 
@@ -41,12 +105,33 @@ public class MovimientoStockDAO {
                     }
                 }
             }
-        } catch (SQLException e) {
-            System.err.println("Error al insertar movimiento de stock: " + e.getMessage());
         }
         return idGenerado;
     }
 
+    /**
+     * Inserta varios movimientos de stock en un solo lote usando la conexión (y la transacción) del llamador.
+     * A diferencia de {@link #insertarMovimientoStock(Connection, MovimientoStock)}, no recupera los IDs generados.
+     * @param conn Conexión abierta por el llamador.
+     * @param movimientos Movimientos a insertar.
+     * @throws SQLException Si falla el lote; el llamador decide si revierte la transacción.
+     */
+    public void insertarMovimientosEnLote(Connection conn, List<MovimientoStock> movimientos) throws SQLException {
+        String sql = "INSERT INTO movimiento_stock (id_producto, tipo, cantidad, motivo, id_sucursal) VALUES (?, ?, ?, ?, ?)";
+
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            for (MovimientoStock movimiento : movimientos) {
+                pstmt.setInt(1, movimiento.getIdProducto());
+                pstmt.setString(2, movimiento.getTipo());
+                pstmt.setInt(3, movimiento.getCantidad());
+                pstmt.setString(4, movimiento.getMotivo());
+                pstmt.setInt(5, DatabaseManager.ID_SUCURSAL);
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        }
+    }
+
     /**
      * Obtiene un movimiento de stock por su ID.
      * @param idMovimiento El ID del movimiento a buscar.
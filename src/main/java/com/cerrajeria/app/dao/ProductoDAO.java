@@ -1,41 +1,71 @@
 package com.cerrajeria.app.dao;
 
 import com.cerrajeria.app.database.DatabaseManager;
+import com.cerrajeria.app.models.CambioPrecio;
+import com.cerrajeria.app.models.EstadoStock;
 import com.cerrajeria.app.models.Producto;
+import com.microsoft.sqlserver.jdbc.SQLServerDataTable;
+import com.microsoft.sqlserver.jdbc.SQLServerPreparedStatement;
 
 import java.math.BigDecimal;
 import java.sql.*;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Clase DAO (Data Access Object) para interactuar con la tabla 'producto' en la base de datos.
  */
 public class ProductoDAO {
 
+    // SQL Server admite hasta 2100 parámetros por sentencia
+    private static final int IDS_POR_CONSULTA = 1000;
+
+    // Stock y estado de la sucursal de esta terminal (ver sql/sucursal.sql); producto.stock es el total de la empresa
+    private static final String SELECT_PRODUCTO =
+            "SELECT p.id_producto, p.nombre, p.id_categoria_producto, p.precio, ISNULL(ss.stock, 0) AS stock, p.stock_minimo, " +
+            EstadoStock.expresionSql("ISNULL(ss.stock, 0)", "p.stock_minimo") + " AS estado, " +
+            "p.fecha_creacion, p.fecha_actualizacion, p.costo_interno, p.activo " +
+            "FROM producto p LEFT JOIN stock_sucursal ss " +
+            "ON ss.id_sucursal = " + DatabaseManager.ID_SUCURSAL + " AND ss.id_producto = p.id_producto ";
+
     /**
      * Inserta un nuevo producto en la base de datos.
-     * El estado del producto se asignará automáticamente por el trigger de la DB si es necesario,
-     * o se manejará lógicamente después de la inserción inicial.
+     * El estado se calcula a partir del stock inicial (ver {@link EstadoStock}) y se asigna al producto.
      * @param producto El objeto Producto a insertar.
      * @return El ID del producto recién insertado, o -1 si hubo un error.
      */
     public int insertarProducto(Producto producto) {
-        // La columna 'estado' se puede omitir si el trigger de la DB la calcula al insertar,
-        // pero la incluimos para control explícito si la DB no lo hace de inmediato.
+        try (Connection conn = DatabaseManager.getConnection()) {
+            return insertarProducto(conn, producto);
+        } catch (SQLException e) {
+            System.err.println("Error al insertar producto: " + e.getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * Inserta un producto usando una conexión existente (para transacciones).
+     * @return El ID del producto recién insertado, o -1 si no se generó.
+     * @throws SQLException Si ocurre un error de SQL.
+     */
+    public int insertarProducto(Connection conn, Producto producto) throws SQLException {
         String sql = "INSERT INTO producto (nombre, id_categoria_producto, precio, stock, stock_minimo, estado, costo_interno, activo) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
         int idGenerado = -1;
+        producto.setEstado(EstadoStock.de(producto.getStock(), producto.getStockMinimo()).getValor());
 
-        try (Connection conn = DatabaseManager.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+        try (PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
 
             pstmt.setString(1, producto.getNombre());
             pstmt.setInt(2, producto.getIdCategoriaProducto());
             pstmt.setBigDecimal(3, producto.getPrecio());
             pstmt.setInt(4, producto.getStock());
             pstmt.setInt(5, producto.getStockMinimo());
-            pstmt.setString(6, producto.getEstado() != null ? producto.getEstado() : "Disponible"); // Default si no se setea
+            pstmt.setString(6, producto.getEstado());
             pstmt.setBigDecimal(7, producto.getCostoInterno());
             pstmt.setBoolean(8, producto.isActivo());
 
@@ -50,8 +80,17 @@ public class ProductoDAO {
                     }
                 }
             }
-        } catch (SQLException e) {
-            System.err.println("Error al insertar producto: " + e.getMessage());
+        }
+        if (idGenerado != -1) {
+            // Una fila de stock por sucursal: el stock inicial es de esta sucursal, el resto empieza en 0
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                    "INSERT INTO stock_sucursal (id_sucursal, id_producto, stock) " +
+                    "SELECT id_sucursal, ?, CASE WHEN id_sucursal = ? THEN ? ELSE 0 END FROM sucursal")) {
+                pstmt.setInt(1, idGenerado);
+                pstmt.setInt(2, DatabaseManager.ID_SUCURSAL);
+                pstmt.setInt(3, producto.getStock());
+                pstmt.executeUpdate();
+            }
         }
         return idGenerado;
     }
@@ -62,12 +101,26 @@ public class ProductoDAO {
      * @return El objeto Producto si se encuentra, o null.
      */
     public Producto obtenerProductoPorId(int idProducto) {
-        String sql = "SELECT id_producto, nombre, id_categoria_producto, precio, stock, stock_minimo, estado, " +
-                "fecha_creacion, fecha_actualizacion, costo_interno, activo FROM producto WHERE id_producto = ?";
+        try (Connection conn = DatabaseManager.getConnection()) {
+            return obtenerProductoPorId(conn, idProducto);
+        } catch (SQLException e) {
+            System.err.println("Error al obtener producto por ID: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Obtiene un producto por su ID usando la conexión (y la transacción) del llamador.
+     * @param conn Conexión abierta por el llamador.
+     * @param idProducto El ID del producto a buscar.
+     * @return El objeto Producto si se encuentra, o null.
+     * @throws SQLException Si falla la consulta.
+     */
+    public Producto obtenerProductoPorId(Connection conn, int idProducto) throws SQLException {
+        String sql = SELECT_PRODUCTO + "WHERE p.id_producto = ?";
         Producto producto = null;
 
-        try (Connection conn = DatabaseManager.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
 
             pstmt.setInt(1, idProducto);
 
@@ -76,20 +129,96 @@ public class ProductoDAO {
                     producto = mapearResultSetAProducto(rs);
                 }
             }
-        } catch (SQLException e) {
-            System.err.println("Error al obtener producto por ID: " + e.getMessage());
         }
         return producto;
     }
 
+    /**
+     * Obtiene de una vez los productos con los IDs indicados, usando la conexión del llamador.
+     * Los IDs se consultan en bloques de {@value #IDS_POR_CONSULTA} para no pasar del límite de
+     * parámetros de SQL Server; un albarán de cientos de líneas se resuelve en una sola consulta.
+     * @param conn Conexión abierta por el llamador.
+     * @param ids IDs a buscar (los repetidos se consultan una vez).
+     * @return Mapa ID -> producto; los IDs inexistentes no aparecen.
+     * @throws SQLException Si falla la consulta.
+     */
+    public Map<Integer, Producto> obtenerProductosPorIds(Connection conn, Collection<Integer> ids) throws SQLException {
+        List<Integer> distintos = new ArrayList<>(new LinkedHashSet<>(ids));
+        Map<Integer, Producto> productos = new HashMap<>(distintos.size() * 2);
+
+        for (int inicio = 0; inicio < distintos.size(); inicio += IDS_POR_CONSULTA) {
+            List<Integer> bloque = distintos.subList(inicio, Math.min(inicio + IDS_POR_CONSULTA, distintos.size()));
+            String sql = SELECT_PRODUCTO + "WHERE p.id_producto IN (" + DatabaseManager.marcadores(bloque.size()) + ")";
+
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                for (int i = 0; i < bloque.size(); i++) {
+                    pstmt.setInt(i + 1, bloque.get(i));
+                }
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        Producto producto = mapearResultSetAProducto(rs);
+                        productos.put(producto.getIdProducto(), producto);
+                    }
+                }
+            }
+        }
+        return productos;
+    }
+
+    /**
+     * Suma (o resta) stock en la sucursal de esta terminal a varios productos en un solo lote de UPDATE,
+     * usando la conexión (y la transacción) del llamador. No lee los productos antes: el incremento se
+     * aplica sobre el stock que tenga la fila en ese momento, y solo se bloquean filas de esta sucursal.
+     * @param conn Conexión abierta por el llamador.
+     * @param incrementos Mapa ID de producto -> unidades a sumar (negativas para restar).
+     * @throws SQLException Si falla el lote o algún producto no existe; el llamador decide si revierte.
+     */
+    public void sumarStockEnLote(Connection conn, Map<Integer, Integer> incrementos) throws SQLException {
+        String sql = "UPDATE stock_sucursal SET stock = stock + ?, fecha_actualizacion = GETDATE() " +
+                "WHERE id_sucursal = ? AND id_producto = ?";
+
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            for (Map.Entry<Integer, Integer> incremento : incrementos.entrySet()) {
+                pstmt.setInt(1, incremento.getValue());
+                pstmt.setInt(2, DatabaseManager.ID_SUCURSAL);
+                pstmt.setInt(3, incremento.getKey());
+                pstmt.addBatch();
+            }
+            int[] filas = pstmt.executeBatch();
+            for (int f : filas) {
+                if (f == 0) {
+                    throw new SQLException("Uno de los productos del lote ya no existe.");
+                }
+            }
+        }
+    }
+
+    /**
+     * Descuenta stock de un producto en la sucursal de esta terminal solo si alcanza, en una sentencia.
+     * @param conn Conexión abierta por el llamador.
+     * @return true si se descontó; false si el stock de la sucursal no alcanza (o el producto no existe).
+     * @throws SQLException Si falla la actualización.
+     */
+    public boolean descontarStock(Connection conn, int idProducto, int cantidad) throws SQLException {
+        String sql = "UPDATE stock_sucursal SET stock = stock - ?, fecha_actualizacion = GETDATE() " +
+                "WHERE id_sucursal = ? AND id_producto = ? AND stock >= ?";
+
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, cantidad);
+            pstmt.setInt(2, DatabaseManager.ID_SUCURSAL);
+            pstmt.setInt(3, idProducto);
+            pstmt.setInt(4, cantidad);
+            return pstmt.executeUpdate() > 0;
+        }
+    }
+
     /**
      * Obtiene una lista de productos por nombre (útil para búsquedas).
      * @param nombre El nombre del producto o parte de él.
      * @return Una lista de objetos Producto.
      */
     public List<Producto> obtenerProductosPorNombre(String nombre) {
-        String sql = "SELECT id_producto, nombre, id_categoria_producto, precio, stock, stock_minimo, estado, " +
-                "fecha_creacion, fecha_actualizacion, costo_interno, activo FROM producto WHERE nombre LIKE ? ORDER BY nombre";
+        String sql = SELECT_PRODUCTO + "WHERE p.nombre LIKE ? ORDER BY p.nombre";
         List<Producto> productos = new ArrayList<>();
 
         try (Connection conn = DatabaseManager.getConnection();
@@ -115,29 +244,112 @@ public class ProductoDAO {
      * @return true si la actualización fue exitosa, false en caso contrario.
      */
     public boolean actualizarProducto(Producto producto) {
-        String sql = "UPDATE producto SET nombre = ?, id_categoria_producto = ?, precio = ?, stock = ?, " +
-                "stock_minimo = ?, estado = ?, fecha_actualizacion = GETDATE(), costo_interno = ?, activo = ? " +
+        try (Connection conn = DatabaseManager.getConnection()) {
+            Integer stockAnterior = actualizarProducto(conn, producto);
+            System.out.println("Filas afectadas al actualizar producto: " + (stockAnterior != null ? 1 : 0));
+            return stockAnterior != null;
+        } catch (SQLException e) {
+            System.err.println("Error al actualizar producto: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Actualiza un producto usando una conexión existente (para transacciones).
+     * El stock del producto es el de la sucursal de esta terminal: se lee con UPDLOCK, así ninguna venta
+     * de la sucursal lo cambia entre la lectura y la actualización mientras dure la transacción.
+     * producto.stock (total de la empresa) no se toca aquí.
+     * @return El stock que tenía el producto en la sucursal antes de la actualización, o null si el producto no existe.
+     * @throws SQLException Si ocurre un error de SQL.
+     */
+    public Integer actualizarProducto(Connection conn, Producto producto) throws SQLException {
+        String sql = "UPDATE producto SET nombre = ?, id_categoria_producto = ?, precio = ?, " +
+                "stock_minimo = ?, fecha_actualizacion = GETDATE(), costo_interno = ?, activo = ? " +
                 "WHERE id_producto = ?";
 
-        try (Connection conn = DatabaseManager.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        Integer stockAnterior = null;
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "SELECT stock FROM stock_sucursal WITH (UPDLOCK, ROWLOCK) WHERE id_sucursal = ? AND id_producto = ?")) {
+            pstmt.setInt(1, DatabaseManager.ID_SUCURSAL);
+            pstmt.setInt(2, producto.getIdProducto());
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    stockAnterior = rs.getInt(1);
+                }
+            }
+        }
+        if (stockAnterior == null) {
+            return null;
+        }
+
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
 
             pstmt.setString(1, producto.getNombre());
             pstmt.setInt(2, producto.getIdCategoriaProducto());
             pstmt.setBigDecimal(3, producto.getPrecio());
-            pstmt.setInt(4, producto.getStock());
-            pstmt.setInt(5, producto.getStockMinimo());
-            pstmt.setString(6, producto.getEstado());
-            pstmt.setBigDecimal(7, producto.getCostoInterno());
-            pstmt.setBoolean(8, producto.isActivo());
-            pstmt.setInt(9, producto.getIdProducto());
+            pstmt.setInt(4, producto.getStockMinimo());
+            pstmt.setBigDecimal(5, producto.getCostoInterno());
+            pstmt.setBoolean(6, producto.isActivo());
+            pstmt.setInt(7, producto.getIdProducto());
 
-            int filasAfectadas = pstmt.executeUpdate();
-            System.out.println("Filas afectadas al actualizar producto: " + filasAfectadas);
-            return filasAfectadas > 0;
+            if (pstmt.executeUpdate() == 0) {
+                return null;
+            }
+        }
+
+        if (producto.getStock() != stockAnterior) {
+            sumarStockEnLote(conn, Map.of(producto.getIdProducto(), producto.getStock() - stockAnterior));
+        }
+        return stockAnterior;
+    }
+
+    /**
+     * Aplica un ajuste masivo de precios con un único UPDATE, enviando los cambios como parámetro con
+     * valores de tabla (ver sql/ajuste_precios.sql). Un producto solo se actualiza si su precio sigue
+     * siendo el previsualizado, así no se pisa un cambio hecho por otro usuario entretanto.
+     * @param cambios Cambios a aplicar (un cambio por producto).
+     * @return Mapa ID -> precio nuevo de los productos actualizados, o null si hubo un error (no se aplica ninguno).
+     */
+    public Map<Integer, BigDecimal> actualizarPrecios(List<CambioPrecio> cambios) {
+        Map<Integer, BigDecimal> aplicados = new HashMap<>(cambios.size() * 2);
+        if (cambios.isEmpty()) {
+            return aplicados;
+        }
+        String sql = "DECLARE @aplicados TABLE (id_producto INT NOT NULL, precio DECIMAL(10, 2) NOT NULL); " +
+                "UPDATE p SET precio = c.precio_nuevo, fecha_actualizacion = GETDATE() " +
+                "OUTPUT inserted.id_producto, inserted.precio INTO @aplicados (id_producto, precio) " +
+                "FROM producto p JOIN ? c ON c.id_producto = p.id_producto " +
+                "WHERE p.precio = c.precio_anterior; " +
+                "SELECT id_producto, precio FROM @aplicados;";
+
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            SQLServerDataTable tablaCambios = new SQLServerDataTable();
+            tablaCambios.addColumnMetadata("id_producto", Types.INTEGER);
+            tablaCambios.addColumnMetadata("precio_anterior", Types.DECIMAL);
+            tablaCambios.addColumnMetadata("precio_nuevo", Types.DECIMAL);
+            for (CambioPrecio c : cambios) {
+                tablaCambios.addRow(c.getIdProducto(), c.getPrecioActual(), c.getPrecioNuevo());
+            }
+            pstmt.unwrap(SQLServerPreparedStatement.class).setStructured(1, "tipo_cambio_precio", tablaCambios);
+
+            // El lote devuelve primero el recuento del UPDATE y al final el SELECT
+            boolean hayResultado = pstmt.execute();
+            while (hayResultado || pstmt.getUpdateCount() != -1) {
+                if (hayResultado) {
+                    try (ResultSet rs = pstmt.getResultSet()) {
+                        while (rs.next()) {
+                            aplicados.put(rs.getInt("id_producto"), rs.getBigDecimal("precio"));
+                        }
+                    }
+                }
+                hayResultado = pstmt.getMoreResults();
+            }
+            return aplicados;
         } catch (SQLException e) {
-            System.err.println("Error al actualizar producto: " + e.getMessage());
-            return false;
+            System.err.println("Error al actualizar precios en bloque: " + e.getMessage());
+            return null;
         }
     }
 
@@ -185,8 +397,7 @@ public class ProductoDAO {
      * @return Una lista de objetos Producto.
      */
     public List<Producto> obtenerTodosLosProductos() {
-        String sql = "SELECT id_producto, nombre, id_categoria_producto, precio, stock, stock_minimo, estado, " +
-                "fecha_creacion, fecha_actualizacion, costo_interno, activo FROM producto";
+        String sql = SELECT_PRODUCTO;
         List<Producto> productos = new ArrayList<>();
 
         try (Connection conn = DatabaseManager.getConnection();
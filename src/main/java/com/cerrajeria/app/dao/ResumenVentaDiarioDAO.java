@@ -0,0 +1,330 @@
+package com.cerrajeria.app.dao;
+
+import com.cerrajeria.app.database.ConsultaCancelable;
+import com.cerrajeria.app.database.DatabaseManager;
+import com.cerrajeria.app.models.FilaRentabilidad;
+import com.cerrajeria.app.models.ItemMasVendido;
+
+import java.math.BigDecimal;
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Clase DAO para la tabla 'resumen_venta_diario' (ver sql/resumen_venta_diario.sql):
+ * ventas pre-agregadas por día × vendedor × producto/servicio.
+ */
+public class ResumenVentaDiarioDAO {
+
+    public static final String TIPO_PRODUCTO = "P";
+    public static final String TIPO_SERVICIO = "S";
+
+    /**
+     * Aportación de una o varias líneas de venta a una fila del resumen.
+     */
+    public record FilaResumen(LocalDate fecha, int idUsuario, String tipo, int idItem,
+                              int unidades, BigDecimal ingresos, BigDecimal costo, BigDecimal comision) { }
+
+    /**
+     * Totales de un día (todas las filas del día sumadas).
+     */
+    public record TotalDia(LocalDate fecha, int unidades, BigDecimal ingresos, BigDecimal costo, BigDecimal comision) { }
+
+    /**
+     * Criterio de agrupación del reporte de rentabilidad, con la expresión SQL que da nombre a cada grupo.
+     * Las uniones (alias p, s, cp, cs, u) están siempre presentes en la consulta.
+     */
+    public enum AgrupacionRentabilidad {
+        PRODUCTO("Producto / servicio", "r.tipo, r.id_item",
+                "CASE WHEN r.tipo = 'P' THEN p.nombre ELSE s.nombre + ' (servicio)' END"),
+        CATEGORIA("Categoría", "r.tipo, p.id_categoria_producto, s.id_categoria_servicio",
+                "CASE WHEN r.tipo = 'P' THEN cp.nombre ELSE cs.nombre + ' (servicios)' END"),
+        VENDEDOR("Vendedor", "r.id_usuario", "u.nombre"),
+        MES("Mes", "FORMAT(r.fecha, 'yyyy-MM')", "FORMAT(r.fecha, 'yyyy-MM')");
+
+        private final String descripcion;
+        // Se agrupa por IDs: dos productos (o vendedores) con el mismo nombre siguen siendo filas distintas
+        private final String expresionClave;
+        private final String expresionConcepto;
+
+        AgrupacionRentabilidad(String descripcion, String expresionClave, String expresionConcepto) {
+            this.descripcion = descripcion;
+            this.expresionClave = expresionClave;
+            this.expresionConcepto = expresionConcepto;
+        }
+
+        @Override
+        public String toString() {
+            return descripcion;
+        }
+    }
+
+    /**
+     * Suma las aportaciones al resumen dentro de la transacción del llamador (un MERGE por fila, en lote).
+     * @param conn Conexión con la transacción abierta.
+     * @param filas Aportaciones a sumar.
+     * @throws SQLException Si falla la actualización.
+     */
+    public void acumular(Connection conn, List<FilaResumen> filas) throws SQLException {
+        if (filas.isEmpty()) {
+            return;
+        }
+        String sql = "MERGE resumen_venta_diario WITH (HOLDLOCK) AS t " +
+                "USING (VALUES (?, ?, ?, ?, ?, ?, ?, ?)) AS s (fecha, id_usuario, tipo, id_item, unidades, ingresos, costo, comision) " +
+                "ON t.fecha = s.fecha AND t.id_usuario = s.id_usuario AND t.tipo = s.tipo AND t.id_item = s.id_item " +
+                "WHEN MATCHED THEN UPDATE SET t.unidades = t.unidades + s.unidades, t.ingresos = t.ingresos + s.ingresos, " +
+                "t.costo = t.costo + s.costo, t.comision = t.comision + s.comision " +
+                "WHEN NOT MATCHED THEN INSERT (fecha, id_usuario, tipo, id_item, unidades, ingresos, costo, comision) " +
+                "VALUES (s.fecha, s.id_usuario, s.tipo, s.id_item, s.unidades, s.ingresos, s.costo, s.comision);";
+
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            for (FilaResumen fila : filas) {
+                pstmt.setDate(1, Date.valueOf(fila.fecha()));
+                pstmt.setInt(2, fila.idUsuario());
+                pstmt.setString(3, fila.tipo());
+                pstmt.setInt(4, fila.idItem());
+                pstmt.setInt(5, fila.unidades());
+                pstmt.setBigDecimal(6, fila.ingresos());
+                pstmt.setBigDecimal(7, fila.costo());
+                pstmt.setBigDecimal(8, fila.comision());
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        }
+    }
+
+    /**
+     * Reconstruye el resumen de un rango de días a partir de todas las ventas confirmadas del rango y sus
+     * detalles, en una transacción. El costo es el fijado en cada línea al vender, así la reconstrucción
+     * no cambia el margen de días pasados si después cambia el costo_interno. Las comisiones se recalculan con las mismas reglas que ComisionService
+     * (porcentaje de la categoría sobre la ganancia unitaria para productos, 5% para servicios).
+     * Las ventas del rango se marcan como resumidas en la cola, así ComisionWorker no vuelve a sumarlas;
+     * las que se confirmen después de leer el rango las sumará el worker.
+     * @param desde Primer día (inclusive).
+     * @param hasta Último día (inclusive).
+     * @return Número de filas generadas, o -1 si hubo un error.
+     */
+    public int reconstruir(LocalDate desde, LocalDate hasta) {
+        // La cola se bloquea antes que el resumen, en el mismo orden que ComisionWorker; después el DELETE
+        // toma un bloqueo exclusivo de la tabla hasta el commit, de modo que el worker no puede sumar ventas
+        // a medio camino de la reconstrucción.
+        String sql = "SET XACT_ABORT ON; " +
+                "DECLARE @ventas TABLE (id_venta INT NOT NULL PRIMARY KEY); " +
+                "INSERT INTO @ventas (id_venta) SELECT id_venta FROM venta WHERE fecha_creacion >= ? AND fecha_creacion < ?; " +
+                "UPDATE cp SET resumida = 1, fecha_actualizacion = GETDATE() " +
+                "FROM comision_pendiente cp JOIN @ventas x ON x.id_venta = cp.id_venta WHERE cp.resumida = 0; " +
+                "DELETE FROM resumen_venta_diario WITH (TABLOCKX) WHERE fecha >= ? AND fecha <= ?; " +
+                "INSERT INTO resumen_venta_diario (fecha, id_usuario, tipo, id_item, unidades, ingresos, costo, comision) " +
+                "SELECT CAST(v.fecha_creacion AS DATE), v.id_usuario, 'P', d.id_producto, SUM(d.cantidad), " +
+                "SUM(d.cantidad * d.precio_unitario_final), SUM(d.cantidad * d.costo_unitario), " +
+                "SUM(CASE WHEN c.porcentaje_comision IS NOT NULL AND d.precio_unitario_final > d.costo_unitario " +
+                "    THEN ROUND((d.precio_unitario_final - d.costo_unitario) * c.porcentaje_comision / 100.0, 2) * d.cantidad " +
+                "    ELSE 0 END) " +
+                "FROM @ventas x " +
+                "JOIN venta v ON v.id_venta = x.id_venta " +
+                "JOIN detalle_venta_producto d ON d.id_venta = v.id_venta " +
+                "JOIN producto p ON p.id_producto = d.id_producto " +
+                "LEFT JOIN comision_categoria_producto c ON c.id_categoria_producto = p.id_categoria_producto " +
+                "GROUP BY CAST(v.fecha_creacion AS DATE), v.id_usuario, d.id_producto; " +
+                "INSERT INTO resumen_venta_diario (fecha, id_usuario, tipo, id_item, unidades, ingresos, costo, comision) " +
+                "SELECT CAST(v.fecha_creacion AS DATE), v.id_usuario, 'S', d.id_servicio, SUM(d.cantidad), " +
+                "SUM(d.cantidad * d.precio_unitario_final), 0, " +
+                "SUM(ROUND(d.cantidad * d.precio_unitario_final * 0.05, 2)) " +
+                "FROM @ventas x " +
+                "JOIN venta v ON v.id_venta = x.id_venta " +
+                "JOIN detalle_venta_servicio d ON d.id_venta = v.id_venta " +
+                "GROUP BY CAST(v.fecha_creacion AS DATE), v.id_usuario, d.id_servicio; " +
+                "SELECT COUNT(*) FROM resumen_venta_diario WHERE fecha >= ? AND fecha <= ?;";
+
+        try (Connection conn = DatabaseManager.getConnection()) {
+            if (conn == null) {
+                return -1;
+            }
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setTimestamp(1, Timestamp.valueOf(desde.atStartOfDay()));
+                pstmt.setTimestamp(2, Timestamp.valueOf(hasta.plusDays(1).atStartOfDay()));
+                pstmt.setDate(3, Date.valueOf(desde));
+                pstmt.setDate(4, Date.valueOf(hasta));
+                pstmt.setDate(5, Date.valueOf(desde));
+                pstmt.setDate(6, Date.valueOf(hasta));
+
+                int filas = 0;
+                // El lote devuelve primero los recuentos de cada sentencia y al final el SELECT
+                boolean hayResultado = pstmt.execute();
+                while (hayResultado || pstmt.getUpdateCount() != -1) {
+                    if (hayResultado) {
+                        try (ResultSet rs = pstmt.getResultSet()) {
+                            if (rs.next()) {
+                                filas = rs.getInt(1);
+                            }
+                        }
+                    }
+                    hayResultado = pstmt.getMoreResults();
+                }
+                conn.commit();
+                System.out.println("Resumen diario reconstruido del " + desde + " al " + hasta + ": " + filas + " filas.");
+                return filas;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            System.err.println("Error al reconstruir el resumen diario de ventas: " + e.getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * Obtiene los productos o servicios más vendidos de un rango de días desde el resumen.
+     * @param tipo {@link #TIPO_PRODUCTO} o {@link #TIPO_SERVICIO}.
+     * @param limite Número máximo de filas.
+     * @param desde Primer día (puede ser null).
+     * @param hasta Último día (puede ser null).
+     * @param idUsuario Vendedor (puede ser null para todos).
+     * @return Lista ordenada por unidades, de mayor a menor.
+     */
+    public List<ItemMasVendido> obtenerMasVendidos(String tipo, int limite, LocalDate desde, LocalDate hasta, Integer idUsuario) {
+        String nombre = TIPO_PRODUCTO.equals(tipo)
+                ? "(SELECT nombre FROM producto WHERE id_producto = r.id_item)"
+                : "(SELECT nombre FROM servicio WHERE id_servicio = r.id_item)";
+        StringBuilder sql = new StringBuilder(
+                "SELECT TOP (?) r.id_item, " + nombre + " AS nombre, SUM(r.unidades) AS unidades, " +
+                "SUM(r.ingresos) AS ingresos, SUM(r.costo) AS costo, SUM(r.comision) AS comision " +
+                "FROM resumen_venta_diario r WHERE r.tipo = ?");
+        List<Object> parametros = new ArrayList<>();
+        parametros.add(limite);
+        parametros.add(tipo);
+        agregarFiltros(sql, parametros, desde, hasta, idUsuario);
+        sql.append(" GROUP BY r.id_item ORDER BY unidades DESC, ingresos DESC");
+
+        List<ItemMasVendido> items = new ArrayList<>();
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql.toString())) {
+            ConsultaCancelable.registrar(pstmt);
+
+            for (int i = 0; i < parametros.size(); i++) {
+                pstmt.setObject(i + 1, parametros.get(i));
+            }
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    items.add(new ItemMasVendido(rs.getInt("id_item"), rs.getString("nombre"), rs.getInt("unidades"),
+                            rs.getBigDecimal("ingresos"), rs.getBigDecimal("costo"), rs.getBigDecimal("comision")));
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error al obtener más vendidos desde el resumen diario: " + e.getMessage());
+        }
+        return items;
+    }
+
+    /**
+     * Obtiene los totales por día de un rango desde el resumen.
+     * @param desde Primer día (puede ser null).
+     * @param hasta Último día (puede ser null).
+     * @param idUsuario Vendedor (puede ser null para todos).
+     * @return Lista de totales diarios ordenada por fecha.
+     */
+    public List<TotalDia> obtenerTotalesPorDia(LocalDate desde, LocalDate hasta, Integer idUsuario) {
+        StringBuilder sql = new StringBuilder(
+                "SELECT r.fecha, SUM(r.unidades) AS unidades, SUM(r.ingresos) AS ingresos, " +
+                "SUM(r.costo) AS costo, SUM(r.comision) AS comision " +
+                "FROM resumen_venta_diario r WHERE 1 = 1");
+        List<Object> parametros = new ArrayList<>();
+        agregarFiltros(sql, parametros, desde, hasta, idUsuario);
+        sql.append(" GROUP BY r.fecha ORDER BY r.fecha");
+
+        List<TotalDia> totales = new ArrayList<>();
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql.toString())) {
+            ConsultaCancelable.registrar(pstmt);
+
+            for (int i = 0; i < parametros.size(); i++) {
+                pstmt.setObject(i + 1, parametros.get(i));
+            }
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    totales.add(new TotalDia(rs.getDate("fecha").toLocalDate(), rs.getInt("unidades"),
+                            rs.getBigDecimal("ingresos"), rs.getBigDecimal("costo"), rs.getBigDecimal("comision")));
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error al obtener totales diarios del resumen: " + e.getMessage());
+        }
+        return totales;
+    }
+
+    /**
+     * Calcula el reporte de rentabilidad (ingresos, costo y comisión por grupo) en una sola consulta agregada
+     * sobre el resumen. El margen y su porcentaje se derivan de estos totales en {@link FilaRentabilidad}.
+     * @param agrupacion Criterio de agrupación.
+     * @param desde Primer día (puede ser null).
+     * @param hasta Último día (puede ser null).
+     * @param idUsuario Vendedor (puede ser null para todos).
+     * @return Filas ordenadas por margen bruto, de mayor a menor (por mes en orden cronológico).
+     */
+    public List<FilaRentabilidad> obtenerRentabilidad(AgrupacionRentabilidad agrupacion, LocalDate desde,
+                                                      LocalDate hasta, Integer idUsuario) {
+        StringBuilder sql = new StringBuilder(
+                "SELECT " + agrupacion.expresionConcepto + " AS concepto, SUM(r.unidades) AS unidades, " +
+                "SUM(r.ingresos) AS ingresos, SUM(r.costo) AS costo, SUM(r.comision) AS comision " +
+                "FROM resumen_venta_diario r " +
+                "LEFT JOIN producto p ON r.tipo = 'P' AND p.id_producto = r.id_item " +
+                "LEFT JOIN categoria_producto cp ON cp.id_categoria_producto = p.id_categoria_producto " +
+                "LEFT JOIN servicio s ON r.tipo = 'S' AND s.id_servicio = r.id_item " +
+                "LEFT JOIN categoria_servicio cs ON cs.id_categoria_servicio = s.id_categoria_servicio " +
+                "LEFT JOIN usuario u ON u.id_usuario = r.id_usuario " +
+                "WHERE 1 = 1");
+        List<Object> parametros = new ArrayList<>();
+        agregarFiltros(sql, parametros, desde, hasta, idUsuario);
+        sql.append(" GROUP BY ").append(agrupacion.expresionClave);
+        if (!agrupacion.expresionClave.equals(agrupacion.expresionConcepto)) {
+            sql.append(", ").append(agrupacion.expresionConcepto);
+        }
+        sql.append(agrupacion == AgrupacionRentabilidad.MES
+                ? " ORDER BY concepto"
+                : " ORDER BY SUM(r.ingresos) - SUM(r.costo) DESC");
+
+        List<FilaRentabilidad> filas = new ArrayList<>();
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql.toString())) {
+            ConsultaCancelable.registrar(pstmt);
+
+            for (int i = 0; i < parametros.size(); i++) {
+                pstmt.setObject(i + 1, parametros.get(i));
+            }
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    String concepto = rs.getString("concepto");
+                    filas.add(new FilaRentabilidad(concepto != null ? concepto : "Desconocido", rs.getInt("unidades"),
+                            rs.getBigDecimal("ingresos"), rs.getBigDecimal("costo"), rs.getBigDecimal("comision")));
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error al obtener la rentabilidad desde el resumen diario: " + e.getMessage());
+        }
+        return filas;
+    }
+
+    private static void agregarFiltros(StringBuilder sql, List<Object> parametros,
+                                       LocalDate desde, LocalDate hasta, Integer idUsuario) {
+        if (desde != null) {
+            sql.append(" AND r.fecha >= ?");
+            parametros.add(Date.valueOf(desde));
+        }
+        if (hasta != null) {
+            sql.append(" AND r.fecha <= ?");
+            parametros.add(Date.valueOf(hasta));
+        }
+        if (idUsuario != null) {
+            sql.append(" AND r.id_usuario = ?");
+            parametros.add(idUsuario);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.cerrajeria.app.dao;
+
+import com.cerrajeria.app.database.DatabaseManager;
+
+import java.math.BigDecimal;
+import java.sql.*;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Clase DAO para la tabla 'stock_snapshot' (ver sql/stock_snapshot.sql): fotos diarias del stock
+ * de cada producto, y consultas de inventario "a fecha" que parten de la foto más cercana.
+ */
+public class StockSnapshotDAO {
+
+    /**
+     * Stock de un producto en un instante dado, con el costo unitario para valorarlo.
+     */
+    public record StockEnFecha(int idProducto, String nombre, int stock, BigDecimal costoUnitario) {
+        public BigDecimal valor() {
+            return costoUnitario.multiply(BigDecimal.valueOf(stock));
+        }
+    }
+
+    // Efecto de un movimiento sobre el stock
+    private static final String DELTA_MOVIMIENTO = "CASE WHEN m.tipo = 'Entrada' THEN m.cantidad ELSE -m.cantidad END";
+
+    // Stock actual de la empresa: suma de las sucursales (búsqueda por ix_stock_sucursal_producto)
+    private static final String STOCK_TOTAL =
+            "OUTER APPLY (SELECT SUM(ss.stock) AS stock FROM stock_sucursal ss WHERE ss.id_producto = p.id_producto) total ";
+
+    /**
+     * @return La fecha de la última foto tomada, o null si no hay ninguna (o hubo un error).
+     */
+    public LocalDate obtenerUltimaFecha() {
+        String sql = "SELECT MAX(fecha) FROM stock_snapshot";
+        try (Connection conn = DatabaseManager.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+
+            if (rs.next() && rs.getDate(1) != null) {
+                return rs.getDate(1).toLocalDate();
+            }
+        } catch (SQLException e) {
+            System.err.println("Error al obtener la última foto de stock: " + e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Toma la foto del stock al final de un día ya terminado: el stock actual menos los movimientos
+     * posteriores a ese día. Si la foto de ese día ya existe no hace nada. La foto es del total de la
+     * empresa (suma de las sucursales, ver sql/sucursal.sql).
+     * @param fecha Día a fotografiar (anterior a hoy).
+     * @return Número de productos fotografiados, o -1 si hubo un error.
+     */
+    public int tomarSnapshot(LocalDate fecha) {
+        String sql = "INSERT INTO stock_snapshot (fecha, id_producto, stock, costo_unitario) " +
+                "SELECT ?, p.id_producto, ISNULL(total.stock, 0) - ISNULL(mov.delta, 0), ISNULL(p.costo_interno, 0) " +
+                "FROM producto p " +
+                STOCK_TOTAL +
+                "OUTER APPLY (SELECT SUM(" + DELTA_MOVIMIENTO + ") AS delta FROM movimiento_stock m " +
+                "WHERE m.id_producto = p.id_producto AND m.fecha_creacion >= ?) mov " +
+                "WHERE NOT EXISTS (SELECT 1 FROM stock_snapshot s WHERE s.fecha = ?)";
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setDate(1, Date.valueOf(fecha));
+            pstmt.setTimestamp(2, Timestamp.valueOf(fecha.plusDays(1).atStartOfDay()));
+            pstmt.setDate(3, Date.valueOf(fecha));
+            return pstmt.executeUpdate();
+        } catch (SQLException e) {
+            System.err.println("Error al tomar la foto de stock del " + fecha + ": " + e.getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * Obtiene el stock de los productos en un instante pasado. Parte de la última foto anterior a ese día
+     * y le aplica solo los movimientos entre el final de la foto y el instante, por lo que el recorrido
+     * de movimientos queda acotado a como mucho unos días. Un producto sin foto previa (creado después)
+     * se calcula hacia atrás desde su stock actual. Lee movimiento_stock_historico para incluir los
+     * movimientos que la compactación ya pasó al archivo.
+     * @param instante Momento a consultar.
+     * @param idProducto Producto concreto (null para todos).
+     * @return Stock y costo de cada producto en ese instante.
+     */
+    public List<StockEnFecha> obtenerInventarioEnFecha(LocalDateTime instante, Integer idProducto) {
+        String sql = "DECLARE @instante DATETIME2 = ?; " +
+                "DECLARE @base DATE = (SELECT MAX(fecha) FROM stock_snapshot WHERE fecha < CAST(@instante AS DATE)); " +
+                "DECLARE @desde DATETIME2 = DATEADD(DAY, 1, CAST(@base AS DATETIME2)); " +
+                "SELECT p.id_producto, p.nombre, " +
+                "CASE WHEN s.id_producto IS NOT NULL THEN s.stock + ISNULL(adelante.delta, 0) " +
+                "ELSE ISNULL(total.stock, 0) - ISNULL(atras.delta, 0) END AS stock, " +
+                "COALESCE(s.costo_unitario, p.costo_interno, 0) AS costo_unitario " +
+                "FROM producto p " +
+                STOCK_TOTAL +
+                "LEFT JOIN stock_snapshot s ON s.fecha = @base AND s.id_producto = p.id_producto " +
+                "OUTER APPLY (SELECT SUM(" + DELTA_MOVIMIENTO + ") AS delta FROM movimiento_stock_historico m " +
+                "WHERE s.id_producto IS NOT NULL AND m.id_producto = p.id_producto " +
+                "AND m.fecha_creacion >= @desde AND m.fecha_creacion < @instante) adelante " +
+                "OUTER APPLY (SELECT SUM(" + DELTA_MOVIMIENTO + ") AS delta FROM movimiento_stock_historico m " +
+                "WHERE s.id_producto IS NULL AND m.id_producto = p.id_producto " +
+                "AND m.fecha_creacion >= @instante) atras " +
+                "WHERE (p.fecha_creacion IS NULL OR p.fecha_creacion < @instante)" +
+                (idProducto != null ? " AND p.id_producto = ?" : "") +
+                " ORDER BY p.nombre";
+        List<StockEnFecha> inventario = new ArrayList<>();
+
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setTimestamp(1, Timestamp.valueOf(instante));
+            if (idProducto != null) {
+                pstmt.setInt(2, idProducto);
+            }
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    inventario.add(new StockEnFecha(rs.getInt("id_producto"), rs.getString("nombre"),
+                            rs.getInt("stock"), rs.getBigDecimal("costo_unitario")));
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error al obtener el inventario a fecha: " + e.getMessage());
+        }
+        return inventario;
+    }
+}
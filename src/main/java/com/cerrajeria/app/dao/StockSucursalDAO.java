@@ -0,0 +1,114 @@
+package com.cerrajeria.app.dao;
+
+import com.cerrajeria.app.database.DatabaseManager;
+import com.cerrajeria.app.models.EstadoStock;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Clase DAO para las tablas 'sucursal' y 'stock_sucursal' (ver sql/sucursal.sql).
+ * El stock que usa la aplicación es siempre el de la sucursal de la terminal (ver ProductoDAO);
+ * aquí están las consultas entre sucursales, que buscan por producto en ix_stock_sucursal_producto
+ * en lugar de recorrer la tabla.
+ */
+public class StockSucursalDAO {
+
+    // SQL Server admite hasta 2100 parámetros por sentencia
+    private static final int IDS_POR_CONSULTA = 1000;
+
+    /**
+     * Stock de un producto en una sucursal.
+     */
+    public record StockEnSucursal(int idSucursal, String sucursal, int stock) { }
+
+    /**
+     * Obtiene el stock de un producto en cada sucursal activa.
+     * @param idProducto ID del producto.
+     * @return Una fila por sucursal, ordenadas por nombre (vacía si hubo un error).
+     */
+    public List<StockEnSucursal> obtenerStockPorSucursal(int idProducto) {
+        String sql = "SELECT s.id_sucursal, s.nombre, ISNULL(ss.stock, 0) AS stock " +
+                "FROM sucursal s LEFT JOIN stock_sucursal ss ON ss.id_sucursal = s.id_sucursal AND ss.id_producto = ? " +
+                "WHERE s.activo = 1 ORDER BY s.nombre";
+        List<StockEnSucursal> stocks = new ArrayList<>();
+
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setInt(1, idProducto);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    stocks.add(new StockEnSucursal(rs.getInt("id_sucursal"), rs.getString("nombre"), rs.getInt("stock")));
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error al obtener el stock por sucursal: " + e.getMessage());
+        }
+        return stocks;
+    }
+
+    /**
+     * Obtiene de una vez el stock que hay en las demás sucursales activas de varios productos
+     * (por ejemplo, los de una lista o un carrito).
+     * @param ids IDs de los productos (los repetidos se consultan una vez).
+     * @return Mapa ID -> stock sumado de las otras sucursales; los productos sin stock fuera no aparecen.
+     */
+    public Map<Integer, Integer> obtenerStockEnOtrasSucursales(Collection<Integer> ids) {
+        List<Integer> distintos = new ArrayList<>(new LinkedHashSet<>(ids));
+        Map<Integer, Integer> stocks = new HashMap<>();
+
+        try (Connection conn = DatabaseManager.getConnection()) {
+            for (int inicio = 0; inicio < distintos.size(); inicio += IDS_POR_CONSULTA) {
+                List<Integer> bloque = distintos.subList(inicio, Math.min(inicio + IDS_POR_CONSULTA, distintos.size()));
+                String sql = "SELECT ss.id_producto, SUM(ss.stock) " +
+                        "FROM stock_sucursal ss JOIN sucursal s ON s.id_sucursal = ss.id_sucursal " +
+                        "WHERE ss.id_producto IN (" + DatabaseManager.marcadores(bloque.size()) + ") " +
+                        "AND ss.id_sucursal <> ? AND s.activo = 1 AND ss.stock > 0 " +
+                        "GROUP BY ss.id_producto";
+
+                try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                    for (int i = 0; i < bloque.size(); i++) {
+                        pstmt.setInt(i + 1, bloque.get(i));
+                    }
+                    pstmt.setInt(bloque.size() + 1, DatabaseManager.ID_SUCURSAL);
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        while (rs.next()) {
+                            stocks.put(rs.getInt(1), rs.getInt(2));
+                        }
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error al obtener el stock de otras sucursales: " + e.getMessage());
+        }
+        return stocks;
+    }
+
+    /**
+     * Recalcula producto.stock y producto.estado como total de la empresa (suma de las sucursales)
+     * en los productos donde cambió, en una sola sentencia. Las ventas no los actualizan para no
+     * bloquear a una sucursal con las ventas de otra.
+     * @return Número de productos actualizados, o -1 si hubo un error.
+     */
+    public int actualizarTotales() {
+        String sql = "UPDATE p SET stock = t.stock, " +
+                "estado = " + EstadoStock.expresionSql("t.stock", "p.stock_minimo") + " " +
+                "FROM producto p JOIN (SELECT id_producto, SUM(stock) AS stock FROM stock_sucursal GROUP BY id_producto) t " +
+                "ON t.id_producto = p.id_producto " +
+                "WHERE p.stock <> t.stock";
+
+        try (Connection conn = DatabaseManager.getConnection();
+             Statement stmt = conn.createStatement()) {
+            return stmt.executeUpdate(sql);
+        } catch (SQLException e) {
+            System.err.println("Error al actualizar el stock total de los productos: " + e.getMessage());
+            return -1;
+        }
+    }
+}
@@ -1,34 +1,91 @@
 package com.cerrajeria.app.dao;
 
+import com.cerrajeria.app.database.ConsultaCancelable;
 import com.cerrajeria.app.database.DatabaseManager;
+import com.cerrajeria.app.models.DetalleVentaProducto;
+import com.cerrajeria.app.models.DetalleVentaServicio;
+import com.cerrajeria.app.models.LineaVenta;
 import com.cerrajeria.app.models.Venta;
+import com.cerrajeria.app.models.VentaResumen;
+import com.microsoft.sqlserver.jdbc.SQLServerCallableStatement;
+import com.microsoft.sqlserver.jdbc.SQLServerDataTable;
 
 import java.math.BigDecimal;
 import java.sql.*;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Clase DAO (Data Access Object) para interactuar con la tabla 'venta' en la base de datos.
  */
 public class VentaDAO {
 
+    /**
+     * Venta cuyo total guardado no coincide con la suma de sus detalles.
+     */
+    public record TotalInconsistente(int idVenta, BigDecimal totalRegistrado, BigDecimal totalCalculado) { }
+
+    /**
+     * Resultado de una consulta filtrada de ventas: las filas y sus totales, calculados en la base de datos.
+     */
+    public record VentasFiltradas(List<Venta> ventas, int cantidad, BigDecimal total) { }
+
+    // Total de cada venta recalculado desde sus detalles, agregando cada tabla una sola vez
+    private static final String SQL_TOTALES_CALCULADOS =
+            "SELECT v.id_venta, v.total_venta, " +
+            "ISNULL(p.total, 0) + ISNULL(s.total, 0) AS total_calculado " +
+            "FROM venta v " +
+            "LEFT JOIN (SELECT id_venta, SUM(cantidad * precio_unitario_final) AS total " +
+            "           FROM detalle_venta_producto GROUP BY id_venta) p ON p.id_venta = v.id_venta " +
+            "LEFT JOIN (SELECT id_venta, SUM(cantidad * precio_unitario_final) AS total " +
+            "           FROM detalle_venta_servicio GROUP BY id_venta) s ON s.id_venta = v.id_venta";
+
     /**
      * Inserta una nueva venta en la base de datos.
      * @param venta El objeto Venta a insertar.
      * @return El ID de la venta recién insertada, o -1 si hubo un error.
      */
     public int insertarVenta(Venta venta) {
-        // total_venta tiene un DEFAULT en la DB, pero lo podemos pasar si ya lo tenemos calculado.
-        // Para la inserción inicial, solo necesitamos id_usuario.
-        String sql = "INSERT INTO venta (id_usuario) VALUES (?)";
+        try (Connection conn = DatabaseManager.getConnection()) {
+            return insertarVenta(conn, venta);
+        } catch (SQLException e) {
+            System.err.println("Error al insertar venta: " + e.getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * Inserta la venta usando la conexión (y la transacción) del llamador.
+     * @param conn Conexión abierta por el llamador.
+     * @param venta El objeto a insertar.
+     * @return El ID generado, o -1 si no se insertó ninguna fila.
+     * @throws SQLException Si falla la inserción; el llamador decide si revierte la transacción.
+     */
+    public int insertarVenta(Connection conn, Venta venta) throws SQLException {
+        // El total_venta se escribe ya calculado por la aplicación (una sola vez, con la cabecera).
+        // La fecha solo viene informada en ventas diferidas (diario offline); si no, la pone el servidor.
+        // La venta queda registrada en la sucursal de esta terminal.
+        String sql = "INSERT INTO venta (id_usuario, clave_idempotencia, fecha_creacion, total_venta, id_sucursal) VALUES (?, ?, COALESCE(?, GETDATE()), ?, ?)";
         int idGenerado = -1;
 
-        try (Connection conn = DatabaseManager.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+        try (PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
 
             pstmt.setInt(1, venta.getIdUsuario());
+            if (venta.getClaveIdempotencia() != null) {
+                pstmt.setString(2, venta.getClaveIdempotencia());
+            } else {
+                pstmt.setNull(2, Types.VARCHAR);
+            }
+            if (venta.getFechaCreacion() != null) {
+                pstmt.setTimestamp(3, Timestamp.valueOf(venta.getFechaCreacion()));
+            } else {
+                pstmt.setNull(3, Types.TIMESTAMP);
+            }
+            pstmt.setBigDecimal(4, venta.getTotalVenta() != null ? venta.getTotalVenta() : BigDecimal.ZERO);
+            pstmt.setInt(5, DatabaseManager.ID_SUCURSAL);
 
             int filasAfectadas = pstmt.executeUpdate();
 
@@ -41,8 +98,6 @@ public class VentaDAO {
                     }
                 }
             }
-        } catch (SQLException e) {
-            System.err.println("Error al insertar venta: " + e.getMessage());
         }
         return idGenerado;
     }
@@ -72,6 +127,32 @@ public class VentaDAO {
         return venta;
     }
 
+    /**
+     * Obtiene la venta registrada con una clave de idempotencia determinada.
+     * @param claveIdempotencia Clave generada por el cliente al crear el carrito.
+     * @return El objeto Venta si ya fue registrada, o null.
+     */
+    public Venta obtenerVentaPorClaveIdempotencia(String claveIdempotencia) {
+        String sql = "SELECT id_venta, id_usuario, fecha_creacion, fecha_actualizacion, total_venta FROM venta WHERE clave_idempotencia = ?";
+        Venta venta = null;
+
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setString(1, claveIdempotencia);
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    venta = mapearResultSetAVenta(rs);
+                    venta.setClaveIdempotencia(claveIdempotencia);
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error al obtener venta por clave de idempotencia: " + e.getMessage());
+        }
+        return venta;
+    }
+
     /**
      * Obtiene una lista de ventas realizadas por un usuario específico.
      * @param idUsuario El ID del usuario (vendedor).
@@ -97,6 +178,227 @@ public class VentaDAO {
         return ventas;
     }
 
+    /**
+     * Obtiene las ventas de un usuario con el resumen de sus líneas (cantidad, unidades e importes),
+     * calculado en una sola consulta con un OUTER APPLY por tipo de línea sobre los índices por id_venta.
+     * @param idUsuario ID del usuario (vendedor).
+     * @return Lista de ventas resumidas, más recientes primero.
+     */
+    public List<VentaResumen> obtenerVentasResumidasPorUsuario(int idUsuario) {
+        String sql = "SELECT v.id_venta, v.id_usuario, v.fecha_creacion, v.fecha_actualizacion, v.total_venta, " +
+                "ISNULL(p.lineas, 0) AS lineas_producto, ISNULL(s.lineas, 0) AS lineas_servicio, " +
+                "ISNULL(p.unidades, 0) + ISNULL(s.unidades, 0) AS unidades, " +
+                "ISNULL(p.importe, 0) AS importe_productos, ISNULL(s.importe, 0) AS importe_servicios " +
+                "FROM venta v " +
+                "OUTER APPLY (SELECT COUNT(*) AS lineas, SUM(d.cantidad) AS unidades, " +
+                "SUM(d.cantidad * d.precio_unitario_final) AS importe " +
+                "FROM detalle_venta_producto d WHERE d.id_venta = v.id_venta) p " +
+                "OUTER APPLY (SELECT COUNT(*) AS lineas, SUM(d.cantidad) AS unidades, " +
+                "SUM(d.cantidad * d.precio_unitario_final) AS importe " +
+                "FROM detalle_venta_servicio d WHERE d.id_venta = v.id_venta) s " +
+                "WHERE v.id_usuario = ? ORDER BY v.fecha_creacion DESC";
+        List<VentaResumen> ventas = new ArrayList<>();
+
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setInt(1, idUsuario);
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    Venta venta = mapearResultSetAVenta(rs);
+                    ventas.add(new VentaResumen(venta.getIdVenta(), venta.getIdUsuario(), venta.getFechaCreacion(),
+                            venta.getFechaActualizacion(), venta.getTotalVenta(),
+                            rs.getInt("lineas_producto"), rs.getInt("lineas_servicio"), rs.getInt("unidades"),
+                            rs.getBigDecimal("importe_productos"), rs.getBigDecimal("importe_servicios")));
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error al obtener ventas resumidas por usuario: " + e.getMessage());
+        }
+        return ventas;
+    }
+
+    /**
+     * Obtiene una página de las líneas (productos primero, luego servicios) de una venta, con el nombre del ítem.
+     * @param idVenta ID de la venta.
+     * @param desplazamiento Número de líneas a saltar.
+     * @param tamanoPagina Número máximo de líneas a devolver.
+     * @return Lista de líneas de la página (vacía si no hay más).
+     */
+    public List<LineaVenta> obtenerLineasDeVenta(int idVenta, int desplazamiento, int tamanoPagina) {
+        String sql = "SELECT tipo, id_item, nombre, cantidad, precio_unitario_final, descripcion FROM (" +
+                "SELECT 0 AS orden, 'Producto' AS tipo, d.id_detalle_venta_producto AS id_detalle, d.id_producto AS id_item, " +
+                "i.nombre, d.cantidad, d.precio_unitario_final, d.descripcion " +
+                "FROM detalle_venta_producto d JOIN producto i ON i.id_producto = d.id_producto WHERE d.id_venta = ? " +
+                "UNION ALL " +
+                "SELECT 1, 'Servicio', d.id_detalle_venta_servicio, d.id_servicio, " +
+                "i.nombre, d.cantidad, d.precio_unitario_final, d.descripcion " +
+                "FROM detalle_venta_servicio d JOIN servicio i ON i.id_servicio = d.id_servicio WHERE d.id_venta = ?" +
+                ") lineas ORDER BY orden, id_detalle OFFSET ? ROWS FETCH NEXT ? ROWS ONLY";
+        List<LineaVenta> lineas = new ArrayList<>();
+
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setInt(1, idVenta);
+            pstmt.setInt(2, idVenta);
+            pstmt.setInt(3, desplazamiento);
+            pstmt.setInt(4, tamanoPagina);
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    lineas.add(new LineaVenta(rs.getString("tipo"), rs.getInt("id_item"), rs.getString("nombre"),
+                            rs.getInt("cantidad"), rs.getBigDecimal("precio_unitario_final"), rs.getString("descripcion")));
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error al obtener líneas de la venta: " + e.getMessage());
+        }
+        return lineas;
+    }
+
+    /**
+     * Registra la venta completa (cabecera, líneas y movimientos de stock) en un solo viaje,
+     * llamando al procedimiento sp_registrar_venta_rapida (ver sql/venta_rapida.sql) con las
+     * líneas como parámetros con valores de tabla.
+     * @param conn Conexión abierta por el llamador.
+     * @param venta Cabecera de la venta (usuario y clave de idempotencia). Se le asignan el ID y el total.
+     * @param productos Líneas de productos.
+     * @param servicios Líneas de servicios.
+     * @return true si la venta se registró ahora, false si ya existía una venta con la misma clave.
+     * @throws SQLException Si el procedimiento falla (el error 50001 indica stock insuficiente).
+     */
+    public boolean registrarVentaRapida(Connection conn, Venta venta, List<DetalleVentaProducto> productos,
+                                    List<DetalleVentaServicio> servicios) throws SQLException {
+        SQLServerDataTable tablaProductos = new SQLServerDataTable();
+        tablaProductos.addColumnMetadata("id_producto", Types.INTEGER);
+        tablaProductos.addColumnMetadata("cantidad", Types.INTEGER);
+        tablaProductos.addColumnMetadata("precio_unitario_final", Types.DECIMAL);
+        tablaProductos.addColumnMetadata("descripcion", Types.NVARCHAR);
+        for (DetalleVentaProducto d : productos) {
+            tablaProductos.addRow(d.getIdProducto(), d.getCantidad(), d.getPrecioUnitarioFinal(), d.getDescripcion());
+        }
+
+        SQLServerDataTable tablaServicios = new SQLServerDataTable();
+        tablaServicios.addColumnMetadata("id_servicio", Types.INTEGER);
+        tablaServicios.addColumnMetadata("cantidad", Types.INTEGER);
+        tablaServicios.addColumnMetadata("precio_unitario_final", Types.DECIMAL);
+        tablaServicios.addColumnMetadata("descripcion", Types.NVARCHAR);
+        for (DetalleVentaServicio d : servicios) {
+            tablaServicios.addRow(d.getIdServicio(), d.getCantidad(), d.getPrecioUnitarioFinal(), d.getDescripcion());
+        }
+
+        try (CallableStatement cstmt = conn.prepareCall("{call sp_registrar_venta_rapida(?, ?, ?, ?, ?)}")) {
+            SQLServerCallableStatement sqlServerStmt = cstmt.unwrap(SQLServerCallableStatement.class);
+            sqlServerStmt.setInt(1, venta.getIdUsuario());
+            if (venta.getClaveIdempotencia() != null) {
+                sqlServerStmt.setString(2, venta.getClaveIdempotencia());
+            } else {
+                sqlServerStmt.setNull(2, Types.VARCHAR);
+            }
+            sqlServerStmt.setStructured(3, "tipo_linea_venta_producto", tablaProductos);
+            sqlServerStmt.setStructured(4, "tipo_linea_venta_servicio", tablaServicios);
+            sqlServerStmt.setInt(5, DatabaseManager.ID_SUCURSAL); // Stock descontado de esta sucursal (ver sql/sucursal.sql)
+
+            try (ResultSet rs = sqlServerStmt.executeQuery()) {
+                if (rs.next()) {
+                    venta.setIdVenta(rs.getInt("id_venta"));
+                    venta.setTotalVenta(rs.getBigDecimal("total_venta"));
+                    return !rs.getBoolean("ya_existia");
+                }
+            }
+        }
+        throw new SQLException("sp_registrar_venta_rapida no devolvió la venta registrada.");
+    }
+
+    /**
+     * Añade a una consulta los filtros opcionales de fecha y vendedor sobre la tabla venta (alias 'v').
+     * Los predicados comparan las columnas directamente para que puedan usar índices.
+     * @param sql Consulta en construcción, que ya debe contener una cláusula WHERE.
+     * @param parametros Lista donde se añaden los valores de los parámetros, en orden.
+     */
+    static void agregarFiltrosVenta(StringBuilder sql, List<Object> parametros,
+                                    LocalDateTime desde, LocalDateTime hasta, Integer idUsuario) {
+        if (desde != null) {
+            sql.append(" AND v.fecha_creacion >= ?");
+            parametros.add(Timestamp.valueOf(desde));
+        }
+        if (hasta != null) {
+            sql.append(" AND v.fecha_creacion <= ?");
+            parametros.add(Timestamp.valueOf(hasta));
+        }
+        if (idUsuario != null) {
+            sql.append(" AND v.id_usuario = ?");
+            parametros.add(idUsuario);
+        }
+    }
+
+    /**
+     * Recalcula el total de una venta a partir de sus detalles dentro de la transacción del llamador.
+     * Lo usan los DAO de detalle al modificar las líneas de una venta ya registrada, ya que los triggers
+     * que mantenían el total están desactivados (ver sql/total_venta_aplicacion.sql).
+     * @param conn Conexión con la transacción abierta.
+     * @param idVenta ID de la venta.
+     * @throws SQLException Si falla la actualización.
+     */
+    static void recalcularTotal(Connection conn, int idVenta) throws SQLException {
+        String sql = "UPDATE venta SET total_venta = " +
+                "ISNULL((SELECT SUM(cantidad * precio_unitario_final) FROM detalle_venta_producto WHERE id_venta = ?), 0) + " +
+                "ISNULL((SELECT SUM(cantidad * precio_unitario_final) FROM detalle_venta_servicio WHERE id_venta = ?), 0), " +
+                "fecha_actualizacion = GETDATE() WHERE id_venta = ?";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, idVenta);
+            pstmt.setInt(2, idVenta);
+            pstmt.setInt(3, idVenta);
+            pstmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Obtiene, en una sola consulta, las ventas cuyo total no coincide con la suma de sus detalles.
+     * @return Lista de inconsistencias (vacía si todos los totales son correctos).
+     */
+    public List<TotalInconsistente> obtenerTotalesInconsistentes() {
+        String sql = "SELECT id_venta, total_venta, total_calculado FROM (" + SQL_TOTALES_CALCULADOS + ") t " +
+                "WHERE total_venta <> total_calculado ORDER BY id_venta";
+        List<TotalInconsistente> inconsistencias = new ArrayList<>();
+
+        try (Connection conn = DatabaseManager.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+
+            while (rs.next()) {
+                inconsistencias.add(new TotalInconsistente(rs.getInt("id_venta"),
+                        rs.getBigDecimal("total_venta"), rs.getBigDecimal("total_calculado")));
+            }
+        } catch (SQLException e) {
+            System.err.println("Error al verificar totales de venta: " + e.getMessage());
+        }
+        return inconsistencias;
+    }
+
+    /**
+     * Corrige en una sola sentencia el total de todas las ventas inconsistentes.
+     * @return Número de ventas corregidas, o -1 si hubo un error.
+     */
+    public int corregirTotalesInconsistentes() {
+        String sql = "UPDATE v SET total_venta = t.total_calculado, fecha_actualizacion = GETDATE() " +
+                "FROM venta v JOIN (" + SQL_TOTALES_CALCULADOS + ") t ON t.id_venta = v.id_venta " +
+                "WHERE t.total_venta <> t.total_calculado";
+
+        try (Connection conn = DatabaseManager.getConnection();
+             Statement stmt = conn.createStatement()) {
+
+            int corregidas = stmt.executeUpdate(sql);
+            System.out.println("Totales de venta corregidos: " + corregidas);
+            return corregidas;
+        } catch (SQLException e) {
+            System.err.println("Error al corregir totales de venta: " + e.getMessage());
+            return -1;
+        }
+    }
+
     /**
      * Actualiza el total de una venta. Este método es útil después de insertar/actualizar detalles
      * y que el trigger de la DB recalcule el total. Simplemente lo refresca en el objeto Venta.
@@ -120,6 +422,52 @@ public class VentaDAO {
     }
 
 
+    /**
+     * Obtiene las ventas filtradas por fecha y/o vendedor, con los filtros aplicados en la base de datos
+     * (predicados sobre columnas sin funciones, aprovechables por los índices de sql/venta_indices_reportes.sql)
+     * y ordenadas por fecha de creación descendente. La cantidad y la suma se calculan en la misma consulta.
+     * @param desde Fecha y hora de inicio, inclusive (puede ser null).
+     * @param hasta Fecha y hora de fin, inclusive (puede ser null).
+     * @param idUsuario ID del vendedor (puede ser null para todos).
+     * @return Las ventas con su cantidad y total (vacío si hubo un error).
+     */
+    public VentasFiltradas obtenerVentasFiltradas(LocalDateTime desde, LocalDateTime hasta, Integer idUsuario) {
+        StringBuilder sql = new StringBuilder(
+                "SELECT id_venta, id_usuario, fecha_creacion, fecha_actualizacion, total_venta, " +
+                "COUNT(*) OVER () AS cantidad_total, SUM(total_venta) OVER () AS suma_total " +
+                "FROM venta v WHERE 1 = 1");
+        List<Object> parametros = new ArrayList<>();
+        agregarFiltrosVenta(sql, parametros, desde, hasta, idUsuario);
+        sql.append(" ORDER BY fecha_creacion DESC");
+
+        List<Venta> ventas = new ArrayList<>();
+        int cantidad = 0;
+        BigDecimal total = BigDecimal.ZERO;
+
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql.toString())) {
+            ConsultaCancelable.registrar(pstmt);
+
+            for (int i = 0; i < parametros.size(); i++) {
+                pstmt.setObject(i + 1, parametros.get(i));
+            }
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    if (ventas.isEmpty()) {
+                        cantidad = rs.getInt("cantidad_total");
+                        BigDecimal suma = rs.getBigDecimal("suma_total");
+                        total = (suma != null) ? suma : BigDecimal.ZERO;
+                    }
+                    ventas.add(mapearResultSetAVenta(rs));
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error al obtener ventas filtradas: " + e.getMessage());
+        }
+        return new VentasFiltradas(ventas, cantidad, total);
+    }
+
     /**
      * Obtiene una lista de todas las ventas.
      * @return Una lista de objetos Venta.
@@ -141,6 +489,38 @@ public class VentaDAO {
         return ventas;
     }
 
+    /**
+     * Obtiene varias ventas por sus IDs en una sola consulta.
+     * @param idsVenta Los IDs de las ventas a buscar.
+     * @return Un mapa de ID de venta a objeto Venta (las ventas inexistentes no aparecen).
+     */
+    public Map<Integer, Venta> obtenerVentasPorIds(List<Integer> idsVenta) {
+        Map<Integer, Venta> ventas = new HashMap<>();
+        if (idsVenta.isEmpty()) {
+            return ventas;
+        }
+        String sql = "SELECT id_venta, id_usuario, fecha_creacion, fecha_actualizacion, total_venta FROM venta WHERE id_venta IN (" +
+                DatabaseManager.marcadores(idsVenta.size()) + ")";
+
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            for (int i = 0; i < idsVenta.size(); i++) {
+                pstmt.setInt(i + 1, idsVenta.get(i));
+            }
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    Venta venta = mapearResultSetAVenta(rs);
+                    ventas.put(venta.getIdVenta(), venta);
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error al obtener ventas por IDs: " + e.getMessage());
+        }
+        return ventas;
+    }
+
     /**
      * Método auxiliar para mapear un ResultSet a un objeto Venta.
      * @param rs El ResultSet actual.
@@ -0,0 +1,108 @@
+package com.cerrajeria.app.database;
+
+import com.cerrajeria.app.dao.ProductoDAO;
+import com.cerrajeria.app.dao.ServicioDAO;
+import com.cerrajeria.app.models.DetalleVentaProducto;
+import com.cerrajeria.app.models.DetalleVentaServicio;
+import com.cerrajeria.app.models.Producto;
+import com.cerrajeria.app.models.Servicio;
+import com.cerrajeria.app.models.Venta;
+import com.cerrajeria.app.services.VentaService;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Compara el tiempo de registro de una venta por el flujo normal ({@link VentaService#registrarVenta})
+ * y por el registro rápido en un solo viaje ({@link VentaService#registrarVentaRapida}).
+ *
+ * ATENCIÓN: registra ventas reales y descuenta stock. Ejecutar solo contra una base de datos de pruebas.
+ * Uso: BenchmarkRegistroVenta --escribir [ventasPorFlujo] [lineasDeProducto]
+ */
+public class BenchmarkRegistroVenta {
+
+    private static final int CALENTAMIENTO = 5;
+
+    public static void main(String[] args) {
+        if (args.length == 0 || !"--escribir".equals(args[0])) {
+            System.out.println("Este benchmark registra ventas reales. Ejecútelo con --escribir sobre una base de datos de pruebas.");
+            System.out.println("Uso: BenchmarkRegistroVenta --escribir [ventasPorFlujo=50] [lineasDeProducto=3]");
+            return;
+        }
+        int ventasPorFlujo = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        int lineasProducto = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+        int totalVentas = 2 * (ventasPorFlujo + CALENTAMIENTO);
+
+        // Productos con stock suficiente para todas las ventas (1 unidad por línea) y un servicio
+        List<Producto> productos = new ArrayList<>();
+        for (Producto p : new ProductoDAO().obtenerTodosLosProductos()) {
+            if (p.isActivo() && p.getStock() >= totalVentas && productos.size() < lineasProducto) {
+                productos.add(p);
+            }
+        }
+        Servicio servicio = new ServicioDAO().obtenerTodosLosServicios().stream()
+                .filter(Servicio::isActivo).findFirst().orElse(null);
+        if (productos.size() < lineasProducto || servicio == null) {
+            System.out.println("No hay suficientes productos con stock (" + totalVentas + " unidades) o servicios activos.");
+            return;
+        }
+
+        VentaService ventaService = new VentaService();
+        int idUsuario = 1;
+
+        // Calentamiento de ambos flujos (conexiones, planes de ejecución, JIT)
+        for (int i = 0; i < CALENTAMIENTO; i++) {
+            medir(ventaService, false, idUsuario, productos, servicio);
+            medir(ventaService, true, idUsuario, productos, servicio);
+        }
+
+        // Se alternan los flujos para repartir por igual las variaciones de carga del servidor
+        long[] normal = new long[ventasPorFlujo];
+        long[] rapida = new long[ventasPorFlujo];
+        for (int i = 0; i < ventasPorFlujo; i++) {
+            normal[i] = medir(ventaService, false, idUsuario, productos, servicio);
+            rapida[i] = medir(ventaService, true, idUsuario, productos, servicio);
+        }
+
+        System.out.println("\n--- Registro de venta: " + ventasPorFlujo + " ventas por flujo, "
+                + lineasProducto + " productos + 1 servicio por venta ---");
+        imprimir("registrarVenta      ", normal);
+        imprimir("registrarVentaRapida", rapida);
+    }
+
+    private static long medir(VentaService ventaService, boolean rapida, int idUsuario,
+                              List<Producto> productos, Servicio servicio) {
+        List<DetalleVentaProducto> detallesProducto = new ArrayList<>();
+        for (Producto p : productos) {
+            detallesProducto.add(new DetalleVentaProducto(0, p.getIdProducto(), 1, p.getPrecio(), "benchmark"));
+        }
+        List<DetalleVentaServicio> detallesServicio = List.of(
+                new DetalleVentaServicio(0, servicio.getIdServicio(), 1, servicio.getPrecio(), "benchmark"));
+        String clave = UUID.randomUUID().toString();
+
+        long inicio = System.nanoTime();
+        Venta venta = rapida
+                ? ventaService.registrarVentaRapida(idUsuario, detallesProducto, detallesServicio, clave)
+                : ventaService.registrarVenta(idUsuario, detallesProducto, detallesServicio, clave);
+        long duracion = System.nanoTime() - inicio;
+        if (venta == null) {
+            throw new IllegalStateException("La venta de benchmark falló (" + (rapida ? "rápida" : "normal") + ").");
+        }
+        return duracion;
+    }
+
+    private static void imprimir(String nombre, long[] duraciones) {
+        long[] ordenadas = duraciones.clone();
+        Arrays.sort(ordenadas);
+        double promedio = Arrays.stream(ordenadas).average().orElse(0) / 1_000_000.0;
+        System.out.printf("%s  media %.2f ms | p50 %.2f ms | p95 %.2f ms | máx %.2f ms%n", nombre, promedio,
+                percentil(ordenadas, 0.50), percentil(ordenadas, 0.95), ordenadas[ordenadas.length - 1] / 1_000_000.0);
+    }
+
+    private static double percentil(long[] ordenadas, double p) {
+        int indice = (int) Math.ceil(p * ordenadas.length) - 1;
+        return ordenadas[Math.max(0, indice)] / 1_000_000.0;
+    }
+}
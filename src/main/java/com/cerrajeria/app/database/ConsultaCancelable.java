@@ -0,0 +1,71 @@
+package com.cerrajeria.app.database;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.Callable;
+
+/**
+ * Permite cancelar desde otro hilo la consulta que está ejecutando una carga en segundo plano.
+ * Interrumpir el hilo no detiene una sentencia JDBC: la base de datos sigue trabajando y el hilo
+ * queda ocupado hasta que termina. Los DAOs de consultas largas registran su sentencia con
+ * {@link #registrar(Statement)}; si la carga se ejecuta con {@link #ejecutar(Callable)},
+ * {@link #cancelar()} llama a {@link Statement#cancel()} sobre la sentencia en curso.
+ */
+public class ConsultaCancelable {
+
+    private static final ThreadLocal<ConsultaCancelable> DEL_HILO = new ThreadLocal<>();
+
+    private Statement sentencia;
+    private boolean cancelada = false;
+
+    /**
+     * Ejecuta una consulta asociando esta cancelación al hilo actual.
+     */
+    public <T> T ejecutar(Callable<T> consulta) throws Exception {
+        DEL_HILO.set(this);
+        try {
+            return consulta.call();
+        } finally {
+            DEL_HILO.remove();
+            liberar();
+        }
+    }
+
+    /**
+     * Registra la sentencia que va a ejecutar el hilo actual. No hace nada si el hilo no ejecuta
+     * una carga cancelable.
+     * @throws SQLException Si la carga ya fue cancelada (la sentencia no debe ejecutarse).
+     */
+    public static void registrar(Statement sentencia) throws SQLException {
+        ConsultaCancelable actual = DEL_HILO.get();
+        if (actual != null) {
+            actual.asociar(sentencia);
+        }
+    }
+
+    private synchronized void asociar(Statement nueva) throws SQLException {
+        if (cancelada) {
+            throw new SQLException("Consulta cancelada antes de ejecutarse.");
+        }
+        sentencia = nueva;
+    }
+
+    private synchronized void liberar() {
+        sentencia = null;
+    }
+
+    /**
+     * Cancela la sentencia en curso, si la hay, y las que la carga intente ejecutar después.
+     */
+    public synchronized void cancelar() {
+        cancelada = true;
+        if (sentencia == null) {
+            return;
+        }
+        try {
+            sentencia.cancel();
+        } catch (SQLException e) {
+            System.err.println("Error al cancelar la consulta en curso: " + e.getMessage());
+        }
+    }
+}
@@ -62,6 +62,12 @@ public class DatabaseManager {
             + "integratedSecurity=true;"
             + "trustServerCertificate=true;";
 
+    /**
+     * Sucursal de esta terminal (ver sql/sucursal.sql), configurable al arrancar con -Dcerrajeria.sucursal=N.
+     * El stock que lee, vende y mueve la aplicación es siempre el de esta sucursal.
+     */
+    public static final int ID_SUCURSAL = Integer.getInteger("cerrajeria.sucursal", 1);
+
     /**
      * Establece y retorna una conexión a la base de datos SQL Server.
      * @return Una instancia de Connection si la conexión fue exitosa, o null si hubo un error.
@@ -81,6 +87,15 @@ public class DatabaseManager {
         return conn;
     }
 
+    /**
+     * Genera la lista de marcadores "?, ?, ?" para una cláusula IN con parámetros.
+     * @param cantidad Número de parámetros (debe ser mayor que cero).
+     * @return Cadena con los marcadores separados por comas.
+     */
+    public static String marcadores(int cantidad) {
+        return String.join(", ", java.util.Collections.nCopies(cantidad, "?"));
+    }
+
     /**
      * Método principal para probar la conexión a la base de datos
      * y las funcionalidades de los DAOs y Servicios en modo de SOLO LECTURA.
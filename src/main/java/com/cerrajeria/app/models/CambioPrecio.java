@@ -0,0 +1,74 @@
+package com.cerrajeria.app.models;
+
+import java.math.BigDecimal;
+
+/**
+ * Cambio de precio previsto para un producto en un ajuste masivo de precios.
+ * No se corresponde con una tabla: los cambios se aplican juntos sobre 'producto'
+ * (ver AjustePreciosService y sql/ajuste_precios.sql).
+ */
+public class CambioPrecio {
+
+    private final int idProducto;
+    private final String nombreProducto;
+    private final String nombreCategoria;
+    private final String estado;
+    private final BigDecimal precioActual;
+    private final BigDecimal precioNuevo;
+
+    public CambioPrecio(int idProducto, String nombreProducto, String nombreCategoria, String estado,
+                        BigDecimal precioActual, BigDecimal precioNuevo) {
+        this.idProducto = idProducto;
+        this.nombreProducto = nombreProducto;
+        this.nombreCategoria = nombreCategoria;
+        this.estado = estado;
+        this.precioActual = precioActual;
+        this.precioNuevo = precioNuevo;
+    }
+
+    // --- Getters ---
+
+    public int getIdProducto() {
+        return idProducto;
+    }
+
+    public String getNombreProducto() {
+        return nombreProducto;
+    }
+
+    public String getNombreCategoria() {
+        return nombreCategoria;
+    }
+
+    public String getEstado() {
+        return estado;
+    }
+
+    public BigDecimal getPrecioActual() {
+        return precioActual;
+    }
+
+    public BigDecimal getPrecioNuevo() {
+        return precioNuevo;
+    }
+
+    public BigDecimal getDiferencia() {
+        return precioNuevo.subtract(precioActual);
+    }
+
+    /**
+     * @return true si el precio nuevo es distinto del actual (tras el redondeo).
+     */
+    public boolean isCambia() {
+        return precioNuevo.compareTo(precioActual) != 0;
+    }
+
+    @Override
+    public String toString() {
+        return "CambioPrecio{" +
+                "idProducto=" + idProducto +
+                ", precioActual=" + precioActual +
+                ", precioNuevo=" + precioNuevo +
+                '}';
+    }
+}
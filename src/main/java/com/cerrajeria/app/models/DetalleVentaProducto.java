@@ -17,6 +17,7 @@ public class DetalleVentaProducto {
     private LocalDateTime fechaActualizacion;
     private BigDecimal precioUnitarioFinal; // Columna 'precio_unitario_final'
     private String descripcion; // Columna 'descripcion' para comentarios del vendedor/asistente
+    private BigDecimal costoUnitario; // Columna 'costo_unitario': costo_interno del producto al vender (null si aún no se insertó)
 
     // Constructor completo
     public DetalleVentaProducto(int idDetalleVentaProducto, int idVenta, int idProducto,
@@ -112,6 +113,14 @@ public class DetalleVentaProducto {
         this.descripcion = descripcion;
     }
 
+    public BigDecimal getCostoUnitario() {
+        return costoUnitario;
+    }
+
+    public void setCostoUnitario(BigDecimal costoUnitario) {
+        this.costoUnitario = costoUnitario;
+    }
+
     @Override
     public String toString() {
         return "DetalleVentaProducto{" +
@@ -0,0 +1,41 @@
+package com.cerrajeria.app.models;
+
+/**
+ * Fila de un archivo de importación del catálogo que no se pudo aplicar, con el motivo.
+ * No se corresponde con una tabla: forma el informe de errores de la importación.
+ */
+public class ErrorImportacion {
+
+    private final int numeroFila;  // Fila del archivo de origen
+    private final String nombre;   // Nombre leído en la fila (puede estar vacío)
+    private final String mensaje;
+
+    public ErrorImportacion(int numeroFila, String nombre, String mensaje) {
+        this.numeroFila = numeroFila;
+        this.nombre = nombre;
+        this.mensaje = mensaje;
+    }
+
+    // --- Getters ---
+
+    public int getNumeroFila() {
+        return numeroFila;
+    }
+
+    public String getNombre() {
+        return nombre;
+    }
+
+    public String getMensaje() {
+        return mensaje;
+    }
+
+    @Override
+    public String toString() {
+        return "ErrorImportacion{" +
+                "numeroFila=" + numeroFila +
+                ", nombre='" + nombre + '\'' +
+                ", mensaje='" + mensaje + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,61 @@
+package com.cerrajeria.app.models;
+
+/**
+ * Estado del stock de un producto (columna 'estado' de 'producto'): Agotado, Bajo o Disponible.
+ * No se guarda por separado del stock: se deriva siempre del stock y del stock mínimo con {@link #de(int, int)},
+ * y las consultas que lo calculan en la base de datos usan {@link #expresionSql(String, String)},
+ * así la regla está escrita una sola vez.
+ */
+public enum EstadoStock {
+    AGOTADO("Agotado"),
+    BAJO("Bajo"),
+    DISPONIBLE("Disponible");
+
+    private final String valor;
+
+    EstadoStock(String valor) {
+        this.valor = valor;
+    }
+
+    /**
+     * Calcula el estado que corresponde a un stock.
+     * @param stock Stock actual.
+     * @param stockMinimo Umbral a partir del cual el stock se considera bajo.
+     */
+    public static EstadoStock de(int stock, int stockMinimo) {
+        if (stock <= 0) {
+            return AGOTADO;
+        }
+        return (stock <= stockMinimo) ? BAJO : DISPONIBLE;
+    }
+
+    /**
+     * La misma regla que {@link #de(int, int)} como expresión CASE de SQL.
+     * @param stock Expresión SQL del stock (ej. "ISNULL(ss.stock, 0)").
+     * @param stockMinimo Expresión SQL del stock mínimo (ej. "p.stock_minimo").
+     */
+    public static String expresionSql(String stock, String stockMinimo) {
+        return "CASE WHEN " + stock + " <= 0 THEN '" + AGOTADO.valor + "' " +
+                "WHEN " + stock + " <= " + stockMinimo + " THEN '" + BAJO.valor + "' " +
+                "ELSE '" + DISPONIBLE.valor + "' END";
+    }
+
+    /**
+     * @return true si el stock está en o por debajo del mínimo (incluye agotado).
+     */
+    public boolean esBajo() {
+        return this != DISPONIBLE;
+    }
+
+    /**
+     * @return El valor guardado en la columna 'estado' (ej. "Agotado").
+     */
+    public String getValor() {
+        return valor;
+    }
+
+    @Override
+    public String toString() {
+        return valor;
+    }
+}
@@ -0,0 +1,82 @@
+package com.cerrajeria.app.models;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Fila del reporte de rentabilidad: ingresos, costo, margen y comisión de un grupo de ventas
+ * (un producto o servicio, una categoría, un vendedor o un mes).
+ * No se corresponde con una tabla: la calcula ResumenVentaDiarioDAO.obtenerRentabilidad.
+ */
+public class FilaRentabilidad {
+
+    private String concepto;        // Nombre del producto, categoría, vendedor o mes ("2025-03")
+    private int unidades;
+    private BigDecimal ingresos;    // SUM(cantidad * precio_unitario_final)
+    private BigDecimal costo;       // SUM(cantidad * costo_unitario); 0 para servicios
+    private BigDecimal comision;    // Comisión automática generada por las líneas
+
+    public FilaRentabilidad(String concepto, int unidades, BigDecimal ingresos, BigDecimal costo, BigDecimal comision) {
+        this.concepto = concepto;
+        this.unidades = unidades;
+        this.ingresos = ingresos;
+        this.costo = costo;
+        this.comision = comision;
+    }
+
+    // --- Getters ---
+
+    public String getConcepto() {
+        return concepto;
+    }
+
+    public int getUnidades() {
+        return unidades;
+    }
+
+    public BigDecimal getIngresos() {
+        return ingresos;
+    }
+
+    public BigDecimal getCosto() {
+        return costo;
+    }
+
+    public BigDecimal getComision() {
+        return comision;
+    }
+
+    /**
+     * @return Margen bruto (ingresos - costo).
+     */
+    public BigDecimal getMargen() {
+        return ingresos.subtract(costo);
+    }
+
+    /**
+     * @return Margen bruto sobre ingresos en porcentaje (0 si no hubo ingresos).
+     */
+    public BigDecimal getMargenPorcentaje() {
+        if (ingresos.signum() == 0) {
+            return BigDecimal.ZERO;
+        }
+        return getMargen().multiply(BigDecimal.valueOf(100)).divide(ingresos, 2, RoundingMode.HALF_UP);
+    }
+
+    /**
+     * @return Margen después de comisiones (margen bruto - comisión).
+     */
+    public BigDecimal getMargenNeto() {
+        return getMargen().subtract(comision);
+    }
+
+    @Override
+    public String toString() {
+        return "FilaRentabilidad{" +
+                "concepto='" + concepto + '\'' +
+                ", ingresos=" + ingresos +
+                ", costo=" + costo +
+                ", comision=" + comision +
+                '}';
+    }
+}
@@ -0,0 +1,84 @@
+package com.cerrajeria.app.models;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Fila de estadística de ventas agregada por producto o servicio.
+ * No se corresponde con una tabla: la calculan las consultas de "más vendidos".
+ * El costo de un producto es el fijado en cada línea al vender; los servicios no tienen costo registrado.
+ */
+public class ItemMasVendido {
+
+    private int idItem;             // id_producto o id_servicio
+    private String nombre;
+    private int unidadesVendidas;
+    private BigDecimal ingresos;    // SUM(cantidad * precio_unitario_final)
+    private BigDecimal costo;       // SUM(cantidad * costo_unitario)
+    private BigDecimal comision;    // Comisión automática generada por las líneas
+
+    public ItemMasVendido(int idItem, String nombre, int unidadesVendidas, BigDecimal ingresos, BigDecimal costo) {
+        this(idItem, nombre, unidadesVendidas, ingresos, costo, BigDecimal.ZERO);
+    }
+
+    public ItemMasVendido(int idItem, String nombre, int unidadesVendidas, BigDecimal ingresos, BigDecimal costo,
+                          BigDecimal comision) {
+        this.idItem = idItem;
+        this.nombre = nombre;
+        this.unidadesVendidas = unidadesVendidas;
+        this.ingresos = ingresos;
+        this.costo = costo;
+        this.comision = comision;
+    }
+
+    // --- Getters ---
+
+    public int getIdItem() {
+        return idItem;
+    }
+
+    public String getNombre() {
+        return nombre;
+    }
+
+    public int getUnidadesVendidas() {
+        return unidadesVendidas;
+    }
+
+    public BigDecimal getIngresos() {
+        return ingresos;
+    }
+
+    public BigDecimal getCosto() {
+        return costo;
+    }
+
+    public BigDecimal getComision() {
+        return comision;
+    }
+
+    public BigDecimal getMargen() {
+        return ingresos.subtract(costo);
+    }
+
+    /**
+     * @return Margen sobre ingresos en porcentaje (0 si no hubo ingresos).
+     */
+    public BigDecimal getMargenPorcentaje() {
+        if (ingresos.signum() == 0) {
+            return BigDecimal.ZERO;
+        }
+        return getMargen().multiply(BigDecimal.valueOf(100)).divide(ingresos, 2, RoundingMode.HALF_UP);
+    }
+
+    @Override
+    public String toString() {
+        return "ItemMasVendido{" +
+                "idItem=" + idItem +
+                ", nombre='" + nombre + '\'' +
+                ", unidadesVendidas=" + unidadesVendidas +
+                ", ingresos=" + ingresos +
+                ", margen=" + getMargen() +
+                '}';
+    }
+}
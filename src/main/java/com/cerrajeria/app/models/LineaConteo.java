@@ -0,0 +1,84 @@
+package com.cerrajeria.app.models;
+
+import java.time.Instant;
+import java.util.Objects;
+
+/**
+ * Clase modelo que representa una línea de un conteo físico de inventario
+ * (tabla 'conteo_inventario_detalle'): stock esperado al abrir el conteo y cantidad contada.
+ */
+public class LineaConteo {
+
+    private int idProducto;
+    private String nombreProducto;
+    private int stockEsperado;         // Stock congelado al abrir el conteo
+    private Integer cantidadContada;   // null = aún no contado
+    private boolean modificada;        // Cambió desde la última vez que se guardó
+    private Instant momentoConteo;     // Cuándo se anotó la cantidad en esta sesión (null si no cambió)
+
+    public LineaConteo(int idProducto, String nombreProducto, int stockEsperado, Integer cantidadContada) {
+        this.idProducto = idProducto;
+        this.nombreProducto = nombreProducto;
+        this.stockEsperado = stockEsperado;
+        this.cantidadContada = cantidadContada;
+    }
+
+    // --- Getters y Setters ---
+
+    public int getIdProducto() {
+        return idProducto;
+    }
+
+    public String getNombreProducto() {
+        return nombreProducto;
+    }
+
+    public int getStockEsperado() {
+        return stockEsperado;
+    }
+
+    public Integer getCantidadContada() {
+        return cantidadContada;
+    }
+
+    public void setCantidadContada(Integer cantidadContada) {
+        if (!Objects.equals(this.cantidadContada, cantidadContada)) {
+            this.cantidadContada = cantidadContada;
+            this.modificada = true;
+            this.momentoConteo = Instant.now();
+        }
+    }
+
+    public boolean isContada() {
+        return cantidadContada != null;
+    }
+
+    /**
+     * @return Diferencia con el stock congelado (contado - esperado), o null si no se contó. Al aplicar,
+     *         el esperado se corrige con los movimientos hechos entre la apertura y el conteo de la línea.
+     */
+    public Integer getDiferencia() {
+        return (cantidadContada != null) ? cantidadContada - stockEsperado : null;
+    }
+
+    public Instant getMomentoConteo() {
+        return momentoConteo;
+    }
+
+    public boolean isModificada() {
+        return modificada;
+    }
+
+    public void setModificada(boolean modificada) {
+        this.modificada = modificada;
+    }
+
+    @Override
+    public String toString() {
+        return "LineaConteo{" +
+                "idProducto=" + idProducto +
+                ", stockEsperado=" + stockEsperado +
+                ", cantidadContada=" + cantidadContada +
+                '}';
+    }
+}
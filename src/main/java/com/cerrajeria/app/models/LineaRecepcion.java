@@ -0,0 +1,90 @@
+package com.cerrajeria.app.models;
+
+/**
+ * Línea de un albarán de recepción de mercadería: producto, cantidad recibida y, si no se puede
+ * aplicar, el motivo. No se corresponde con una tabla: cada línea aplicada genera un
+ * movimiento_stock de tipo 'Entrada'.
+ */
+public class LineaRecepcion {
+
+    private int numeroLinea;       // Fila del archivo de origen
+    private int idProducto;        // 0 si la fila no tenía un ID válido
+    private String nombreProducto;
+    private int cantidad;
+    private String comentario;     // Comentario propio de la línea (opcional)
+    private String error;          // null si la línea es válida
+    private boolean aplicada;
+
+    public LineaRecepcion(int numeroLinea, int idProducto, int cantidad, String comentario) {
+        this.numeroLinea = numeroLinea;
+        this.idProducto = idProducto;
+        this.cantidad = cantidad;
+        this.comentario = comentario;
+    }
+
+    // --- Getters y Setters ---
+
+    public int getNumeroLinea() {
+        return numeroLinea;
+    }
+
+    public int getIdProducto() {
+        return idProducto;
+    }
+
+    public String getNombreProducto() {
+        return nombreProducto;
+    }
+
+    public void setNombreProducto(String nombreProducto) {
+        this.nombreProducto = nombreProducto;
+    }
+
+    public int getCantidad() {
+        return cantidad;
+    }
+
+    public String getComentario() {
+        return comentario;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    public boolean isValida() {
+        return error == null;
+    }
+
+    public boolean isAplicada() {
+        return aplicada;
+    }
+
+    public void setAplicada(boolean aplicada) {
+        this.aplicada = aplicada;
+    }
+
+    /**
+     * Texto para la columna de estado del informe de recepción.
+     */
+    public String getEstado() {
+        if (error != null) {
+            return "Error: " + error;
+        }
+        return aplicada ? "Aplicada" : "Lista";
+    }
+
+    @Override
+    public String toString() {
+        return "LineaRecepcion{" +
+                "numeroLinea=" + numeroLinea +
+                ", idProducto=" + idProducto +
+                ", cantidad=" + cantidad +
+                ", estado='" + getEstado() + '\'' +
+                '}';
+    }
+}
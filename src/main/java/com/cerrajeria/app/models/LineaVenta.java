@@ -0,0 +1,67 @@
+package com.cerrajeria.app.models;
+
+import java.math.BigDecimal;
+
+/**
+ * Línea de una venta (producto o servicio) con el nombre del ítem, para mostrar el detalle de una venta.
+ * No se corresponde con una tabla: une detalle_venta_producto y detalle_venta_servicio.
+ */
+public class LineaVenta {
+
+    private String tipo;            // "Producto" o "Servicio"
+    private int idItem;             // id_producto o id_servicio
+    private String nombre;
+    private int cantidad;
+    private BigDecimal precioUnitarioFinal;
+    private String descripcion;
+
+    public LineaVenta(String tipo, int idItem, String nombre, int cantidad, BigDecimal precioUnitarioFinal,
+                      String descripcion) {
+        this.tipo = tipo;
+        this.idItem = idItem;
+        this.nombre = nombre;
+        this.cantidad = cantidad;
+        this.precioUnitarioFinal = precioUnitarioFinal;
+        this.descripcion = descripcion;
+    }
+
+    // --- Getters ---
+
+    public String getTipo() {
+        return tipo;
+    }
+
+    public int getIdItem() {
+        return idItem;
+    }
+
+    public String getNombre() {
+        return nombre;
+    }
+
+    public int getCantidad() {
+        return cantidad;
+    }
+
+    public BigDecimal getPrecioUnitarioFinal() {
+        return precioUnitarioFinal;
+    }
+
+    public String getDescripcion() {
+        return descripcion;
+    }
+
+    public BigDecimal getSubtotal() {
+        return precioUnitarioFinal.multiply(BigDecimal.valueOf(cantidad));
+    }
+
+    @Override
+    public String toString() {
+        return "LineaVenta{" +
+                "tipo='" + tipo + '\'' +
+                ", nombre='" + nombre + '\'' +
+                ", cantidad=" + cantidad +
+                ", precioUnitarioFinal=" + precioUnitarioFinal +
+                '}';
+    }
+}
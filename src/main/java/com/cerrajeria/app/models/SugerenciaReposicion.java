@@ -0,0 +1,79 @@
+package com.cerrajeria.app.models;
+
+/**
+ * Resultado del planificador de reposición para un producto: velocidad de venta,
+ * días de cobertura con el stock actual y cantidad sugerida a pedir.
+ * No se corresponde con una tabla: la calcula PlanificadorReposicion.
+ */
+public class SugerenciaReposicion {
+
+    private int idProducto;
+    private String nombre;
+    private int stock;
+    private int stockMinimo;
+    private double[] velocidades;      // Unidades/día en cada ventana configurada
+    private double velocidad;          // Unidades/día de la ventana usada para planificar
+    private double diasCobertura;      // stock / velocidad (infinito si no se vende)
+    private int cantidadSugerida;
+
+    public SugerenciaReposicion(int idProducto, String nombre, int stock, int stockMinimo, double[] velocidades,
+                                double velocidad, double diasCobertura, int cantidadSugerida) {
+        this.idProducto = idProducto;
+        this.nombre = nombre;
+        this.stock = stock;
+        this.stockMinimo = stockMinimo;
+        this.velocidades = velocidades;
+        this.velocidad = velocidad;
+        this.diasCobertura = diasCobertura;
+        this.cantidadSugerida = cantidadSugerida;
+    }
+
+    // --- Getters ---
+
+    public int getIdProducto() {
+        return idProducto;
+    }
+
+    public String getNombre() {
+        return nombre;
+    }
+
+    public int getStock() {
+        return stock;
+    }
+
+    public int getStockMinimo() {
+        return stockMinimo;
+    }
+
+    /**
+     * @param ventana Índice de la ventana, en el orden en que se configuró el planificador.
+     * @return Unidades vendidas por día en esa ventana.
+     */
+    public double getVelocidad(int ventana) {
+        return velocidades[ventana];
+    }
+
+    public double getVelocidad() {
+        return velocidad;
+    }
+
+    public double getDiasCobertura() {
+        return diasCobertura;
+    }
+
+    public int getCantidadSugerida() {
+        return cantidadSugerida;
+    }
+
+    @Override
+    public String toString() {
+        return "SugerenciaReposicion{" +
+                "nombre='" + nombre + '\'' +
+                ", stock=" + stock +
+                ", velocidad=" + String.format("%.2f", velocidad) +
+                ", diasCobertura=" + (Double.isInfinite(diasCobertura) ? "∞" : String.format("%.1f", diasCobertura)) +
+                ", cantidadSugerida=" + cantidadSugerida +
+                '}';
+    }
+}
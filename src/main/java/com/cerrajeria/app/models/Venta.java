@@ -14,6 +14,7 @@ public class Venta {
     private LocalDateTime fechaCreacion;
     private LocalDateTime fechaActualizacion;
     private BigDecimal totalVenta; // Columna 'total_venta' agregada después
+    private String claveIdempotencia; // Columna 'clave_idempotencia': identifica el carrito que originó la venta
 
     // Constructor completo
     public Venta(int idVenta, int idUsuario, LocalDateTime fechaCreacion,
@@ -75,6 +76,22 @@ public class Venta {
         this.totalVenta = totalVenta;
     }
 
+    public String getClaveIdempotencia() {
+        return claveIdempotencia;
+    }
+
+    public void setClaveIdempotencia(String claveIdempotencia) {
+        this.claveIdempotencia = claveIdempotencia;
+    }
+
+    /**
+     * Una venta anotada en el diario offline todavía no tiene ID en la base de datos.
+     * @return true si la venta espera ser registrada por el reproductor del diario.
+     */
+    public boolean estaPendienteDeSincronizar() {
+        return idVenta == 0 && claveIdempotencia != null;
+    }
+
     @Override
     public String toString() {
         return "Venta{" +
@@ -0,0 +1,66 @@
+package com.cerrajeria.app.models;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Venta con el resumen de sus líneas (cantidad de líneas, unidades e importes por tipo),
+ * calculado por la base de datos en la misma consulta que la cabecera.
+ * Se usa en el historial del vendedor para no cargar las líneas de cada venta;
+ * el detalle se pide aparte, por páginas, al desplegar una venta.
+ */
+public class VentaResumen extends Venta {
+
+    private int lineasProducto;
+    private int lineasServicio;
+    private int unidades;
+    private BigDecimal importeProductos;  // SUM(cantidad * precio_unitario_final) de los productos
+    private BigDecimal importeServicios;  // SUM(cantidad * precio_unitario_final) de los servicios
+
+    public VentaResumen(int idVenta, int idUsuario, LocalDateTime fechaCreacion, LocalDateTime fechaActualizacion,
+                        BigDecimal totalVenta, int lineasProducto, int lineasServicio, int unidades,
+                        BigDecimal importeProductos, BigDecimal importeServicios) {
+        super(idVenta, idUsuario, fechaCreacion, fechaActualizacion, totalVenta);
+        this.lineasProducto = lineasProducto;
+        this.lineasServicio = lineasServicio;
+        this.unidades = unidades;
+        this.importeProductos = importeProductos;
+        this.importeServicios = importeServicios;
+    }
+
+    // --- Getters ---
+
+    public int getLineasProducto() {
+        return lineasProducto;
+    }
+
+    public int getLineasServicio() {
+        return lineasServicio;
+    }
+
+    public int getCantidadLineas() {
+        return lineasProducto + lineasServicio;
+    }
+
+    public int getUnidades() {
+        return unidades;
+    }
+
+    public BigDecimal getImporteProductos() {
+        return importeProductos;
+    }
+
+    public BigDecimal getImporteServicios() {
+        return importeServicios;
+    }
+
+    @Override
+    public String toString() {
+        return "VentaResumen{" +
+                "idVenta=" + getIdVenta() +
+                ", lineas=" + getCantidadLineas() +
+                ", unidades=" + unidades +
+                ", totalVenta=" + getTotalVenta() +
+                '}';
+    }
+}
@@ -0,0 +1,171 @@
+package com.cerrajeria.app.services;
+
+import com.cerrajeria.app.dao.ProductoDAO;
+import com.cerrajeria.app.models.CambioPrecio;
+import com.cerrajeria.app.models.CategoriaProducto;
+import com.cerrajeria.app.models.EstadoStock;
+import com.cerrajeria.app.models.Producto;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Clase de servicio para el ajuste masivo de precios de productos (por ejemplo, cuando un proveedor
+ * sube sus precios). Los precios nuevos se calculan en memoria a partir del catálogo en caché, para
+ * previsualizarlos sin tocar la base de datos, y se aplican todos juntos con un único UPDATE
+ * (ver ProductoDAO.actualizarPrecios y sql/ajuste_precios.sql).
+ */
+public class AjustePreciosService {
+
+    private static final BigDecimal CIEN = BigDecimal.valueOf(100);
+
+    /**
+     * Forma de aplicar el valor del ajuste al precio actual.
+     */
+    public enum TipoAjuste {
+        PORCENTAJE("Porcentaje (%)"),
+        MONTO("Monto fijo ($)");
+
+        private final String etiqueta;
+
+        TipoAjuste(String etiqueta) {
+            this.etiqueta = etiqueta;
+        }
+
+        @Override
+        public String toString() {
+            return etiqueta;
+        }
+    }
+
+    /**
+     * Múltiplo al que se redondea el precio resultante.
+     */
+    public enum Redondeo {
+        CENTAVO("0.01", "Al centavo"),
+        DIEZ_CENTAVOS("0.10", "A 10 centavos"),
+        CINCUENTA_CENTAVOS("0.50", "A 50 centavos"),
+        UNIDAD("1", "A la unidad"),
+        CINCO("5", "A múltiplos de 5"),
+        DIEZ("10", "A múltiplos de 10");
+
+        private final BigDecimal paso;
+        private final String etiqueta;
+
+        Redondeo(String paso, String etiqueta) {
+            this.paso = new BigDecimal(paso);
+            this.etiqueta = etiqueta;
+        }
+
+        /**
+         * Redondea un precio al múltiplo de este paso.
+         * @param haciaArriba true para redondear siempre hacia arriba, false para el múltiplo más cercano.
+         */
+        BigDecimal redondear(BigDecimal precio, boolean haciaArriba) {
+            BigDecimal pasos = precio.divide(paso, 0, haciaArriba ? RoundingMode.CEILING : RoundingMode.HALF_UP);
+            return pasos.multiply(paso).setScale(2, RoundingMode.UNNECESSARY);
+        }
+
+        @Override
+        public String toString() {
+            return etiqueta;
+        }
+    }
+
+    /**
+     * Resultado de una previsualización: los cambios a aplicar y cuántos productos del alcance
+     * se omitieron porque el ajuste los dejaría con precio negativo.
+     */
+    public record Previsualizacion(List<CambioPrecio> cambios, int omitidos) { }
+
+    private final ProductoDAO productoDAO;
+    private final CategoriaProductoService categoriaProductoService;
+
+    public AjustePreciosService() {
+        this.productoDAO = new ProductoDAO();
+        this.categoriaProductoService = new CategoriaProductoService();
+    }
+
+    /**
+     * Calcula en memoria los precios nuevos de los productos activos del alcance indicado.
+     * Los filtros se combinan; un filtro null no restringe.
+     * @param idCategoria Solo productos de esta categoría.
+     * @param estado Solo productos en este estado de stock.
+     * @param tipo Porcentaje o monto fijo.
+     * @param valor Valor del ajuste (negativo para bajar precios).
+     * @param redondeo Múltiplo al que se redondea el precio nuevo.
+     * @param haciaArriba true para redondear siempre hacia arriba.
+     * @return Los productos cuyo precio cambia, ordenados por nombre, y el número de omitidos.
+     */
+    public Previsualizacion previsualizar(Integer idCategoria, EstadoStock estado, TipoAjuste tipo, BigDecimal valor,
+                                          Redondeo redondeo, boolean haciaArriba) {
+        Map<Integer, String> categorias = new HashMap<>();
+        for (CategoriaProducto c : categoriaProductoService.obtenerTodasCategoriasProducto()) {
+            categorias.put(c.getIdCategoriaProducto(), c.getNombre());
+        }
+
+        List<CambioPrecio> cambios = new ArrayList<>();
+        int omitidos = 0;
+        for (Producto p : CatalogoCache.getInstance().obtenerProductos()) {
+            if (!p.isActivo() || p.getPrecio() == null
+                    || (idCategoria != null && p.getIdCategoriaProducto() != idCategoria)
+                    || (estado != null && !estado.getValor().equals(p.getEstado()))) {
+                continue;
+            }
+            BigDecimal precioNuevo = calcularPrecio(p.getPrecio(), tipo, valor, redondeo, haciaArriba);
+            if (precioNuevo.signum() < 0) {
+                omitidos++;
+                continue;
+            }
+            CambioPrecio cambio = new CambioPrecio(p.getIdProducto(), p.getNombre(),
+                    categorias.get(p.getIdCategoriaProducto()), p.getEstado(), p.getPrecio(), precioNuevo);
+            if (cambio.isCambia()) {
+                cambios.add(cambio);
+            }
+        }
+        cambios.sort(Comparator.comparing(CambioPrecio::getNombreProducto, String.CASE_INSENSITIVE_ORDER));
+        return new Previsualizacion(cambios, omitidos);
+    }
+
+    /**
+     * Calcula el precio resultante de aplicar un ajuste a un precio.
+     */
+    public BigDecimal calcularPrecio(BigDecimal precioActual, TipoAjuste tipo, BigDecimal valor,
+                                     Redondeo redondeo, boolean haciaArriba) {
+        BigDecimal precio = (tipo == TipoAjuste.PORCENTAJE)
+                ? precioActual.add(precioActual.multiply(valor).divide(CIEN, 4, RoundingMode.HALF_UP))
+                : precioActual.add(valor);
+        return redondeo.redondear(precio, haciaArriba);
+    }
+
+    /**
+     * Aplica los cambios previsualizados (todos o los seleccionados) en un solo UPDATE y los refleja en la caché del catálogo
+     * de una vez. Un producto cuyo precio haya cambiado desde la previsualización no se modifica.
+     * @param cambios Cambios a aplicar.
+     * @return Número de productos actualizados, o -1 si hubo un error y no se aplicó ninguno.
+     */
+    public int aplicar(List<CambioPrecio> cambios) {
+        List<CambioPrecio> pendientes = new ArrayList<>(cambios.size());
+        for (CambioPrecio c : cambios) {
+            if (c.isCambia() && c.getPrecioNuevo().signum() >= 0) {
+                pendientes.add(c);
+            }
+        }
+        Map<Integer, BigDecimal> aplicados = productoDAO.actualizarPrecios(pendientes);
+        if (aplicados == null) {
+            return -1;
+        }
+        CatalogoCache.getInstance().actualizarPrecios(aplicados);
+        if (aplicados.size() < pendientes.size()) {
+            System.err.println("Ajuste de precios: " + (pendientes.size() - aplicados.size())
+                    + " productos no se actualizaron porque su precio cambió desde la previsualización.");
+        }
+        System.out.println("Ajuste de precios aplicado a " + aplicados.size() + " productos.");
+        return aplicados.size();
+    }
+}
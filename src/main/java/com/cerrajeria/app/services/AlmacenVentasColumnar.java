@@ -0,0 +1,375 @@
+package com.cerrajeria.app.services;
+
+import com.cerrajeria.app.dao.AnalisisVentasDAO;
+import com.cerrajeria.app.dao.CategoriaProductoDAO;
+import com.cerrajeria.app.dao.CategoriaServicioDAO;
+import com.cerrajeria.app.models.CategoriaProducto;
+import com.cerrajeria.app.models.CategoriaServicio;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Almacén analítico en memoria, por columnas, de las líneas de venta (productos y servicios).
+ * Cada columna es un arreglo primitivo: IDs y cantidades en int, días como días desde 1970-01-01,
+ * importes y costos en centavos (long) y la categoría codificada con un diccionario de enteros.
+ * Las agregaciones recorren los arreglos en una sola pasada, sin objetos por fila ni boxing.
+ * Se carga una vez y después {@link #actualizar()} añade solo las ventas nuevas.
+ * <p>
+ * Los IDs IDENTITY se asignan al insertar, no al confirmar: una venta con un ID menor puede
+ * confirmarse después que otra con un ID mayor. Por eso la marca de agua no es el mayor ID leído
+ * sino {@code idSeguro}, por debajo del cual ya no puede aparecer nada; por encima se vuelve a leer
+ * en cada actualización y se saltan las ventas ya cargadas. Un hueco que sigue vacío cuando ya hay
+ * {@link #VENTANA_REVISION} IDs por encima se da por descartado (transacción revertida).
+ */
+public class AlmacenVentasColumnar {
+
+    /** Valor de filtro que no restringe. */
+    public static final int TODOS = -1;
+
+    /**
+     * Criterios de filtrado. Los campos con {@link #TODOS} no filtran; los días son inclusivos.
+     */
+    public record Filtro(int idUsuario, int desdeDia, int hastaDia, int tipo, int codigoCategoria) {
+        public static Filtro todo() {
+            return new Filtro(TODOS, Integer.MIN_VALUE, Integer.MAX_VALUE, TODOS, TODOS);
+        }
+        public Filtro conUsuario(int idUsuario) {
+            return new Filtro(idUsuario, desdeDia, hastaDia, tipo, codigoCategoria);
+        }
+        public Filtro conFechas(LocalDate desde, LocalDate hasta) {
+            return new Filtro(idUsuario,
+                    desde != null ? (int) desde.toEpochDay() : Integer.MIN_VALUE,
+                    hasta != null ? (int) hasta.toEpochDay() : Integer.MAX_VALUE,
+                    tipo, codigoCategoria);
+        }
+        public Filtro conTipo(int tipo) {
+            return new Filtro(idUsuario, desdeDia, hastaDia, tipo, codigoCategoria);
+        }
+        public Filtro conCategoria(int codigoCategoria) {
+            return new Filtro(idUsuario, desdeDia, hastaDia, tipo, codigoCategoria);
+        }
+    }
+
+    /**
+     * Totales de las líneas que cumplen un filtro.
+     */
+    public record Totales(int lineas, long unidades, long importeCentavos, long costoCentavos) {
+        public long margenCentavos() {
+            return importeCentavos - costoCentavos;
+        }
+    }
+
+    private static final int CAPACIDAD_INICIAL = 1 << 12;
+    // IDs por debajo del mayor leído que se siguen revisando por si su venta se confirma tarde
+    private static final int VENTANA_REVISION = 500;
+    private static final AlmacenVentasColumnar INSTANCIA = new AlmacenVentasColumnar();
+
+    private final AnalisisVentasDAO analisisVentasDAO;
+    private final ReentrantReadWriteLock cerrojo = new ReentrantReadWriteLock();
+
+    // --- Columnas ---
+    private int tamano = 0;
+    private int[] idVenta = new int[CAPACIDAD_INICIAL];
+    private int[] idUsuario = new int[CAPACIDAD_INICIAL];
+    private int[] dia = new int[CAPACIDAD_INICIAL];
+    private byte[] tipo = new byte[CAPACIDAD_INICIAL];
+    private int[] idItem = new int[CAPACIDAD_INICIAL];
+    private int[] categoria = new int[CAPACIDAD_INICIAL];
+    private int[] cantidad = new int[CAPACIDAD_INICIAL];
+    private long[] importe = new long[CAPACIDAD_INICIAL];
+    private long[] costo = new long[CAPACIDAD_INICIAL];
+
+    // --- Diccionario de categorías: (tipo, id_categoria) -> código denso ---
+    private int[][] codigoPorCategoria = { new int[16], new int[16] };
+    private int cantidadCategorias = 0;
+    private byte[] tipoDeCodigo = new byte[16];
+    private int[] idCategoriaDeCodigo = new int[16];
+
+    // Marca de agua: toda venta con ID <= idSeguro ya está cargada (o no existirá);
+    // el bit k de cargadas indica que la venta idSeguro + 1 + k también lo está
+    private int idSeguro = 0;
+    private BitSet cargadas = new BitSet();
+    private int ultimoIdVenta = 0;
+    private int maxIdUsuario = 0;
+
+    private AlmacenVentasColumnar() {
+        this.analisisVentasDAO = new AnalisisVentasDAO();
+        Arrays.fill(codigoPorCategoria[0], TODOS);
+        Arrays.fill(codigoPorCategoria[1], TODOS);
+    }
+
+    public static AlmacenVentasColumnar getInstance() {
+        return INSTANCIA;
+    }
+
+    /**
+     * Añade las líneas de las ventas registradas desde la última carga (todas, la primera vez),
+     * incluidas las que se confirmaron tarde con un ID menor que otras ya cargadas.
+     * @return Número de líneas añadidas, o -1 si la lectura falló (el almacén queda como estaba).
+     */
+    public int actualizar() {
+        cerrojo.writeLock().lock();
+        try {
+            int tamanoPrevio = tamano;
+            int maxUsuarioPrevio = maxIdUsuario;
+            int base = idSeguro + 1;
+            BitSet nuevas = new BitSet();
+            int nuevoUltimo = analisisVentasDAO.recorrerLineasDesde(idSeguro,
+                    (venta, usuario, epochDia, tipoLinea, item, idCategoria, unidades, importeCentavos, costoCentavos) -> {
+                        if (cargadas.get(venta - base)) {
+                            return; // Ya cargada en una actualización anterior
+                        }
+                        nuevas.set(venta - base);
+                        anexar(venta, usuario, epochDia, tipoLinea, item, idCategoria, unidades, importeCentavos, costoCentavos);
+                    });
+            if (nuevoUltimo == -1) {
+                tamano = tamanoPrevio; // Se descartan las líneas de una lectura incompleta
+                maxIdUsuario = maxUsuarioPrevio;
+                return -1;
+            }
+            cargadas.or(nuevas);
+            ultimoIdVenta = Math.max(ultimoIdVenta, nuevoUltimo);
+            avanzarMarca();
+            return tamano - tamanoPrevio;
+        } finally {
+            cerrojo.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Sube idSeguro sobre las ventas contiguas ya cargadas y sobre los huecos que quedaron
+     * fuera de la ventana de revisión.
+     */
+    private void avanzarMarca() {
+        int avance = Math.max(cargadas.nextClearBit(0), ultimoIdVenta - VENTANA_REVISION - idSeguro);
+        if (avance > 0) {
+            cargadas = cargadas.get(avance, Math.max(avance, cargadas.length()));
+            idSeguro += avance;
+        }
+    }
+
+    private void anexar(int venta, int usuario, long epochDia, int tipoLinea, int item, int idCategoria,
+                        int unidades, long importeCentavos, long costoCentavos) {
+        if (tamano == idVenta.length) {
+            crecer();
+        }
+        int i = tamano++;
+        idVenta[i] = venta;
+        idUsuario[i] = usuario;
+        dia[i] = (int) epochDia;
+        tipo[i] = (byte) tipoLinea;
+        idItem[i] = item;
+        categoria[i] = codificarCategoria(tipoLinea, idCategoria);
+        cantidad[i] = unidades;
+        importe[i] = importeCentavos;
+        costo[i] = costoCentavos;
+        maxIdUsuario = Math.max(maxIdUsuario, usuario);
+    }
+
+    private void crecer() {
+        int capacidad = idVenta.length * 2;
+        idVenta = Arrays.copyOf(idVenta, capacidad);
+        idUsuario = Arrays.copyOf(idUsuario, capacidad);
+        dia = Arrays.copyOf(dia, capacidad);
+        tipo = Arrays.copyOf(tipo, capacidad);
+        idItem = Arrays.copyOf(idItem, capacidad);
+        categoria = Arrays.copyOf(categoria, capacidad);
+        cantidad = Arrays.copyOf(cantidad, capacidad);
+        importe = Arrays.copyOf(importe, capacidad);
+        costo = Arrays.copyOf(costo, capacidad);
+    }
+
+    private int codificarCategoria(int tipoLinea, int idCategoria) {
+        int[] codigos = codigoPorCategoria[tipoLinea];
+        if (idCategoria >= codigos.length) {
+            int anterior = codigos.length;
+            codigos = Arrays.copyOf(codigos, Math.max(idCategoria + 1, anterior * 2));
+            Arrays.fill(codigos, anterior, codigos.length, TODOS);
+            codigoPorCategoria[tipoLinea] = codigos;
+        }
+        if (codigos[idCategoria] == TODOS) {
+            if (cantidadCategorias == tipoDeCodigo.length) {
+                tipoDeCodigo = Arrays.copyOf(tipoDeCodigo, cantidadCategorias * 2);
+                idCategoriaDeCodigo = Arrays.copyOf(idCategoriaDeCodigo, cantidadCategorias * 2);
+            }
+            tipoDeCodigo[cantidadCategorias] = (byte) tipoLinea;
+            idCategoriaDeCodigo[cantidadCategorias] = idCategoria;
+            codigos[idCategoria] = cantidadCategorias++;
+        }
+        return codigos[idCategoria];
+    }
+
+    private boolean coincide(int i, Filtro f) {
+        return (f.idUsuario() == TODOS || idUsuario[i] == f.idUsuario())
+                && dia[i] >= f.desdeDia() && dia[i] <= f.hastaDia()
+                && (f.tipo() == TODOS || tipo[i] == f.tipo())
+                && (f.codigoCategoria() == TODOS || categoria[i] == f.codigoCategoria());
+    }
+
+    // --- Agregaciones ---
+
+    public Totales totalizar(Filtro filtro) {
+        cerrojo.readLock().lock();
+        try {
+            int lineas = 0;
+            long unidades = 0, totalImporte = 0, totalCosto = 0;
+            for (int i = 0; i < tamano; i++) {
+                if (coincide(i, filtro)) {
+                    lineas++;
+                    unidades += cantidad[i];
+                    totalImporte += importe[i];
+                    totalCosto += costo[i];
+                }
+            }
+            return new Totales(lineas, unidades, totalImporte, totalCosto);
+        } finally {
+            cerrojo.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return Importe en centavos por código de categoría (índice = código, ver {@link #nombreCategoria}).
+     */
+    public long[] importePorCategoria(Filtro filtro) {
+        cerrojo.readLock().lock();
+        try {
+            long[] totales = new long[cantidadCategorias];
+            for (int i = 0; i < tamano; i++) {
+                if (coincide(i, filtro)) {
+                    totales[categoria[i]] += importe[i];
+                }
+            }
+            return totales;
+        } finally {
+            cerrojo.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return Importe en centavos por vendedor (índice = id_usuario).
+     */
+    public long[] importePorUsuario(Filtro filtro) {
+        cerrojo.readLock().lock();
+        try {
+            long[] totales = new long[maxIdUsuario + 1];
+            for (int i = 0; i < tamano; i++) {
+                if (coincide(i, filtro)) {
+                    totales[idUsuario[i]] += importe[i];
+                }
+            }
+            return totales;
+        } finally {
+            cerrojo.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return Importe en centavos por día entre desde y hasta (índice 0 = desde).
+     */
+    public long[] importePorDia(Filtro filtro, LocalDate desde, LocalDate hasta) {
+        Filtro acotado = filtro.conFechas(desde, hasta);
+        int primerDia = (int) desde.toEpochDay();
+        cerrojo.readLock().lock();
+        try {
+            long[] totales = new long[(int) (hasta.toEpochDay() - primerDia) + 1];
+            for (int i = 0; i < tamano; i++) {
+                if (coincide(i, acotado)) {
+                    totales[dia[i] - primerDia] += importe[i];
+                }
+            }
+            return totales;
+        } finally {
+            cerrojo.readLock().unlock();
+        }
+    }
+
+    /**
+     * Devuelve las posiciones de las líneas que cumplen el filtro, para profundizar en ellas
+     * con los accesores por fila ({@link #getIdVenta(int)}, {@link #getImporteCentavos(int)}...).
+     * @param limite Número máximo de posiciones.
+     */
+    public int[] filas(Filtro filtro, int limite) {
+        cerrojo.readLock().lock();
+        try {
+            int[] resultado = new int[Math.min(limite, tamano)];
+            int n = 0;
+            for (int i = 0; i < tamano && n < resultado.length; i++) {
+                if (coincide(i, filtro)) {
+                    resultado[n++] = i;
+                }
+            }
+            return Arrays.copyOf(resultado, n);
+        } finally {
+            cerrojo.readLock().unlock();
+        }
+    }
+
+    // --- Accesores por fila (las filas ya añadidas no cambian) ---
+
+    public int getIdVenta(int fila) { return idVenta[fila]; }
+    public int getIdUsuario(int fila) { return idUsuario[fila]; }
+    public LocalDate getFecha(int fila) { return LocalDate.ofEpochDay(dia[fila]); }
+    public int getTipo(int fila) { return tipo[fila]; }
+    public int getIdItem(int fila) { return idItem[fila]; }
+    public int getCodigoCategoria(int fila) { return categoria[fila]; }
+    public int getCantidad(int fila) { return cantidad[fila]; }
+    public long getImporteCentavos(int fila) { return importe[fila]; }
+    public long getCostoCentavos(int fila) { return costo[fila]; }
+
+    public int getCantidadLineas() {
+        cerrojo.readLock().lock();
+        try {
+            return tamano;
+        } finally {
+            cerrojo.readLock().unlock();
+        }
+    }
+
+    public int getCantidadCategorias() {
+        cerrojo.readLock().lock();
+        try {
+            return cantidadCategorias;
+        } finally {
+            cerrojo.readLock().unlock();
+        }
+    }
+
+    /**
+     * Código de diccionario de una categoría, para usarlo en {@link Filtro#conCategoria(int)}.
+     * @param tipoLinea {@link AnalisisVentasDAO#TIPO_PRODUCTO} o {@link AnalisisVentasDAO#TIPO_SERVICIO}.
+     * @return El código, o {@link #TODOS} si la categoría no aparece en ninguna venta cargada.
+     */
+    public int codigoCategoria(int tipoLinea, int idCategoria) {
+        cerrojo.readLock().lock();
+        try {
+            int[] codigos = codigoPorCategoria[tipoLinea];
+            return (idCategoria >= 0 && idCategoria < codigos.length) ? codigos[idCategoria] : TODOS;
+        } finally {
+            cerrojo.readLock().unlock();
+        }
+    }
+
+    /**
+     * Resuelve el nombre de una categoría a partir de su código (consulta la base de datos; solo para mostrar).
+     */
+    public String nombreCategoria(int codigo) {
+        int idCategoria;
+        byte tipoLinea;
+        cerrojo.readLock().lock();
+        try {
+            idCategoria = idCategoriaDeCodigo[codigo];
+            tipoLinea = tipoDeCodigo[codigo];
+        } finally {
+            cerrojo.readLock().unlock();
+        }
+        if (tipoLinea == AnalisisVentasDAO.TIPO_PRODUCTO) {
+            CategoriaProducto c = new CategoriaProductoDAO().obtenerCategoriaProductoPorId(idCategoria);
+            return (c != null) ? c.getNombre() : "Categoría " + idCategoria;
+        }
+        CategoriaServicio c = new CategoriaServicioDAO().obtenerCategoriaServicioPorId(idCategoria);
+        return (c != null) ? c.getNombre() : "Categoría " + idCategoria;
+    }
+}
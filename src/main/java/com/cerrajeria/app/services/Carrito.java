@@ -0,0 +1,219 @@
+package com.cerrajeria.app.services;
+
+import com.cerrajeria.app.models.DetalleVentaProducto;
+import com.cerrajeria.app.models.DetalleVentaServicio;
+import com.cerrajeria.app.models.Producto;
+import com.cerrajeria.app.models.Servicio;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Carrito (ticket) de venta independiente de la interfaz.
+ * Las líneas se indexan por (tipo, id), de modo que sumar un ítem repetido es O(1),
+ * y el total se mantiene de forma incremental en cada alta, cambio o baja de línea.
+ * El stock se valida contra la {@link CatalogoCache}, no contra el objeto mostrado en pantalla.
+ */
+public class Carrito {
+
+    public enum TipoLinea { PRODUCTO, SERVICIO }
+
+    /**
+     * Clave de una línea del carrito.
+     */
+    public record Clave(TipoLinea tipo, int id) { }
+
+    /**
+     * Línea del carrito. Su subtotal se recalcula solo cuando cambia la propia línea.
+     */
+    public static class Linea {
+        private final Clave clave;
+        private final String nombre;
+        private int cantidad;
+        private BigDecimal precioUnitario;
+        private BigDecimal subtotal;
+        private String comentario;
+
+        private Linea(Clave clave, String nombre, int cantidad, BigDecimal precioUnitario, String comentario) {
+            this.clave = clave;
+            this.nombre = nombre;
+            this.cantidad = cantidad;
+            this.precioUnitario = precioUnitario;
+            this.comentario = comentario;
+            this.subtotal = precioUnitario.multiply(BigDecimal.valueOf(cantidad));
+        }
+
+        public Clave getClave() { return clave; }
+        public TipoLinea getTipo() { return clave.tipo(); }
+        public int getId() { return clave.id(); }
+        public String getNombre() { return nombre; }
+        public int getCantidad() { return cantidad; }
+        public BigDecimal getPrecioUnitario() { return precioUnitario; }
+        public BigDecimal getSubtotal() { return subtotal; }
+        public String getComentario() { return comentario; }
+    }
+
+    private final CatalogoCache catalogo;
+    private final Map<Clave, Linea> lineas = new LinkedHashMap<>();
+    private BigDecimal total = BigDecimal.ZERO;
+    private String claveIdempotencia = UUID.randomUUID().toString();
+
+    public Carrito() {
+        this(CatalogoCache.getInstance());
+    }
+
+    public Carrito(CatalogoCache catalogo) {
+        this.catalogo = catalogo;
+    }
+
+    /**
+     * Añade un producto al carrito o suma la cantidad a la línea existente.
+     * El stock se comprueba contra la caché del catálogo sobre la cantidad acumulada.
+     * @param idProducto ID del producto.
+     * @param cantidad Cantidad a añadir (positiva).
+     * @param precioUnitario Precio de venta real por unidad.
+     * @param comentario Comentario de la línea (puede ser vacío).
+     * @return La línea resultante, o null si el producto no existe, está inactivo o no hay stock suficiente.
+     */
+    public Linea agregarProducto(int idProducto, int cantidad, BigDecimal precioUnitario, String comentario) {
+        if (cantidad <= 0 || precioUnitario == null) {
+            return null;
+        }
+        Producto producto = catalogo.obtenerProducto(idProducto);
+        if (producto == null || !producto.isActivo()) {
+            System.err.println("Carrito: producto con ID " + idProducto + " no encontrado o inactivo.");
+            return null;
+        }
+        Clave clave = new Clave(TipoLinea.PRODUCTO, idProducto);
+        Linea existente = lineas.get(clave);
+        int cantidadTotal = cantidad + (existente != null ? existente.cantidad : 0);
+        if (producto.getStock() < cantidadTotal) {
+            System.err.println("Carrito: stock insuficiente para " + producto.getNombre() + ". Stock actual: " + producto.getStock() + ", requerido: " + cantidadTotal);
+            return null;
+        }
+        return fusionar(clave, producto.getNombre(), cantidad, precioUnitario, comentario);
+    }
+
+    /**
+     * Añade un servicio al carrito o suma la cantidad a la línea existente.
+     * @param idServicio ID del servicio.
+     * @param cantidad Cantidad a añadir (positiva).
+     * @param precioUnitario Precio de venta real por unidad.
+     * @param comentario Comentario de la línea (puede ser vacío).
+     * @return La línea resultante, o null si el servicio no existe o está inactivo.
+     */
+    public Linea agregarServicio(int idServicio, int cantidad, BigDecimal precioUnitario, String comentario) {
+        if (cantidad <= 0 || precioUnitario == null) {
+            return null;
+        }
+        Servicio servicio = catalogo.obtenerServicio(idServicio);
+        if (servicio == null || !servicio.isActivo()) {
+            System.err.println("Carrito: servicio con ID " + idServicio + " no encontrado o inactivo.");
+            return null;
+        }
+        return fusionar(new Clave(TipoLinea.SERVICIO, idServicio), servicio.getNombre(), cantidad, precioUnitario, comentario);
+    }
+
+    private Linea fusionar(Clave clave, String nombre, int cantidad, BigDecimal precioUnitario, String comentario) {
+        Linea linea = lineas.get(clave);
+        if (linea == null) {
+            linea = new Linea(clave, nombre, cantidad, precioUnitario, comentario);
+            lineas.put(clave, linea);
+            total = total.add(linea.subtotal);
+            return linea;
+        }
+        BigDecimal subtotalAnterior = linea.subtotal;
+        linea.cantidad += cantidad;
+        linea.precioUnitario = precioUnitario;
+        linea.comentario = comentario;
+        linea.subtotal = precioUnitario.multiply(BigDecimal.valueOf(linea.cantidad));
+        total = total.add(linea.subtotal).subtract(subtotalAnterior);
+        return linea;
+    }
+
+    /**
+     * Elimina una línea del carrito.
+     * @param tipo Tipo de la línea.
+     * @param id ID del producto o servicio.
+     * @return true si la línea existía y fue eliminada.
+     */
+    public boolean quitarLinea(TipoLinea tipo, int id) {
+        Linea linea = lineas.remove(new Clave(tipo, id));
+        if (linea == null) {
+            return false;
+        }
+        total = total.subtract(linea.subtotal);
+        return true;
+    }
+
+    /**
+     * Vacía el carrito y lo prepara para una nueva venta, con una nueva clave de idempotencia.
+     */
+    public void vaciar() {
+        lineas.clear();
+        total = BigDecimal.ZERO;
+        claveIdempotencia = UUID.randomUUID().toString();
+    }
+
+    /**
+     * Clave generada al crear el carrito. Se envía con la venta para que un reintento
+     * del mismo ticket devuelva la venta ya registrada en lugar de duplicarla.
+     */
+    public String getClaveIdempotencia() {
+        return claveIdempotencia;
+    }
+
+    public BigDecimal getTotal() {
+        return total;
+    }
+
+    public boolean estaVacio() {
+        return lineas.isEmpty();
+    }
+
+    public int getCantidadLineas() {
+        return lineas.size();
+    }
+
+    public Linea obtenerLinea(TipoLinea tipo, int id) {
+        return lineas.get(new Clave(tipo, id));
+    }
+
+    public Collection<Linea> getLineas() {
+        return Collections.unmodifiableCollection(lineas.values());
+    }
+
+    /**
+     * Convierte las líneas de producto en detalles listos para {@link VentaService#registrarVenta}.
+     * @return Lista de DetalleVentaProducto (sin ID de venta asignado).
+     */
+    public List<DetalleVentaProducto> aDetallesProducto() {
+        List<DetalleVentaProducto> detalles = new ArrayList<>();
+        for (Linea linea : lineas.values()) {
+            if (linea.getTipo() == TipoLinea.PRODUCTO) {
+                detalles.add(new DetalleVentaProducto(0, linea.getId(), linea.cantidad, linea.precioUnitario, linea.comentario));
+            }
+        }
+        return detalles;
+    }
+
+    /**
+     * Convierte las líneas de servicio en detalles listos para {@link VentaService#registrarVenta}.
+     * @return Lista de DetalleVentaServicio (sin ID de venta asignado).
+     */
+    public List<DetalleVentaServicio> aDetallesServicio() {
+        List<DetalleVentaServicio> detalles = new ArrayList<>();
+        for (Linea linea : lineas.values()) {
+            if (linea.getTipo() == TipoLinea.SERVICIO) {
+                detalles.add(new DetalleVentaServicio(0, linea.getId(), linea.cantidad, linea.precioUnitario, linea.comentario));
+            }
+        }
+        return detalles;
+    }
+}
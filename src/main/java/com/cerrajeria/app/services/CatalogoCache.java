@@ -0,0 +1,172 @@
+package com.cerrajeria.app.services;
+
+import com.cerrajeria.app.dao.ProductoDAO;
+import com.cerrajeria.app.dao.ServicioDAO;
+import com.cerrajeria.app.models.EstadoStock;
+import com.cerrajeria.app.models.Producto;
+import com.cerrajeria.app.models.Servicio;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caché en memoria del catálogo (productos y servicios) compartida por toda la aplicación.
+ * Se carga una sola vez desde la base de datos y se mantiene al día con los cambios de stock
+ * que la propia aplicación realiza (ventas, entradas y salidas), evitando releer la tabla completa.
+ * El stock en caché es solo el de la sucursal de esta terminal (ver ProductoDAO y sql/sucursal.sql).
+ * Como todos los cambios de stock pasan por aquí, la caché avisa de cada uno a {@link VigilanteStock}.
+ */
+public class CatalogoCache {
+
+    private static final CatalogoCache INSTANCIA = new CatalogoCache();
+
+    private final ProductoDAO productoDAO;
+    private final ServicioDAO servicioDAO;
+    private final Map<Integer, Producto> productos = new ConcurrentHashMap<>();
+    private final Map<Integer, Servicio> servicios = new ConcurrentHashMap<>();
+    private volatile boolean cargado = false;
+
+    private CatalogoCache() {
+        this.productoDAO = new ProductoDAO();
+        this.servicioDAO = new ServicioDAO();
+    }
+
+    public static CatalogoCache getInstance() {
+        return INSTANCIA;
+    }
+
+    /**
+     * Recarga por completo productos y servicios desde la base de datos.
+     */
+    public synchronized void recargar() {
+        productos.clear();
+        servicios.clear();
+        for (Producto p : productoDAO.obtenerTodosLosProductos()) {
+            productos.put(p.getIdProducto(), p);
+        }
+        for (Servicio s : servicioDAO.obtenerTodosLosServicios()) {
+            servicios.put(s.getIdServicio(), s);
+        }
+        VigilanteStock.getInstance().reiniciar(productos.values());
+        cargado = true;
+    }
+
+    void asegurarCargado() {
+        if (!cargado) {
+            synchronized (this) {
+                if (!cargado) {
+                    recargar();
+                }
+            }
+        }
+    }
+
+    /**
+     * Obtiene un producto del catálogo. Si no está en caché, se intenta leer de la base de datos.
+     * @param idProducto ID del producto.
+     * @return El producto o null si no existe.
+     */
+    public Producto obtenerProducto(int idProducto) {
+        asegurarCargado();
+        Producto producto = productos.get(idProducto);
+        return (producto != null) ? producto : refrescarProducto(idProducto);
+    }
+
+    /**
+     * Obtiene un servicio del catálogo. Si no está en caché, se intenta leer de la base de datos.
+     * @param idServicio ID del servicio.
+     * @return El servicio o null si no existe.
+     */
+    public Servicio obtenerServicio(int idServicio) {
+        asegurarCargado();
+        Servicio servicio = servicios.get(idServicio);
+        return (servicio != null) ? servicio : refrescarServicio(idServicio);
+    }
+
+    public List<Producto> obtenerProductos() {
+        asegurarCargado();
+        return new ArrayList<>(productos.values());
+    }
+
+    public List<Servicio> obtenerServicios() {
+        asegurarCargado();
+        return new ArrayList<>(servicios.values());
+    }
+
+    /**
+     * Relee un único producto desde la base de datos y reemplaza su entrada en caché.
+     * @param idProducto ID del producto.
+     * @return El producto actualizado, o null si ya no existe.
+     */
+    public Producto refrescarProducto(int idProducto) {
+        Producto producto = productoDAO.obtenerProductoPorId(idProducto);
+        if (producto != null) {
+            Producto anterior = productos.put(idProducto, producto);
+            VigilanteStock.getInstance().registrarCambio(producto,
+                    (anterior != null) ? anterior.getStock() : producto.getStock());
+        } else {
+            productos.remove(idProducto);
+            VigilanteStock.getInstance().quitar(idProducto);
+        }
+        return producto;
+    }
+
+    /**
+     * Relee un único servicio desde la base de datos y reemplaza su entrada en caché.
+     * @param idServicio ID del servicio.
+     * @return El servicio actualizado, o null si ya no existe.
+     */
+    public Servicio refrescarServicio(int idServicio) {
+        Servicio servicio = servicioDAO.obtenerServicioPorId(idServicio);
+        if (servicio != null) {
+            servicios.put(idServicio, servicio);
+        } else {
+            servicios.remove(idServicio);
+        }
+        return servicio;
+    }
+
+    /**
+     * Aplica a la caché una variación de stock ya confirmada en la base de datos, recalculando
+     * el estado del producto en memoria en lugar de volver a leerlo.
+     * @param idProducto ID del producto.
+     * @param delta Unidades a sumar (positivo) o restar (negativo).
+     */
+    public void ajustarStock(int idProducto, int delta) {
+        Producto producto = productos.computeIfPresent(idProducto, (id, p) -> {
+            p.setStock(p.getStock() + delta);
+            p.setEstado(EstadoStock.de(p.getStock(), p.getStockMinimo()).getValor());
+            return p;
+        });
+        if (producto != null) {
+            VigilanteStock.getInstance().registrarCambio(producto, producto.getStock() - delta);
+        }
+    }
+
+    /**
+     * Aplica a la caché, en una sola pasada, los precios nuevos ya confirmados en la base de datos
+     * (ajuste masivo de precios), sin releer los productos.
+     * @param precios Mapa ID de producto -> precio nuevo.
+     */
+    public void actualizarPrecios(Map<Integer, BigDecimal> precios) {
+        for (Map.Entry<Integer, BigDecimal> precio : precios.entrySet()) {
+            productos.computeIfPresent(precio.getKey(), (id, p) -> {
+                p.setPrecio(precio.getValue());
+                return p;
+            });
+        }
+    }
+
+    /**
+     * Obtiene el stock actual conocido para un producto.
+     * @param idProducto ID del producto.
+     * @return Stock en caché, o -1 si el producto no existe.
+     */
+    public int obtenerStock(int idProducto) {
+        Producto producto = obtenerProducto(idProducto);
+        return (producto != null) ? producto.getStock() : -1;
+    }
+}
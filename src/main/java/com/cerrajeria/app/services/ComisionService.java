@@ -4,7 +4,10 @@ import com.cerrajeria.app.dao.*;
 import com.cerrajeria.app.models.*;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 /**
@@ -135,8 +138,20 @@ public class ComisionService {
         }
 
         ComisionCategoriaProducto comisionConfig = comisionCategoriaProductoDAO.obtenerComisionPorCategoriaProductoId(producto.getIdCategoriaProducto());
+        return calcularComisionProducto(detalleProducto, producto, comisionConfig);
+    }
+
+    /**
+     * Calcula la comisión de una línea de producto con el producto y la configuración ya resueltos,
+     * sin consultar la base de datos. La ganancia se mide con el costo fijado en la línea al vender,
+     * igual que al reconstruir el resumen diario; el costo actual del producto solo se usa en líneas
+     * antiguas sin costo registrado.
+     */
+    public BigDecimal calcularComisionProducto(DetalleVentaProducto detalleProducto, Producto producto, ComisionCategoriaProducto comisionConfig) {
         if (comisionConfig != null) {
-            BigDecimal gananciaUnitaria = detalleProducto.getPrecioUnitarioFinal().subtract(producto.getCostoInterno());
+            BigDecimal costoUnitario = (detalleProducto.getCostoUnitario() != null) ? detalleProducto.getCostoUnitario()
+                    : (producto.getCostoInterno() != null) ? producto.getCostoInterno() : BigDecimal.ZERO;
+            BigDecimal gananciaUnitaria = detalleProducto.getPrecioUnitarioFinal().subtract(costoUnitario);
             BigDecimal comisionUnit = gananciaUnitaria.multiply(BigDecimal.valueOf(comisionConfig.getPorcentajeComision()))
                     .divide(BigDecimal.valueOf(100), 2, BigDecimal.ROUND_HALF_UP);
             return comisionUnit.multiply(BigDecimal.valueOf(detalleProducto.getCantidad()));
@@ -181,6 +196,54 @@ public class ComisionService {
         return exito;
     }
 
+    /**
+     * Construye (sin insertar) las comisiones automáticas de una venta.
+     * Los productos se resuelven contra la caché del catálogo y las configuraciones
+     * de comisión se reciben ya cargadas, de modo que no hay consultas por línea.
+     * @param venta Venta confirmada.
+     * @param detallesProductos Líneas de producto de la venta.
+     * @param detallesServicios Líneas de servicio de la venta.
+     * @param configPorCategoria Configuración de comisión indexada por ID de categoría de producto.
+     * @return Lista de comisiones con monto mayor que cero.
+     */
+    public List<Comision> construirComisionesAutomaticas(Venta venta, List<DetalleVentaProducto> detallesProductos,
+                                                         List<DetalleVentaServicio> detallesServicios,
+                                                         Map<Integer, ComisionCategoriaProducto> configPorCategoria) {
+        List<Comision> comisiones = new ArrayList<>();
+        CatalogoCache catalogo = CatalogoCache.getInstance();
+
+        for (DetalleVentaProducto dp : detallesProductos) {
+            Producto producto = catalogo.obtenerProducto(dp.getIdProducto());
+            if (producto == null) {
+                System.err.println("Producto no encontrado: ID " + dp.getIdProducto());
+                continue;
+            }
+            BigDecimal montoComision = calcularComisionProducto(dp, producto, configPorCategoria.get(producto.getIdCategoriaProducto()));
+            if (montoComision.compareTo(BigDecimal.ZERO) > 0) {
+                comisiones.add(new Comision(venta.getIdUsuario(), venta.getIdVenta(), null, montoComision, "Pendiente", "Comisión automática por producto", false, null));
+            }
+        }
+
+        for (DetalleVentaServicio ds : detallesServicios) {
+            BigDecimal montoComision = calcularComisionServicio(ds);
+            if (montoComision.compareTo(BigDecimal.ZERO) > 0) {
+                comisiones.add(new Comision(venta.getIdUsuario(), venta.getIdVenta(), ds.getIdServicio(), montoComision, "Pendiente", "Comisión automática por servicio", false, null));
+            }
+        }
+        return comisiones;
+    }
+
+    /**
+     * Carga todas las configuraciones de comisión por categoría, indexadas por ID de categoría.
+     */
+    public Map<Integer, ComisionCategoriaProducto> obtenerConfiguracionPorCategoria() {
+        Map<Integer, ComisionCategoriaProducto> configPorCategoria = new HashMap<>();
+        for (ComisionCategoriaProducto config : comisionCategoriaProductoDAO.obtenerTodasLasComisionesCategoriaProducto()) {
+            configPorCategoria.put(config.getIdCategoriaProducto(), config);
+        }
+        return configPorCategoria;
+    }
+
     public boolean actualizarComisionCompleta(Comision comision) {
         return comisionDAO.actualizarComision(comision);
     }
@@ -0,0 +1,294 @@
+package com.cerrajeria.app.services;
+
+import com.cerrajeria.app.dao.ComisionDAO;
+import com.cerrajeria.app.dao.ComisionPendienteDAO;
+import com.cerrajeria.app.dao.DetalleVentaProductoDAO;
+import com.cerrajeria.app.dao.DetalleVentaServicioDAO;
+import com.cerrajeria.app.dao.ResumenVentaDiarioDAO;
+import com.cerrajeria.app.dao.VentaDAO;
+import com.cerrajeria.app.database.DatabaseManager;
+import com.cerrajeria.app.models.*;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Trabajador en segundo plano que genera las comisiones automáticas de las ventas confirmadas.
+ * Lee la cola persistente 'comision_pendiente' por lotes, calcula las comisiones sin consultas
+ * por línea y las inserta junto con la marca de "procesada" en una única transacción,
+ * de modo que una venta nunca genera sus comisiones dos veces.
+ * Con el mismo marcador, pero en su propia transacción y con su propio contador de intentos,
+ * suma cada venta al resumen diario ('resumen_venta_diario'): cada venta confirmada se agrega
+ * una sola vez, aunque sus comisiones fallen o se dejen de reintentar.
+ */
+public class ComisionWorker {
+
+    private static final int TAMANO_LOTE = 50;
+    private static final int MAX_INTENTOS = 5;
+    private static final long INTERVALO_SEGUNDOS = 10;
+    private static final int DIAS_REVISION_HUERFANAS = 2;
+
+    private static final ComisionWorker INSTANCIA = new ComisionWorker();
+
+    private final ComisionPendienteDAO comisionPendienteDAO;
+    private final ComisionDAO comisionDAO;
+    private final VentaDAO ventaDAO;
+    private final DetalleVentaProductoDAO detalleVentaProductoDAO;
+    private final DetalleVentaServicioDAO detalleVentaServicioDAO;
+    private final ComisionService comisionService;
+    private final ResumenVentaDiarioDAO resumenVentaDiarioDAO;
+    private final ReporteService reporteService;
+
+    private final AtomicLong ventasProcesadas = new AtomicLong();
+    private final AtomicLong lotesFallidos = new AtomicLong();
+    private ScheduledExecutorService executor;
+
+    /**
+     * Paso del procesamiento que se ejecuta dentro de una transacción para un grupo de ventas.
+     */
+    @FunctionalInterface
+    private interface PasoLote {
+        void ejecutar(Connection conn, List<Integer> idsVenta) throws SQLException;
+    }
+
+    /**
+     * Ventas y detalles de un lote, leídos una sola vez para los dos pasos.
+     */
+    private record DatosLote(Map<Integer, Venta> ventas,
+                             Map<Integer, List<DetalleVentaProducto>> productosPorVenta,
+                             Map<Integer, List<DetalleVentaServicio>> serviciosPorVenta,
+                             Map<Integer, ComisionCategoriaProducto> configPorCategoria) {
+
+        Venta venta(int idVenta) throws SQLException {
+            Venta venta = ventas.get(idVenta);
+            if (venta == null) {
+                // La cola referencia ventas existentes: si falta, es que no se pudo leer
+                throw new SQLException("No se pudo leer la venta ID " + idVenta);
+            }
+            return venta;
+        }
+
+        List<DetalleVentaProducto> productos(int idVenta) {
+            return productosPorVenta.getOrDefault(idVenta, List.of());
+        }
+
+        List<DetalleVentaServicio> servicios(int idVenta) {
+            return serviciosPorVenta.getOrDefault(idVenta, List.of());
+        }
+    }
+
+    private ComisionWorker() {
+        this.comisionPendienteDAO = new ComisionPendienteDAO();
+        this.comisionDAO = new ComisionDAO();
+        this.ventaDAO = new VentaDAO();
+        this.detalleVentaProductoDAO = new DetalleVentaProductoDAO();
+        this.detalleVentaServicioDAO = new DetalleVentaServicioDAO();
+        this.comisionService = new ComisionService();
+        this.resumenVentaDiarioDAO = new ResumenVentaDiarioDAO();
+        this.reporteService = new ReporteService();
+    }
+
+    public static ComisionWorker getInstance() {
+        return INSTANCIA;
+    }
+
+    /**
+     * Arranca el procesamiento periódico. Al iniciar, vuelve a encolar las ventas recientes
+     * que quedaron sin marcador en la cola.
+     */
+    public synchronized void iniciar() {
+        if (executor != null) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "comision-worker");
+            t.setDaemon(true);
+            return t;
+        });
+        executor.execute(() -> comisionPendienteDAO.encolarVentasSinMarcador(DIAS_REVISION_HUERFANAS));
+        executor.scheduleWithFixedDelay(this::procesarPendientes, 0, INTERVALO_SEGUNDOS, TimeUnit.SECONDS);
+        System.out.println("Generador de comisiones en segundo plano iniciado.");
+    }
+
+    public synchronized void detener() {
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+    /**
+     * Solicita un procesamiento inmediato tras registrar una venta, sin esperar al siguiente ciclo.
+     */
+    public synchronized void notificarVentaRegistrada() {
+        if (executor != null) {
+            executor.execute(this::procesarPendientes);
+        }
+    }
+
+    /**
+     * Procesa lotes mientras haya ventas pendientes.
+     */
+    private void procesarPendientes() {
+        try {
+            while (procesarLote() == TAMANO_LOTE) {
+                // Seguir mientras los lotes salgan completos
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Error inesperado en el generador de comisiones: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Procesa un lote de ventas pendientes: primero las suma al resumen diario y después genera sus
+     * comisiones, cada paso en su propia transacción.
+     * Si un paso falla para el lote, sus ventas se reintentan una a una, de modo que solo
+     * la venta que provoca el error suma un intento fallido.
+     * @return Número de ventas procesadas en el paso con más ventas (0 si no había pendientes).
+     */
+    public int procesarLote() {
+        List<Integer> idsResumen = comisionPendienteDAO.obtenerPendientesResumen(TAMANO_LOTE, MAX_INTENTOS);
+        List<Integer> idsComision = comisionPendienteDAO.obtenerPendientes(TAMANO_LOTE, MAX_INTENTOS);
+        if (idsResumen.isEmpty() && idsComision.isEmpty()) {
+            return 0;
+        }
+
+        Set<Integer> todas = new LinkedHashSet<>(idsResumen);
+        todas.addAll(idsComision);
+        List<Integer> idsVenta = new ArrayList<>(todas);
+        DatosLote datos = new DatosLote(ventaDAO.obtenerVentasPorIds(idsVenta),
+                detalleVentaProductoDAO.obtenerDetallesPorVentas(idsVenta),
+                detalleVentaServicioDAO.obtenerDetallesPorVentas(idsVenta),
+                comisionService.obtenerConfiguracionPorCategoria());
+
+        int resumidas = procesarConReintentos(idsResumen, (conn, ids) -> sumarAlResumen(conn, ids, datos),
+                "sumar ventas al resumen diario", comisionPendienteDAO::registrarFalloResumen);
+        int procesadas = procesarConReintentos(idsComision, (conn, ids) -> generarComisiones(conn, ids, datos),
+                "generar comisiones", comisionPendienteDAO::registrarFallo);
+        return Math.max(resumidas, procesadas);
+    }
+
+    /**
+     * Ejecuta un paso para todo el lote en una transacción y, si falla, venta a venta.
+     * @return Número de ventas procesadas.
+     */
+    private int procesarConReintentos(List<Integer> idsVenta, PasoLote paso, String descripcion,
+                                      BiConsumer<Integer, String> registrarFallo) {
+        if (idsVenta.isEmpty()) {
+            return 0;
+        }
+        try {
+            ejecutarEnTransaccion(paso, idsVenta);
+            return idsVenta.size();
+        } catch (SQLException | RuntimeException e) {
+            System.err.println("Error al " + descripcion + " en segundo plano; se reintenta venta a venta: " + e.getMessage());
+            lotesFallidos.incrementAndGet();
+        }
+
+        int procesadas = 0;
+        for (Integer idVenta : idsVenta) {
+            try {
+                ejecutarEnTransaccion(paso, List.of(idVenta));
+                procesadas++;
+            } catch (SQLException | RuntimeException e) {
+                System.err.println("Error al " + descripcion + " (venta ID " + idVenta + "): " + e.getMessage());
+                registrarFallo.accept(idVenta, String.valueOf(e.getMessage()));
+            }
+        }
+        return procesadas;
+    }
+
+    /**
+     * Suma al resumen diario las ventas que este proceso consigue marcar como resumidas.
+     */
+    private void sumarAlResumen(Connection conn, List<Integer> idsVenta, DatosLote datos) throws SQLException {
+        List<ResumenVentaDiarioDAO.FilaResumen> filasResumen = new ArrayList<>();
+        for (Integer idVenta : comisionPendienteDAO.marcarResumidas(conn, idsVenta)) {
+            filasResumen.addAll(reporteService.construirFilasResumen(datos.venta(idVenta), datos.productos(idVenta),
+                    datos.servicios(idVenta), datos.configPorCategoria(), comisionService));
+        }
+        resumenVentaDiarioDAO.acumular(conn, filasResumen);
+    }
+
+    /**
+     * Inserta las comisiones automáticas de las ventas y las marca como procesadas.
+     */
+    private void generarComisiones(Connection conn, List<Integer> idsVenta, DatosLote datos) throws SQLException {
+        // Idempotencia: las ventas que ya tienen comisiones automáticas solo se marcan
+        Set<Integer> yaGeneradas = comisionDAO.obtenerVentasConComisionAutomatica(conn, idsVenta);
+        List<Comision> nuevas = new ArrayList<>();
+        for (Integer idVenta : idsVenta) {
+            Venta venta = datos.venta(idVenta);
+            if (!yaGeneradas.contains(idVenta)) {
+                nuevas.addAll(comisionService.construirComisionesAutomaticas(venta, datos.productos(idVenta),
+                        datos.servicios(idVenta), datos.configPorCategoria()));
+            }
+        }
+        comisionDAO.insertarComisionesLote(conn, nuevas);
+        comisionPendienteDAO.marcarProcesadas(conn, idsVenta);
+
+        ventasProcesadas.addAndGet(idsVenta.size());
+        System.out.println("Comisiones generadas en segundo plano: " + nuevas.size() + " para " + idsVenta.size() + " ventas.");
+    }
+
+    /**
+     * Ejecuta un paso en una única transacción.
+     * @throws SQLException Si algo falla; la transacción ya ha sido revertida.
+     */
+    private void ejecutarEnTransaccion(PasoLote paso, List<Integer> idsVenta) throws SQLException {
+        Connection conn = null;
+        try {
+            conn = DatabaseManager.getConnection();
+            if (conn == null) {
+                throw new SQLException("No se pudo establecer la conexión a la base de datos.");
+            }
+            conn.setAutoCommit(false);
+            paso.ejecutar(conn, idsVenta);
+            conn.commit();
+        } catch (SQLException | RuntimeException e) {
+            if (conn != null) {
+                try {
+                    conn.rollback();
+                } catch (SQLException rollbackEx) {
+                    System.err.println("Error al revertir la transacción de comisiones: " + rollbackEx.getMessage());
+                }
+            }
+            throw e;
+        } finally {
+            if (conn != null) {
+                try {
+                    conn.setAutoCommit(true);
+                    conn.close();
+                } catch (SQLException closeEx) {
+                    System.err.println("Error al cerrar la conexión: " + closeEx.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Número de ventas que aún esperan la generación de comisiones (métrica de atraso).
+     * @return Ventas pendientes en la cola, o -1 si no se pudo consultar.
+     */
+    public int obtenerBacklog() {
+        return comisionPendienteDAO.contarPendientes();
+    }
+
+    public long getVentasProcesadas() {
+        return ventasProcesadas.get();
+    }
+
+    public long getLotesFallidos() {
+        return lotesFallidos.get();
+    }
+}
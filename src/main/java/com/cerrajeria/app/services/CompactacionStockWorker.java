@@ -0,0 +1,120 @@
+package com.cerrajeria.app.services;
+
+import com.cerrajeria.app.dao.LibroStockDAO;
+import com.cerrajeria.app.dao.StockSnapshotDAO;
+import com.cerrajeria.app.dao.StockSucursalDAO;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Trabajador en segundo plano que mantiene el libro de stock (ver sql/libro_stock.sql).
+ * Una vez al día pliega en 'stock_compactado' los movimientos más antiguos que el periodo de
+ * retención, concilia el stock de cada sucursal con el libro, informando de los descuadres, y
+ * recalcula producto.stock como total de la empresa (ver sql/sucursal.sql).
+ *
+ * Los movimientos compactados no se borran: pasan a 'movimiento_stock_archivo', y el inventario a fecha
+ * y la exportación de movimientos leen el historial completo en la vista 'movimiento_stock_historico'.
+ * Además nunca se compacta más allá de la última foto diaria de stock, porque las fotos se toman restando
+ * al stock actual los movimientos posteriores al día.
+ */
+public class CompactacionStockWorker {
+
+    private static final long INTERVALO_HORAS = 24;
+    private static final long RETRASO_INICIAL_MINUTOS = 10;
+    // Los reportes y el planificador de reposición leen como mucho un año de movimientos
+    private static final int DIAS_RETENCION = 400;
+    private static final int MOVIMIENTOS_POR_LOTE = 5000;
+
+    private static final CompactacionStockWorker INSTANCIA = new CompactacionStockWorker();
+
+    private final LibroStockDAO libroStockDAO;
+    private final StockSnapshotDAO stockSnapshotDAO;
+    private final StockSucursalDAO stockSucursalDAO;
+    private final MovimientoStockService movimientoStockService;
+    private ScheduledExecutorService executor;
+
+    private CompactacionStockWorker() {
+        this.libroStockDAO = new LibroStockDAO();
+        this.stockSnapshotDAO = new StockSnapshotDAO();
+        this.stockSucursalDAO = new StockSucursalDAO();
+        this.movimientoStockService = new MovimientoStockService();
+    }
+
+    public static CompactacionStockWorker getInstance() {
+        return INSTANCIA;
+    }
+
+    public synchronized void iniciar() {
+        if (executor != null) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "compactacion-stock");
+            t.setDaemon(true);
+            return t;
+        });
+        // Se deja arrancar la aplicación (y tomar la foto de stock pendiente) antes del primer ciclo
+        executor.scheduleWithFixedDelay(this::ejecutarCiclo, RETRASO_INICIAL_MINUTOS,
+                TimeUnit.HOURS.toMinutes(INTERVALO_HORAS), TimeUnit.MINUTES);
+        System.out.println("Compactación del libro de stock en segundo plano iniciada.");
+    }
+
+    public synchronized void detener() {
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+    private void ejecutarCiclo() {
+        try {
+            compactar();
+            List<LibroStockDAO.Descuadre> descuadres = movimientoStockService.conciliarStock();
+            if (!descuadres.isEmpty()) {
+                System.err.println("Stock descuadrado con el libro de movimientos en " + descuadres.size() + " productos:");
+                for (LibroStockDAO.Descuadre d : descuadres) {
+                    System.err.println("  Sucursal " + d.idSucursal() + ", " + d.nombre() + " (ID " + d.idProducto()
+                            + "): stock " + d.stockProducto() + ", libro " + d.stockLibro());
+                }
+            }
+            stockSucursalDAO.actualizarTotales();
+        } catch (RuntimeException e) {
+            System.err.println("Error inesperado en la compactación del libro de stock: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Compacta por lotes los movimientos anteriores al corte (retención, acotada por la última foto de stock).
+     * @return Número de movimientos compactados.
+     */
+    public int compactar() {
+        LocalDate ultimaFoto = stockSnapshotDAO.obtenerUltimaFecha();
+        if (ultimaFoto == null) {
+            return 0; // Sin fotos no se puede reconstruir el pasado sin los movimientos
+        }
+        LocalDateTime corte = LocalDate.now().minusDays(DIAS_RETENCION).atStartOfDay();
+        LocalDateTime finFoto = ultimaFoto.plusDays(1).atStartOfDay();
+        if (finFoto.isBefore(corte)) {
+            corte = finFoto;
+        }
+
+        int total = 0;
+        int lote;
+        do {
+            lote = libroStockDAO.compactarLote(corte, MOVIMIENTOS_POR_LOTE);
+            if (lote > 0) {
+                total += lote;
+            }
+        } while (lote == MOVIMIENTOS_POR_LOTE);
+
+        if (total > 0) {
+            System.out.println("Libro de stock compactado: " + total + " movimientos anteriores a " + corte);
+        }
+        return total;
+    }
+}
@@ -0,0 +1,347 @@
+package com.cerrajeria.app.services;
+
+import com.cerrajeria.app.models.DetalleVentaProducto;
+import com.cerrajeria.app.models.DetalleVentaServicio;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Diario local de ventas para seguir cobrando cuando la base de datos no está disponible.
+ * Es un archivo de solo anexado (una línea compacta por registro) que se sincroniza a disco
+ * en cada anotación. Un hilo en segundo plano lo reproduce en orden a través del flujo normal
+ * de {@link VentaService} cuando vuelve la conexión; la clave de idempotencia de cada venta
+ * garantiza que reproducirla dos veces no la duplica.
+ *
+ * Formato de línea (campos separados por '|'):
+ * <pre>
+ * V|clave|idUsuario|epochMillis|idProd,cant,precio,comentario;...|idServ,cant,precio,comentario;...
+ * A|clave            (venta registrada en la base de datos)
+ * C|clave|motivo     (conflicto: la venta no se pudo registrar y requiere revisión)
+ * </pre>
+ * Los comentarios y motivos van en Base64 para no interferir con los separadores.
+ */
+public class DiarioVentasOffline {
+
+    /**
+     * Venta anotada en el diario.
+     */
+    public record Registro(String claveIdempotencia, int idUsuario, LocalDateTime fecha,
+                           List<DetalleVentaProducto> productos, List<DetalleVentaServicio> servicios) { }
+
+    /**
+     * Venta que no se pudo registrar al reproducir el diario (por ejemplo, dejaría el stock en negativo).
+     */
+    public record Conflicto(Registro registro, String motivo) { }
+
+    private static final long INTERVALO_SEGUNDOS = 15;
+    private static final Path ARCHIVO = Paths.get(System.getProperty("user.home"), ".cerrajeria", "diario_ventas.log");
+
+    private static final DiarioVentasOffline INSTANCIA = new DiarioVentasOffline();
+
+    private final Map<String, Registro> pendientes = new LinkedHashMap<>();
+    private final Map<String, Conflicto> conflictos = new LinkedHashMap<>();
+    private FileChannel canal;
+    // Hay anotaciones posteriores a la última compactación (o el archivo cargado al iniciar sin compactar)
+    private boolean pendienteCompactar = false;
+    private ScheduledExecutorService executor;
+
+    private DiarioVentasOffline() {
+        cargar();
+    }
+
+    public static DiarioVentasOffline getInstance() {
+        return INSTANCIA;
+    }
+
+    /**
+     * Arranca la reproducción periódica del diario.
+     */
+    public synchronized void iniciar() {
+        if (executor != null) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "diario-ventas");
+            t.setDaemon(true);
+            return t;
+        });
+        executor.scheduleWithFixedDelay(this::reproducir, 0, INTERVALO_SEGUNDOS, TimeUnit.SECONDS);
+        System.out.println("Reproductor del diario de ventas offline iniciado. Pendientes: " + getPendientes());
+    }
+
+    public synchronized void detener() {
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+    /**
+     * Anota una venta en el diario y la sincroniza a disco antes de devolver el control.
+     * @return true si la venta quedó guardada en disco.
+     */
+    public synchronized boolean anotar(int idUsuario, List<DetalleVentaProducto> productos,
+                                       List<DetalleVentaServicio> servicios, String claveIdempotencia) {
+        if (claveIdempotencia == null) {
+            System.err.println("Error al anotar venta en el diario: falta la clave de idempotencia.");
+            return false;
+        }
+        Registro registro = new Registro(claveIdempotencia, idUsuario, LocalDateTime.now(), productos, servicios);
+        try {
+            escribir(formatear(registro));
+            pendientes.put(claveIdempotencia, registro);
+            System.out.println("Venta anotada en el diario offline. Pendientes: " + pendientes.size());
+            return true;
+        } catch (IOException e) {
+            System.err.println("Error al anotar venta en el diario offline: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Número de ventas anotadas que aún no se han registrado en la base de datos.
+     */
+    public synchronized int getPendientes() {
+        return pendientes.size();
+    }
+
+    public synchronized int getCantidadConflictos() {
+        return conflictos.size();
+    }
+
+    public synchronized List<Conflicto> getConflictos() {
+        return new ArrayList<>(conflictos.values());
+    }
+
+    /**
+     * Reproduce las ventas pendientes en orden de anotación. Se detiene en el primer error
+     * transitorio (la base de datos sigue sin responder) y lo reintenta en el siguiente ciclo.
+     * Un error definitivo (stock insuficiente, producto inexistente) aparta la venta como conflicto
+     * para no bloquear a las siguientes.
+     */
+    public void reproducir() {
+        VentaService ventaService = new VentaService();
+        Registro registro;
+        while ((registro = siguientePendiente()) != null) {
+            try {
+                ventaService.reproducirVentaDelDiario(registro);
+                confirmar(registro);
+            } catch (SQLException e) {
+                if (VentaService.esErrorTransitorio(e)) {
+                    System.err.println("Diario offline: la base de datos sigue sin responder (" + e.getMessage() + ").");
+                    return;
+                }
+                apartarConflicto(registro, e);
+            } catch (RuntimeException e) {
+                System.err.println("Error inesperado al reproducir el diario offline: " + e.getMessage());
+                return;
+            }
+        }
+        compactar();
+    }
+
+    private synchronized Registro siguientePendiente() {
+        Iterator<Registro> it = pendientes.values().iterator();
+        return it.hasNext() ? it.next() : null;
+    }
+
+    private synchronized void confirmar(Registro registro) {
+        try {
+            escribir("A|" + registro.claveIdempotencia());
+        } catch (IOException e) {
+            // Si se pierde la marca, reproducirla otra vez es inocuo gracias a la clave de idempotencia
+            System.err.println("Error al marcar venta del diario como registrada: " + e.getMessage());
+        }
+        pendientes.remove(registro.claveIdempotencia());
+    }
+
+    private synchronized void apartarConflicto(Registro registro, SQLException e) {
+        String motivo = e.getMessage();
+        System.err.println("Diario offline: conflicto en la venta " + registro.claveIdempotencia() + ": " + motivo);
+        try {
+            escribir("C|" + registro.claveIdempotencia() + "|" + codificar(motivo));
+        } catch (IOException ioEx) {
+            System.err.println("Error al registrar conflicto en el diario offline: " + ioEx.getMessage());
+        }
+        pendientes.remove(registro.claveIdempotencia());
+        conflictos.put(registro.claveIdempotencia(), new Conflicto(registro, motivo));
+        // La venta no llegó a la base de datos: se devuelve a la caché el stock descontado al anotarla
+        for (DetalleVentaProducto detalle : registro.productos()) {
+            CatalogoCache.getInstance().ajustarStock(detalle.getIdProducto(), detalle.getCantidad());
+        }
+    }
+
+    /**
+     * Cuando no quedan pendientes, reescribe el diario conservando solo los conflictos,
+     * para que el archivo no crezca indefinidamente. Si no se anotó nada desde la última
+     * compactación no hace nada: se llama en cada ciclo de reproducción.
+     */
+    private synchronized void compactar() {
+        if (!pendientes.isEmpty() || !pendienteCompactar) {
+            return;
+        }
+        try {
+            if (conflictos.isEmpty() && !Files.exists(ARCHIVO)) {
+                pendienteCompactar = false;
+                return;
+            }
+            StringBuilder contenido = new StringBuilder();
+            for (Conflicto conflicto : conflictos.values()) {
+                contenido.append(formatear(conflicto.registro())).append('\n');
+                contenido.append("C|").append(conflicto.registro().claveIdempotencia()).append('|')
+                        .append(codificar(conflicto.motivo())).append('\n');
+            }
+            cerrarCanal();
+            Path temporal = ARCHIVO.resolveSibling(ARCHIVO.getFileName() + ".tmp");
+            try (FileChannel tmp = FileChannel.open(temporal, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                tmp.write(ByteBuffer.wrap(contenido.toString().getBytes(StandardCharsets.UTF_8)));
+                tmp.force(true);
+            }
+            Files.move(temporal, ARCHIVO, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            pendienteCompactar = false;
+        } catch (IOException e) {
+            System.err.println("Error al compactar el diario offline: " + e.getMessage());
+        }
+    }
+
+    // --- Persistencia ---
+
+    private void cargar() {
+        if (!Files.exists(ARCHIVO)) {
+            return;
+        }
+        pendienteCompactar = true; // Puede traer ventas ya confirmadas de la sesión anterior
+        try {
+            for (String linea : Files.readAllLines(ARCHIVO, StandardCharsets.UTF_8)) {
+                try {
+                    aplicarLinea(linea);
+                } catch (RuntimeException e) {
+                    // Una línea incompleta (corte durante la escritura) no se llegó a confirmar al cajero
+                    System.err.println("Diario offline: se ignora una línea ilegible.");
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error al leer el diario offline: " + e.getMessage());
+        }
+    }
+
+    private void aplicarLinea(String linea) {
+        if (linea.isBlank()) {
+            return;
+        }
+        String[] campos = linea.split("\\|", -1);
+        switch (campos[0]) {
+            case "V" -> {
+                Registro registro = parsear(campos);
+                pendientes.put(registro.claveIdempotencia(), registro);
+            }
+            case "A" -> pendientes.remove(campos[1]);
+            case "C" -> {
+                Registro registro = pendientes.remove(campos[1]);
+                if (registro != null) {
+                    conflictos.put(campos[1], new Conflicto(registro, decodificar(campos[2])));
+                }
+            }
+            default -> throw new IllegalArgumentException("Tipo de registro desconocido: " + campos[0]);
+        }
+    }
+
+    private void escribir(String linea) throws IOException {
+        if (canal == null) {
+            Files.createDirectories(ARCHIVO.getParent());
+            canal = FileChannel.open(ARCHIVO, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap((linea + "\n").getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            canal.write(buffer);
+        }
+        canal.force(false);
+        pendienteCompactar = true;
+    }
+
+    private void cerrarCanal() throws IOException {
+        if (canal != null) {
+            canal.close();
+            canal = null;
+        }
+    }
+
+    private static String formatear(Registro registro) {
+        StringBuilder sb = new StringBuilder("V|");
+        sb.append(registro.claveIdempotencia()).append('|')
+                .append(registro.idUsuario()).append('|')
+                .append(registro.fecha().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()).append('|');
+        for (int i = 0; i < registro.productos().size(); i++) {
+            DetalleVentaProducto d = registro.productos().get(i);
+            if (i > 0) sb.append(';');
+            sb.append(d.getIdProducto()).append(',').append(d.getCantidad()).append(',')
+                    .append(d.getPrecioUnitarioFinal().toPlainString()).append(',').append(codificar(d.getDescripcion()));
+        }
+        sb.append('|');
+        for (int i = 0; i < registro.servicios().size(); i++) {
+            DetalleVentaServicio d = registro.servicios().get(i);
+            if (i > 0) sb.append(';');
+            sb.append(d.getIdServicio()).append(',').append(d.getCantidad()).append(',')
+                    .append(d.getPrecioUnitarioFinal().toPlainString()).append(',').append(codificar(d.getDescripcion()));
+        }
+        return sb.toString();
+    }
+
+    private static Registro parsear(String[] campos) {
+        LocalDateTime fecha = LocalDateTime.ofInstant(Instant.ofEpochMilli(Long.parseLong(campos[3])), ZoneId.systemDefault());
+        List<DetalleVentaProducto> productos = new ArrayList<>();
+        if (!campos[4].isEmpty()) {
+            for (String item : campos[4].split(";")) {
+                String[] f = item.split(",", -1);
+                productos.add(new DetalleVentaProducto(0, Integer.parseInt(f[0]), Integer.parseInt(f[1]),
+                        new BigDecimal(f[2]), decodificar(f[3])));
+            }
+        }
+        List<DetalleVentaServicio> servicios = new ArrayList<>();
+        if (!campos[5].isEmpty()) {
+            for (String item : campos[5].split(";")) {
+                String[] f = item.split(",", -1);
+                servicios.add(new DetalleVentaServicio(0, Integer.parseInt(f[0]), Integer.parseInt(f[1]),
+                        new BigDecimal(f[2]), decodificar(f[3])));
+            }
+        }
+        return new Registro(campos[1], Integer.parseInt(campos[2]), fecha, productos, servicios);
+    }
+
+    private static String codificar(String texto) {
+        if (texto == null || texto.isEmpty()) {
+            return "";
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(texto.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decodificar(String texto) {
+        if (texto.isEmpty()) {
+            return "";
+        }
+        return new String(Base64.getUrlDecoder().decode(texto), StandardCharsets.UTF_8);
+    }
+}
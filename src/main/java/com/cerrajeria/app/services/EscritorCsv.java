@@ -0,0 +1,44 @@
+package com.cerrajeria.app.services;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Escribe filas en formato CSV (RFC 4180) en UTF-8, con BOM para que Excel reconozca la codificación.
+ */
+class EscritorCsv implements EscritorFilas {
+
+    private final BufferedWriter writer;
+
+    EscritorCsv(OutputStream salida, String[] columnas) throws IOException {
+        this.writer = new BufferedWriter(new OutputStreamWriter(salida, StandardCharsets.UTF_8));
+        writer.write('\uFEFF');
+        escribirFila(columnas);
+    }
+
+    @Override
+    public void escribirFila(Object[] valores) throws IOException {
+        for (int i = 0; i < valores.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writer.write(escapar(EscritorFilas.comoTexto(valores[i])));
+        }
+        writer.write("\r\n");
+    }
+
+    private static String escapar(String texto) {
+        if (texto.indexOf(',') < 0 && texto.indexOf('"') < 0 && texto.indexOf('\n') < 0 && texto.indexOf('\r') < 0) {
+            return texto;
+        }
+        return '"' + texto.replace("\"", "\"\"") + '"';
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
@@ -0,0 +1,37 @@
+package com.cerrajeria.app.services;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Escritor secuencial de filas para las exportaciones: cada fila se escribe en cuanto llega,
+ * sin guardar las anteriores. Al cerrarlo se completa el archivo.
+ */
+interface EscritorFilas extends Closeable {
+
+    DateTimeFormatter FORMATO_FECHA = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    void escribirFila(Object[] valores) throws IOException;
+
+    /**
+     * Representación de texto común a todos los formatos (fechas ISO, decimales sin notación científica).
+     */
+    static String comoTexto(Object valor) {
+        if (valor == null) {
+            return "";
+        }
+        if (valor instanceof LocalDateTime fecha) {
+            return fecha.format(FORMATO_FECHA);
+        }
+        if (valor instanceof BigDecimal numero) {
+            return numero.toPlainString();
+        }
+        if (valor instanceof Boolean b) {
+            return b ? "Sí" : "No";
+        }
+        return valor.toString();
+    }
+}
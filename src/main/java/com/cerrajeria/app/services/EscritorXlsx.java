@@ -0,0 +1,114 @@
+package com.cerrajeria.app.services;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Escribe filas en un libro XLSX de una sola hoja, generando el SpreadsheetML directamente sobre el zip.
+ * La hoja se escribe en streaming (textos como cadenas en línea, sin tabla de cadenas compartidas),
+ * así que la memoria usada no depende del número de filas.
+ */
+class EscritorXlsx implements EscritorFilas {
+
+    private static final String TIPOS_CONTENIDO =
+            "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>" +
+            "<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">" +
+            "<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>" +
+            "<Default Extension=\"xml\" ContentType=\"application/xml\"/>" +
+            "<Override PartName=\"/xl/workbook.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.sheet.main+xml\"/>" +
+            "<Override PartName=\"/xl/worksheets/sheet1.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.worksheet+xml\"/>" +
+            "</Types>";
+    private static final String RELACIONES_PAQUETE =
+            "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>" +
+            "<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">" +
+            "<Relationship Id=\"rId1\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/officeDocument\" Target=\"xl/workbook.xml\"/>" +
+            "</Relationships>";
+    private static final String RELACIONES_LIBRO =
+            "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>" +
+            "<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">" +
+            "<Relationship Id=\"rId1\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/worksheet\" Target=\"worksheets/sheet1.xml\"/>" +
+            "</Relationships>";
+
+    private final ZipOutputStream zip;
+    private final BufferedWriter writer;
+
+    EscritorXlsx(OutputStream salida, String nombreHoja, String[] columnas) throws IOException {
+        this.zip = new ZipOutputStream(salida);
+        this.writer = new BufferedWriter(new OutputStreamWriter(zip, StandardCharsets.UTF_8));
+
+        escribirParte("[Content_Types].xml", TIPOS_CONTENIDO);
+        escribirParte("_rels/.rels", RELACIONES_PAQUETE);
+        escribirParte("xl/workbook.xml",
+                "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>" +
+                "<workbook xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\" " +
+                "xmlns:r=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships\">" +
+                "<sheets><sheet name=\"" + escaparXml(nombreHoja.length() > 31 ? nombreHoja.substring(0, 31) : nombreHoja) +
+                "\" sheetId=\"1\" r:id=\"rId1\"/></sheets></workbook>");
+        escribirParte("xl/_rels/workbook.xml.rels", RELACIONES_LIBRO);
+
+        // La hoja queda abierta hasta close(); cada fila se añade al final
+        zip.putNextEntry(new ZipEntry("xl/worksheets/sheet1.xml"));
+        writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>" +
+                "<worksheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\"><sheetData>");
+        escribirFila(columnas);
+    }
+
+    private void escribirParte(String nombre, String contenido) throws IOException {
+        zip.putNextEntry(new ZipEntry(nombre));
+        writer.write(contenido);
+        writer.flush();
+        zip.closeEntry();
+    }
+
+    @Override
+    public void escribirFila(Object[] valores) throws IOException {
+        writer.write("<row>");
+        for (Object valor : valores) {
+            if (valor == null) {
+                writer.write("<c/>");
+            } else if (valor instanceof Number numero) {
+                writer.write("<c><v>");
+                writer.write(EscritorFilas.comoTexto(numero));
+                writer.write("</v></c>");
+            } else {
+                writer.write("<c t=\"inlineStr\"><is><t xml:space=\"preserve\">");
+                writer.write(escaparXml(EscritorFilas.comoTexto(valor)));
+                writer.write("</t></is></c>");
+            }
+        }
+        writer.write("</row>");
+    }
+
+    private static String escaparXml(String texto) {
+        StringBuilder sb = new StringBuilder(texto.length());
+        for (int i = 0; i < texto.length(); i++) {
+            char c = texto.charAt(i);
+            switch (c) {
+                case '&' -> sb.append("&amp;");
+                case '<' -> sb.append("&lt;");
+                case '>' -> sb.append("&gt;");
+                case '"' -> sb.append("&quot;");
+                default -> {
+                    // XML 1.0 no admite caracteres de control salvo tabulador y saltos de línea
+                    if (c >= 0x20 || c == '\t' || c == '\n' || c == '\r') {
+                        sb.append(c);
+                    }
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.write("</sheetData></worksheet>");
+        writer.flush();
+        zip.closeEntry();
+        zip.close();
+    }
+}
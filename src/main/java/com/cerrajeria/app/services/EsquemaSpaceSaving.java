@@ -0,0 +1,97 @@
+package com.cerrajeria.app.services;
+
+import java.util.Arrays;
+
+/**
+ * Esquema Space-Saving (Metwally et al.) para los elementos más frecuentes de un flujo.
+ * Guarda como máximo {@code capacidad} contadores ordenados de mayor a menor, así que
+ * los K primeros se leen en O(K). Si llega un ID nuevo con los contadores llenos, ocupa
+ * el del menor, heredando su cuenta como error máximo; un ID con cuenta mayor que el menor
+ * contador está garantizado en el esquema.
+ * No es seguro para hilos: lo protege su propietario ({@link MasVendidosEnVivo}).
+ */
+class EsquemaSpaceSaving {
+
+    private final int[] ids;
+    private final long[] cuentas;
+    private final long[] errores;
+    private int tamano = 0;
+
+    EsquemaSpaceSaving(int capacidad) {
+        this.ids = new int[capacidad];
+        this.cuentas = new long[capacidad];
+        this.errores = new long[capacidad];
+    }
+
+    void sumar(int id, long cantidad) {
+        sumar(id, cantidad, 0);
+    }
+
+    private void sumar(int id, long cantidad, long error) {
+        int posicion = -1;
+        for (int i = 0; i < tamano; i++) { // La capacidad es pequeña: una búsqueda lineal basta
+            if (ids[i] == id) {
+                posicion = i;
+                break;
+            }
+        }
+        if (posicion < 0) {
+            if (tamano < ids.length) {
+                posicion = tamano++;
+                ids[posicion] = id;
+                cuentas[posicion] = 0;
+                errores[posicion] = error;
+            } else {
+                // Se reemplaza el contador más pequeño (el último)
+                posicion = tamano - 1;
+                ids[posicion] = id;
+                errores[posicion] = cuentas[posicion] + error;
+            }
+        } else {
+            errores[posicion] += error;
+        }
+        cuentas[posicion] += cantidad;
+
+        // Mantener el orden descendente subiendo el contador incrementado
+        while (posicion > 0 && cuentas[posicion] > cuentas[posicion - 1]) {
+            intercambiar(posicion, posicion - 1);
+            posicion--;
+        }
+    }
+
+    private void intercambiar(int a, int b) {
+        int id = ids[a]; ids[a] = ids[b]; ids[b] = id;
+        long cuenta = cuentas[a]; cuentas[a] = cuentas[b]; cuentas[b] = cuenta;
+        long error = errores[a]; errores[a] = errores[b]; errores[b] = error;
+    }
+
+    /**
+     * Suma los contadores de este esquema en otro (para combinar intervalos de una ventana).
+     */
+    void sumarEn(EsquemaSpaceSaving destino) {
+        for (int i = 0; i < tamano; i++) {
+            destino.sumar(ids[i], cuentas[i], errores[i]);
+        }
+    }
+
+    void vaciar() {
+        tamano = 0;
+        Arrays.fill(cuentas, 0);
+    }
+
+    int getTamano() {
+        return tamano;
+    }
+
+    int getId(int posicion) {
+        return ids[posicion];
+    }
+
+    long getCuenta(int posicion) {
+        return cuentas[posicion];
+    }
+
+    long getError(int posicion) {
+        return errores[posicion];
+    }
+}
@@ -0,0 +1,160 @@
+package com.cerrajeria.app.services;
+
+import com.cerrajeria.app.dao.ExportacionDAO;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.function.Predicate;
+
+/**
+ * Clase de servicio para exportar historiales (ventas, comisiones, movimientos de stock) y el catálogo a CSV o XLSX.
+ * Complementa a {@link ReporteService} con los mismos filtros, pero en lugar de devolver listas
+ * lleva cada fila del cursor directamente al archivo, así que exportar varios años usa la misma
+ * memoria que exportar un día. Los métodos son bloqueantes: la interfaz los ejecuta en segundo plano.
+ */
+public class ExportacionService {
+
+    public enum FormatoExportacion { CSV, XLSX }
+
+    /**
+     * Recibe el avance de una exportación.
+     */
+    @FunctionalInterface
+    public interface Progreso {
+        /**
+         * @param filas Filas escritas hasta el momento.
+         * @param total Filas esperadas (-1 si no se pudo contar).
+         * @return false para cancelar la exportación.
+         */
+        boolean informar(long filas, long total);
+    }
+
+    private static final int FILAS_ENTRE_AVISOS = 500;
+
+    private final ExportacionDAO exportacionDAO;
+
+    public ExportacionService() {
+        this.exportacionDAO = new ExportacionDAO();
+    }
+
+    /**
+     * Exporta las ventas con los mismos filtros que el reporte de ventas.
+     * @return Filas exportadas, o -1 si hubo un error o se canceló (en ese caso no queda archivo).
+     */
+    public long exportarVentas(LocalDateTime desde, LocalDateTime hasta, Integer idUsuario,
+                               Path destino, FormatoExportacion formato, Progreso progreso) {
+        return exportar("Ventas", ExportacionDAO.COLUMNAS_VENTAS,
+                exportacionDAO.contarVentas(desde, hasta, idUsuario), destino, formato, progreso,
+                lector -> exportacionDAO.recorrerVentas(desde, hasta, idUsuario, lector));
+    }
+
+    /**
+     * Exporta las comisiones con los mismos filtros que el reporte de comisiones.
+     * @return Filas exportadas, o -1 si hubo un error o se canceló (en ese caso no queda archivo).
+     */
+    public long exportarComisiones(Integer idUsuario, String estado,
+                                   Path destino, FormatoExportacion formato, Progreso progreso) {
+        return exportar("Comisiones", ExportacionDAO.COLUMNAS_COMISIONES,
+                exportacionDAO.contarComisiones(idUsuario, estado), destino, formato, progreso,
+                lector -> exportacionDAO.recorrerComisiones(idUsuario, estado, lector));
+    }
+
+    /**
+     * Exporta los movimientos de stock del periodo indicado.
+     * @return Filas exportadas, o -1 si hubo un error o se canceló (en ese caso no queda archivo).
+     */
+    public long exportarMovimientosStock(LocalDateTime desde, LocalDateTime hasta,
+                                         Path destino, FormatoExportacion formato, Progreso progreso) {
+        return exportar("Movimientos de stock", ExportacionDAO.COLUMNAS_MOVIMIENTOS,
+                exportacionDAO.contarMovimientos(desde, hasta), destino, formato, progreso,
+                lector -> exportacionDAO.recorrerMovimientos(desde, hasta, lector));
+    }
+
+    /**
+     * Exporta los productos del catálogo en el formato que lee {@link ImportacionCatalogoService}.
+     * @return Filas exportadas, o -1 si hubo un error o se canceló (en ese caso no queda archivo).
+     */
+    public long exportarProductos(Path destino, FormatoExportacion formato, Progreso progreso) {
+        return exportar("Productos", ExportacionDAO.COLUMNAS_PRODUCTOS, exportacionDAO.contarProductos(),
+                destino, formato, progreso, exportacionDAO::recorrerProductos);
+    }
+
+    /**
+     * Exporta los servicios del catálogo en el formato que lee {@link ImportacionCatalogoService}.
+     * @return Filas exportadas, o -1 si hubo un error o se canceló (en ese caso no queda archivo).
+     */
+    public long exportarServicios(Path destino, FormatoExportacion formato, Progreso progreso) {
+        return exportar("Servicios", ExportacionDAO.COLUMNAS_SERVICIOS, exportacionDAO.contarServicios(),
+                destino, formato, progreso, exportacionDAO::recorrerServicios);
+    }
+
+    /**
+     * Exporta las categorías de producto en el formato que lee {@link ImportacionCatalogoService}.
+     * @return Filas exportadas, o -1 si hubo un error o se canceló (en ese caso no queda archivo).
+     */
+    public long exportarCategoriasProducto(Path destino, FormatoExportacion formato, Progreso progreso) {
+        return exportar("Categorías de producto", ExportacionDAO.COLUMNAS_CATEGORIAS,
+                exportacionDAO.contarCategoriasProducto(), destino, formato, progreso,
+                exportacionDAO::recorrerCategoriasProducto);
+    }
+
+    /**
+     * Exporta las categorías de servicio en el formato que lee {@link ImportacionCatalogoService}.
+     * @return Filas exportadas, o -1 si hubo un error o se canceló (en ese caso no queda archivo).
+     */
+    public long exportarCategoriasServicio(Path destino, FormatoExportacion formato, Progreso progreso) {
+        return exportar("Categorías de servicio", ExportacionDAO.COLUMNAS_CATEGORIAS,
+                exportacionDAO.contarCategoriasServicio(), destino, formato, progreso,
+                exportacionDAO::recorrerCategoriasServicio);
+    }
+
+    /**
+     * Escribe primero en un archivo temporal junto al destino y solo lo renombra si la exportación
+     * terminó completa, para no dejar archivos a medias con el nombre elegido por el usuario.
+     */
+    private long exportar(String nombreHoja, String[] columnas, long total, Path destino,
+                          FormatoExportacion formato, Progreso progreso,
+                          Predicate<ExportacionDAO.LectorFila> recorrido) {
+        Path parcial = destino.resolveSibling(destino.getFileName() + ".parcial");
+        long[] filas = {0};
+        boolean[] cancelada = {false};
+        boolean completa;
+
+        try (OutputStream salida = new BufferedOutputStream(Files.newOutputStream(parcial));
+             EscritorFilas escritor = (formato == FormatoExportacion.XLSX)
+                     ? new EscritorXlsx(salida, nombreHoja, columnas)
+                     : new EscritorCsv(salida, columnas)) {
+
+            progreso.informar(0, total);
+            completa = recorrido.test(valores -> {
+                escritor.escribirFila(valores);
+                if (++filas[0] % FILAS_ENTRE_AVISOS == 0 && !progreso.informar(filas[0], total)) {
+                    cancelada[0] = true;
+                    return false;
+                }
+                return true;
+            });
+        } catch (IOException e) {
+            System.err.println("Error al escribir la exportación: " + e.getMessage());
+            completa = false;
+        }
+
+        try {
+            if (!completa || cancelada[0]) {
+                Files.deleteIfExists(parcial);
+                return -1;
+            }
+            Files.move(parcial, destino, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            System.err.println("Error al guardar la exportación: " + e.getMessage());
+            return -1;
+        }
+        progreso.informar(filas[0], filas[0]);
+        return filas[0];
+    }
+}
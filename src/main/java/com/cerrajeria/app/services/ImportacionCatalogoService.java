@@ -0,0 +1,380 @@
+package com.cerrajeria.app.services;
+
+import com.cerrajeria.app.dao.CatalogoImportacionDAO;
+import com.cerrajeria.app.dao.CatalogoImportacionDAO.FilaProducto;
+import com.cerrajeria.app.dao.CatalogoImportacionDAO.FilaServicio;
+import com.cerrajeria.app.dao.CatalogoImportacionDAO.ResultadoLote;
+import com.cerrajeria.app.dao.CategoriaProductoDAO;
+import com.cerrajeria.app.dao.CategoriaServicioDAO;
+import com.cerrajeria.app.database.DatabaseManager;
+import com.cerrajeria.app.models.CategoriaProducto;
+import com.cerrajeria.app.models.CategoriaServicio;
+import com.cerrajeria.app.models.ErrorImportacion;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Clase de servicio para importar el catálogo (categorías, productos y servicios) desde CSV o XLSX.
+ * El archivo se lee en streaming ({@link LectorFilas}); las categorías se resuelven una sola vez en
+ * memoria y las filas válidas se aplican por lotes con un MERGE sobre el nombre (ver
+ * CatalogoImportacionDAO y sql/importacion_catalogo.sql), cada lote en su propia transacción.
+ * Las filas con error no detienen la importación: forman el informe de errores. Si la base de datos
+ * rechaza un lote, se reintenta por mitades para que el informe recoja solo las filas culpables.
+ * Para exportar el catálogo en el mismo formato, ver {@link ExportacionService}.
+ *
+ * Columnas (en este orden; la primera fila se toma como cabecera si empieza por "Nombre"):
+ * <ul>
+ *     <li>Categorías: nombre.</li>
+ *     <li>Productos: nombre, categoría, precio, costo interno, stock mínimo y, opcionalmente, stock
+ *     (solo para productos nuevos; el de los existentes se ajusta con recepciones o conteos).</li>
+ *     <li>Servicios: nombre, categoría, precio y, opcionalmente, descripción.</li>
+ * </ul>
+ */
+public class ImportacionCatalogoService {
+
+    /**
+     * Parte del catálogo que contiene un archivo.
+     */
+    public enum TipoCatalogo {
+        CATEGORIAS_PRODUCTO("Categorías de producto"),
+        CATEGORIAS_SERVICIO("Categorías de servicio"),
+        PRODUCTOS("Productos"),
+        SERVICIOS("Servicios");
+
+        private final String etiqueta;
+
+        TipoCatalogo(String etiqueta) {
+            this.etiqueta = etiqueta;
+        }
+
+        @Override
+        public String toString() {
+            return etiqueta;
+        }
+    }
+
+    /**
+     * Resultado de una importación. Si se canceló, los lotes ya aplicados se conservan.
+     */
+    public record ResultadoImportacion(int filasLeidas, int insertados, int actualizados,
+                                       List<ErrorImportacion> errores, boolean cancelada) {
+        public int sinCambios() {
+            return filasLeidas - insertados - actualizados - errores.size();
+        }
+    }
+
+    /**
+     * Aplica un lote de filas válidas en la transacción del llamador.
+     */
+    @FunctionalInterface
+    private interface AplicadorLote<T> {
+        ResultadoLote aplicar(Connection conn, List<T> filas) throws SQLException;
+    }
+
+    /**
+     * Convierte los valores de una fila en la fila a importar.
+     * Lanza IllegalArgumentException con el motivo si la fila no es válida.
+     */
+    @FunctionalInterface
+    private interface ConversorFila<T> {
+        T convertir(String[] valores);
+    }
+
+    private static final int FILAS_POR_LOTE = 2000;
+    // Anchos de las columnas (ver sql/importacion_catalogo.sql)
+    private static final int LONGITUD_NOMBRE = 100;
+    private static final int LONGITUD_DESCRIPCION = 255;
+    private static final String[] COLUMNAS_INFORME = {"Fila", "Nombre", "Error"};
+
+    private final CatalogoImportacionDAO catalogoImportacionDAO;
+    private final CategoriaProductoDAO categoriaProductoDAO;
+    private final CategoriaServicioDAO categoriaServicioDAO;
+
+    public ImportacionCatalogoService() {
+        this.catalogoImportacionDAO = new CatalogoImportacionDAO();
+        this.categoriaProductoDAO = new CategoriaProductoDAO();
+        this.categoriaServicioDAO = new CategoriaServicioDAO();
+    }
+
+    /**
+     * Importa un archivo del catálogo. Es bloqueante: la interfaz lo ejecuta en segundo plano.
+     * @param tipo Qué contiene el archivo.
+     * @param archivo Archivo .csv o .xlsx.
+     * @param progreso Recibe las filas leídas tras cada lote (el total es -1: no se conoce de antemano).
+     * @return El resultado con el informe de errores, o null si no se pudo conectar a la base de datos.
+     * @throws IOException Si el archivo no se puede leer o no tiene un formato válido.
+     */
+    public ResultadoImportacion importar(TipoCatalogo tipo, Path archivo, ExportacionService.Progreso progreso)
+            throws IOException {
+        try (Connection conn = DatabaseManager.getConnection()) {
+            if (conn == null) {
+                throw new SQLException("No se pudo establecer la conexión a la base de datos.", "08001");
+            }
+            ResultadoImportacion resultado = switch (tipo) {
+                case CATEGORIAS_PRODUCTO -> importar(conn, archivo, progreso,
+                        this::convertirCategoria, catalogoImportacionDAO::fusionarCategoriasProducto);
+                case CATEGORIAS_SERVICIO -> importar(conn, archivo, progreso,
+                        this::convertirCategoria, catalogoImportacionDAO::fusionarCategoriasServicio);
+                case PRODUCTOS -> {
+                    Map<String, Integer> categorias = new HashMap<>();
+                    for (CategoriaProducto c : categoriaProductoDAO.obtenerTodasCategoriasProducto()) {
+                        if (c.isActivo()) {
+                            categorias.put(clave(c.getNombre()), c.getIdCategoriaProducto());
+                        }
+                    }
+                    yield importar(conn, archivo, progreso,
+                            valores -> convertirProducto(valores, categorias), catalogoImportacionDAO::fusionarProductos);
+                }
+                case SERVICIOS -> {
+                    Map<String, Integer> categorias = new HashMap<>();
+                    for (CategoriaServicio c : categoriaServicioDAO.obtenerTodasCategoriasServicio()) {
+                        if (c.isActivo()) {
+                            categorias.put(clave(c.getNombre()), c.getIdCategoriaServicio());
+                        }
+                    }
+                    yield importar(conn, archivo, progreso,
+                            valores -> convertirServicio(valores, categorias), catalogoImportacionDAO::fusionarServicios);
+                }
+            };
+
+            // Una sola recarga del catálogo en caché para todo el archivo
+            if ((tipo == TipoCatalogo.PRODUCTOS || tipo == TipoCatalogo.SERVICIOS)
+                    && resultado.insertados() + resultado.actualizados() > 0) {
+                CatalogoCache.getInstance().recargar();
+            }
+            System.out.println("Importación de " + tipo + ": " + resultado.filasLeidas() + " filas, "
+                    + resultado.insertados() + " nuevas, " + resultado.actualizados() + " actualizadas, "
+                    + resultado.errores().size() + " con error" + (resultado.cancelada() ? " (cancelada)" : "") + ".");
+            return resultado;
+        } catch (SQLException e) {
+            System.err.println("Error al importar el catálogo: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private <T> ResultadoImportacion importar(Connection conn, Path archivo, ExportacionService.Progreso progreso,
+                                              ConversorFila<T> conversor, AplicadorLote<T> aplicador)
+            throws IOException, SQLException {
+        List<T> lote = new ArrayList<>(FILAS_POR_LOTE);
+        List<Integer> filasLote = new ArrayList<>(FILAS_POR_LOTE);
+        List<String> nombresLote = new ArrayList<>(FILAS_POR_LOTE);
+        Map<String, Integer> nombresVistos = new HashMap<>(); // Nombre -> primera fila en la que aparece
+        List<ErrorImportacion> errores = new ArrayList<>();
+        int[] contadores = new int[3]; // Filas leídas, insertadas y actualizadas
+        boolean[] cancelada = {false};
+        SQLException[] errorConexion = {null};
+
+        progreso.informar(0, -1);
+        LectorFilas.recorrer(archivo, (numeroFila, valores) -> {
+            String nombre = valores[0].trim();
+            if (contadores[0] == 0 && nombre.equalsIgnoreCase("Nombre")) {
+                return true; // Cabecera
+            }
+            contadores[0]++;
+            // Un lote no puede llevar dos veces el mismo nombre, y entre lotes la segunda fila pisaría a la primera
+            Integer filaAnterior = nombresVistos.get(clave(nombre));
+            if (filaAnterior != null) {
+                errores.add(new ErrorImportacion(numeroFila, nombre, "Nombre repetido en el archivo (fila " + filaAnterior + ")."));
+                return true;
+            }
+            try {
+                lote.add(conversor.convertir(valores));
+                filasLote.add(numeroFila);
+                nombresLote.add(nombre);
+                nombresVistos.put(clave(nombre), numeroFila);
+            } catch (IllegalArgumentException e) {
+                errores.add(new ErrorImportacion(numeroFila, nombre, e.getMessage()));
+            }
+
+            if (lote.size() == FILAS_POR_LOTE) {
+                try {
+                    aplicarLote(conn, aplicador, lote, filasLote, nombresLote, contadores, errores);
+                } catch (SQLException e) {
+                    errorConexion[0] = e;
+                    return false;
+                }
+                if (!progreso.informar(contadores[0], -1)) {
+                    cancelada[0] = true;
+                    return false;
+                }
+            }
+            return true;
+        });
+        if (errorConexion[0] != null) {
+            throw errorConexion[0];
+        }
+        if (!cancelada[0] && !lote.isEmpty()) {
+            aplicarLote(conn, aplicador, lote, filasLote, nombresLote, contadores, errores);
+        }
+        progreso.informar(contadores[0], contadores[0]);
+        errores.sort((a, b) -> Integer.compare(a.getNumeroFila(), b.getNumeroFila()));
+        return new ResultadoImportacion(contadores[0], contadores[1], contadores[2], errores, cancelada[0]);
+    }
+
+    /**
+     * Aplica un lote y lo vacía para las filas siguientes (ver {@link #aplicarParte}).
+     * @throws SQLException Solo si se perdió la conexión y no se puede seguir.
+     */
+    private <T> void aplicarLote(Connection conn, AplicadorLote<T> aplicador, List<T> lote, List<Integer> filasLote,
+                                 List<String> nombresLote, int[] contadores, List<ErrorImportacion> errores)
+            throws SQLException {
+        try {
+            aplicarParte(conn, aplicador, lote, filasLote, nombresLote, contadores, errores);
+        } finally {
+            lote.clear();
+            filasLote.clear();
+            nombresLote.clear();
+        }
+    }
+
+    /**
+     * Aplica filas en su propia transacción. Si la base de datos las rechaza, se reintenta por mitades
+     * hasta aislar las filas culpables, que son las únicas que pasan al informe de errores: una fila
+     * rechazada en un lote de {@value #FILAS_POR_LOTE} cuesta unas 2·log2(lote) transacciones más.
+     * @throws SQLException Solo si se perdió la conexión y no se puede seguir.
+     */
+    private <T> void aplicarParte(Connection conn, AplicadorLote<T> aplicador, List<T> filas, List<Integer> numerosFila,
+                                  List<String> nombres, int[] contadores, List<ErrorImportacion> errores)
+            throws SQLException {
+        SQLException rechazo;
+        try {
+            conn.setAutoCommit(false);
+            ResultadoLote resultado = aplicador.aplicar(conn, filas);
+            conn.commit();
+            contadores[1] += resultado.insertados();
+            contadores[2] += resultado.actualizados();
+            return;
+        } catch (SQLException e) {
+            conn.rollback();
+            rechazo = e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+
+        if (filas.size() == 1) {
+            System.err.println("Fila " + numerosFila.get(0) + " rechazada en la importación del catálogo: "
+                    + rechazo.getMessage());
+            errores.add(new ErrorImportacion(numerosFila.get(0), nombres.get(0),
+                    "Rechazada por la base de datos: " + rechazo.getMessage()));
+            return;
+        }
+        int mitad = filas.size() / 2;
+        aplicarParte(conn, aplicador, filas.subList(0, mitad), numerosFila.subList(0, mitad),
+                nombres.subList(0, mitad), contadores, errores);
+        aplicarParte(conn, aplicador, filas.subList(mitad, filas.size()), numerosFila.subList(mitad, filas.size()),
+                nombres.subList(mitad, filas.size()), contadores, errores);
+    }
+
+    // --- Conversión y validación de filas ---
+
+    private String convertirCategoria(String[] valores) {
+        return validarNombre(valores[0]);
+    }
+
+    private FilaProducto convertirProducto(String[] valores, Map<String, Integer> categorias) {
+        String nombre = validarNombre(valores[0]);
+        int idCategoria = resolverCategoria(valor(valores, 1), categorias);
+        BigDecimal precio = parsearImporte(valor(valores, 2), "Precio");
+        BigDecimal costoInterno = parsearImporte(valor(valores, 3), "Costo interno");
+        int stockMinimo = parsearCantidad(valor(valores, 4), "Stock mínimo");
+        int stock = valor(valores, 5).isEmpty() ? 0 : parsearCantidad(valor(valores, 5), "Stock");
+        return new FilaProducto(nombre, idCategoria, precio, costoInterno, stockMinimo, stock);
+    }
+
+    private FilaServicio convertirServicio(String[] valores, Map<String, Integer> categorias) {
+        String nombre = validarNombre(valores[0]);
+        int idCategoria = resolverCategoria(valor(valores, 1), categorias);
+        BigDecimal precio = parsearImporte(valor(valores, 2), "Precio");
+        String descripcion = valor(valores, 3);
+        if (descripcion.length() > LONGITUD_DESCRIPCION) {
+            throw new IllegalArgumentException("La descripción supera los " + LONGITUD_DESCRIPCION + " caracteres.");
+        }
+        return new FilaServicio(nombre, idCategoria, precio, descripcion.isEmpty() ? null : descripcion);
+    }
+
+    private static String validarNombre(String texto) {
+        String nombre = texto.trim();
+        if (nombre.isEmpty()) {
+            throw new IllegalArgumentException("El nombre es obligatorio.");
+        }
+        if (nombre.length() > LONGITUD_NOMBRE) {
+            throw new IllegalArgumentException("El nombre supera los " + LONGITUD_NOMBRE + " caracteres.");
+        }
+        return nombre;
+    }
+
+    private static int resolverCategoria(String nombre, Map<String, Integer> categorias) {
+        Integer id = categorias.get(clave(nombre));
+        if (id == null) {
+            throw new IllegalArgumentException(nombre.isEmpty() ? "La categoría es obligatoria."
+                    : "La categoría '" + nombre + "' no existe o está inactiva.");
+        }
+        return id;
+    }
+
+    private static BigDecimal parsearImporte(String texto, String campo) {
+        BigDecimal importe;
+        try {
+            // Admite la coma decimal de los CSV guardados por Excel en español
+            importe = new BigDecimal(texto.indexOf('.') < 0 ? texto.replace(',', '.') : texto);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(campo + " no válido: '" + texto + "'");
+        }
+        if (importe.signum() < 0) {
+            throw new IllegalArgumentException(campo + " no puede ser negativo.");
+        }
+        return importe.setScale(2, RoundingMode.HALF_UP);
+    }
+
+    private static int parsearCantidad(String texto, String campo) {
+        int cantidad;
+        try {
+            cantidad = Integer.parseInt(texto);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(campo + " no válido: '" + texto + "'");
+        }
+        if (cantidad < 0) {
+            throw new IllegalArgumentException(campo + " no puede ser negativo.");
+        }
+        return cantidad;
+    }
+
+    private static String valor(String[] valores, int indice) {
+        return (indice < valores.length) ? valores[indice].trim() : "";
+    }
+
+    // SQL Server compara los nombres sin distinguir mayúsculas: el archivo se trata igual
+    private static String clave(String nombre) {
+        return nombre.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Guarda el informe de errores de una importación en CSV.
+     * @return true si se guardó, false si hubo un error de escritura.
+     */
+    public boolean guardarInformeErrores(List<ErrorImportacion> errores, Path destino) {
+        try (OutputStream salida = new BufferedOutputStream(Files.newOutputStream(destino));
+             EscritorFilas escritor = new EscritorCsv(salida, COLUMNAS_INFORME)) {
+            for (ErrorImportacion error : errores) {
+                escritor.escribirFila(new Object[]{error.getNumeroFila(), error.getNombre(), error.getMensaje()});
+            }
+            return true;
+        } catch (IOException e) {
+            System.err.println("Error al guardar el informe de errores de la importación: " + e.getMessage());
+            return false;
+        }
+    }
+}
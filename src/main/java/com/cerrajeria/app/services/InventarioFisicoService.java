@@ -0,0 +1,122 @@
+package com.cerrajeria.app.services;
+
+import com.cerrajeria.app.dao.ConteoInventarioDAO;
+import com.cerrajeria.app.database.DatabaseManager;
+import com.cerrajeria.app.models.LineaConteo;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Clase de servicio para los conteos físicos de inventario.
+ * Al abrir un conteo se congela el stock esperado de cada producto; las cantidades contadas se
+ * registran en memoria ({@link SesionConteo}) y se guardan por lotes, y al aplicar el conteo todos
+ * los ajustes se registran de una vez en una transacción, en lugar de una entrada o salida por producto.
+ * Cada ajuste se calcula contra el stock del momento en que se contó la línea, no contra el congelado.
+ */
+public class InventarioFisicoService {
+
+    private final ConteoInventarioDAO conteoInventarioDAO;
+
+    public InventarioFisicoService() {
+        this.conteoInventarioDAO = new ConteoInventarioDAO();
+    }
+
+    /**
+     * Recupera el conteo abierto, si lo hay, con las cantidades guardadas hasta el momento.
+     * @return La sesión del conteo abierto, o null si no hay ninguno.
+     */
+    public SesionConteo obtenerConteoAbierto() {
+        ConteoInventarioDAO.Conteo conteo = conteoInventarioDAO.obtenerConteoAbierto();
+        return (conteo != null) ? new SesionConteo(conteo, conteoInventarioDAO.obtenerLineas(conteo.idConteo())) : null;
+    }
+
+    /**
+     * Abre un conteo nuevo congelando el stock actual de los productos activos.
+     * @param comentario Comentario del conteo (ej. "Inventario semestral").
+     * @return La sesión del conteo, o null si no se pudo abrir (por ejemplo, si ya hay uno abierto).
+     */
+    public SesionConteo abrirConteo(String comentario) {
+        ConteoInventarioDAO.Conteo conteo = conteoInventarioDAO.abrirConteo(
+                (comentario != null && !comentario.isBlank()) ? comentario.trim() : null);
+        return (conteo != null) ? new SesionConteo(conteo, conteoInventarioDAO.obtenerLineas(conteo.idConteo())) : null;
+    }
+
+    /**
+     * Guarda en un lote las cantidades cambiadas desde el último guardado.
+     * @return true si se guardaron (o no había cambios), false si hubo un error.
+     */
+    public boolean guardarAvance(SesionConteo sesion) {
+        List<LineaConteo> modificadas = sesion.tomarModificadas();
+        if (!conteoInventarioDAO.guardarCantidades(sesion.getConteo().idConteo(), modificadas)) {
+            sesion.restaurarModificadas(modificadas);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Guarda las cantidades pendientes y aplica los ajustes del conteo en una sola transacción.
+     * Los productos no contados no se ajustan.
+     * @return Número de productos ajustados, o -1 si la transacción falló y no se aplicó nada.
+     */
+    public int aplicarConteo(SesionConteo sesion) {
+        int idConteo = sesion.getConteo().idConteo();
+        List<LineaConteo> modificadas = sesion.tomarModificadas();
+        String motivo = "Conteo de inventario ID " + idConteo
+                + (sesion.getConteo().comentario() != null ? " - " + sesion.getConteo().comentario() : "");
+        Map<Integer, Integer> ajustes;
+
+        Connection conn = null;
+        try {
+            conn = DatabaseManager.getConnection();
+            if (conn == null) {
+                throw new SQLException("No se pudo establecer la conexión a la base de datos.", "08001");
+            }
+            conn.setAutoCommit(false);
+
+            conteoInventarioDAO.guardarCantidades(conn, idConteo, modificadas);
+            ajustes = conteoInventarioDAO.aplicarConteo(conn, idConteo, motivo);
+            conn.commit();
+            System.out.println("Conteo de inventario " + idConteo + " aplicado: " + ajustes.size() + " productos ajustados.");
+        } catch (SQLException e) {
+            System.err.println("Error al aplicar el conteo de inventario: " + e.getMessage());
+            if (conn != null) {
+                try {
+                    conn.rollback();
+                    System.err.println("Transacción del conteo revertida.");
+                } catch (SQLException rollbackEx) {
+                    System.err.println("Error al revertir la transacción: " + rollbackEx.getMessage());
+                }
+            }
+            sesion.restaurarModificadas(modificadas);
+            return -1;
+        } finally {
+            if (conn != null) {
+                try {
+                    conn.setAutoCommit(true);
+                    conn.close();
+                } catch (SQLException closeEx) {
+                    System.err.println("Error al cerrar la conexión: " + closeEx.getMessage());
+                }
+            }
+        }
+
+        // Se aplican los ajustes que registró la base de datos: las diferencias en memoria parten del stock
+        // congelado al abrir y no descuentan las ventas hechas entre la apertura y el conteo de cada línea
+        for (Map.Entry<Integer, Integer> ajuste : ajustes.entrySet()) {
+            CatalogoCache.getInstance().ajustarStock(ajuste.getKey(), ajuste.getValue());
+        }
+        return ajustes.size();
+    }
+
+    /**
+     * Cancela el conteo sin aplicar ajustes.
+     * @return true si se canceló.
+     */
+    public boolean cancelarConteo(SesionConteo sesion) {
+        return conteoInventarioDAO.cancelarConteo(sesion.getConteo().idConteo());
+    }
+}
@@ -0,0 +1,319 @@
+package com.cerrajeria.app.services;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Lectura secuencial de filas de un archivo CSV o XLSX (la contraparte de {@link EscritorFilas}).
+ * Cada fila se entrega en cuanto se lee, como textos sin recortar, sin guardar las anteriores.
+ *
+ * El CSV sigue RFC 4180 y admite ',' o ';' como separador (el que aparezca más en la primera línea,
+ * como guarda Excel en configuración regional en español). Del XLSX se lee solo la primera hoja;
+ * la tabla de cadenas compartidas se carga entera, la hoja se recorre en streaming.
+ */
+final class LectorFilas {
+
+    /**
+     * Receptor de una fila leída.
+     */
+    @FunctionalInterface
+    interface ReceptorFila {
+        /**
+         * @param numeroFila Número de fila en el archivo, empezando en 1.
+         * @param valores Valores de la fila (celdas vacías como "").
+         * @return false para dejar de leer.
+         */
+        boolean recibir(int numeroFila, String[] valores);
+    }
+
+    private static final String ESPACIO_SPREADSHEETML = "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+
+    private LectorFilas() {
+    }
+
+    /**
+     * Recorre las filas del archivo, eligiendo el formato por su extensión (.xlsx o, si no, CSV).
+     * @throws IOException Si el archivo no se puede leer o no tiene un formato válido.
+     */
+    static void recorrer(Path archivo, ReceptorFila receptor) throws IOException {
+        if (archivo.getFileName().toString().toLowerCase().endsWith(".xlsx")) {
+            recorrerXlsx(archivo, receptor);
+        } else {
+            recorrerCsv(archivo, receptor);
+        }
+    }
+
+    // --- CSV ---
+
+    private static void recorrerCsv(Path archivo, ReceptorFila receptor) throws IOException {
+        try (BufferedReader lector = Files.newBufferedReader(archivo, StandardCharsets.UTF_8)) {
+            lector.mark(1);
+            if (lector.read() != '\uFEFF') {
+                lector.reset(); // Sin BOM
+            }
+            char separador = 0;
+            int numeroFila = 0;
+            String linea;
+            while ((linea = lector.readLine()) != null) {
+                numeroFila++;
+                if (separador == 0) {
+                    separador = contar(linea, ';') > contar(linea, ',') ? ';' : ',';
+                }
+                // Un campo entre comillas puede contener saltos de línea: se juntan las líneas hasta cerrarlo
+                StringBuilder registro = new StringBuilder(linea);
+                while (comillasAbiertas(registro)) {
+                    String siguiente = lector.readLine();
+                    if (siguiente == null) {
+                        throw new IOException("Comillas sin cerrar en la fila " + numeroFila + ".");
+                    }
+                    registro.append('\n').append(siguiente);
+                }
+                if (registro.length() == 0) {
+                    continue;
+                }
+                if (!receptor.recibir(numeroFila, separarCampos(registro, separador))) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private static int contar(String texto, char c) {
+        int n = 0;
+        for (int i = 0; i < texto.length(); i++) {
+            if (texto.charAt(i) == c) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    private static boolean comillasAbiertas(CharSequence registro) {
+        boolean abiertas = false;
+        for (int i = 0; i < registro.length(); i++) {
+            if (registro.charAt(i) == '"') {
+                abiertas = !abiertas; // Las comillas dobladas ("") se compensan entre sí
+            }
+        }
+        return abiertas;
+    }
+
+    private static String[] separarCampos(CharSequence registro, char separador) {
+        List<String> campos = new ArrayList<>();
+        StringBuilder campo = new StringBuilder();
+        boolean entreComillas = false;
+        for (int i = 0; i < registro.length(); i++) {
+            char c = registro.charAt(i);
+            if (entreComillas) {
+                if (c == '"' && i + 1 < registro.length() && registro.charAt(i + 1) == '"') {
+                    campo.append('"');
+                    i++;
+                } else if (c == '"') {
+                    entreComillas = false;
+                } else {
+                    campo.append(c);
+                }
+            } else if (c == '"') {
+                entreComillas = true;
+            } else if (c == separador) {
+                campos.add(campo.toString());
+                campo.setLength(0);
+            } else {
+                campo.append(c);
+            }
+        }
+        campos.add(campo.toString());
+        return campos.toArray(new String[0]);
+    }
+
+    // --- XLSX ---
+
+    private static void recorrerXlsx(Path archivo, ReceptorFila receptor) throws IOException {
+        try (ZipFile zip = new ZipFile(archivo.toFile())) {
+            ZipEntry hoja = primeraHoja(zip);
+            if (hoja == null) {
+                throw new IOException("El libro no contiene hojas.");
+            }
+            List<String> compartidas = leerCadenasCompartidas(zip);
+            try (InputStream entrada = zip.getInputStream(hoja)) {
+                recorrerHoja(abrirXml(entrada), compartidas, receptor);
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("El libro XLSX no es válido: " + e.getMessage(), e);
+        }
+    }
+
+    private static ZipEntry primeraHoja(ZipFile zip) {
+        ZipEntry hoja = zip.getEntry("xl/worksheets/sheet1.xml");
+        if (hoja != null) {
+            return hoja;
+        }
+        Enumeration<? extends ZipEntry> entradas = zip.entries();
+        while (entradas.hasMoreElements()) {
+            ZipEntry entrada = entradas.nextElement();
+            if (entrada.getName().startsWith("xl/worksheets/") && entrada.getName().endsWith(".xml")
+                    && (hoja == null || entrada.getName().compareTo(hoja.getName()) < 0)) {
+                hoja = entrada;
+            }
+        }
+        return hoja;
+    }
+
+    private static XMLStreamReader abrirXml(InputStream entrada) throws XMLStreamException {
+        XMLInputFactory fabrica = XMLInputFactory.newFactory();
+        fabrica.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        fabrica.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return fabrica.createXMLStreamReader(entrada);
+    }
+
+    private static List<String> leerCadenasCompartidas(ZipFile zip) throws IOException, XMLStreamException {
+        List<String> cadenas = new ArrayList<>();
+        ZipEntry entrada = zip.getEntry("xl/sharedStrings.xml");
+        if (entrada == null) {
+            return cadenas; // Libros con cadenas en línea, como los de EscritorXlsx
+        }
+        try (InputStream flujo = zip.getInputStream(entrada)) {
+            XMLStreamReader xml = abrirXml(flujo);
+            StringBuilder cadena = null;
+            while (xml.hasNext()) {
+                int evento = xml.next();
+                if (evento == XMLStreamConstants.START_ELEMENT && esElemento(xml, "si")) {
+                    cadena = new StringBuilder();
+                } else if (evento == XMLStreamConstants.START_ELEMENT && esElemento(xml, "t") && cadena != null) {
+                    cadena.append(xml.getElementText()); // Texto enriquecido: se concatenan los tramos
+                } else if (evento == XMLStreamConstants.START_ELEMENT && esElemento(xml, "rPh")) {
+                    saltarElemento(xml); // Guías fonéticas, no forman parte del valor
+                } else if (evento == XMLStreamConstants.END_ELEMENT && esElemento(xml, "si") && cadena != null) {
+                    cadenas.add(cadena.toString());
+                    cadena = null;
+                }
+            }
+            xml.close();
+        }
+        return cadenas;
+    }
+
+    private static void recorrerHoja(XMLStreamReader xml, List<String> compartidas, ReceptorFila receptor)
+            throws XMLStreamException, IOException {
+        List<String> fila = null;
+        int numeroFila = 0;
+        int columna = 0;
+        String tipoCelda = null;
+        String valorCelda = null;
+
+        while (xml.hasNext()) {
+            int evento = xml.next();
+            if (evento == XMLStreamConstants.START_ELEMENT) {
+                if (esElemento(xml, "row")) {
+                    String r = xml.getAttributeValue(null, "r");
+                    numeroFila = (r != null) ? Integer.parseInt(r) : numeroFila + 1;
+                    fila = new ArrayList<>();
+                    columna = 0;
+                } else if (esElemento(xml, "c") && fila != null) {
+                    String referencia = xml.getAttributeValue(null, "r");
+                    columna = (referencia != null) ? indiceColumna(referencia) : fila.size();
+                    tipoCelda = xml.getAttributeValue(null, "t");
+                    valorCelda = null;
+                } else if (esElemento(xml, "v")) {
+                    valorCelda = xml.getElementText();
+                } else if (esElemento(xml, "is")) {
+                    valorCelda = leerTextoEnLinea(xml);
+                }
+            } else if (evento == XMLStreamConstants.END_ELEMENT) {
+                if (esElemento(xml, "c") && fila != null) {
+                    while (fila.size() < columna) {
+                        fila.add(""); // Celdas vacías que Excel omite
+                    }
+                    fila.add(valorDeCelda(tipoCelda, valorCelda, compartidas));
+                } else if (esElemento(xml, "row") && fila != null) {
+                    if (!fila.stream().allMatch(String::isEmpty)
+                            && !receptor.recibir(numeroFila, fila.toArray(new String[0]))) {
+                        break;
+                    }
+                    fila = null;
+                }
+            }
+        }
+        xml.close();
+    }
+
+    private static String valorDeCelda(String tipo, String valor, List<String> compartidas) throws IOException {
+        if (valor == null) {
+            return "";
+        }
+        if ("s".equals(tipo)) {
+            int indice = Integer.parseInt(valor.trim());
+            if (indice < 0 || indice >= compartidas.size()) {
+                throw new IOException("Referencia a cadena compartida inexistente: " + indice);
+            }
+            return compartidas.get(indice);
+        }
+        if ("b".equals(tipo)) {
+            return "1".equals(valor) ? "Sí" : "No";
+        }
+        if (tipo == null || "n".equals(tipo)) {
+            // Excel guarda los enteros como "12" pero a veces como "12.0" o "1.2E1"
+            try {
+                return new BigDecimal(valor.trim()).stripTrailingZeros().toPlainString();
+            } catch (NumberFormatException e) {
+                return valor;
+            }
+        }
+        return valor;
+    }
+
+    private static String leerTextoEnLinea(XMLStreamReader xml) throws XMLStreamException {
+        StringBuilder texto = new StringBuilder();
+        while (xml.hasNext()) {
+            int evento = xml.next();
+            if (evento == XMLStreamConstants.START_ELEMENT && esElemento(xml, "t")) {
+                texto.append(xml.getElementText());
+            } else if (evento == XMLStreamConstants.END_ELEMENT && esElemento(xml, "is")) {
+                break;
+            }
+        }
+        return texto.toString();
+    }
+
+    private static void saltarElemento(XMLStreamReader xml) throws XMLStreamException {
+        int profundidad = 1;
+        while (profundidad > 0 && xml.hasNext()) {
+            int evento = xml.next();
+            if (evento == XMLStreamConstants.START_ELEMENT) {
+                profundidad++;
+            } else if (evento == XMLStreamConstants.END_ELEMENT) {
+                profundidad--;
+            }
+        }
+    }
+
+    private static boolean esElemento(XMLStreamReader xml, String nombre) {
+        String espacio = xml.getNamespaceURI();
+        return nombre.equals(xml.getLocalName()) && (espacio == null || espacio.equals(ESPACIO_SPREADSHEETML));
+    }
+
+    /**
+     * Índice (desde 0) de la columna de una referencia como "AB12".
+     */
+    private static int indiceColumna(String referencia) {
+        int indice = 0;
+        for (int i = 0; i < referencia.length() && Character.isLetter(referencia.charAt(i)); i++) {
+            indice = indice * 26 + (Character.toUpperCase(referencia.charAt(i)) - 'A' + 1);
+        }
+        return indice - 1;
+    }
+}
@@ -0,0 +1,185 @@
+package com.cerrajeria.app.services;
+
+import com.cerrajeria.app.dao.AnalisisVentasDAO;
+import com.cerrajeria.app.models.DetalleVentaProducto;
+import com.cerrajeria.app.models.DetalleVentaServicio;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Productos y servicios más vendidos "en vivo" (hoy y en la última hora), en memoria.
+ * VentaService le pasa cada venta confirmada y el panel de administración lo consulta
+ * sin tocar la base de datos. Cada ventana se resume con un {@link EsquemaSpaceSaving},
+ * así que los K primeros se obtienen en O(K) y los resultados son aproximados cuando hay
+ * más productos distintos que contadores.
+ *
+ * La última hora se lleva en 12 intervalos de 5 minutos: al cambiar de intervalo se descarta
+ * el más antiguo y se recombinan los demás, por lo que la ventana avanza de 5 en 5 minutos.
+ * Al iniciar la aplicación se carga con las ventas del día desde la base de datos.
+ */
+public class MasVendidosEnVivo {
+
+    public static final int TIPO_PRODUCTO = AnalisisVentasDAO.TIPO_PRODUCTO;
+    public static final int TIPO_SERVICIO = AnalisisVentasDAO.TIPO_SERVICIO;
+
+    /**
+     * Elemento del ranking: unidades estimadas y error máximo de la estimación (0 = exacta).
+     */
+    public record Entrada(int idItem, long unidades, long errorMaximo) { }
+
+    private static final int CONTADORES = 64;
+    private static final int MINUTOS_POR_INTERVALO = 5;
+    private static final int INTERVALOS_POR_HORA = 60 / MINUTOS_POR_INTERVALO;
+
+    private static final MasVendidosEnVivo INSTANCIA = new MasVendidosEnVivo();
+
+    // Índice [tipo]: 0 = productos, 1 = servicios
+    private final EsquemaSpaceSaving[] hoy = new EsquemaSpaceSaving[2];
+    private final EsquemaSpaceSaving[] ultimaHora = new EsquemaSpaceSaving[2];
+    private final EsquemaSpaceSaving[][] intervalos = new EsquemaSpaceSaving[2][INTERVALOS_POR_HORA];
+    private final long[] numeroDeIntervalo = new long[INTERVALOS_POR_HORA]; // Intervalo que ocupa cada posición
+
+    private LocalDate diaActual = LocalDate.now();
+    private long intervaloActual = numeroIntervalo(LocalDateTime.now());
+
+    private MasVendidosEnVivo() {
+        for (int tipo = 0; tipo < 2; tipo++) {
+            hoy[tipo] = new EsquemaSpaceSaving(CONTADORES);
+            ultimaHora[tipo] = new EsquemaSpaceSaving(CONTADORES);
+            for (int i = 0; i < INTERVALOS_POR_HORA; i++) {
+                intervalos[tipo][i] = new EsquemaSpaceSaving(CONTADORES);
+            }
+        }
+        Arrays.fill(numeroDeIntervalo, -1);
+    }
+
+    public static MasVendidosEnVivo getInstance() {
+        return INSTANCIA;
+    }
+
+    /**
+     * Carga en segundo plano las ventas del día (y de la última hora, si empezó ayer).
+     */
+    public void iniciar() {
+        Thread hilo = new Thread(this::cargarDesdeBaseDeDatos, "mas-vendidos-carga");
+        hilo.setDaemon(true);
+        hilo.start();
+    }
+
+    private void cargarDesdeBaseDeDatos() {
+        LocalDateTime ahora = LocalDateTime.now();
+        LocalDateTime inicioHoy = ahora.toLocalDate().atStartOfDay();
+        LocalDateTime inicioHora = ahora.minusMinutes(60);
+        LocalDateTime desde = inicioHora.isBefore(inicioHoy) ? inicioHora : inicioHoy;
+
+        // Las ventas registradas mientras dura la consulta pueden contarse dos veces; es una cifra en vivo aproximada
+        boolean ok = new AnalisisVentasDAO().recorrerUnidadesPorMinutoDesde(desde,
+                (tipo, idItem, minuto, unidades) -> registrar(tipo, idItem, unidades, minuto));
+        if (ok) {
+            System.out.println("Más vendidos en vivo cargados desde " + desde);
+        }
+    }
+
+    /**
+     * Suma las líneas de una venta confirmada.
+     * @param fechaVenta Fecha de la venta (null = ahora).
+     */
+    public void registrarVenta(LocalDateTime fechaVenta, List<DetalleVentaProducto> productos,
+                               List<DetalleVentaServicio> servicios) {
+        LocalDateTime momento = (fechaVenta != null) ? fechaVenta : LocalDateTime.now();
+        for (DetalleVentaProducto dp : productos) {
+            registrar(TIPO_PRODUCTO, dp.getIdProducto(), dp.getCantidad(), momento);
+        }
+        for (DetalleVentaServicio ds : servicios) {
+            registrar(TIPO_SERVICIO, ds.getIdServicio(), ds.getCantidad(), momento);
+        }
+    }
+
+    private synchronized void registrar(int tipo, int idItem, int unidades, LocalDateTime momento) {
+        avanzarReloj();
+        if (momento.toLocalDate().equals(diaActual)) {
+            hoy[tipo].sumar(idItem, unidades);
+        }
+        long intervalo = numeroIntervalo(momento);
+        if (intervalo <= intervaloActual - INTERVALOS_POR_HORA || intervalo > intervaloActual) {
+            return; // Fuera de la última hora
+        }
+        int posicion = (int) (intervalo % INTERVALOS_POR_HORA);
+        if (numeroDeIntervalo[posicion] != intervalo) {
+            intervalos[0][posicion].vaciar();
+            intervalos[1][posicion].vaciar();
+            numeroDeIntervalo[posicion] = intervalo;
+        }
+        intervalos[tipo][posicion].sumar(idItem, unidades);
+        ultimaHora[tipo].sumar(idItem, unidades);
+    }
+
+    /**
+     * Reinicia el día a medianoche y, al empezar un intervalo nuevo, recombina la última hora
+     * sin los intervalos que salieron de la ventana.
+     */
+    private void avanzarReloj() {
+        LocalDateTime ahora = LocalDateTime.now();
+        if (!ahora.toLocalDate().equals(diaActual)) {
+            diaActual = ahora.toLocalDate();
+            hoy[0].vaciar();
+            hoy[1].vaciar();
+        }
+        long intervalo = numeroIntervalo(ahora);
+        if (intervalo == intervaloActual) {
+            return;
+        }
+        intervaloActual = intervalo;
+        for (int tipo = 0; tipo < 2; tipo++) {
+            ultimaHora[tipo].vaciar();
+        }
+        for (int posicion = 0; posicion < INTERVALOS_POR_HORA; posicion++) {
+            if (numeroDeIntervalo[posicion] > intervaloActual - INTERVALOS_POR_HORA) {
+                intervalos[0][posicion].sumarEn(ultimaHora[0]);
+                intervalos[1][posicion].sumarEn(ultimaHora[1]);
+            } else if (numeroDeIntervalo[posicion] != -1) {
+                intervalos[0][posicion].vaciar();
+                intervalos[1][posicion].vaciar();
+                numeroDeIntervalo[posicion] = -1;
+            }
+        }
+    }
+
+    private static long numeroIntervalo(LocalDateTime momento) {
+        return momento.toEpochSecond(ZoneOffset.UTC) / 60 / MINUTOS_POR_INTERVALO;
+    }
+
+    /**
+     * @param tipo {@link #TIPO_PRODUCTO} o {@link #TIPO_SERVICIO}.
+     * @param k Número de elementos.
+     * @return Los k más vendidos de hoy, de mayor a menor.
+     */
+    public synchronized List<Entrada> obtenerMasVendidosHoy(int tipo, int k) {
+        avanzarReloj();
+        return primeros(hoy[tipo], k);
+    }
+
+    /**
+     * @param tipo {@link #TIPO_PRODUCTO} o {@link #TIPO_SERVICIO}.
+     * @param k Número de elementos.
+     * @return Los k más vendidos de la última hora (con resolución de 5 minutos), de mayor a menor.
+     */
+    public synchronized List<Entrada> obtenerMasVendidosUltimaHora(int tipo, int k) {
+        avanzarReloj();
+        return primeros(ultimaHora[tipo], k);
+    }
+
+    private static List<Entrada> primeros(EsquemaSpaceSaving esquema, int k) {
+        int n = Math.min(k, esquema.getTamano());
+        List<Entrada> entradas = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            entradas.add(new Entrada(esquema.getId(i), esquema.getCuenta(i), esquema.getError(i)));
+        }
+        return entradas;
+    }
+}
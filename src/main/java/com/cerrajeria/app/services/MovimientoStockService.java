@@ -1,11 +1,24 @@
 package com.cerrajeria.app.services;
 
+import com.cerrajeria.app.dao.LibroStockDAO;
 import com.cerrajeria.app.dao.MovimientoStockDAO;
 import com.cerrajeria.app.dao.ProductoDAO; // Para verificar el producto
+import com.cerrajeria.app.dao.StockSnapshotDAO;
+import com.cerrajeria.app.database.DatabaseManager;
+import com.cerrajeria.app.models.LineaRecepcion;
 import com.cerrajeria.app.models.MovimientoStock;
 import com.cerrajeria.app.models.Producto;
 
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Clase de servicio para la gestión de movimientos de stock.
@@ -15,11 +28,15 @@ public class MovimientoStockService {
 
     private MovimientoStockDAO movimientoStockDAO;
     private ProductoDAO productoDAO; // Necesario para validar si el producto existe
+    private StockSnapshotDAO stockSnapshotDAO;
+    private LibroStockDAO libroStockDAO;
 
     // Constructor
     public MovimientoStockService() {
         this.movimientoStockDAO = new MovimientoStockDAO();
         this.productoDAO = new ProductoDAO();
+        this.stockSnapshotDAO = new StockSnapshotDAO();
+        this.libroStockDAO = new LibroStockDAO();
     }
 
     /**
@@ -40,25 +57,7 @@ public class MovimientoStockService {
             return false;
         }
 
-        // Actualizar stock del producto
-        producto.setStock(producto.getStock() + cantidad);
-        // Recalcular estado del stock
-        if (producto.getStock() <= 0) { // Aunque es una entrada, siempre es bueno verificar
-            producto.setEstado("Agotado");
-        } else if (producto.getStock() <= producto.getStockMinimo()) {
-            producto.setEstado("Bajo");
-        } else {
-            producto.setEstado("Disponible");
-        }
-
-        if (!productoDAO.actualizarProducto(producto)) {
-            System.err.println("Fallo al actualizar stock del producto ID: " + idProducto + " durante la entrada.");
-            return false;
-        }
-
-        // Registrar movimiento de stock
-        MovimientoStock movimiento = new MovimientoStock(idProducto, "Entrada", cantidad, comentario);
-        return movimientoStockDAO.insertarMovimientoStock(movimiento) != -1;
+        return aplicarMovimiento(new MovimientoStock(idProducto, "Entrada", cantidad, comentario), cantidad);
     }
 
     /**
@@ -78,30 +77,224 @@ public class MovimientoStockService {
             System.err.println("Error al registrar salida de stock: Producto con ID " + idProducto + " no encontrado.");
             return false;
         }
-        if (producto.getStock() < cantidad) {
-            System.err.println("Error al registrar salida de stock: Stock insuficiente para el producto " + producto.getNombre() + ". Stock actual: " + producto.getStock() + ", Cantidad a retirar: " + cantidad);
+
+        return aplicarMovimiento(new MovimientoStock(idProducto, "Salida", cantidad, comentario), -cantidad);
+    }
+
+    /**
+     * Cambia el stock del producto en la sucursal y registra su movimiento en una sola transacción,
+     * para que el stock no se separe del libro de movimientos (ver {@link #conciliarStock()}).
+     * El stock se incrementa en la base de datos (stock = stock + delta); una salida solo se descuenta
+     * si el stock de la sucursal alcanza en ese momento, igual que en las ventas, así una venta
+     * simultánea no puede dejarlo en negativo.
+     */
+    private boolean aplicarMovimiento(MovimientoStock movimiento, int delta) {
+        Connection conn = null;
+        try {
+            conn = DatabaseManager.getConnection();
+            if (conn == null) {
+                throw new SQLException("No se pudo establecer la conexión a la base de datos.", "08001");
+            }
+            conn.setAutoCommit(false);
+
+            if (delta < 0) {
+                if (!productoDAO.descontarStock(conn, movimiento.getIdProducto(), -delta)) {
+                    throw new SQLException("Stock insuficiente para el producto ID " + movimiento.getIdProducto()
+                            + ". Cantidad a retirar: " + -delta);
+                }
+            } else {
+                productoDAO.sumarStockEnLote(conn, Map.of(movimiento.getIdProducto(), delta));
+            }
+            if (movimientoStockDAO.insertarMovimientoStock(conn, movimiento) == -1) {
+                throw new SQLException("Fallo al registrar movimiento de stock para producto ID: " + movimiento.getIdProducto());
+            }
+            conn.commit();
+        } catch (SQLException e) {
+            System.err.println("Error al registrar " + movimiento.getTipo().toLowerCase() + " de stock del producto ID "
+                    + movimiento.getIdProducto() + ": " + e.getMessage());
+            if (conn != null) {
+                try {
+                    conn.rollback();
+                    System.err.println("Transacción del movimiento de stock revertida.");
+                } catch (SQLException rollbackEx) {
+                    System.err.println("Error al revertir la transacción: " + rollbackEx.getMessage());
+                }
+            }
             return false;
+        } finally {
+            if (conn != null) {
+                try {
+                    conn.setAutoCommit(true);
+                    conn.close();
+                } catch (SQLException closeEx) {
+                    System.err.println("Error al cerrar la conexión: " + closeEx.getMessage());
+                }
+            }
         }
 
-        // Actualizar stock del producto
-        producto.setStock(producto.getStock() - cantidad);
-        // Recalcular estado del stock
-        if (producto.getStock() <= 0) {
-            producto.setEstado("Agotado");
-        } else if (producto.getStock() <= producto.getStockMinimo()) {
-            producto.setEstado("Bajo");
-        } else {
-            producto.setEstado("Disponible");
+        CatalogoCache.getInstance().ajustarStock(movimiento.getIdProducto(), delta);
+        return true;
+    }
+
+    /**
+     * Lee un albarán de recepción en CSV o XLSX con las columnas id_producto, cantidad y,
+     * opcionalmente, comentario. Si la primera fila no empieza por un número se toma como cabecera.
+     * Las filas con formato incorrecto se devuelven con su error; los productos no se validan aquí
+     * (ver {@link #validarLineasRecepcion(List)}).
+     * @param archivo Archivo .csv o .xlsx.
+     * @return Líneas del albarán en el orden del archivo.
+     * @throws IOException Si el archivo no se puede leer.
+     */
+    public List<LineaRecepcion> leerAlbaran(Path archivo) throws IOException {
+        List<LineaRecepcion> lineas = new ArrayList<>();
+        LectorFilas.recorrer(archivo, (numeroFila, valores) -> {
+            String id = valores[0].trim();
+            String cantidad = (valores.length > 1) ? valores[1].trim() : "";
+            String comentario = (valores.length > 2 && !valores[2].isBlank()) ? valores[2].trim() : null;
+            if (lineas.isEmpty() && !id.isEmpty() && !Character.isDigit(id.charAt(0))) {
+                return true; // Cabecera
+            }
+            lineas.add(crearLineaRecepcion(numeroFila, id, cantidad, comentario));
+            return true;
+        });
+        return lineas;
+    }
+
+    private static LineaRecepcion crearLineaRecepcion(int numeroFila, String id, String cantidad, String comentario) {
+        int idProducto;
+        int unidades;
+        try {
+            idProducto = Integer.parseInt(id);
+        } catch (NumberFormatException e) {
+            LineaRecepcion linea = new LineaRecepcion(numeroFila, 0, 0, comentario);
+            linea.setError("ID de producto no válido: '" + id + "'");
+            return linea;
+        }
+        try {
+            unidades = Integer.parseInt(cantidad);
+        } catch (NumberFormatException e) {
+            LineaRecepcion linea = new LineaRecepcion(numeroFila, idProducto, 0, comentario);
+            linea.setError("Cantidad no válida: '" + cantidad + "'");
+            return linea;
+        }
+        LineaRecepcion linea = new LineaRecepcion(numeroFila, idProducto, unidades, comentario);
+        if (unidades <= 0) {
+            linea.setError("La cantidad debe ser positiva.");
         }
+        return linea;
+    }
 
-        if (!productoDAO.actualizarProducto(producto)) {
-            System.err.println("Fallo al actualizar stock del producto ID: " + idProducto + " durante la salida.");
+    /**
+     * Comprueba con una sola consulta que los productos de las líneas existen y están activos,
+     * completando el nombre del producto o el error de cada línea.
+     * @param lineas Líneas leídas con {@link #leerAlbaran(Path)}.
+     * @return true si la validación se pudo hacer (aunque haya líneas con error), false si falló la consulta.
+     */
+    public boolean validarLineasRecepcion(List<LineaRecepcion> lineas) {
+        try (Connection conn = DatabaseManager.getConnection()) {
+            validarLineasRecepcion(conn, lineas);
+            return true;
+        } catch (SQLException e) {
+            System.err.println("Error al validar las líneas de recepción: " + e.getMessage());
             return false;
         }
+    }
 
-        // Registrar movimiento de stock
-        MovimientoStock movimiento = new MovimientoStock(idProducto, "Salida", cantidad, comentario);
-        return movimientoStockDAO.insertarMovimientoStock(movimiento) != -1;
+    private void validarLineasRecepcion(Connection conn, List<LineaRecepcion> lineas) throws SQLException {
+        List<Integer> ids = new ArrayList<>(lineas.size());
+        for (LineaRecepcion linea : lineas) {
+            if (linea.getIdProducto() > 0) {
+                ids.add(linea.getIdProducto());
+            }
+        }
+        Map<Integer, Producto> productos = productoDAO.obtenerProductosPorIds(conn, ids);
+        for (LineaRecepcion linea : lineas) {
+            Producto producto = productos.get(linea.getIdProducto());
+            if (producto != null) {
+                linea.setNombreProducto(producto.getNombre());
+            }
+            if (!linea.isValida()) {
+                continue; // Ya tiene un error de formato
+            }
+            if (producto == null) {
+                linea.setError("Producto con ID " + linea.getIdProducto() + " no encontrado.");
+            } else if (!producto.isActivo()) {
+                linea.setError("Producto inactivo.");
+            }
+        }
+    }
+
+    /**
+     * Registra en bloque las entradas de stock de un albarán. Los productos se validan de nuevo con
+     * una consulta, y los incrementos de stock (un UPDATE por producto, con las líneas del mismo
+     * producto sumadas) y los movimientos 'Entrada' (uno por línea) se envían en dos lotes dentro de
+     * una sola transacción: o se aplican todas las líneas válidas o ninguna. Las líneas con error se
+     * omiten y quedan marcadas en el informe.
+     * @param lineas Líneas del albarán; se marcan como aplicadas o con su error.
+     * @param comentario Motivo de los movimientos de las líneas sin comentario propio (ej. "Albarán 1234").
+     * @return Número de líneas aplicadas, o -1 si la transacción falló y no se aplicó ninguna.
+     */
+    public int registrarEntradasEnLote(List<LineaRecepcion> lineas, String comentario) {
+        String motivoGeneral = (comentario != null && !comentario.isBlank()) ? comentario.trim() : "Recepción de mercadería";
+        Map<Integer, Integer> incrementos = new LinkedHashMap<>();
+        List<MovimientoStock> movimientos = new ArrayList<>();
+        List<LineaRecepcion> validas = new ArrayList<>();
+
+        Connection conn = null;
+        try {
+            conn = DatabaseManager.getConnection();
+            if (conn == null) {
+                throw new SQLException("No se pudo establecer la conexión a la base de datos.", "08001");
+            }
+            conn.setAutoCommit(false);
+
+            validarLineasRecepcion(conn, lineas);
+            for (LineaRecepcion linea : lineas) {
+                if (linea.isValida()) {
+                    validas.add(linea);
+                    incrementos.merge(linea.getIdProducto(), linea.getCantidad(), Integer::sum);
+                    movimientos.add(new MovimientoStock(linea.getIdProducto(), "Entrada", linea.getCantidad(),
+                            (linea.getComentario() != null) ? linea.getComentario() : motivoGeneral));
+                }
+            }
+            if (validas.isEmpty()) {
+                conn.rollback();
+                return 0;
+            }
+
+            productoDAO.sumarStockEnLote(conn, incrementos);
+            movimientoStockDAO.insertarMovimientosEnLote(conn, movimientos);
+            conn.commit();
+            System.out.println("Recepción registrada: " + validas.size() + " líneas, " + incrementos.size() + " productos.");
+        } catch (SQLException e) {
+            System.err.println("Error al registrar la recepción de stock: " + e.getMessage());
+            if (conn != null) {
+                try {
+                    conn.rollback();
+                    System.err.println("Transacción de recepción revertida.");
+                } catch (SQLException rollbackEx) {
+                    System.err.println("Error al revertir la transacción: " + rollbackEx.getMessage());
+                }
+            }
+            return -1;
+        } finally {
+            if (conn != null) {
+                try {
+                    conn.setAutoCommit(true);
+                    conn.close();
+                } catch (SQLException closeEx) {
+                    System.err.println("Error al cerrar la conexión: " + closeEx.getMessage());
+                }
+            }
+        }
+
+        for (LineaRecepcion linea : validas) {
+            linea.setAplicada(true);
+        }
+        for (Map.Entry<Integer, Integer> incremento : incrementos.entrySet()) {
+            CatalogoCache.getInstance().ajustarStock(incremento.getKey(), incremento.getValue());
+        }
+        return validas.size();
     }
 
     /**
@@ -144,4 +337,64 @@ public class MovimientoStockService {
         // Corregido para usar el método de tu DAO
         return movimientoStockDAO.obtenerMovimientosPorProductoId(idProducto);
     }
-}
\ No newline at end of file
+
+    /**
+     * Obtiene el stock de un producto en un instante pasado, a partir de la foto diaria más cercana.
+     * @param idProducto ID del producto.
+     * @param instante Momento a consultar.
+     * @return El stock en ese instante, o -1 si el producto no existía o hubo un error.
+     */
+    public int obtenerStockEnFecha(int idProducto, LocalDateTime instante) {
+        List<StockSnapshotDAO.StockEnFecha> resultado = stockSnapshotDAO.obtenerInventarioEnFecha(instante, idProducto);
+        return resultado.isEmpty() ? -1 : resultado.get(0).stock();
+    }
+
+    /**
+     * Obtiene el inventario completo (stock y costo de cada producto) en un instante pasado.
+     * @param instante Momento a consultar.
+     * @return Lista de productos que existían en ese instante, ordenada por nombre.
+     */
+    public List<StockSnapshotDAO.StockEnFecha> obtenerInventarioEnFecha(LocalDateTime instante) {
+        return stockSnapshotDAO.obtenerInventarioEnFecha(instante, null);
+    }
+
+    /**
+     * Valora el inventario en un instante pasado (stock × costo unitario de la foto).
+     * @param instante Momento a consultar.
+     * @return Valor total del inventario.
+     */
+    public BigDecimal obtenerValorInventarioEnFecha(LocalDateTime instante) {
+        return obtenerInventarioEnFecha(instante).stream()
+                .map(StockSnapshotDAO.StockEnFecha::valor)
+                .reduce(BigDecimal.ZERO, BigDecimal::add);
+    }
+
+    /**
+     * Concilia el stock de cada sucursal con el libro de movimientos (base compactada + movimientos)
+     * para todos los productos en una consulta agrupada. Los descuadrados se vuelven a comprobar una vez, para no
+     * informar de una venta que se estaba confirmando justo durante la primera lectura.
+     * @return Productos cuyo stock no coincide con el libro (vacía si todo cuadra).
+     */
+    public List<LibroStockDAO.Descuadre> conciliarStock() {
+        List<LibroStockDAO.Descuadre> descuadres = libroStockDAO.obtenerDescuadres(null);
+        if (descuadres.isEmpty()) {
+            return descuadres;
+        }
+        List<Integer> ids = descuadres.stream().map(LibroStockDAO.Descuadre::idProducto).toList();
+        return libroStockDAO.obtenerDescuadres(ids);
+    }
+
+    /**
+     * Rehace el stock de las sucursales a partir del libro de movimientos en los productos descuadrados
+     * y recarga el catálogo en memoria.
+     * @return Número de productos corregidos, o -1 si hubo un error.
+     */
+    public int corregirStockDesdeLibro() {
+        int corregidos = libroStockDAO.corregirDesdeLibro();
+        if (corregidos > 0) {
+            System.out.println("Stock corregido desde el libro de movimientos en " + corregidos + " productos.");
+            CatalogoCache.getInstance().recargar();
+        }
+        return corregidos;
+    }
+}
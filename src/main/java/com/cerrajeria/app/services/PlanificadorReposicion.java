@@ -0,0 +1,128 @@
+package com.cerrajeria.app.services;
+
+import com.cerrajeria.app.dao.MovimientoStockDAO;
+import com.cerrajeria.app.models.Producto;
+import com.cerrajeria.app.models.SugerenciaReposicion;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Planificador de reposición: calcula, para cada producto activo, la velocidad de venta
+ * (unidades/día) en varias ventanas, los días de cobertura del stock actual y la cantidad
+ * sugerida a pedir, y ordena los productos del más urgente al menos urgente.
+ *
+ * Las salidas por venta de movimiento_stock de la ventana más larga se leen en una sola pasada,
+ * ya sumadas por producto y día en la base de datos, y se reparten en memoria entre las ventanas
+ * en arreglos primitivos indexados por id_producto.
+ */
+public class PlanificadorReposicion {
+
+    private static final int[] VENTANAS_POR_DEFECTO = {7, 30, 90};
+
+    private final MovimientoStockDAO movimientoStockDAO;
+    private final int[] ventanasDias;        // Ordenadas de menor a mayor
+    private final int ventanaPlanificacion;  // Índice en ventanasDias de la velocidad que se usa para planificar
+    private final int plazoEntregaDias;
+    private final int diasCoberturaObjetivo;
+
+    /**
+     * Planificador con ventanas de 7, 30 y 90 días, planificando con la de 30, un plazo de entrega
+     * de 7 días y un objetivo de 30 días de cobertura.
+     */
+    public PlanificadorReposicion() {
+        this(VENTANAS_POR_DEFECTO, 30, 7, 30);
+    }
+
+    /**
+     * @param ventanasDias Ventanas (en días) en las que se mide la velocidad.
+     * @param ventanaPlanificacionDias Ventana cuya velocidad se usa para la cobertura y la sugerencia (debe estar en ventanasDias).
+     * @param plazoEntregaDias Días que tarda en llegar un pedido.
+     * @param diasCoberturaObjetivo Días de venta que debe cubrir el stock tras recibir el pedido.
+     */
+    public PlanificadorReposicion(int[] ventanasDias, int ventanaPlanificacionDias, int plazoEntregaDias,
+                                  int diasCoberturaObjetivo) {
+        this.movimientoStockDAO = new MovimientoStockDAO();
+        this.ventanasDias = ventanasDias.clone();
+        Arrays.sort(this.ventanasDias);
+        this.ventanaPlanificacion = Arrays.binarySearch(this.ventanasDias, ventanaPlanificacionDias);
+        if (ventanaPlanificacion < 0 || this.ventanasDias[0] <= 0) {
+            throw new IllegalArgumentException("La ventana de planificación debe ser una de las ventanas (positivas) configuradas.");
+        }
+        this.plazoEntregaDias = plazoEntregaDias;
+        this.diasCoberturaObjetivo = diasCoberturaObjetivo;
+    }
+
+    /**
+     * Calcula el plan de reposición de los productos activos.
+     * @return Sugerencias ordenadas por días de cobertura (los que se agotan antes primero)
+     *         y, a igual cobertura, por velocidad; vacía si no se pudieron leer los movimientos.
+     */
+    public List<SugerenciaReposicion> planificar() {
+        List<Producto> productos = CatalogoCache.getInstance().obtenerProductos().stream()
+                .filter(Producto::isActivo)
+                .toList();
+        if (productos.isEmpty()) {
+            return new ArrayList<>();
+        }
+        int maxIdProducto = productos.stream().mapToInt(Producto::getIdProducto).max().orElse(0);
+
+        long[][] unidades = acumularSalidas(maxIdProducto);
+        if (unidades == null) {
+            return new ArrayList<>();
+        }
+
+        List<SugerenciaReposicion> plan = new ArrayList<>(productos.size());
+        for (Producto producto : productos) {
+            int id = producto.getIdProducto();
+            double[] velocidades = new double[ventanasDias.length];
+            for (int w = 0; w < ventanasDias.length; w++) {
+                velocidades[w] = (double) unidades[w][id] / ventanasDias[w];
+            }
+            double velocidad = velocidades[ventanaPlanificacion];
+            int stock = Math.max(0, producto.getStock());
+            double diasCobertura = (velocidad > 0) ? stock / velocidad : Double.POSITIVE_INFINITY;
+
+            // Pedido para cubrir el plazo de entrega y el objetivo de cobertura, sin bajar del stock mínimo
+            double objetivo = velocidad * (plazoEntregaDias + diasCoberturaObjetivo) + producto.getStockMinimo();
+            int sugerida = (int) Math.max(0, Math.ceil(objetivo - stock));
+
+            plan.add(new SugerenciaReposicion(id, producto.getNombre(), stock, producto.getStockMinimo(),
+                    velocidades, velocidad, diasCobertura, sugerida));
+        }
+        plan.sort(Comparator.comparingDouble(SugerenciaReposicion::getDiasCobertura)
+                .thenComparing(Comparator.comparingDouble((SugerenciaReposicion s) -> s.getVelocidad()).reversed()));
+        return plan;
+    }
+
+    /**
+     * Lee las salidas por venta de la ventana más larga y las reparte entre las ventanas.
+     * @return Unidades vendidas [ventana][id_producto], o null si la lectura falló.
+     */
+    private long[][] acumularSalidas(int maxIdProducto) {
+        int ventanaMayor = ventanasDias[ventanasDias.length - 1];
+        LocalDate hoy = LocalDate.now();
+        int primerDia = (int) hoy.minusDays(ventanaMayor - 1L).toEpochDay();
+        // Primer día (epoch) incluido en cada ventana: la de N días abarca hoy y los N - 1 anteriores
+        int[] inicioVentana = new int[ventanasDias.length];
+        for (int w = 0; w < ventanasDias.length; w++) {
+            inicioVentana[w] = (int) hoy.minusDays(ventanasDias[w] - 1L).toEpochDay();
+        }
+
+        long[][] unidades = new long[ventanasDias.length][maxIdProducto + 1];
+        boolean leidas = movimientoStockDAO.recorrerSalidasPorVenta(LocalDate.ofEpochDay(primerDia).atStartOfDay(),
+                (idProducto, epochDia, cantidad) -> {
+                    if (idProducto > maxIdProducto) {
+                        return; // Producto inactivo o dado de alta después de cargar el catálogo
+                    }
+                    // Las ventanas están ordenadas: si el día cae en una, cae en todas las mayores
+                    for (int w = ventanasDias.length - 1; w >= 0 && epochDia >= inicioVentana[w]; w--) {
+                        unidades[w][idProducto] += cantidad;
+                    }
+                });
+        return leidas ? unidades : null;
+    }
+}
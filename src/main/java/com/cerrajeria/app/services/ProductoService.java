@@ -1,12 +1,21 @@
 package com.cerrajeria.app.services;
 
+import com.cerrajeria.app.dao.MovimientoStockDAO;
 import com.cerrajeria.app.dao.ProductoDAO;
 import com.cerrajeria.app.dao.CategoriaProductoDAO;
+import com.cerrajeria.app.dao.StockSucursalDAO;
+import com.cerrajeria.app.database.DatabaseManager;
+import com.cerrajeria.app.models.EstadoStock;
+import com.cerrajeria.app.models.MovimientoStock;
 import com.cerrajeria.app.models.Producto;
 import com.cerrajeria.app.models.CategoriaProducto;
 
 import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Clase de servicio para la gestión de productos.
@@ -16,15 +25,19 @@ public class ProductoService {
 
     private ProductoDAO productoDAO;
     private CategoriaProductoDAO categoriaProductoDAO; // Para verificar la existencia de categorías
+    private MovimientoStockDAO movimientoStockDAO; // Los cambios de stock se registran en el libro de movimientos
+    private StockSucursalDAO stockSucursalDAO; // Stock en las demás sucursales
 
     // Constructor
     public ProductoService() {
         this.productoDAO = new ProductoDAO();
         this.categoriaProductoDAO = new CategoriaProductoDAO();
+        this.movimientoStockDAO = new MovimientoStockDAO();
+        this.stockSucursalDAO = new StockSucursalDAO();
     }
 
     /**
-     * Crea un nuevo producto con validaciones y asignación de estado inicial.
+     * Crea un nuevo producto con validaciones. El estado inicial lo calcula ProductoDAO a partir del stock.
      * @param nombre Nombre del producto.
      * @param idCategoriaProducto ID de la categoría a la que pertenece.
      * @param costoInterno Costo de adquisición del producto.
@@ -49,27 +62,21 @@ public class ProductoService {
             return false;
         }
 
-        // Determinar el estado inicial del stock
-        String estadoInicial;
-        if (stockInicial <= 0) {
-            estadoInicial = "Agotado";
-        } else if (stockInicial <= stockMinimo) {
-            estadoInicial = "Bajo";
-        } else {
-            estadoInicial = "Disponible";
-        }
-
         Producto nuevoProducto = new Producto(nombre, idCategoriaProducto, precio, stockInicial,
                 stockMinimo, costoInterno);
-        nuevoProducto.setEstado(estadoInicial); // Establecer el estado inicial
 
-        int id = productoDAO.insertarProducto(nuevoProducto);
-        return id != -1;
+        // El stock inicial entra por el libro de movimientos, en la misma transacción que el alta
+        Integer stockAnterior = guardarConMovimiento(nuevoProducto, true, "Stock inicial");
+        if (stockAnterior == null) {
+            return false;
+        }
+        CatalogoCache.getInstance().refrescarProducto(nuevoProducto.getIdProducto());
+        return true;
     }
 
     /**
      * Actualiza los datos de un producto existente.
-     * Se recalcula el estado del stock si la cantidad cambia.
+     * El estado del stock no se guarda: se deriva del stock y del stock mínimo (ver {@link EstadoStock}).
      * @param producto El objeto Producto con los datos actualizados.
      * @return true si la actualización es exitosa, false en caso contrario.
      */
@@ -93,18 +100,71 @@ public class ProductoService {
             return false;
         }
 
-        // Recalcular el estado del stock si el stock o stockMinimo han cambiado
-        String nuevoEstado;
-        if (producto.getStock() <= 0) {
-            nuevoEstado = "Agotado";
-        } else if (producto.getStock() <= producto.getStockMinimo()) {
-            nuevoEstado = "Bajo";
-        } else {
-            nuevoEstado = "Disponible";
+        producto.setEstado(EstadoStock.de(producto.getStock(), producto.getStockMinimo()).getValor());
+
+        // Si la edición cambia el stock, la diferencia se registra como movimiento de ajuste
+        boolean actualizado = guardarConMovimiento(producto, false, "Ajuste manual (edición de producto)") != null;
+        if (actualizado) {
+            CatalogoCache.getInstance().refrescarProducto(producto.getIdProducto());
         }
-        producto.setEstado(nuevoEstado);
+        return actualizado;
+    }
+
+    /**
+     * Inserta o actualiza el producto y registra en la misma transacción el movimiento de stock
+     * por la diferencia entre el stock anterior y el nuevo, para que producto.stock siga cuadrando
+     * con el libro de movimientos.
+     * @return El stock anterior (0 en un alta), o null si no se guardó nada.
+     */
+    private Integer guardarConMovimiento(Producto producto, boolean nuevo, String motivo) {
+        Connection conn = null;
+        try {
+            conn = DatabaseManager.getConnection();
+            if (conn == null) {
+                throw new SQLException("No se pudo establecer la conexión a la base de datos.", "08001");
+            }
+            conn.setAutoCommit(false);
 
-        return productoDAO.actualizarProducto(producto);
+            Integer stockAnterior;
+            if (nuevo) {
+                stockAnterior = (productoDAO.insertarProducto(conn, producto) != -1) ? 0 : null;
+            } else {
+                stockAnterior = productoDAO.actualizarProducto(conn, producto);
+            }
+            if (stockAnterior == null) {
+                conn.rollback();
+                System.err.println("Error al guardar producto: no se insertó ni actualizó ninguna fila.");
+                return null;
+            }
+
+            int diferencia = producto.getStock() - stockAnterior;
+            if (diferencia != 0) {
+                movimientoStockDAO.insertarMovimientoStock(conn, new MovimientoStock(producto.getIdProducto(),
+                        diferencia > 0 ? "Entrada" : "Salida", Math.abs(diferencia), motivo));
+            }
+            conn.commit();
+            return stockAnterior;
+        } catch (SQLException e) {
+            System.err.println("Error al guardar producto: " + e.getMessage());
+            if (conn != null) {
+                try {
+                    conn.rollback();
+                    System.err.println("Transacción del producto revertida.");
+                } catch (SQLException rollbackEx) {
+                    System.err.println("Error al revertir la transacción: " + rollbackEx.getMessage());
+                }
+            }
+            return null;
+        } finally {
+            if (conn != null) {
+                try {
+                    conn.setAutoCommit(true);
+                    conn.close();
+                } catch (SQLException closeEx) {
+                    System.err.println("Error al cerrar la conexión: " + closeEx.getMessage());
+                }
+            }
+        }
     }
 
     /**
@@ -113,7 +173,11 @@ public class ProductoService {
      * @return true si la desactivación es exitosa, false en caso contrario.
      */
     public boolean desactivarProducto(int idProducto) {
-        return productoDAO.desactivarProducto(idProducto);
+        boolean ok = productoDAO.desactivarProducto(idProducto);
+        if (ok) {
+            CatalogoCache.getInstance().refrescarProducto(idProducto);
+        }
+        return ok;
     }
 
     /**
@@ -122,7 +186,11 @@ public class ProductoService {
      * @return true si la activación es exitosa, false en caso contrario.
      */
     public boolean activarProducto(int idProducto) {
-        return productoDAO.activarProducto(idProducto);
+        boolean ok = productoDAO.activarProducto(idProducto);
+        if (ok) {
+            CatalogoCache.getInstance().refrescarProducto(idProducto);
+        }
+        return ok;
     }
 
     /**
@@ -166,6 +234,37 @@ public class ProductoService {
                 .toList();
     }
 
+    /**
+     * Obtiene los productos activos con stock bajo o agotado desde el conjunto que mantiene
+     * {@link VigilanteStock} en memoria, sin consultar la base de datos.
+     * @return Productos con stock menor o igual a su stock mínimo, de menor a mayor stock.
+     */
+    public List<Producto> obtenerProductosConStockBajo() {
+        return VigilanteStock.getInstance().obtenerProductosBajos();
+    }
+
+    /**
+     * Obtiene el stock de un producto en cada sucursal (el resto de consultas de productos
+     * devuelven el stock de la sucursal de esta terminal).
+     * @param idProducto ID del producto.
+     * @return Stock del producto en cada sucursal activa.
+     */
+    public List<StockSucursalDAO.StockEnSucursal> obtenerStockPorSucursal(int idProducto) {
+        return stockSucursalDAO.obtenerStockPorSucursal(idProducto);
+    }
+
+    /**
+     * Obtiene en una consulta el stock disponible en las demás sucursales para varios productos.
+     * @param idsProducto IDs de los productos.
+     * @return Mapa ID -> unidades en otras sucursales (solo los productos que tienen stock fuera).
+     */
+    public Map<Integer, Integer> obtenerStockEnOtrasSucursales(Collection<Integer> idsProducto) {
+        if (idsProducto == null || idsProducto.isEmpty()) {
+            return Map.of();
+        }
+        return stockSucursalDAO.obtenerStockEnOtrasSucursales(idsProducto);
+    }
+
     /**
      * Obtiene una lista de productos por el nombre de su categoría.
      * @param nombreCategoria El nombre de la categoría.
@@ -4,11 +4,15 @@ import com.cerrajeria.app.dao.*;
 import com.cerrajeria.app.models.*;
 
 import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.IntFunction;
 import java.util.stream.Collectors;
 
 /**
@@ -25,6 +29,32 @@ public class ReporteService {
     private DetalleVentaProductoDAO detalleVentaProductoDAO;
     private DetalleVentaServicioDAO detalleVentaServicioDAO;
     private ControlFinancieroDAO controlFinancieroDAO;
+    private ResumenVentaDiarioDAO resumenVentaDiarioDAO;
+    private AlmacenVentasColumnar almacenVentas;
+
+    /**
+     * Importe de un grupo del análisis de ventas (una categoría o un vendedor).
+     * @param id Código de categoría del almacén analítico, o ID del vendedor.
+     */
+    public record ImportePorConcepto(int id, String concepto, BigDecimal importe) {}
+
+    /**
+     * Una línea de venta del detalle del análisis.
+     */
+    public record LineaAnalizada(int idVenta, LocalDate fecha, String vendedor, String item, String categoria,
+                                 int cantidad, BigDecimal importe, BigDecimal costo) {}
+
+    /**
+     * Resultado del análisis de ventas para unos filtros.
+     * @param categorias Todas las categorías con ventas (código -> nombre), para elegir el filtro.
+     */
+    public record AnalisisVentas(int lineas, long unidades, BigDecimal importe, BigDecimal costo,
+                                 List<ImportePorConcepto> porCategoria, List<ImportePorConcepto> porVendedor,
+                                 List<LineaAnalizada> detalle, Map<Integer, String> categorias) {
+        public BigDecimal margen() {
+            return importe.subtract(costo);
+        }
+    }
 
     // Constructor
     public ReporteService() {
@@ -36,6 +66,8 @@ public class ReporteService {
         this.detalleVentaProductoDAO = new DetalleVentaProductoDAO();
         this.detalleVentaServicioDAO = new DetalleVentaServicioDAO();
         this.controlFinancieroDAO = new ControlFinancieroDAO();
+        this.resumenVentaDiarioDAO = new ResumenVentaDiarioDAO();
+        this.almacenVentas = AlmacenVentasColumnar.getInstance();
     }
 
     /**
@@ -44,17 +76,22 @@ public class ReporteService {
      * @param desde Fecha y hora de inicio (puede ser null).
      * @param hasta Fecha y hora de fin (puede ser null).
      * @param idUsuario ID del usuario (vendedor) para filtrar (puede ser null para todas las ventas).
-     * @return Lista de ventas que cumplen con los criterios.
+     * @return Lista de ventas que cumplen con los criterios, más recientes primero.
      */
     public List<Venta> obtenerTodasLasVentasFiltradas(LocalDateTime desde, LocalDateTime hasta, Integer idUsuario) {
-        List<Venta> ventas = ventaDAO.obtenerTodasLasVentas(); // Obtener todas y filtrar en memoria
+        return obtenerVentasFiltradasConTotales(desde, hasta, idUsuario).ventas();
+    }
 
-        return ventas.stream()
-                .filter(venta -> (desde == null || (venta.getFechaCreacion() != null && !venta.getFechaCreacion().isBefore(desde)))) // Usar getFechaCreacion
-                .filter(venta -> (hasta == null || (venta.getFechaCreacion() != null && !venta.getFechaCreacion().isAfter(hasta))))   // Usar getFechaCreacion
-                .filter(venta -> (idUsuario == null || venta.getIdUsuario() == idUsuario))
-                .sorted(Comparator.comparing(Venta::getFechaCreacion).reversed()) // Ordenar por fecha de creación, más recientes primero
-                .collect(Collectors.toList());
+    /**
+     * Igual que {@link #obtenerTodasLasVentasFiltradas}, pero devuelve también la cantidad y la suma
+     * de las ventas, calculadas por la base de datos en la misma consulta.
+     * @param desde Fecha y hora de inicio (puede ser null).
+     * @param hasta Fecha y hora de fin (puede ser null).
+     * @param idUsuario ID del usuario (vendedor) para filtrar (puede ser null para todas las ventas).
+     * @return Las ventas filtradas con su cantidad y total.
+     */
+    public VentaDAO.VentasFiltradas obtenerVentasFiltradasConTotales(LocalDateTime desde, LocalDateTime hasta, Integer idUsuario) {
+        return ventaDAO.obtenerVentasFiltradas(desde, hasta, idUsuario);
     }
 
     /**
@@ -74,56 +111,55 @@ public class ReporteService {
     }
 
     /**
-     * Obtiene el historial detallado de un vendedor (ventas, comisiones).
+     * Obtiene el historial de un vendedor (ventas, comisiones).
+     * Las ventas se devuelven como {@link VentaResumen}, con la cantidad de líneas, unidades e importes
+     * calculados en la misma consulta; el detalle de cada venta se pide con {@link #obtenerLineasDeVenta}.
      * @param idVendedor ID del vendedor.
      * @return Un mapa que contiene la lista de ventas y la lista de comisiones del vendedor.
      */
     public Map<String, List<?>> obtenerHistorialVendedor(int idVendedor) {
         Map<String, List<?>> historial = new LinkedHashMap<>(); // LinkedHashMap para mantener el orden de inserción
 
-        List<Venta> ventasVendedor = ventaDAO.obtenerVentasPorUsuario(idVendedor);
-        List<Comision> comisionesVendedor = comisionDAO.obtenerComisionesPorUsuario(idVendedor);
-
-        // Cargar detalles para cada venta del vendedor
-        // No es estrictamente necesario cargar los detalles aquí si solo se listan ventas/comisiones,
-        // pero se mantiene la estructura por si la UI los necesita.
-        for (Venta venta : ventasVendedor) {
-            List<DetalleVentaProducto> productos = detalleVentaProductoDAO.obtenerDetallesPorVenta(venta.getIdVenta());
-            List<DetalleVentaServicio> servicios = detalleVentaServicioDAO.obtenerDetallesPorVenta(venta.getIdVenta());
-            // Si el modelo Venta tuviera listas para detalles, se podrían asignar aquí:
-            // venta.setDetallesProductos(productos);
-            // venta.setDetallesServicios(servicios);
-        }
-
-        historial.put("ventas", ventasVendedor);
-        historial.put("comisiones", comisionesVendedor);
+        historial.put("ventas", ventaDAO.obtenerVentasResumidasPorUsuario(idVendedor));
+        historial.put("comisiones", comisionDAO.obtenerComisionesPorUsuario(idVendedor));
 
         return historial;
     }
 
+    /**
+     * Obtiene una página de las líneas de una venta, para mostrarlas al desplegarla.
+     * @param idVenta ID de la venta.
+     * @param pagina Número de página, empezando en 0.
+     * @param tamanoPagina Líneas por página.
+     * @return Las líneas de la página (vacía si no hay más).
+     */
+    public List<LineaVenta> obtenerLineasDeVenta(int idVenta, int pagina, int tamanoPagina) {
+        return ventaDAO.obtenerLineasDeVenta(idVenta, pagina * tamanoPagina, tamanoPagina);
+    }
+
     /**
      * Obtiene las estadísticas de productos más vendidos.
      * @param limite Número máximo de productos a retornar.
      * @return Mapa de nombre de producto a cantidad total vendida.
      */
     public Map<String, Integer> obtenerProductosMasVendidos(int limite) {
-        List<DetalleVentaProducto> todosLosDetalles = detalleVentaProductoDAO.obtenerTodosLosDetallesVentaProducto();
-
-        return todosLosDetalles.stream()
-                .collect(Collectors.groupingBy(DetalleVentaProducto::getIdProducto,
-                        Collectors.summingInt(DetalleVentaProducto::getCantidad)))
-                .entrySet().stream()
-                .sorted(Map.Entry.<Integer, Integer>comparingByValue().reversed()) // Ordenar por cantidad descendente
-                .limit(limite)
-                .collect(Collectors.toMap(
-                        entry -> { // Mapear ID de producto a su nombre
-                            Producto producto = new ProductoDAO().obtenerProductoPorId(entry.getKey());
-                            return (producto != null) ? producto.getNombre() : "Producto Desconocido (ID: " + entry.getKey() + ")";
-                        },
-                        Map.Entry::getValue,
-                        (e1, e2) -> e1, // Merge function for duplicates (shouldn't happen with groupingBy)
-                        LinkedHashMap::new // Para mantener el orden de inserción (después del sort)
-                ));
+        return aMapaDeUnidades(obtenerProductosMasVendidos(limite, null, null, null));
+    }
+
+    /**
+     * Obtiene los productos más vendidos con unidades, ingresos y margen, agregados en la base de datos.
+     * @param limite Número máximo de productos a retornar.
+     * @param desde Fecha de inicio (puede ser null).
+     * @param hasta Fecha de fin (puede ser null).
+     * @param idUsuario Vendedor (puede ser null para todos).
+     * @return Lista ordenada por unidades vendidas, de mayor a menor.
+     */
+    public List<ItemMasVendido> obtenerProductosMasVendidos(int limite, LocalDateTime desde, LocalDateTime hasta, Integer idUsuario) {
+        if (cubreDiasCompletos(desde, hasta)) {
+            return resumenVentaDiarioDAO.obtenerMasVendidos(ResumenVentaDiarioDAO.TIPO_PRODUCTO, limite,
+                    aDia(desde), aDia(hasta), idUsuario);
+        }
+        return detalleVentaProductoDAO.obtenerMasVendidos(limite, desde, hasta, idUsuario);
     }
 
     /**
@@ -132,23 +168,223 @@ public class ReporteService {
      * @return Mapa de nombre de servicio a cantidad total vendida.
      */
     public Map<String, Integer> obtenerServiciosMasVendidos(int limite) {
-        List<DetalleVentaServicio> todosLosDetalles = detalleVentaServicioDAO.obtenerTodosLosDetallesVentaServicio();
-
-        return todosLosDetalles.stream()
-                .collect(Collectors.groupingBy(DetalleVentaServicio::getIdServicio,
-                        Collectors.summingInt(DetalleVentaServicio::getCantidad)))
-                .entrySet().stream()
-                .sorted(Map.Entry.<Integer, Integer>comparingByValue().reversed()) // Ordenar por cantidad descendente
-                .limit(limite)
-                .collect(Collectors.toMap(
-                        entry -> { // Mapear ID de servicio a su nombre
-                            Servicio servicio = new ServicioDAO().obtenerServicioPorId(entry.getKey());
-                            return (servicio != null) ? servicio.getNombre() : "Servicio Desconocido (ID: " + entry.getKey() + ")";
-                        },
-                        Map.Entry::getValue,
-                        (e1, e2) -> e1,
-                        LinkedHashMap::new
-                ));
+        return aMapaDeUnidades(obtenerServiciosMasVendidos(limite, null, null, null));
+    }
+
+    /**
+     * Obtiene los servicios más vendidos con unidades e ingresos, agregados en la base de datos.
+     * @param limite Número máximo de servicios a retornar.
+     * @param desde Fecha de inicio (puede ser null).
+     * @param hasta Fecha de fin (puede ser null).
+     * @param idUsuario Vendedor (puede ser null para todos).
+     * @return Lista ordenada por unidades vendidas, de mayor a menor.
+     */
+    public List<ItemMasVendido> obtenerServiciosMasVendidos(int limite, LocalDateTime desde, LocalDateTime hasta, Integer idUsuario) {
+        if (cubreDiasCompletos(desde, hasta)) {
+            return resumenVentaDiarioDAO.obtenerMasVendidos(ResumenVentaDiarioDAO.TIPO_SERVICIO, limite,
+                    aDia(desde), aDia(hasta), idUsuario);
+        }
+        return detalleVentaServicioDAO.obtenerMasVendidos(limite, desde, hasta, idUsuario);
+    }
+
+    /**
+     * Obtiene los totales diarios (unidades, ingresos, costo, comisión) desde el resumen pre-agregado.
+     * @param desde Primer día (puede ser null).
+     * @param hasta Último día (puede ser null).
+     * @param idUsuario Vendedor (puede ser null para todos).
+     * @return Totales por día, ordenados por fecha.
+     */
+    public List<ResumenVentaDiarioDAO.TotalDia> obtenerTotalesPorDia(LocalDate desde, LocalDate hasta, Integer idUsuario) {
+        return resumenVentaDiarioDAO.obtenerTotalesPorDia(desde, hasta, idUsuario);
+    }
+
+    /**
+     * Obtiene el reporte de rentabilidad (ingresos, costo, margen bruto, margen %, comisión) agrupado por
+     * producto/servicio, categoría, vendedor o mes, agregado por la base de datos sobre el resumen diario.
+     * @param agrupacion Criterio de agrupación.
+     * @param desde Primer día (puede ser null).
+     * @param hasta Último día (puede ser null).
+     * @param idUsuario Vendedor (puede ser null para todos).
+     * @return Filas del reporte.
+     */
+    public List<FilaRentabilidad> obtenerRentabilidad(ResumenVentaDiarioDAO.AgrupacionRentabilidad agrupacion,
+                                                      LocalDate desde, LocalDate hasta, Integer idUsuario) {
+        return resumenVentaDiarioDAO.obtenerRentabilidad(agrupacion, desde, hasta, idUsuario);
+    }
+
+    /**
+     * Calcula el plan de reposición de los productos activos: velocidad de venta en 7, 30 y 90 días,
+     * días de cobertura del stock y cantidad sugerida (ver {@link PlanificadorReposicion}).
+     * @return Sugerencias de la más urgente a la menos urgente; vacía si no se pudieron leer las ventas.
+     */
+    public List<SugerenciaReposicion> obtenerPlanReposicion() {
+        return new PlanificadorReposicion().planificar();
+    }
+
+    /**
+     * Reconstruye el resumen diario de un rango de días a partir de las ventas registradas.
+     * @return Número de filas generadas, o -1 si hubo un error.
+     */
+    public int reconstruirResumenDiario(LocalDate desde, LocalDate hasta) {
+        return resumenVentaDiarioDAO.reconstruir(desde, hasta);
+    }
+
+    /**
+     * Analiza las líneas de venta con el almacén analítico en memoria: totales, importe por categoría
+     * y por vendedor, y las primeras líneas que cumplen los filtros. Antes de agregar se añaden al
+     * almacén las ventas registradas desde la consulta anterior.
+     * @param desde Primer día (puede ser null).
+     * @param hasta Último día (puede ser null).
+     * @param idUsuario Vendedor (puede ser null para todos).
+     * @param tipo {@link AnalisisVentasDAO#TIPO_PRODUCTO}, {@link AnalisisVentasDAO#TIPO_SERVICIO} o null para ambos.
+     * @param codigoCategoria Código de categoría de {@link AnalisisVentas#categorias()} (puede ser null).
+     * @param limiteDetalle Número máximo de líneas de detalle.
+     * @return El análisis, o null si el almacén nunca pudo cargarse.
+     */
+    public AnalisisVentas analizarVentas(LocalDate desde, LocalDate hasta, Integer idUsuario, Integer tipo,
+                                         Integer codigoCategoria, int limiteDetalle) {
+        if (almacenVentas.actualizar() == -1 && almacenVentas.getCantidadLineas() == 0) {
+            return null;
+        }
+        AlmacenVentasColumnar.Filtro filtro = AlmacenVentasColumnar.Filtro.todo()
+                .conFechas(desde, hasta)
+                .conUsuario(idUsuario != null ? idUsuario : AlmacenVentasColumnar.TODOS)
+                .conTipo(tipo != null ? tipo : AlmacenVentasColumnar.TODOS)
+                .conCategoria(codigoCategoria != null ? codigoCategoria : AlmacenVentasColumnar.TODOS);
+
+        // Nombres de categorías y vendedores, una consulta por tabla en lugar de una por código
+        Map<Integer, String> categorias = new LinkedHashMap<>();
+        for (CategoriaProducto c : new CategoriaProductoDAO().obtenerTodasCategoriasProducto()) {
+            int codigo = almacenVentas.codigoCategoria(AnalisisVentasDAO.TIPO_PRODUCTO, c.getIdCategoriaProducto());
+            if (codigo != AlmacenVentasColumnar.TODOS) {
+                categorias.put(codigo, "Producto: " + c.getNombre());
+            }
+        }
+        for (CategoriaServicio c : new CategoriaServicioDAO().obtenerTodasCategoriasServicio()) {
+            int codigo = almacenVentas.codigoCategoria(AnalisisVentasDAO.TIPO_SERVICIO, c.getIdCategoriaServicio());
+            if (codigo != AlmacenVentasColumnar.TODOS) {
+                categorias.put(codigo, "Servicio: " + c.getNombre());
+            }
+        }
+        Map<Integer, String> vendedores = usuarioDAO.obtenerTodosLosUsuarios().stream()
+                .collect(Collectors.toMap(Usuario::getIdUsuario, Usuario::getNombre, (a, b) -> a));
+
+        AlmacenVentasColumnar.Totales totales = almacenVentas.totalizar(filtro);
+        List<ImportePorConcepto> porCategoria = agruparImportes(almacenVentas.importePorCategoria(filtro),
+                codigo -> categorias.getOrDefault(codigo, "Categoría " + codigo));
+        List<ImportePorConcepto> porVendedor = agruparImportes(almacenVentas.importePorUsuario(filtro),
+                id -> vendedores.getOrDefault(id, "Desconocido"));
+
+        CatalogoCache catalogo = CatalogoCache.getInstance();
+        List<LineaAnalizada> detalle = new ArrayList<>();
+        for (int fila : almacenVentas.filas(filtro, limiteDetalle)) {
+            int idItem = almacenVentas.getIdItem(fila);
+            String item;
+            if (almacenVentas.getTipo(fila) == AnalisisVentasDAO.TIPO_PRODUCTO) {
+                Producto producto = catalogo.obtenerProducto(idItem);
+                item = (producto != null) ? producto.getNombre() : "Producto " + idItem;
+            } else {
+                Servicio servicio = catalogo.obtenerServicio(idItem);
+                item = (servicio != null) ? servicio.getNombre() : "Servicio " + idItem;
+            }
+            int codigo = almacenVentas.getCodigoCategoria(fila);
+            detalle.add(new LineaAnalizada(almacenVentas.getIdVenta(fila), almacenVentas.getFecha(fila),
+                    vendedores.getOrDefault(almacenVentas.getIdUsuario(fila), "Desconocido"), item,
+                    categorias.getOrDefault(codigo, "Categoría " + codigo), almacenVentas.getCantidad(fila),
+                    BigDecimal.valueOf(almacenVentas.getImporteCentavos(fila), 2),
+                    BigDecimal.valueOf(almacenVentas.getCostoCentavos(fila), 2)));
+        }
+
+        Map<Integer, String> categoriasPorNombre = categorias.entrySet().stream()
+                .sorted(Map.Entry.comparingByValue())
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue, (a, b) -> a, LinkedHashMap::new));
+        return new AnalisisVentas(totales.lineas(), totales.unidades(),
+                BigDecimal.valueOf(totales.importeCentavos(), 2), BigDecimal.valueOf(totales.costoCentavos(), 2),
+                porCategoria, porVendedor, detalle, categoriasPorNombre);
+    }
+
+    /**
+     * Convierte un arreglo de importes en centavos (índice = id del grupo) en filas, de mayor a menor, sin los grupos vacíos.
+     */
+    private static List<ImportePorConcepto> agruparImportes(long[] centavos, IntFunction<String> nombre) {
+        List<ImportePorConcepto> grupos = new ArrayList<>();
+        for (int id = 0; id < centavos.length; id++) {
+            if (centavos[id] != 0) {
+                grupos.add(new ImportePorConcepto(id, nombre.apply(id), BigDecimal.valueOf(centavos[id], 2)));
+            }
+        }
+        grupos.sort(Comparator.comparing(ImportePorConcepto::importe).reversed());
+        return grupos;
+    }
+
+    /**
+     * Calcula la aportación de una venta al resumen diario (una fila por producto o servicio).
+     * El costo es el fijado en cada línea al vender; los productos se resuelven contra la caché del catálogo
+     * para la comisión, como en el cálculo de comisiones.
+     * @param venta Venta confirmada (con su fecha de creación).
+     * @param productos Líneas de producto de la venta.
+     * @param servicios Líneas de servicio de la venta.
+     * @param configPorCategoria Configuración de comisión indexada por ID de categoría de producto.
+     * @return Filas a sumar al resumen.
+     */
+    public List<ResumenVentaDiarioDAO.FilaResumen> construirFilasResumen(Venta venta, List<DetalleVentaProducto> productos,
+                                                                         List<DetalleVentaServicio> servicios,
+                                                                         Map<Integer, ComisionCategoriaProducto> configPorCategoria,
+                                                                         ComisionService comisionService) {
+        Map<String, ResumenVentaDiarioDAO.FilaResumen> filas = new LinkedHashMap<>();
+        LocalDate fecha = venta.getFechaCreacion().toLocalDate();
+        CatalogoCache catalogo = CatalogoCache.getInstance();
+
+        for (DetalleVentaProducto dp : productos) {
+            Producto producto = catalogo.obtenerProducto(dp.getIdProducto());
+            BigDecimal costoUnitario = (dp.getCostoUnitario() != null) ? dp.getCostoUnitario()
+                    : (producto != null && producto.getCostoInterno() != null) ? producto.getCostoInterno() : BigDecimal.ZERO;
+            BigDecimal comision = BigDecimal.ZERO;
+            if (producto != null) {
+                comision = comisionService.calcularComisionProducto(dp, producto, configPorCategoria.get(producto.getIdCategoriaProducto())).max(BigDecimal.ZERO);
+            }
+            sumarFila(filas, new ResumenVentaDiarioDAO.FilaResumen(fecha, venta.getIdUsuario(), ResumenVentaDiarioDAO.TIPO_PRODUCTO,
+                    dp.getIdProducto(), dp.getCantidad(), subtotal(dp.getPrecioUnitarioFinal(), dp.getCantidad()),
+                    subtotal(costoUnitario, dp.getCantidad()), comision));
+        }
+        for (DetalleVentaServicio ds : servicios) {
+            sumarFila(filas, new ResumenVentaDiarioDAO.FilaResumen(fecha, venta.getIdUsuario(), ResumenVentaDiarioDAO.TIPO_SERVICIO,
+                    ds.getIdServicio(), ds.getCantidad(), subtotal(ds.getPrecioUnitarioFinal(), ds.getCantidad()),
+                    BigDecimal.ZERO, comisionService.calcularComisionServicio(ds)));
+        }
+        return new ArrayList<>(filas.values());
+    }
+
+    private void sumarFila(Map<String, ResumenVentaDiarioDAO.FilaResumen> filas, ResumenVentaDiarioDAO.FilaResumen fila) {
+        filas.merge(fila.tipo() + fila.idItem(), fila, (a, b) -> new ResumenVentaDiarioDAO.FilaResumen(a.fecha(), a.idUsuario(),
+                a.tipo(), a.idItem(), a.unidades() + b.unidades(), a.ingresos().add(b.ingresos()),
+                a.costo().add(b.costo()), a.comision().add(b.comision())));
+    }
+
+    private static BigDecimal subtotal(BigDecimal precio, int cantidad) {
+        return precio.multiply(BigDecimal.valueOf(cantidad));
+    }
+
+    /**
+     * El resumen diario solo sirve para rangos de días completos: desde al inicio de un día
+     * y hasta al final de otro (23:59:59 o más). Un extremo nulo no restringe.
+     */
+    private static boolean cubreDiasCompletos(LocalDateTime desde, LocalDateTime hasta) {
+        boolean desdeCompleto = desde == null || desde.toLocalTime().equals(LocalTime.MIDNIGHT);
+        boolean hastaCompleto = hasta == null || !hasta.toLocalTime().isBefore(LocalTime.of(23, 59, 59));
+        return desdeCompleto && hastaCompleto;
+    }
+
+    private static LocalDate aDia(LocalDateTime fecha) {
+        return (fecha != null) ? fecha.toLocalDate() : null;
+    }
+
+    private Map<String, Integer> aMapaDeUnidades(List<ItemMasVendido> items) {
+        Map<String, Integer> unidades = new LinkedHashMap<>(); // Mantiene el orden de la consulta
+        for (ItemMasVendido item : items) {
+            unidades.putIfAbsent(item.getNombre(), item.getUnidadesVendidas());
+        }
+        return unidades;
     }
 
     /**
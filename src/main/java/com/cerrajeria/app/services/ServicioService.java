@@ -47,6 +47,9 @@ public class ServicioService {
 
         Servicio nuevoServicio = new Servicio(nombre, descripcion, precio, idCategoriaServicio);
         int id = servicioDAO.insertarServicio(nuevoServicio);
+        if (id != -1) {
+            CatalogoCache.getInstance().refrescarServicio(id);
+        }
         return id != -1;
     }
 
@@ -73,7 +76,11 @@ public class ServicioService {
             return false;
         }
 
-        return servicioDAO.actualizarServicio(servicio);
+        boolean actualizado = servicioDAO.actualizarServicio(servicio);
+        if (actualizado) {
+            CatalogoCache.getInstance().refrescarServicio(servicio.getIdServicio());
+        }
+        return actualizado;
     }
 
     /**
@@ -87,7 +94,11 @@ public class ServicioService {
             System.err.println("No se puede desactivar el servicio 'Otros'.");
             return false;
         }
-        return servicioDAO.desactivarServicio(idServicio);
+        boolean ok = servicioDAO.desactivarServicio(idServicio);
+        if (ok) {
+            CatalogoCache.getInstance().refrescarServicio(idServicio);
+        }
+        return ok;
     }
 
     /**
@@ -96,7 +107,11 @@ public class ServicioService {
      * @return true si la activación es exitosa, false en caso contrario.
      */
     public boolean activarServicio(int idServicio) {
-        return servicioDAO.activarServicio(idServicio);
+        boolean ok = servicioDAO.activarServicio(idServicio);
+        if (ok) {
+            CatalogoCache.getInstance().refrescarServicio(idServicio);
+        }
+        return ok;
     }
 
     /**
@@ -0,0 +1,147 @@
+package com.cerrajeria.app.services;
+
+import com.cerrajeria.app.dao.ConteoInventarioDAO;
+import com.cerrajeria.app.models.LineaConteo;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Conteo de inventario en curso, en memoria: las líneas del conteo indexadas por producto,
+ * las lecturas del escáner y el cálculo de diferencias no tocan la base de datos.
+ * Se obtiene y se guarda con {@link InventarioFisicoService}. Las lecturas llegan desde la interfaz
+ * mientras el guardado corre en segundo plano, por eso los cambios de cantidad pasan por esta clase.
+ */
+public class SesionConteo {
+
+    /**
+     * Resumen de las diferencias del conteo.
+     * @param sobrantes Unidades contadas de más (generan entradas).
+     * @param faltantes Unidades contadas de menos (generan salidas).
+     */
+    public record Resumen(int productos, int contados, int conDiferencia, int sobrantes, int faltantes) { }
+
+    private final ConteoInventarioDAO.Conteo conteo;
+    private final List<LineaConteo> lineas;
+    private final Map<Integer, LineaConteo> porProducto;
+
+    SesionConteo(ConteoInventarioDAO.Conteo conteo, List<LineaConteo> lineas) {
+        this.conteo = conteo;
+        this.lineas = lineas;
+        this.porProducto = new HashMap<>(lineas.size() * 2);
+        for (LineaConteo linea : lineas) {
+            porProducto.put(linea.getIdProducto(), linea);
+        }
+    }
+
+    public ConteoInventarioDAO.Conteo getConteo() {
+        return conteo;
+    }
+
+    public List<LineaConteo> getLineas() {
+        return lineas;
+    }
+
+    public LineaConteo obtenerLinea(int idProducto) {
+        return porProducto.get(idProducto);
+    }
+
+    /**
+     * Registra una lectura del escáner o del teclado:
+     * "ID" suma una unidad, "ID*N" suma N (negativo para corregir) y "ID=N" fija la cantidad en N.
+     * @param lectura Texto leído.
+     * @return La línea actualizada.
+     * @throws IllegalArgumentException Si la lectura no tiene un formato válido o el producto no está en el conteo.
+     */
+    public synchronized LineaConteo registrarLectura(String lectura) {
+        String texto = lectura.trim();
+        int separador = indiceSeparador(texto);
+        int idProducto;
+        int cantidad = 1;
+        try {
+            idProducto = Integer.parseInt((separador < 0 ? texto : texto.substring(0, separador)).trim());
+            if (separador >= 0) {
+                cantidad = Integer.parseInt(texto.substring(separador + 1).trim());
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Lectura no válida: '" + texto + "'");
+        }
+
+        LineaConteo linea = porProducto.get(idProducto);
+        if (linea == null) {
+            throw new IllegalArgumentException("El producto " + idProducto + " no forma parte del conteo.");
+        }
+        boolean fijar = separador >= 0 && texto.charAt(separador) == '=';
+        int anterior = linea.isContada() ? linea.getCantidadContada() : 0;
+        linea.setCantidadContada(Math.max(0, fijar ? cantidad : anterior + cantidad));
+        return linea;
+    }
+
+    private static int indiceSeparador(String texto) {
+        for (int i = 0; i < texto.length(); i++) {
+            char c = texto.charAt(i);
+            if (c == '*' || c == '=') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Fija la cantidad contada de una línea (edición manual).
+     * @param cantidad Cantidad contada, o null para marcarla como no contada.
+     */
+    public synchronized void fijarCantidad(LineaConteo linea, Integer cantidad) {
+        linea.setCantidadContada((cantidad != null) ? Math.max(0, cantidad) : null);
+    }
+
+    /**
+     * Devuelve las líneas cambiadas desde el último guardado y las marca como guardadas.
+     * Si el guardado falla, hay que devolverlas con {@link #restaurarModificadas(List)}.
+     */
+    synchronized List<LineaConteo> tomarModificadas() {
+        List<LineaConteo> modificadas = new ArrayList<>();
+        for (LineaConteo linea : lineas) {
+            if (linea.isModificada()) {
+                modificadas.add(new LineaConteo(linea.getIdProducto(), linea.getNombreProducto(),
+                        linea.getStockEsperado(), linea.getCantidadContada()));
+                linea.setModificada(false);
+            }
+        }
+        return modificadas;
+    }
+
+    synchronized void restaurarModificadas(List<LineaConteo> modificadas) {
+        for (LineaConteo copia : modificadas) {
+            porProducto.get(copia.getIdProducto()).setModificada(true);
+        }
+    }
+
+    /**
+     * Calcula las diferencias del conteo en una pasada sobre las líneas en memoria. Son provisionales:
+     * se miden contra el stock congelado y al aplicar se corrigen con los movimientos posteriores.
+     */
+    public synchronized Resumen calcularResumen() {
+        int contados = 0;
+        int conDiferencia = 0;
+        int sobrantes = 0;
+        int faltantes = 0;
+        for (LineaConteo linea : lineas) {
+            if (!linea.isContada()) {
+                continue;
+            }
+            contados++;
+            int diferencia = linea.getDiferencia();
+            if (diferencia > 0) {
+                conDiferencia++;
+                sobrantes += diferencia;
+            } else if (diferencia < 0) {
+                conDiferencia++;
+                faltantes -= diferencia;
+            }
+        }
+        return new Resumen(lineas.size(), contados, conDiferencia, sobrantes, faltantes);
+    }
+}
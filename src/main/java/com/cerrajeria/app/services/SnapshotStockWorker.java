@@ -0,0 +1,82 @@
+package com.cerrajeria.app.services;
+
+import com.cerrajeria.app.dao.StockSnapshotDAO;
+
+import java.time.LocalDate;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Trabajador en segundo plano que toma la foto diaria del stock ('stock_snapshot').
+ * Cada hora comprueba si falta la foto de algún día terminado y la toma, de modo que
+ * tras un cierre de varios días se completan todos los días pendientes al volver a iniciar.
+ */
+public class SnapshotStockWorker {
+
+    private static final long INTERVALO_HORAS = 1;
+    // Tras una interrupción larga solo se completan los últimos días; sin ninguna foto previa se empieza por ayer
+    private static final int MAX_DIAS_A_COMPLETAR = 62;
+
+    private static final SnapshotStockWorker INSTANCIA = new SnapshotStockWorker();
+
+    private final StockSnapshotDAO stockSnapshotDAO;
+    private ScheduledExecutorService executor;
+
+    private SnapshotStockWorker() {
+        this.stockSnapshotDAO = new StockSnapshotDAO();
+    }
+
+    public static SnapshotStockWorker getInstance() {
+        return INSTANCIA;
+    }
+
+    public synchronized void iniciar() {
+        if (executor != null) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "snapshot-stock");
+            t.setDaemon(true);
+            return t;
+        });
+        executor.scheduleWithFixedDelay(this::completarSnapshots, 0, INTERVALO_HORAS, TimeUnit.HOURS);
+        System.out.println("Fotos diarias de stock en segundo plano iniciadas.");
+    }
+
+    public synchronized void detener() {
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+    /**
+     * Toma las fotos de los días terminados que aún no la tienen, hasta ayer.
+     * @return Número de días fotografiados.
+     */
+    public int completarSnapshots() {
+        try {
+            LocalDate ayer = LocalDate.now().minusDays(1);
+            LocalDate ultima = stockSnapshotDAO.obtenerUltimaFecha();
+            LocalDate desde = (ultima != null) ? ultima.plusDays(1) : ayer;
+            if (desde.isBefore(ayer.minusDays(MAX_DIAS_A_COMPLETAR))) {
+                desde = ayer.minusDays(MAX_DIAS_A_COMPLETAR);
+            }
+            int dias = 0;
+            for (LocalDate fecha = desde; !fecha.isAfter(ayer); fecha = fecha.plusDays(1)) {
+                if (stockSnapshotDAO.tomarSnapshot(fecha) < 0) {
+                    break; // Se reintenta en el siguiente ciclo
+                }
+                dias++;
+            }
+            if (dias > 0) {
+                System.out.println("Fotos de stock tomadas: " + dias + " día(s) hasta " + ayer);
+            }
+            return dias;
+        } catch (RuntimeException e) {
+            System.err.println("Error inesperado al tomar fotos de stock: " + e.getMessage());
+            return 0;
+        }
+    }
+}
@@ -6,24 +6,50 @@ import com.cerrajeria.app.models.*;
 import java.math.BigDecimal;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientException;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import com.cerrajeria.app.database.DatabaseManager; // Para manejar transacciones
 
 /**
  * Clase de servicio para la gestión de ventas.
  * Coordina la creación de ventas, detalles de productos/servicios y el registro de movimientos de stock.
- * La actualización del stock del producto y el cálculo del total de la venta
- * se delegan a los triggers de la base de datos para mantener la consistencia.
+ * Cada venta descuenta el stock de la sucursal de la terminal (ver sql/sucursal.sql).
+ * El total de la venta se calcula una sola vez en la aplicación a partir de las líneas y se escribe
+ * con la cabecera (ver sql/total_venta_aplicacion.sql); {@link #verificarTotales()} lo contrasta con los detalles.
+ * Las comisiones automáticas se generan en segundo plano a través de {@link ComisionWorker}.
  */
 public class VentaService {
 
+    private static final int MAX_INTENTOS_VENTA = 3;
+    private static final long ESPERA_REINTENTO_MS = 500;
+    private static final int TIMEOUT_VENTA_MS = 15000;
+    /** Tiempo máximo que el cajero espera a la base de datos antes de anotar la venta en el diario offline. */
+    private static final long UMBRAL_DIARIO_MS = 5000;
+    /** SQLState con el que se rechaza una venta por falta de stock (valor fuera de rango). */
+    public static final String ESTADO_STOCK_INSUFICIENTE = "22003";
+
+    private static final ExecutorService EJECUTOR_VENTAS = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "venta-registro");
+        t.setDaemon(true);
+        return t;
+    });
+
     private VentaDAO ventaDAO;
     private DetalleVentaProductoDAO detalleVentaProductoDAO;
     private DetalleVentaServicioDAO detalleVentaServicioDAO;
-    private ComisionService comisionService;
-    private ProductoDAO productoDAO; // Necesario para obtener información del producto (ej. stock actual para validación)
+    private ProductoDAO productoDAO; // Descuento condicional del stock de la sucursal
     private ServicioDAO servicioDAO; // Necesario para verificar precios de referencia
     private MovimientoStockDAO movimientoStockDAO; // Para registrar salidas de stock
+    private ComisionPendienteDAO comisionPendienteDAO; // Cola de ventas pendientes de comisión
 
     // Constructor
     public VentaService() {
@@ -33,14 +59,14 @@ public class VentaService {
         this.productoDAO = new ProductoDAO();
         this.servicioDAO = new ServicioDAO();
         this.movimientoStockDAO = new MovimientoStockDAO();
-        this.comisionService = new ComisionService(); // Inicializar el servicio de comisiones
+        this.comisionPendienteDAO = new ComisionPendienteDAO();
     }
 
     /**
      * Registra una nueva venta, incluyendo sus productos y servicios.
      * Esta operación es transaccional: si alguna parte falla, se revertirá toda la venta.
-     * La actualización del stock del producto y el cálculo del total de la venta
-     * se delegan a los triggers de la base de datos.
+     * El stock se descuenta de la sucursal de esta terminal en la misma transacción;
+     * el total se calcula aquí y se devuelve en la venta.
      *
      * @param idUsuario ID del usuario (vendedor) que realiza la venta.
      * @param productos Lista de DetalleVentaProducto que forman parte de la venta.
@@ -48,52 +74,140 @@ public class VentaService {
      * @return El objeto Venta creado si la operación es exitosa (con el ID asignado), o null si falla.
      */
     public Venta registrarVenta(int idUsuario, List<DetalleVentaProducto> productos, List<DetalleVentaServicio> servicios) {
+        return registrarVenta(idUsuario, productos, servicios, null);
+    }
+
+    /**
+     * Registra una nueva venta de forma idempotente.
+     * Si ya existe una venta con la misma clave (un reintento tras un timeout, un doble clic),
+     * se devuelve la venta ya confirmada en lugar de crear otra. Gracias a ello, los errores
+     * transitorios de conexión se reintentan automáticamente sin riesgo de cobrar dos veces.
+     *
+     * @param idUsuario ID del usuario (vendedor) que realiza la venta.
+     * @param productos Lista de DetalleVentaProducto que forman parte de la venta.
+     * @param servicios Lista de DetalleVentaServicio que forman parte de la venta.
+     * @param claveIdempotencia Clave generada al crear el carrito (null para una venta sin reintentos).
+     * @return El objeto Venta creado o ya existente, o null si la venta falla.
+     */
+    public Venta registrarVenta(int idUsuario, List<DetalleVentaProducto> productos, List<DetalleVentaServicio> servicios,
+                                String claveIdempotencia) {
+        try {
+            return registrarConReintentos(idUsuario, productos, servicios, claveIdempotencia, new AtomicBoolean(true));
+        } catch (SQLException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Intenta registrar la venta, reintentando los errores transitorios si hay clave de idempotencia.
+     * @param cacheSinAjustar true mientras nadie haya reflejado la venta en la caché del catálogo
+     *                        (ver {@link #registrarVentaEnTransaccion}).
+     * @throws SQLException El error del último intento, para que el llamador pueda clasificarlo.
+     */
+    private Venta registrarConReintentos(int idUsuario, List<DetalleVentaProducto> productos, List<DetalleVentaServicio> servicios,
+                                         String claveIdempotencia, AtomicBoolean cacheSinAjustar) throws SQLException {
+        for (int intento = 1; ; intento++) {
+            try {
+                return registrarVentaEnTransaccion(idUsuario, productos, servicios, claveIdempotencia, null, cacheSinAjustar);
+            } catch (SQLException e) {
+                System.err.println("Error en la transacción de venta: " + e.getMessage());
+                if (claveIdempotencia == null || intento >= MAX_INTENTOS_VENTA || !esErrorTransitorio(e)) {
+                    throw e;
+                }
+                System.err.println("Reintentando venta (intento " + (intento + 1) + " de " + MAX_INTENTOS_VENTA + ")...");
+                try {
+                    Thread.sleep(ESPERA_REINTENTO_MS * intento);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Registra en la base de datos una venta que se guardó en el diario offline.
+     * El stock de la caché ya se descontó al anotarla, por lo que aquí no se vuelve a tocar.
+     * Un único intento: el reintento lo gestiona {@link DiarioVentasOffline}.
+     *
+     * @param registro Venta anotada en el diario.
+     * @return La venta registrada (o la ya existente con la misma clave).
+     * @throws SQLException Si falla; un estado {@link #ESTADO_STOCK_INSUFICIENTE} indica un conflicto de stock.
+     */
+    public Venta reproducirVentaDelDiario(DiarioVentasOffline.Registro registro) throws SQLException {
+        return registrarVentaEnTransaccion(registro.idUsuario(), registro.productos(), registro.servicios(),
+                registro.claveIdempotencia(), registro.fecha(), new AtomicBoolean(false));
+    }
+
+    /**
+     * Ejecuta un intento de registro de venta en una única transacción sobre una sola conexión.
+     * @param cacheSinAjustar Tras el commit, el intento solo refleja la venta en la caché si consigue pasar este
+     *                        indicador de true a false; así, si el cajero ya la anotó en el diario offline
+     *                        (que descuenta la caché), un commit tardío no vuelve a descontarla.
+     * @throws SQLException Si el intento falla; la transacción ya ha sido revertida.
+     */
+    private Venta registrarVentaEnTransaccion(int idUsuario, List<DetalleVentaProducto> productos,
+                                              List<DetalleVentaServicio> servicios, String claveIdempotencia,
+                                              LocalDateTime fechaVenta, AtomicBoolean cacheSinAjustar) throws SQLException {
+        // 0. Un reintento de una venta ya confirmada devuelve la venta existente
+        if (claveIdempotencia != null) {
+            Venta existente = ventaDAO.obtenerVentaPorClaveIdempotencia(claveIdempotencia);
+            if (existente != null) {
+                return ventaYaRegistrada(existente, productos, cacheSinAjustar);
+            }
+        }
+
         Connection conn = null; // La conexión se gestionará aquí para la transacción
-        Venta nuevaVenta = null;
         try {
             conn = DatabaseManager.getConnection();
             if (conn == null) {
-                throw new SQLException("No se pudo establecer la conexión a la base de datos.");
+                throw new SQLException("No se pudo establecer la conexión a la base de datos.", "08001");
             }
             conn.setAutoCommit(false); // Iniciar la transacción
+            conn.setNetworkTimeout(Runnable::run, TIMEOUT_VENTA_MS); // Fallar pronto: el reintento es seguro
 
-            // 1. Insertar la cabecera de la venta
-            // El total_venta se actualizará por triggers después de insertar los detalles.
-            Venta ventaHeader = new Venta(idUsuario);
-            int idVenta = ventaDAO.insertarVenta(ventaHeader);
+            // 1. Insertar la cabecera de la venta con el total ya calculado a partir de las líneas
+            Venta nuevaVenta = new Venta(idUsuario);
+            nuevaVenta.setClaveIdempotencia(claveIdempotencia);
+            nuevaVenta.setFechaCreacion(fechaVenta);
+            nuevaVenta.setTotalVenta(calcularTotal(productos, servicios));
+            int idVenta = ventaDAO.insertarVenta(conn, nuevaVenta);
             if (idVenta == -1) {
                 throw new SQLException("Fallo al insertar la cabecera de la venta.");
             }
-            ventaHeader.setIdVenta(idVenta);
-            nuevaVenta = ventaHeader; // Asignar la venta creada a la variable de retorno
+            nuevaVenta.setIdVenta(idVenta);
 
             // 2. Procesar detalles de productos
             for (DetalleVentaProducto detalleProducto : productos) {
                 detalleProducto.setIdVenta(idVenta); // Asignar el ID de la venta
 
-                // Validar stock antes de insertar el detalle (previene errores en la base de datos)
-                Producto productoAfectado = productoDAO.obtenerProductoPorId(detalleProducto.getIdProducto());
-                if (productoAfectado == null) {
-                    throw new SQLException("Producto con ID " + detalleProducto.getIdProducto() + " no encontrado.");
-                }
-                if (productoAfectado.getStock() < detalleProducto.getCantidad()) {
-                    throw new SQLException("Stock insuficiente para el producto: " + productoAfectado.getNombre() + ". Stock actual: " + productoAfectado.getStock() + ", Cantidad requerida: " + detalleProducto.getCantidad());
+                // Validar y descontar el stock de la sucursal en una sola sentencia (stock >= cantidad), sin releer
+                // el producto antes: el estado se deriva del stock (ver EstadoStock), así que no hay que reescribirlo.
+                // tr_restar_stock_venta se desactiva con sql/sucursal.sql. El nombre solo se usa en los mensajes.
+                Producto productoAfectado = CatalogoCache.getInstance().obtenerProducto(detalleProducto.getIdProducto());
+                String nombreProducto = (productoAfectado != null)
+                        ? productoAfectado.getNombre() : "ID " + detalleProducto.getIdProducto();
+                if (!productoDAO.descontarStock(conn, detalleProducto.getIdProducto(), detalleProducto.getCantidad())) {
+                    throw new SQLException("Stock insuficiente para el producto: " + nombreProducto
+                            + (productoAfectado != null ? ". Stock actual: " + productoAfectado.getStock() : " (no encontrado)")
+                            + ", Cantidad requerida: " + detalleProducto.getCantidad(),
+                            ESTADO_STOCK_INSUFICIENTE);
                 }
 
-                // Insertar el detalle del producto. El trigger tr_restar_stock_venta se encargará del stock.
-                int idDetalleProd = detalleVentaProductoDAO.insertarDetalleVentaProducto(detalleProducto);
+                // Insertar el detalle del producto
+                int idDetalleProd = detalleVentaProductoDAO.insertarDetalleVentaProducto(conn, detalleProducto);
                 if (idDetalleProd == -1) {
                     throw new SQLException("Fallo al insertar detalle de producto para Venta ID: " + idVenta);
                 }
 
-                // Registrar movimiento de stock (Salida) - Esto no lo hace el trigger
+                // Registrar movimiento de stock (Salida)
                 MovimientoStock salidaStock = new MovimientoStock(
                         detalleProducto.getIdProducto(),
                         "Salida",
                         detalleProducto.getCantidad(),
-                        "Venta ID " + idVenta + " - Producto: " + productoAfectado.getNombre()
+                        "Venta ID " + idVenta + " - Producto: " + nombreProducto
                 );
-                if (movimientoStockDAO.insertarMovimientoStock(salidaStock) == -1) {
+                if (movimientoStockDAO.insertarMovimientoStock(conn, salidaStock) == -1) {
                     throw new SQLException("Fallo al registrar movimiento de stock para producto ID: " + detalleProducto.getIdProducto());
                 }
             }
@@ -102,37 +216,36 @@ public class VentaService {
             for (DetalleVentaServicio detalleServicio : servicios) {
                 detalleServicio.setIdVenta(idVenta);
                 // Insertar el detalle del servicio
-                int idDetalleServ = detalleVentaServicioDAO.insertarDetalleVentaServicio(detalleServicio);
+                int idDetalleServ = detalleVentaServicioDAO.insertarDetalleVentaServicio(conn, detalleServicio);
                 if (idDetalleServ == -1) {
                     throw new SQLException("Fallo al insertar detalle de servicio para Venta ID: " + idVenta);
                 }
             }
 
-            // 4. Los triggers de la base de datos (trg_actualizar_total_venta_producto y trg_actualizar_total_venta_servicio)
-            // se encargarán de recalcular y actualizar el campo total_venta en la tabla 'venta'.
-            // No es necesario hacerlo explícitamente aquí en el servicio.
+            // 4. El total_venta ya se escribió con la cabecera: los triggers trg_actualizar_total_venta_producto
+            // y trg_actualizar_total_venta_servicio, que lo recalculaban tras cada detalle, se desactivan
+            // con sql/total_venta_aplicacion.sql.
 
-            // 5. Generar comisiones automáticas después de registrar los detalles
-            // Aquí podríamos necesitar obtener el total de la venta de la BD si el servicio de comisiones lo requiere
-            // antes del commit, pero es mejor que los triggers hayan terminado de actualizar.
-            // Para simplificar, asumimos que el servicio de comisiones puede obtener el total o calcularlo internamente.
-            boolean comisionesGeneradas = comisionService.generarComisionesAutomaticas(nuevaVenta, productos, servicios);
-            if (!comisionesGeneradas) {
-                // Si la generación de comisiones falla, se puede decidir si revertir la venta o solo loggear el error
-                System.err.println("Advertencia: No se pudieron generar todas las comisiones automáticas para la venta ID: " + idVenta);
-                // Si esto fuera crítico, se podría lanzar una excepción y revertir la venta.
-            }
+            // 5. Encolar la venta en la misma transacción: las comisiones automáticas se generan en segundo
+            // plano, fuera del tiempo de espera del cajero, y ninguna venta confirmada queda sin marcador.
+            comisionPendienteDAO.encolar(conn, idVenta);
 
             conn.commit(); // Confirmar la transacción
             System.out.println("Venta completa registrada con éxito para ID: " + idVenta);
+            ComisionWorker.getInstance().notificarVentaRegistrada();
+
+            // Ranking en vivo del panel de administración
+            MasVendidosEnVivo.getInstance().registrarVenta(nuevaVenta.getFechaCreacion(), productos, servicios);
 
-            // Opcional: Obtener la venta nuevamente de la BD para tener el total_venta actualizado por triggers
-            // Esto es si 'nuevaVenta' necesita reflejar el total_venta calculado por la BD en este momento.
-            // nuevaVenta = ventaDAO.obtenerVentaPorId(idVenta);
+            // Reflejar en la caché del catálogo el stock descontado por la venta
+            if (cacheSinAjustar.compareAndSet(true, false)) {
+                for (DetalleVentaProducto detalleProducto : productos) {
+                    CatalogoCache.getInstance().ajustarStock(detalleProducto.getIdProducto(), -detalleProducto.getCantidad());
+                }
+            }
 
-            return nuevaVenta; // Retornar el objeto Venta creado (con el ID)
+            return nuevaVenta; // Retornar el objeto Venta creado (con el ID y el total)
         } catch (SQLException e) {
-            System.err.println("Error en la transacción de venta: " + e.getMessage());
             if (conn != null) {
                 try {
                     conn.rollback(); // Revertir la transacción en caso de error
@@ -141,7 +254,14 @@ public class VentaService {
                     System.err.println("Error al revertir la transacción: " + rollbackEx.getMessage());
                 }
             }
-            return null; // Retornar null si la venta falló
+            // Carrera con otro intento de la misma venta: gana el que confirmó primero
+            if (claveIdempotencia != null && esViolacionDeUnicidad(e)) {
+                Venta existente = ventaDAO.obtenerVentaPorClaveIdempotencia(claveIdempotencia);
+                if (existente != null) {
+                    return ventaYaRegistrada(existente, productos, cacheSinAjustar);
+                }
+            }
+            throw e;
         } finally {
             if (conn != null) {
                 try {
@@ -154,6 +274,192 @@ public class VentaService {
         }
     }
 
+    /**
+     * Calcula el total de una venta a partir de sus líneas (cantidad × precio unitario final).
+     * @return La suma de los subtotales de productos y servicios.
+     */
+    public static BigDecimal calcularTotal(List<DetalleVentaProducto> productos, List<DetalleVentaServicio> servicios) {
+        BigDecimal total = BigDecimal.ZERO;
+        for (DetalleVentaProducto d : productos) {
+            total = total.add(d.getPrecioUnitarioFinal().multiply(BigDecimal.valueOf(d.getCantidad())));
+        }
+        for (DetalleVentaServicio d : servicios) {
+            total = total.add(d.getPrecioUnitarioFinal().multiply(BigDecimal.valueOf(d.getCantidad())));
+        }
+        return total;
+    }
+
+    /**
+     * Contrasta en bloque el total guardado de cada venta con la suma de sus detalles.
+     * @return Las ventas cuyo total no coincide con sus detalles (vacía si todo es consistente).
+     */
+    public List<VentaDAO.TotalInconsistente> verificarTotales() {
+        return ventaDAO.obtenerTotalesInconsistentes();
+    }
+
+    /**
+     * Recalcula, en una sola sentencia, el total de las ventas que no coinciden con sus detalles.
+     * @return Número de ventas corregidas, o -1 si hubo un error.
+     */
+    public int corregirTotales() {
+        return ventaDAO.corregirTotalesInconsistentes();
+    }
+
+    /**
+     * Completa los pasos posteriores al commit para una venta que ya estaba registrada
+     * (el intento original pudo confirmarse sin llegar a ejecutarlos).
+     */
+    private Venta ventaYaRegistrada(Venta existente, List<DetalleVentaProducto> productos, AtomicBoolean cacheSinAjustar) {
+        System.out.println("Venta ya registrada con la misma clave de idempotencia. ID: " + existente.getIdVenta());
+        ComisionWorker.getInstance().notificarVentaRegistrada(); // Se encoló con la venta
+        if (cacheSinAjustar.compareAndSet(true, false)) {
+            for (DetalleVentaProducto detalleProducto : productos) {
+                CatalogoCache.getInstance().refrescarProducto(detalleProducto.getIdProducto());
+            }
+        }
+        return existente;
+    }
+
+    /**
+     * Indica si un error de base de datos es transitorio (conexión caída, timeout) y se puede reintentar.
+     */
+    static boolean esErrorTransitorio(SQLException e) {
+        if (e instanceof SQLTransientException || e instanceof SQLRecoverableException) {
+            return true;
+        }
+        String estado = e.getSQLState();
+        return estado != null && (estado.startsWith("08") || "HY008".equals(estado));
+    }
+
+    /**
+     * Indica si un error corresponde a una violación de clave única (SQL Server: 2601 / 2627).
+     */
+    private boolean esViolacionDeUnicidad(SQLException e) {
+        return e.getErrorCode() == 2601 || e.getErrorCode() == 2627;
+    }
+
+    /**
+     * Registra una venta a partir de un carrito ya validado.
+     * Si la base de datos no está disponible o no responde dentro de {@link #UMBRAL_DIARIO_MS},
+     * la venta se anota en el {@link DiarioVentasOffline} para registrarla más tarde y el mostrador
+     * puede seguir cobrando. Mientras el diario tenga ventas pendientes, las nuevas se anotan detrás
+     * de ellas para conservar el orden.
+     *
+     * @param idUsuario ID del usuario (vendedor) que realiza la venta.
+     * @param carrito Carrito con las líneas de productos y servicios.
+     * @return El objeto Venta creado; una venta anotada en el diario se devuelve sin ID
+     *         (ver {@link Venta#estaPendienteDeSincronizar()}). null si el carrito está vacío o la venta es rechazada.
+     */
+    public Venta registrarVenta(int idUsuario, Carrito carrito) {
+        if (carrito == null || carrito.estaVacio()) {
+            System.err.println("Error al registrar venta: El carrito está vacío.");
+            return null;
+        }
+        List<DetalleVentaProducto> productos = carrito.aDetallesProducto();
+        List<DetalleVentaServicio> servicios = carrito.aDetallesServicio();
+        String clave = carrito.getClaveIdempotencia();
+        DiarioVentasOffline diario = DiarioVentasOffline.getInstance();
+
+        if (diario.getPendientes() > 0) {
+            return anotarEnDiario(diario, idUsuario, productos, servicios, clave, carrito.getTotal());
+        }
+
+        AtomicBoolean cacheSinAjustar = new AtomicBoolean(true);
+        Future<Venta> intento = EJECUTOR_VENTAS.submit(
+                () -> registrarConReintentos(idUsuario, productos, servicios, clave, cacheSinAjustar));
+        try {
+            try {
+                return intento.get(UMBRAL_DIARIO_MS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                if (!cacheSinAjustar.compareAndSet(true, false)) {
+                    // El intento ya confirmó la venta y la está reflejando en la caché: se espera su resultado
+                    return intento.get();
+                }
+                // El intento sigue en curso; si llega a confirmarse, la clave evita duplicarla al reproducir
+                // el diario y el indicador impide que descuente la caché por segunda vez.
+                System.err.println("La base de datos no respondió a tiempo; la venta se guarda en el diario offline.");
+                return anotarEnDiario(diario, idUsuario, productos, servicios, clave, carrito.getTotal());
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SQLException sqlEx && esErrorTransitorio(sqlEx)) {
+                System.err.println("Base de datos no disponible; la venta se guarda en el diario offline.");
+                return anotarEnDiario(diario, idUsuario, productos, servicios, clave, carrito.getTotal());
+            }
+            return null; // Rechazo de negocio (stock insuficiente, producto inexistente...)
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    private Venta anotarEnDiario(DiarioVentasOffline diario, int idUsuario, List<DetalleVentaProducto> productos,
+                                 List<DetalleVentaServicio> servicios, String clave, BigDecimal total) {
+        if (!diario.anotar(idUsuario, productos, servicios, clave)) {
+            return null;
+        }
+        // La mercadería ya salió: la caché lo refleja aunque la venta aún no esté en la base de datos
+        for (DetalleVentaProducto detalleProducto : productos) {
+            CatalogoCache.getInstance().ajustarStock(detalleProducto.getIdProducto(), -detalleProducto.getCantidad());
+        }
+        Venta venta = new Venta(idUsuario);
+        venta.setClaveIdempotencia(clave);
+        venta.setTotalVenta(total);
+        return venta;
+    }
+
+    /**
+     * Registro rápido de una venta: envía el ticket completo en una sola llamada al procedimiento
+     * sp_registrar_venta_rapida y recibe el ID y el total calculado, en lugar de una sentencia
+     * por cabecera, línea y movimiento de stock. Es idempotente por la clave del carrito, igual que
+     * {@link #registrarVenta(int, Carrito)}, pero no usa el diario offline.
+     *
+     * @param idUsuario ID del usuario (vendedor) que realiza la venta.
+     * @param carrito Carrito con las líneas de productos y servicios.
+     * @return La venta registrada con su ID y total, o null si el carrito está vacío o la venta falla.
+     */
+    public Venta registrarVentaRapida(int idUsuario, Carrito carrito) {
+        if (carrito == null || carrito.estaVacio()) {
+            System.err.println("Error al registrar venta: El carrito está vacío.");
+            return null;
+        }
+        return registrarVentaRapida(idUsuario, carrito.aDetallesProducto(), carrito.aDetallesServicio(), carrito.getClaveIdempotencia());
+    }
+
+    /**
+     * Registro rápido de una venta a partir de sus líneas (ver {@link #registrarVentaRapida(int, Carrito)}).
+     */
+    public Venta registrarVentaRapida(int idUsuario, List<DetalleVentaProducto> productos, List<DetalleVentaServicio> servicios,
+                                      String claveIdempotencia) {
+        Venta venta = new Venta(idUsuario);
+        venta.setClaveIdempotencia(claveIdempotencia);
+        try (Connection conn = DatabaseManager.getConnection()) {
+            if (conn == null) {
+                return null;
+            }
+            conn.setNetworkTimeout(Runnable::run, TIMEOUT_VENTA_MS);
+            if (!ventaDAO.registrarVentaRapida(conn, venta, productos, servicios)) {
+                return ventaYaRegistrada(venta, productos, new AtomicBoolean(true));
+            }
+        } catch (SQLException e) {
+            if (claveIdempotencia != null && esViolacionDeUnicidad(e)) {
+                Venta existente = ventaDAO.obtenerVentaPorClaveIdempotencia(claveIdempotencia);
+                if (existente != null) {
+                    return ventaYaRegistrada(existente, productos, new AtomicBoolean(true));
+                }
+            }
+            System.err.println("Error al registrar venta rápida: " + e.getMessage());
+            return null;
+        }
+        System.out.println("Venta rápida registrada con éxito para ID: " + venta.getIdVenta());
+
+        ComisionWorker.getInstance().notificarVentaRegistrada(); // El procedimiento la encoló con la venta
+        MasVendidosEnVivo.getInstance().registrarVenta(null, productos, servicios);
+        for (DetalleVentaProducto detalleProducto : productos) {
+            CatalogoCache.getInstance().ajustarStock(detalleProducto.getIdProducto(), -detalleProducto.getCantidad());
+        }
+        return venta;
+    }
+
     /**
      * Obtiene una venta por su ID.
      * @param idVenta ID de la venta.
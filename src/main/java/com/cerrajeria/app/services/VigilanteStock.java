@@ -0,0 +1,163 @@
+package com.cerrajeria.app.services;
+
+import com.cerrajeria.app.models.EstadoStock;
+import com.cerrajeria.app.models.Producto;
+
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Vigila los umbrales de stock de los productos activos a partir de los cambios de stock,
+ * en lugar de recorrer todos los productos buscando el estado 'Bajo'.
+ *
+ * Todos los caminos que cambian stock (ventas, entradas y salidas, recepciones, conteos y la
+ * edición de productos) terminan actualizando {@link CatalogoCache}, y es la caché la que avisa
+ * aquí de cada cambio. Se mantiene en memoria el conjunto de productos con stock bajo o agotado,
+ * y solo se emite una alerta cuando el {@link EstadoStock} de un producto cambia: cruza su stock
+ * mínimo, llega a cero o se repone.
+ */
+public class VigilanteStock {
+
+    public enum TipoAlerta { BAJO, AGOTADO, REPUESTO }
+
+    /**
+     * Cruce de umbral de un producto.
+     */
+    public record Alerta(TipoAlerta tipo, int idProducto, String nombre, int stockAnterior, int stockNuevo,
+                         int stockMinimo, LocalDateTime fecha) { }
+
+    private static final int MAX_ALERTAS_RECIENTES = 50;
+
+    private static final VigilanteStock INSTANCIA = new VigilanteStock();
+
+    // ID -> producto de los activos con stock <= stock_minimo (incluye los agotados)
+    private final Map<Integer, Producto> bajos = new HashMap<>();
+    private final Deque<Alerta> recientes = new ArrayDeque<>();
+    private final List<Consumer<Alerta>> oyentes = new CopyOnWriteArrayList<>();
+
+    private VigilanteStock() {
+    }
+
+    public static VigilanteStock getInstance() {
+        return INSTANCIA;
+    }
+
+    /**
+     * Rehace el conjunto de productos bajos a partir del catálogo completo, sin emitir alertas.
+     * Lo llama CatalogoCache al (re)cargar.
+     */
+    synchronized void reiniciar(Collection<Producto> productos) {
+        bajos.clear();
+        for (Producto producto : productos) {
+            if (producto.isActivo() && EstadoStock.de(producto.getStock(), producto.getStockMinimo()).esBajo()) {
+                bajos.put(producto.getIdProducto(), producto);
+            }
+        }
+    }
+
+    /**
+     * Recibe un cambio de stock (o de stock mínimo, o de activo) de un producto.
+     * @param producto Producto con los valores nuevos.
+     * @param stockAnterior Stock antes del cambio.
+     */
+    void registrarCambio(Producto producto, int stockAnterior) {
+        Alerta alerta;
+        synchronized (this) {
+            int id = producto.getIdProducto();
+            boolean eraBajo = bajos.containsKey(id);
+            EstadoStock estadoAnterior = EstadoStock.de(stockAnterior, producto.getStockMinimo());
+            EstadoStock estadoNuevo = EstadoStock.de(producto.getStock(), producto.getStockMinimo());
+            boolean esBajo = producto.isActivo() && estadoNuevo.esBajo();
+            if (esBajo) {
+                bajos.put(id, producto);
+            } else {
+                bajos.remove(id);
+            }
+
+            TipoAlerta tipo = null;
+            if (esBajo && estadoNuevo == EstadoStock.AGOTADO && (estadoAnterior != EstadoStock.AGOTADO || !eraBajo)) {
+                tipo = TipoAlerta.AGOTADO;
+            } else if (esBajo && !eraBajo) {
+                tipo = TipoAlerta.BAJO;
+            } else if (eraBajo && !esBajo && producto.isActivo()) {
+                tipo = TipoAlerta.REPUESTO;
+            }
+            if (tipo == null) {
+                return; // Sin cruce de umbral
+            }
+            alerta = new Alerta(tipo, id, producto.getNombre(), stockAnterior, producto.getStock(),
+                    producto.getStockMinimo(), LocalDateTime.now());
+            recientes.addFirst(alerta);
+            if (recientes.size() > MAX_ALERTAS_RECIENTES) {
+                recientes.removeLast();
+            }
+        }
+
+        System.out.println("Alerta de stock (" + alerta.tipo() + "): " + alerta.nombre()
+                + " " + alerta.stockAnterior() + " -> " + alerta.stockNuevo() + " (mínimo " + alerta.stockMinimo() + ")");
+        for (Consumer<Alerta> oyente : oyentes) {
+            try {
+                oyente.accept(alerta);
+            } catch (RuntimeException e) {
+                System.err.println("Error en un oyente de alertas de stock: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Un producto dejó el catálogo: sale del conjunto sin emitir alerta.
+     */
+    synchronized void quitar(int idProducto) {
+        bajos.remove(idProducto);
+    }
+
+    /**
+     * Registra un oyente que recibe cada alerta en el hilo que cambió el stock
+     * (la interfaz debe pasar al hilo de JavaFX con Platform.runLater).
+     */
+    public void agregarOyente(Consumer<Alerta> oyente) {
+        oyentes.add(oyente);
+    }
+
+    public void quitarOyente(Consumer<Alerta> oyente) {
+        oyentes.remove(oyente);
+    }
+
+    /**
+     * @return Productos activos con stock bajo o agotado, de menor a mayor stock.
+     */
+    public List<Producto> obtenerProductosBajos() {
+        CatalogoCache.getInstance().asegurarCargado(); // El conjunto se inicializa al cargar el catálogo
+        List<Producto> lista;
+        synchronized (this) {
+            lista = new ArrayList<>(bajos.values());
+        }
+        lista.sort((a, b) -> Integer.compare(a.getStock(), b.getStock()));
+        return lista;
+    }
+
+    /**
+     * @return Número de productos activos con stock bajo o agotado.
+     */
+    public int contarProductosBajos() {
+        CatalogoCache.getInstance().asegurarCargado();
+        synchronized (this) {
+            return bajos.size();
+        }
+    }
+
+    /**
+     * @return Las últimas alertas emitidas, de la más reciente a la más antigua.
+     */
+    public synchronized List<Alerta> obtenerAlertasRecientes() {
+        return new ArrayList<>(recientes);
+    }
+}
@@ -1,14 +1,31 @@
 package com.cerrajeria.app.ui.controllers;
 
 import com.cerrajeria.app.MainApplication;
+import com.cerrajeria.app.models.Producto;
+import com.cerrajeria.app.models.Servicio;
+import com.cerrajeria.app.services.CatalogoCache;
+import com.cerrajeria.app.services.DiarioVentasOffline;
+import com.cerrajeria.app.services.MasVendidosEnVivo;
+import com.cerrajeria.app.services.VigilanteStock;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.application.Platform;
+import javafx.collections.FXCollections;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Node;
+import javafx.scene.control.ComboBox;
 import javafx.scene.control.Label;
+import javafx.scene.control.ListView;
+import javafx.scene.control.Tooltip;
 import javafx.scene.layout.StackPane;
+import javafx.util.Duration;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * Controlador para el Dashboard del Administrador.
@@ -19,12 +36,144 @@ public class AdminDashboardController {
 
     @FXML
     private StackPane contentArea; // El área donde se cargará el contenido de cada sección
+    @FXML
+    private Label ventasPendientesLabel; // Contador de ventas del diario offline
+    @FXML
+    private Label stockBajoLabel; // Insignia de productos con stock bajo
+    @FXML
+    private ComboBox<String> ventanaMasVendidosCombo;
+    @FXML
+    private ListView<String> productosEnVivoList;
+    @FXML
+    private ListView<String> serviciosEnVivoList;
+
+    private static final String VENTANA_HOY = "Hoy";
+    private static final String VENTANA_ULTIMA_HORA = "Última hora";
+    private static final int CANTIDAD_MAS_VENDIDOS = 5;
+    private static final int MAX_PRODUCTOS_EN_AVISO = 15;
+
+    private Timeline actualizadorPendientes;
+    // Las alertas llegan desde el hilo que cambió el stock; la insignia se actualiza en el de JavaFX
+    private final Consumer<VigilanteStock.Alerta> oyenteStock = alerta -> Platform.runLater(this::actualizarStockBajo);
 
     @FXML
     private void initialize() {
         System.out.println("Dashboard de Administrador inicializado.");
         // Opcional: Cargar la vista de gestión de productos por defecto al iniciar
         // handleProductsSection(null);
+
+        // El contador se lee de memoria, por lo que consultarlo cada pocos segundos no toca la base de datos
+        ventanaMasVendidosCombo.setItems(FXCollections.observableArrayList(VENTANA_HOY, VENTANA_ULTIMA_HORA));
+        ventanaMasVendidosCombo.setValue(VENTANA_HOY);
+        ventanaMasVendidosCombo.valueProperty().addListener((obs, anterior, nuevo) -> actualizarMasVendidos());
+
+        // El ranking en vivo también está en memoria y se refresca con el mismo temporizador
+        actualizarVentasPendientes();
+        actualizarMasVendidos();
+        actualizadorPendientes = new Timeline(new KeyFrame(Duration.seconds(5), e -> {
+            actualizarVentasPendientes();
+            actualizarMasVendidos();
+        }));
+        actualizadorPendientes.setCycleCount(Timeline.INDEFINITE);
+        actualizadorPendientes.play();
+
+        // La insignia de stock bajo no se consulta periódicamente: se actualiza con cada alerta
+        VigilanteStock.getInstance().agregarOyente(oyenteStock);
+        actualizarStockBajo();
+    }
+
+    /**
+     * Muestra cuántos productos activos tienen stock bajo o agotado, con el detalle en el tooltip.
+     */
+    private void actualizarStockBajo() {
+        List<Producto> bajos = VigilanteStock.getInstance().obtenerProductosBajos();
+        boolean visible = !bajos.isEmpty();
+        stockBajoLabel.setVisible(visible);
+        stockBajoLabel.setManaged(visible);
+        if (!visible) {
+            return;
+        }
+        long agotados = bajos.stream().filter(p -> p.getStock() <= 0).count();
+        stockBajoLabel.setText("Stock bajo: " + bajos.size() + (agotados > 0 ? " (" + agotados + " agotados)" : ""));
+
+        StringBuilder detalle = new StringBuilder();
+        List<VigilanteStock.Alerta> recientes = VigilanteStock.getInstance().obtenerAlertasRecientes();
+        if (!recientes.isEmpty()) {
+            VigilanteStock.Alerta ultima = recientes.get(0);
+            detalle.append("Última alerta: ").append(ultima.nombre()).append(" (")
+                    .append(ultima.tipo().name().toLowerCase()).append(", stock ").append(ultima.stockNuevo()).append(")\n\n");
+        }
+        for (Producto producto : bajos.subList(0, Math.min(MAX_PRODUCTOS_EN_AVISO, bajos.size()))) {
+            detalle.append(producto.getNombre()).append(": ").append(producto.getStock())
+                    .append(" (mínimo ").append(producto.getStockMinimo()).append(")\n");
+        }
+        if (bajos.size() > MAX_PRODUCTOS_EN_AVISO) {
+            detalle.append("... y ").append(bajos.size() - MAX_PRODUCTOS_EN_AVISO).append(" más");
+        }
+        stockBajoLabel.setTooltip(new Tooltip(detalle.toString()));
+    }
+
+    @FXML
+    private void handleLowStockBadge() {
+        handleProductsSection(null);
+    }
+
+    /**
+     * Muestra cuántas ventas esperan en el diario offline y cuántas quedaron en conflicto.
+     */
+    private void actualizarVentasPendientes() {
+        DiarioVentasOffline diario = DiarioVentasOffline.getInstance();
+        int pendientes = diario.getPendientes();
+        int conflictos = diario.getCantidadConflictos();
+        boolean visible = pendientes > 0 || conflictos > 0;
+        ventasPendientesLabel.setVisible(visible);
+        ventasPendientesLabel.setManaged(visible);
+        if (!visible) {
+            return;
+        }
+        String texto = "Ventas sin sincronizar: " + pendientes;
+        if (conflictos > 0) {
+            texto += " | Conflictos: " + conflictos;
+            StringBuilder detalle = new StringBuilder();
+            for (DiarioVentasOffline.Conflicto conflicto : diario.getConflictos()) {
+                detalle.append(conflicto.registro().fecha()).append(" - ").append(conflicto.motivo()).append('\n');
+            }
+            ventasPendientesLabel.setTooltip(new Tooltip(detalle.toString()));
+        } else {
+            ventasPendientesLabel.setTooltip(null);
+        }
+        ventasPendientesLabel.setText(texto);
+    }
+
+    /**
+     * Muestra los productos y servicios más vendidos de la ventana elegida (hoy o última hora).
+     */
+    private void actualizarMasVendidos() {
+        boolean hoy = !VENTANA_ULTIMA_HORA.equals(ventanaMasVendidosCombo.getValue());
+        MasVendidosEnVivo masVendidos = MasVendidosEnVivo.getInstance();
+        CatalogoCache catalogo = CatalogoCache.getInstance();
+
+        List<String> productos = new ArrayList<>();
+        for (MasVendidosEnVivo.Entrada entrada : hoy
+                ? masVendidos.obtenerMasVendidosHoy(MasVendidosEnVivo.TIPO_PRODUCTO, CANTIDAD_MAS_VENDIDOS)
+                : masVendidos.obtenerMasVendidosUltimaHora(MasVendidosEnVivo.TIPO_PRODUCTO, CANTIDAD_MAS_VENDIDOS)) {
+            Producto producto = catalogo.obtenerProducto(entrada.idItem());
+            productos.add(formatearEntrada(producto != null ? producto.getNombre() : "Producto " + entrada.idItem(), entrada));
+        }
+        List<String> servicios = new ArrayList<>();
+        for (MasVendidosEnVivo.Entrada entrada : hoy
+                ? masVendidos.obtenerMasVendidosHoy(MasVendidosEnVivo.TIPO_SERVICIO, CANTIDAD_MAS_VENDIDOS)
+                : masVendidos.obtenerMasVendidosUltimaHora(MasVendidosEnVivo.TIPO_SERVICIO, CANTIDAD_MAS_VENDIDOS)) {
+            Servicio servicio = catalogo.obtenerServicio(entrada.idItem());
+            servicios.add(formatearEntrada(servicio != null ? servicio.getNombre() : "Servicio " + entrada.idItem(), entrada));
+        }
+        productosEnVivoList.getItems().setAll(productos);
+        serviciosEnVivoList.getItems().setAll(servicios);
+    }
+
+    private static String formatearEntrada(String nombre, MasVendidosEnVivo.Entrada entrada) {
+        // Con error > 0 la cifra es una cota superior del esquema aproximado
+        return nombre + ": " + (entrada.errorMaximo() > 0 ? "~" : "") + entrada.unidades();
     }
 
     @FXML
@@ -33,6 +182,30 @@ public class AdminDashboardController {
         loadFXMLIntoContentArea("/ProductsManagementView.fxml");
     }
 
+    @FXML
+    private void handleStockReceivingSection(ActionEvent event) {
+        System.out.println("Navegando a Recepción de Stock...");
+        loadFXMLIntoContentArea("/StockReceivingView.fxml");
+    }
+
+    @FXML
+    private void handlePriceAdjustmentSection(ActionEvent event) {
+        System.out.println("Navegando a Ajuste de Precios...");
+        loadFXMLIntoContentArea("/PriceAdjustmentView.fxml");
+    }
+
+    @FXML
+    private void handleCatalogImportExportSection(ActionEvent event) {
+        System.out.println("Navegando a Importar / Exportar Catálogo...");
+        loadFXMLIntoContentArea("/CatalogImportExportView.fxml");
+    }
+
+    @FXML
+    private void handleInventoryCountSection(ActionEvent event) {
+        System.out.println("Navegando a Inventario Físico...");
+        loadFXMLIntoContentArea("/InventoryCountView.fxml");
+    }
+
     @FXML
     private void handleServicesSection(ActionEvent event) {
         System.out.println("Navegando a Gestión de Servicios...");
@@ -72,6 +245,8 @@ public class AdminDashboardController {
     @FXML
     private void handleLogout(ActionEvent event) {
         System.out.println("Cerrando sesión...");
+        actualizadorPendientes.stop();
+        VigilanteStock.getInstance().quitarOyente(oyenteStock);
         try {
             MainApplication.showLoginScreen();
         } catch (IOException e) {
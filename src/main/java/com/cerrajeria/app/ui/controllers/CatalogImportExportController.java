@@ -0,0 +1,258 @@
+package com.cerrajeria.app.ui.controllers;
+
+import com.cerrajeria.app.models.ErrorImportacion;
+import com.cerrajeria.app.services.ExportacionService;
+import com.cerrajeria.app.services.ExportacionService.FormatoExportacion;
+import com.cerrajeria.app.services.ImportacionCatalogoService;
+import com.cerrajeria.app.services.ImportacionCatalogoService.ResultadoImportacion;
+import com.cerrajeria.app.services.ImportacionCatalogoService.TipoCatalogo;
+
+import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.concurrent.Task;
+import javafx.concurrent.Worker;
+import javafx.fxml.FXML;
+import javafx.scene.control.*;
+import javafx.scene.control.cell.PropertyValueFactory;
+import javafx.stage.FileChooser;
+
+import java.io.File;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Controlador para la vista de Importar / Exportar Catálogo.
+ * Importa categorías, productos o servicios desde CSV o XLSX (los nombres existentes se actualizan)
+ * mostrando el informe de las filas con error, y exporta cada parte del catálogo en el mismo formato.
+ */
+public class CatalogImportExportController {
+
+    // --- Componentes de la UI (inyectados desde FXML) ---
+    @FXML private ComboBox<TipoCatalogo> tipoCombo;
+    @FXML private Button importButton;
+    @FXML private Button exportButton;
+    @FXML private Label formatLabel;
+    @FXML private ProgressBar progressBar;
+    @FXML private Label statusLabel;
+    @FXML private Button cancelButton;
+    @FXML private TableView<ErrorImportacion> errorsTable;
+    @FXML private TableColumn<ErrorImportacion, Integer> colLine;
+    @FXML private TableColumn<ErrorImportacion, String> colName;
+    @FXML private TableColumn<ErrorImportacion, String> colError;
+    @FXML private Label summaryLabel;
+    @FXML private Button saveErrorsButton;
+
+    // --- Servicios de negocio ---
+    private final ImportacionCatalogoService importacionCatalogoService;
+    private final ExportacionService exportacionService;
+    private final ObservableList<ErrorImportacion> errores;
+    private Task<?> tareaEnCurso;
+    private Thread hiloEnCurso;
+
+    public CatalogImportExportController() {
+        this.importacionCatalogoService = new ImportacionCatalogoService();
+        this.exportacionService = new ExportacionService();
+        this.errores = FXCollections.observableArrayList();
+    }
+
+    @FXML
+    private void initialize() {
+        colLine.setCellValueFactory(new PropertyValueFactory<>("numeroFila"));
+        colName.setCellValueFactory(new PropertyValueFactory<>("nombre"));
+        colError.setCellValueFactory(new PropertyValueFactory<>("mensaje"));
+        errorsTable.setItems(errores);
+
+        tipoCombo.setItems(FXCollections.observableArrayList(TipoCatalogo.values()));
+        tipoCombo.valueProperty().addListener((obs, anterior, tipo) -> formatLabel.setText(describirFormato(tipo)));
+        tipoCombo.setValue(TipoCatalogo.PRODUCTOS);
+        saveErrorsButton.setDisable(true);
+    }
+
+    private static String describirFormato(TipoCatalogo tipo) {
+        if (tipo == null) {
+            return "";
+        }
+        return "Columnas: " + switch (tipo) {
+            case CATEGORIAS_PRODUCTO, CATEGORIAS_SERVICIO -> "Nombre.";
+            case PRODUCTOS -> "Nombre, Categoría, Precio, Costo interno, Stock mínimo y Stock (opcional, solo para "
+                    + "productos nuevos; el de los existentes se ajusta con Recepción de Stock o Inventario Físico).";
+            case SERVICIOS -> "Nombre, Categoría, Precio y Descripción (opcional).";
+        } + " Las categorías deben existir y estar activas.";
+    }
+
+    @FXML
+    private void handleImport() {
+        TipoCatalogo tipo = tipoCombo.getValue();
+        if (tipo == null || enCurso()) {
+            return;
+        }
+        FileChooser selector = new FileChooser();
+        selector.setTitle("Importar " + tipo.toString().toLowerCase());
+        selector.getExtensionFilters().addAll(
+                new FileChooser.ExtensionFilter("Catálogo (*.csv, *.xlsx)", "*.csv", "*.xlsx"),
+                new FileChooser.ExtensionFilter("Todos los archivos", "*.*"));
+        File archivo = selector.showOpenDialog(errorsTable.getScene().getWindow());
+        if (archivo == null) {
+            return;
+        }
+
+        errores.clear();
+        summaryLabel.setText("");
+        saveErrorsButton.setDisable(true);
+        Task<ResultadoImportacion> tarea = new Task<>() {
+            @Override
+            protected ResultadoImportacion call() throws Exception {
+                return importacionCatalogoService.importar(tipo, archivo.toPath(), (filas, total) -> {
+                    updateMessage("Importando " + archivo.getName() + "... " + filas + " filas leídas");
+                    return !isCancelled();
+                });
+            }
+        };
+        iniciar(tarea, true, () -> {
+            if (tarea.getState() == Worker.State.CANCELLED) {
+                terminar("Importación cancelada; los lotes ya aplicados se conservan.");
+                return;
+            }
+            if (tarea.getState() == Worker.State.FAILED) {
+                terminar("No se pudo leer el archivo: " + tarea.getException().getMessage());
+                return;
+            }
+            ResultadoImportacion resultado = tarea.getValue();
+            if (resultado == null) {
+                terminar("No se pudo conectar a la base de datos; no se importó nada.");
+                return;
+            }
+            errores.setAll(resultado.errores());
+            saveErrorsButton.setDisable(errores.isEmpty());
+            summaryLabel.setText(resultado.filasLeidas() + " filas: " + resultado.insertados() + " nuevas, "
+                    + resultado.actualizados() + " actualizadas, " + resultado.sinCambios() + " sin cambios, "
+                    + errores.size() + " con error");
+            terminar(resultado.cancelada() ? "Importación cancelada; los lotes ya aplicados se conservan."
+                    : "Importación de " + archivo.getName() + " terminada.");
+        });
+    }
+
+    @FXML
+    private void handleExport() {
+        TipoCatalogo tipo = tipoCombo.getValue();
+        if (tipo == null || enCurso()) {
+            return;
+        }
+        FileChooser selector = new FileChooser();
+        selector.setTitle("Exportar " + tipo.toString().toLowerCase());
+        FileChooser.ExtensionFilter filtroCsv = new FileChooser.ExtensionFilter("CSV (*.csv)", "*.csv");
+        FileChooser.ExtensionFilter filtroXlsx = new FileChooser.ExtensionFilter("Libro de Excel (*.xlsx)", "*.xlsx");
+        selector.getExtensionFilters().addAll(filtroCsv, filtroXlsx);
+        selector.setInitialFileName(tipo.name().toLowerCase() + "_" + LocalDate.now() + ".csv");
+        File archivo = selector.showSaveDialog(errorsTable.getScene().getWindow());
+        if (archivo == null) {
+            return;
+        }
+        FormatoExportacion formato = archivo.getName().toLowerCase().endsWith(".xlsx")
+                || (selector.getSelectedExtensionFilter() == filtroXlsx && !archivo.getName().toLowerCase().endsWith(".csv"))
+                ? FormatoExportacion.XLSX : FormatoExportacion.CSV;
+
+        Task<Long> tarea = new Task<>() {
+            @Override
+            protected Long call() {
+                ExportacionService.Progreso progreso = (filas, total) -> {
+                    if (total > 0) {
+                        updateProgress(filas, Math.max(total, filas));
+                    }
+                    updateMessage("Exportando... " + filas + (total > 0 ? " de " + total : "") + " filas");
+                    return !isCancelled();
+                };
+                return switch (tipo) {
+                    case CATEGORIAS_PRODUCTO -> exportacionService.exportarCategoriasProducto(archivo.toPath(), formato, progreso);
+                    case CATEGORIAS_SERVICIO -> exportacionService.exportarCategoriasServicio(archivo.toPath(), formato, progreso);
+                    case PRODUCTOS -> exportacionService.exportarProductos(archivo.toPath(), formato, progreso);
+                    case SERVICIOS -> exportacionService.exportarServicios(archivo.toPath(), formato, progreso);
+                };
+            }
+        };
+        iniciar(tarea, false, () -> {
+            if (tarea.getState() == Worker.State.CANCELLED) {
+                terminar("Exportación cancelada.");
+            } else if (tarea.getState() == Worker.State.SUCCEEDED && tarea.getValue() >= 0) {
+                terminar("Exportadas " + tarea.getValue() + " filas a " + archivo.getName());
+            } else {
+                terminar("No se pudo completar la exportación.");
+            }
+        });
+    }
+
+    @FXML
+    private void handleCancel() {
+        if (tareaEnCurso != null) {
+            tareaEnCurso.cancel(false); // El recorrido se detiene en el siguiente aviso de progreso
+            statusLabel.textProperty().unbind();
+            statusLabel.setText("Cancelando...");
+            cancelButton.setDisable(true);
+        }
+    }
+
+    @FXML
+    private void handleSaveErrors() {
+        FileChooser selector = new FileChooser();
+        selector.setTitle("Guardar informe de errores");
+        selector.getExtensionFilters().add(new FileChooser.ExtensionFilter("CSV (*.csv)", "*.csv"));
+        selector.setInitialFileName("errores_importacion_" + LocalDate.now() + ".csv");
+        File archivo = selector.showSaveDialog(errorsTable.getScene().getWindow());
+        if (archivo == null) {
+            return;
+        }
+        List<ErrorImportacion> informe = List.copyOf(errores);
+        if (importacionCatalogoService.guardarInformeErrores(informe, archivo.toPath())) {
+            statusLabel.setText("Informe de errores guardado en " + archivo.getName());
+        } else {
+            statusLabel.setText("No se pudo guardar el informe de errores.");
+        }
+    }
+
+    private boolean enCurso() {
+        if (hiloEnCurso != null && hiloEnCurso.isAlive()) {
+            statusLabel.setText("Ya hay una importación o exportación en curso.");
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Ejecuta la tarea en su propio hilo y llama a alTerminar en el hilo de la interfaz cuando el hilo
+     * termina de verdad. No se usan los eventos de la tarea: tras cancel() pasa a cancelada enseguida,
+     * pero la importación aún puede estar aplicando un lote o la exportación cerrando el archivo.
+     */
+    private void iniciar(Task<?> tarea, boolean indeterminado, Runnable alTerminar) {
+        if (indeterminado) {
+            progressBar.setProgress(ProgressBar.INDETERMINATE_PROGRESS); // Las filas del archivo no se conocen de antemano
+        } else {
+            progressBar.progressProperty().bind(tarea.progressProperty());
+        }
+        statusLabel.textProperty().bind(tarea.messageProperty());
+        progressBar.setVisible(true);
+        cancelButton.setDisable(false);
+        cancelButton.setVisible(true);
+        importButton.setDisable(true);
+        exportButton.setDisable(true);
+
+        tareaEnCurso = tarea;
+        hiloEnCurso = new Thread(() -> {
+            tarea.run();
+            // Se encola después de los cambios de estado de la tarea, así alTerminar ya los ve
+            Platform.runLater(alTerminar);
+        }, "catalogo-importacion");
+        hiloEnCurso.setDaemon(true);
+        hiloEnCurso.start();
+    }
+
+    private void terminar(String mensaje) {
+        progressBar.progressProperty().unbind();
+        statusLabel.textProperty().unbind();
+        progressBar.setVisible(false);
+        cancelButton.setVisible(false);
+        importButton.setDisable(false);
+        exportButton.setDisable(false);
+        statusLabel.setText(mensaje);
+    }
+}
@@ -0,0 +1,262 @@
+package com.cerrajeria.app.ui.controllers;
+
+import com.cerrajeria.app.models.LineaConteo;
+import com.cerrajeria.app.services.InventarioFisicoService;
+import com.cerrajeria.app.services.SesionConteo;
+
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.collections.transformation.FilteredList;
+import javafx.concurrent.Task;
+import javafx.fxml.FXML;
+import javafx.scene.control.*;
+import javafx.scene.control.cell.PropertyValueFactory;
+import javafx.scene.control.cell.TextFieldTableCell;
+import javafx.util.StringConverter;
+
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.function.Consumer;
+
+/**
+ * Controlador para la vista de Inventario Físico.
+ * Las lecturas del escáner y las ediciones de la tabla se aplican a la sesión en memoria;
+ * solo "Guardar avance" y "Aplicar ajustes" van a la base de datos, en segundo plano.
+ */
+public class InventoryCountController {
+
+    // --- Componentes de la UI (inyectados desde FXML) ---
+    @FXML private Label countInfoLabel;
+    @FXML private TextField commentField;
+    @FXML private Button openButton;
+    @FXML private TextField scanField;
+    @FXML private Label scanMessageLabel;
+    @FXML private TableView<LineaConteo> linesTable;
+    @FXML private TableColumn<LineaConteo, Integer> colProductId;
+    @FXML private TableColumn<LineaConteo, String> colProductName;
+    @FXML private TableColumn<LineaConteo, Integer> colExpected;
+    @FXML private TableColumn<LineaConteo, Integer> colCounted;
+    @FXML private TableColumn<LineaConteo, Integer> colDifference;
+    @FXML private CheckBox onlyDifferencesCheck;
+    @FXML private CheckBox onlyPendingCheck;
+    @FXML private Label summaryLabel;
+    @FXML private Button cancelButton;
+    @FXML private Button saveButton;
+    @FXML private Button applyButton;
+
+    private static final DateTimeFormatter FORMATO_FECHA = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm");
+
+    // --- Servicios de negocio ---
+    private final InventarioFisicoService inventarioFisicoService;
+    private final ObservableList<LineaConteo> lineas;
+    private final FilteredList<LineaConteo> lineasVisibles;
+    private SesionConteo sesion;
+
+    public InventoryCountController() {
+        this.inventarioFisicoService = new InventarioFisicoService();
+        this.lineas = FXCollections.observableArrayList();
+        this.lineasVisibles = new FilteredList<>(lineas);
+    }
+
+    @FXML
+    private void initialize() {
+        colProductId.setCellValueFactory(new PropertyValueFactory<>("idProducto"));
+        colProductName.setCellValueFactory(new PropertyValueFactory<>("nombreProducto"));
+        colExpected.setCellValueFactory(new PropertyValueFactory<>("stockEsperado"));
+        colCounted.setCellValueFactory(new PropertyValueFactory<>("cantidadContada"));
+        colDifference.setCellValueFactory(new PropertyValueFactory<>("diferencia"));
+
+        // Columna "Contado" editable: vacío = sin contar
+        colCounted.setCellFactory(TextFieldTableCell.forTableColumn(new StringConverter<>() {
+            @Override
+            public String toString(Integer cantidad) {
+                return (cantidad != null) ? cantidad.toString() : "";
+            }
+
+            @Override
+            public Integer fromString(String texto) {
+                if (texto == null || texto.isBlank()) {
+                    return null;
+                }
+                try {
+                    return Math.max(0, Integer.parseInt(texto.trim()));
+                } catch (NumberFormatException e) {
+                    return -1; // Se descarta en onEditCommit
+                }
+            }
+        }));
+        colCounted.setOnEditCommit(evento -> {
+            if (evento.getNewValue() == null || evento.getNewValue() >= 0) {
+                sesion.fijarCantidad(evento.getRowValue(), evento.getNewValue());
+            }
+            linesTable.refresh();
+            actualizarResumen();
+        });
+        linesTable.setItems(lineasVisibles);
+
+        onlyDifferencesCheck.selectedProperty().addListener((obs, anterior, nuevo) -> aplicarFiltro());
+        onlyPendingCheck.selectedProperty().addListener((obs, anterior, nuevo) -> aplicarFiltro());
+
+        mostrarSesion(null);
+        ejecutar(inventarioFisicoService::obtenerConteoAbierto, this::mostrarSesion, "No se pudo cargar el conteo abierto.");
+    }
+
+    private void mostrarSesion(SesionConteo nueva) {
+        sesion = nueva;
+        boolean abierta = sesion != null;
+        lineas.setAll(abierta ? sesion.getLineas() : List.of());
+        countInfoLabel.setText(abierta
+                ? "Conteo " + sesion.getConteo().idConteo() + " abierto el " + sesion.getConteo().fechaCreacion().format(FORMATO_FECHA)
+                  + (sesion.getConteo().comentario() != null ? " - " + sesion.getConteo().comentario() : "")
+                : "No hay un conteo abierto.");
+        openButton.setDisable(abierta);
+        commentField.setDisable(abierta);
+        scanField.setDisable(!abierta);
+        cancelButton.setDisable(!abierta);
+        saveButton.setDisable(!abierta);
+        applyButton.setDisable(!abierta);
+        actualizarResumen();
+        if (abierta) {
+            scanField.requestFocus();
+        }
+    }
+
+    @FXML
+    private void handleOpenCount() {
+        Alert confirmacion = new Alert(Alert.AlertType.CONFIRMATION);
+        confirmacion.setTitle("Nuevo Conteo");
+        confirmacion.setHeaderText("¿Abrir un conteo de inventario?");
+        confirmacion.setContentText("Se tomará el stock actual de todos los productos activos como stock esperado.");
+        if (confirmacion.showAndWait().filter(b -> b == ButtonType.OK).isEmpty()) {
+            return;
+        }
+        String comentario = commentField.getText();
+        openButton.setDisable(true);
+        summaryLabel.setText("Abriendo conteo...");
+        ejecutar(() -> inventarioFisicoService.abrirConteo(comentario), nueva -> {
+            if (nueva == null) {
+                openButton.setDisable(false);
+                summaryLabel.setText("No se pudo abrir el conteo (¿hay otro abierto?).");
+            } else {
+                commentField.clear();
+                mostrarSesion(nueva);
+            }
+        }, "No se pudo abrir el conteo.");
+    }
+
+    @FXML
+    private void handleScan() {
+        String lectura = scanField.getText();
+        scanField.clear();
+        if (sesion == null || lectura == null || lectura.isBlank()) {
+            return;
+        }
+        try {
+            LineaConteo linea = sesion.registrarLectura(lectura);
+            scanMessageLabel.setStyle("-fx-text-fill: #28a745;");
+            scanMessageLabel.setText(linea.getNombreProducto() + ": " + linea.getCantidadContada());
+            linesTable.refresh();
+            linesTable.getSelectionModel().select(linea);
+            linesTable.scrollTo(linea);
+            actualizarResumen();
+        } catch (IllegalArgumentException e) {
+            scanMessageLabel.setStyle("-fx-text-fill: #dc3545;");
+            scanMessageLabel.setText(e.getMessage());
+        }
+    }
+
+    @FXML
+    private void handleSave() {
+        SesionConteo actual = sesion;
+        saveButton.setDisable(true);
+        ejecutar(() -> inventarioFisicoService.guardarAvance(actual), ok -> {
+            saveButton.setDisable(false);
+            summaryLabel.setText(ok ? "Avance guardado." : "No se pudo guardar el avance.");
+        }, "No se pudo guardar el avance.");
+    }
+
+    @FXML
+    private void handleApply() {
+        SesionConteo.Resumen resumen = sesion.calcularResumen();
+        Alert confirmacion = new Alert(Alert.AlertType.CONFIRMATION);
+        confirmacion.setTitle("Aplicar Conteo");
+        confirmacion.setHeaderText("¿Aplicar los ajustes de " + resumen.conDiferencia() + " productos?");
+        confirmacion.setContentText("Entradas: " + resumen.sobrantes() + " unidades. Salidas: " + resumen.faltantes()
+                + " unidades (provisional: al aplicar se descuentan los movimientos hechos desde la apertura hasta "
+                + "el conteo de cada producto). Los " + (resumen.productos() - resumen.contados())
+                + " productos sin contar no se ajustarán.");
+        if (confirmacion.showAndWait().filter(b -> b == ButtonType.OK).isEmpty()) {
+            return;
+        }
+        SesionConteo actual = sesion;
+        applyButton.setDisable(true);
+        scanField.setDisable(true);
+        summaryLabel.setText("Aplicando ajustes...");
+        ejecutar(() -> inventarioFisicoService.aplicarConteo(actual), ajustados -> {
+            if (ajustados < 0) {
+                applyButton.setDisable(false);
+                scanField.setDisable(false);
+                summaryLabel.setText("No se pudo aplicar el conteo; no se registró ningún ajuste.");
+            } else {
+                mostrarSesion(null);
+                summaryLabel.setText("Conteo aplicado: " + ajustados + " productos ajustados.");
+            }
+        }, "No se pudo aplicar el conteo.");
+    }
+
+    @FXML
+    private void handleCancelCount() {
+        Alert confirmacion = new Alert(Alert.AlertType.CONFIRMATION);
+        confirmacion.setTitle("Cancelar Conteo");
+        confirmacion.setHeaderText("¿Cancelar el conteo sin aplicar ajustes?");
+        confirmacion.setContentText("Se perderán las cantidades contadas.");
+        if (confirmacion.showAndWait().filter(b -> b == ButtonType.OK).isEmpty()) {
+            return;
+        }
+        SesionConteo actual = sesion;
+        ejecutar(() -> inventarioFisicoService.cancelarConteo(actual), ok -> {
+            if (ok) {
+                mostrarSesion(null);
+                summaryLabel.setText("Conteo cancelado.");
+            } else {
+                summaryLabel.setText("No se pudo cancelar el conteo.");
+            }
+        }, "No se pudo cancelar el conteo.");
+    }
+
+    private void aplicarFiltro() {
+        boolean soloDiferencias = onlyDifferencesCheck.isSelected();
+        boolean soloPendientes = onlyPendingCheck.isSelected();
+        lineasVisibles.setPredicate(linea ->
+                (!soloDiferencias || (linea.isContada() && linea.getDiferencia() != 0))
+                && (!soloPendientes || !linea.isContada()));
+    }
+
+    private void actualizarResumen() {
+        if (sesion == null) {
+            summaryLabel.setText("");
+            return;
+        }
+        SesionConteo.Resumen resumen = sesion.calcularResumen();
+        summaryLabel.setText(resumen.contados() + " de " + resumen.productos() + " productos contados, "
+                + resumen.conDiferencia() + " con diferencia provisional (+" + resumen.sobrantes() + " / -" + resumen.faltantes() + ")");
+        if (onlyDifferencesCheck.isSelected() || onlyPendingCheck.isSelected()) {
+            aplicarFiltro(); // Las líneas pueden entrar o salir del filtro al contarlas
+        }
+    }
+
+    private <T> void ejecutar(Callable<T> trabajo, Consumer<T> alTerminar, String mensajeError) {
+        Task<T> tarea = new Task<>() {
+            @Override
+            protected T call() throws Exception {
+                return trabajo.call();
+            }
+        };
+        tarea.setOnSucceeded(e -> alTerminar.accept(tarea.getValue()));
+        tarea.setOnFailed(e -> summaryLabel.setText(mensajeError));
+        Thread hilo = new Thread(tarea, "inventario-fisico");
+        hilo.setDaemon(true);
+        hilo.start();
+    }
+}
@@ -0,0 +1,218 @@
+package com.cerrajeria.app.ui.controllers;
+
+import com.cerrajeria.app.models.CambioPrecio;
+import com.cerrajeria.app.models.CategoriaProducto;
+import com.cerrajeria.app.models.EstadoStock;
+import com.cerrajeria.app.services.AjustePreciosService;
+import com.cerrajeria.app.services.AjustePreciosService.Redondeo;
+import com.cerrajeria.app.services.AjustePreciosService.TipoAjuste;
+import com.cerrajeria.app.services.CategoriaProductoService;
+
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.concurrent.Task;
+import javafx.fxml.FXML;
+import javafx.scene.control.*;
+import javafx.scene.control.cell.PropertyValueFactory;
+import javafx.util.StringConverter;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Controlador para la vista de Ajuste de Precios.
+ * Calcula en memoria los precios nuevos de los productos del alcance elegido (categoría y estado),
+ * los muestra para revisarlos y los aplica todos, o solo los seleccionados, de una vez.
+ */
+public class PriceAdjustmentController {
+
+    // --- Componentes de la UI (inyectados desde FXML) ---
+    @FXML private ComboBox<CategoriaProducto> categoryCombo;
+    @FXML private ComboBox<EstadoStock> estadoCombo;
+    @FXML private ComboBox<TipoAjuste> tipoCombo;
+    @FXML private TextField valueField;
+    @FXML private ComboBox<Redondeo> redondeoCombo;
+    @FXML private CheckBox roundUpCheck;
+    @FXML private Button previewButton;
+    @FXML private TableView<CambioPrecio> changesTable;
+    @FXML private TableColumn<CambioPrecio, Integer> colProductId;
+    @FXML private TableColumn<CambioPrecio, String> colProductName;
+    @FXML private TableColumn<CambioPrecio, String> colCategory;
+    @FXML private TableColumn<CambioPrecio, String> colEstado;
+    @FXML private TableColumn<CambioPrecio, BigDecimal> colCurrentPrice;
+    @FXML private TableColumn<CambioPrecio, BigDecimal> colNewPrice;
+    @FXML private TableColumn<CambioPrecio, BigDecimal> colDifference;
+    @FXML private CheckBox onlySelectedCheck;
+    @FXML private Label summaryLabel;
+    @FXML private Button applyButton;
+
+    // --- Servicios de negocio ---
+    private final AjustePreciosService ajustePreciosService;
+    private final CategoriaProductoService categoriaProductoService;
+    private final ObservableList<CambioPrecio> cambios;
+
+    public PriceAdjustmentController() {
+        this.ajustePreciosService = new AjustePreciosService();
+        this.categoriaProductoService = new CategoriaProductoService();
+        this.cambios = FXCollections.observableArrayList();
+    }
+
+    @FXML
+    private void initialize() {
+        colProductId.setCellValueFactory(new PropertyValueFactory<>("idProducto"));
+        colProductName.setCellValueFactory(new PropertyValueFactory<>("nombreProducto"));
+        colCategory.setCellValueFactory(new PropertyValueFactory<>("nombreCategoria"));
+        colEstado.setCellValueFactory(new PropertyValueFactory<>("estado"));
+        colCurrentPrice.setCellValueFactory(new PropertyValueFactory<>("precioActual"));
+        colNewPrice.setCellValueFactory(new PropertyValueFactory<>("precioNuevo"));
+        colDifference.setCellValueFactory(new PropertyValueFactory<>("diferencia"));
+        colDifference.setCellFactory(columna -> new TableCell<>() {
+            @Override
+            protected void updateItem(BigDecimal diferencia, boolean vacia) {
+                super.updateItem(diferencia, vacia);
+                setText(vacia || diferencia == null ? null : (diferencia.signum() > 0 ? "+" : "") + diferencia);
+                setStyle(vacia || diferencia == null ? "" : diferencia.signum() > 0
+                        ? "-fx-text-fill: #28a745;" : "-fx-text-fill: #dc3545;");
+            }
+        });
+        changesTable.setItems(cambios);
+        changesTable.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
+
+        categoryCombo.setItems(FXCollections.observableArrayList(categoriaProductoService.obtenerCategoriasProductoActivas()));
+        categoryCombo.setConverter(new StringConverter<CategoriaProducto>() {
+            @Override
+            public String toString(CategoriaProducto categoria) {
+                return categoria != null ? categoria.getNombre() : "";
+            }
+            @Override
+            public CategoriaProducto fromString(String string) { return null; }
+        });
+        estadoCombo.setItems(FXCollections.observableArrayList(EstadoStock.values()));
+        tipoCombo.setItems(FXCollections.observableArrayList(TipoAjuste.values()));
+        tipoCombo.setValue(TipoAjuste.PORCENTAJE);
+        redondeoCombo.setItems(FXCollections.observableArrayList(Redondeo.values()));
+        redondeoCombo.setValue(Redondeo.CENTAVO);
+
+        // Una previsualización deja de valer en cuanto cambia el alcance o el ajuste
+        categoryCombo.valueProperty().addListener((obs, anterior, nuevo) -> descartarPrevisualizacion());
+        estadoCombo.valueProperty().addListener((obs, anterior, nuevo) -> descartarPrevisualizacion());
+        tipoCombo.valueProperty().addListener((obs, anterior, nuevo) -> descartarPrevisualizacion());
+        valueField.textProperty().addListener((obs, anterior, nuevo) -> descartarPrevisualizacion());
+        redondeoCombo.valueProperty().addListener((obs, anterior, nuevo) -> descartarPrevisualizacion());
+        roundUpCheck.selectedProperty().addListener((obs, anterior, nuevo) -> descartarPrevisualizacion());
+        applyButton.setDisable(true);
+    }
+
+    @FXML
+    private void handleClearFilters() {
+        categoryCombo.getSelectionModel().clearSelection();
+        estadoCombo.getSelectionModel().clearSelection();
+    }
+
+    @FXML
+    private void handlePreview() {
+        BigDecimal valor;
+        try {
+            valor = new BigDecimal(valueField.getText().trim().replace(',', '.'));
+        } catch (NumberFormatException e) {
+            showAlert(Alert.AlertType.ERROR, "Error de Formato", "El valor del ajuste debe ser un número (ej. 12.5 o -3).");
+            return;
+        }
+        Integer idCategoria = (categoryCombo.getValue() != null) ? categoryCombo.getValue().getIdCategoriaProducto() : null;
+        EstadoStock estado = estadoCombo.getValue();
+        TipoAjuste tipo = tipoCombo.getValue();
+        Redondeo redondeo = redondeoCombo.getValue();
+        boolean haciaArriba = roundUpCheck.isSelected();
+
+        previewButton.setDisable(true);
+        summaryLabel.setText("Calculando precios...");
+        Task<AjustePreciosService.Previsualizacion> tarea = new Task<>() {
+            @Override
+            protected AjustePreciosService.Previsualizacion call() {
+                return ajustePreciosService.previsualizar(idCategoria, estado, tipo, valor, redondeo, haciaArriba);
+            }
+        };
+        tarea.setOnSucceeded(e -> {
+            previewButton.setDisable(false);
+            AjustePreciosService.Previsualizacion previsualizacion = tarea.getValue();
+            cambios.setAll(previsualizacion.cambios());
+            summaryLabel.setText(cambios.size() + " productos cambian de precio"
+                    + (previsualizacion.omitidos() > 0
+                    ? " (" + previsualizacion.omitidos() + " omitidos por quedar con precio negativo)" : ""));
+            applyButton.setDisable(cambios.isEmpty());
+        });
+        tarea.setOnFailed(e -> {
+            previewButton.setDisable(false);
+            summaryLabel.setText("No se pudo calcular el ajuste: " + tarea.getException().getMessage());
+        });
+        ejecutar(tarea);
+    }
+
+    @FXML
+    private void handleApply() {
+        List<CambioPrecio> aAplicar = onlySelectedCheck.isSelected()
+                ? List.copyOf(changesTable.getSelectionModel().getSelectedItems())
+                : List.copyOf(cambios);
+        if (aAplicar.isEmpty()) {
+            showAlert(Alert.AlertType.WARNING, "Sin Selección", "Seleccione en la tabla los productos a los que aplicar el ajuste.");
+            return;
+        }
+        Alert confirmacion = new Alert(Alert.AlertType.CONFIRMATION);
+        confirmacion.setTitle("Confirmar Ajuste de Precios");
+        confirmacion.setHeaderText("¿Cambiar el precio de " + aAplicar.size() + " productos?");
+        confirmacion.setContentText("Los productos cuyo precio haya cambiado desde la previsualización no se modificarán.");
+        if (confirmacion.showAndWait().filter(b -> b == ButtonType.OK).isEmpty()) {
+            return;
+        }
+
+        applyButton.setDisable(true);
+        previewButton.setDisable(true);
+        summaryLabel.setText("Aplicando precios...");
+        Task<Integer> tarea = new Task<>() {
+            @Override
+            protected Integer call() {
+                return ajustePreciosService.aplicar(aAplicar);
+            }
+        };
+        tarea.setOnSucceeded(e -> {
+            previewButton.setDisable(false);
+            int aplicados = tarea.getValue();
+            if (aplicados < 0) {
+                applyButton.setDisable(false);
+                summaryLabel.setText("No se pudo aplicar el ajuste; no se cambió ningún precio.");
+                return;
+            }
+            cambios.clear();
+            summaryLabel.setText("Precios actualizados: " + aplicados + " de " + aAplicar.size()
+                    + (aplicados < aAplicar.size() ? " (el resto cambió de precio entretanto; vuelva a previsualizar)" : ""));
+        });
+        tarea.setOnFailed(e -> {
+            previewButton.setDisable(false);
+            applyButton.setDisable(false);
+            summaryLabel.setText("No se pudo aplicar el ajuste; no se cambió ningún precio.");
+        });
+        ejecutar(tarea);
+    }
+
+    private void descartarPrevisualizacion() {
+        if (!cambios.isEmpty()) {
+            cambios.clear();
+            summaryLabel.setText("");
+        }
+        applyButton.setDisable(true);
+    }
+
+    private void showAlert(Alert.AlertType type, String title, String message) {
+        Alert alert = new Alert(type);
+        alert.setTitle(title);
+        alert.setHeaderText(null);
+        alert.setContentText(message);
+        alert.showAndWait();
+    }
+
+    private static void ejecutar(Task<?> tarea) {
+        Thread hilo = new Thread(tarea, "ajuste-precios");
+        hilo.setDaemon(true);
+        hilo.start();
+    }
+}
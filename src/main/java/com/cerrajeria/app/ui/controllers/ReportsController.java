@@ -1,27 +1,61 @@
 package com.cerrajeria.app.ui.controllers;
 
+import com.cerrajeria.app.dao.AnalisisVentasDAO;
+import com.cerrajeria.app.dao.ResumenVentaDiarioDAO.AgrupacionRentabilidad;
+import com.cerrajeria.app.dao.VentaDAO;
+import com.cerrajeria.app.database.ConsultaCancelable;
 import com.cerrajeria.app.models.Comision;
+import com.cerrajeria.app.models.FilaRentabilidad;
+import com.cerrajeria.app.models.SugerenciaReposicion;
 import com.cerrajeria.app.models.Usuario;
 import com.cerrajeria.app.models.Venta;
+import com.cerrajeria.app.services.ExportacionService;
+import com.cerrajeria.app.services.ExportacionService.FormatoExportacion;
 import com.cerrajeria.app.services.ReporteService;
+import com.cerrajeria.app.services.ReporteService.AnalisisVentas;
+import com.cerrajeria.app.services.ReporteService.ImportePorConcepto;
+import com.cerrajeria.app.services.ReporteService.LineaAnalizada;
+import javafx.application.Platform;
 import javafx.beans.property.SimpleObjectProperty;
+import javafx.beans.value.ObservableValue;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
+import javafx.concurrent.Task;
 import javafx.fxml.FXML;
 import javafx.scene.control.*;
 import javafx.scene.control.cell.PropertyValueFactory;
+import javafx.stage.FileChooser;
 
+import java.io.File;
 import java.math.BigDecimal;
+import java.nio.file.Path;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
 
 /**
  * Controlador para la vista de reportes globales.
+ * Cada sección se consulta en segundo plano y se muestra en cuanto llegan sus datos; la vista
+ * se abre de inmediato con marcadores de "Cargando...". Si cambian los filtros de una sección,
+ * la carga en curso de esa sección se cancela (también su consulta en la base de datos, para no
+ * ocupar los hilos de carga) y su resultado se descarta.
  */
 public class ReportsController {
 
+    // Hilos compartidos por todas las vistas de reportes abiertas; las secciones se cargan en paralelo
+    private static final ExecutorService EJECUTOR_REPORTES = Executors.newFixedThreadPool(3, r -> {
+        Thread hilo = new Thread(r, "reportes-carga");
+        hilo.setDaemon(true);
+        return hilo;
+    });
+
     // --- Ventas ---
     @FXML private TableView<Venta> salesTable;
     @FXML private TableColumn<Venta, Integer> colSaleId;
@@ -55,8 +89,96 @@ public class ReportsController {
     @FXML private Label expensesLabel;
     @FXML private Label balanceLabel;
 
+    // --- Rentabilidad ---
+    @FXML private ComboBox<AgrupacionRentabilidad> profitGroupingCombo;
+    @FXML private DatePicker profitFromDatePicker;
+    @FXML private DatePicker profitToDatePicker;
+    @FXML private ComboBox<Usuario> profitUserCombo;
+    @FXML private TableView<FilaRentabilidad> profitTable;
+    @FXML private TableColumn<FilaRentabilidad, String> colProfitConcept;
+    @FXML private TableColumn<FilaRentabilidad, Integer> colProfitUnits;
+    @FXML private TableColumn<FilaRentabilidad, BigDecimal> colProfitRevenue;
+    @FXML private TableColumn<FilaRentabilidad, BigDecimal> colProfitCost;
+    @FXML private TableColumn<FilaRentabilidad, BigDecimal> colProfitMargin;
+    @FXML private TableColumn<FilaRentabilidad, BigDecimal> colProfitMarginPct;
+    @FXML private TableColumn<FilaRentabilidad, BigDecimal> colProfitCommission;
+    @FXML private TableColumn<FilaRentabilidad, BigDecimal> colProfitNet;
+    @FXML private Label profitTotalLabel;
+
+    // --- Análisis ---
+    @FXML private DatePicker analysisFromDatePicker;
+    @FXML private DatePicker analysisToDatePicker;
+    @FXML private ComboBox<Usuario> analysisUserCombo;
+    @FXML private ComboBox<String> analysisTypeCombo;
+    @FXML private ComboBox<Integer> analysisCategoryCombo;
+    @FXML private TableView<ImportePorConcepto> analysisCategoryTable;
+    @FXML private TableColumn<ImportePorConcepto, String> colAnalysisCategory;
+    @FXML private TableColumn<ImportePorConcepto, BigDecimal> colAnalysisCategoryAmount;
+    @FXML private TableView<ImportePorConcepto> analysisUserTable;
+    @FXML private TableColumn<ImportePorConcepto, String> colAnalysisUser;
+    @FXML private TableColumn<ImportePorConcepto, BigDecimal> colAnalysisUserAmount;
+    @FXML private TableView<LineaAnalizada> analysisDetailTable;
+    @FXML private TableColumn<LineaAnalizada, Integer> colAnalysisSale;
+    @FXML private TableColumn<LineaAnalizada, LocalDate> colAnalysisDate;
+    @FXML private TableColumn<LineaAnalizada, String> colAnalysisSeller;
+    @FXML private TableColumn<LineaAnalizada, String> colAnalysisItem;
+    @FXML private TableColumn<LineaAnalizada, String> colAnalysisItemCategory;
+    @FXML private TableColumn<LineaAnalizada, Integer> colAnalysisQuantity;
+    @FXML private TableColumn<LineaAnalizada, BigDecimal> colAnalysisAmount;
+    @FXML private TableColumn<LineaAnalizada, BigDecimal> colAnalysisCost;
+    @FXML private Label analysisTotalLabel;
+
+    // --- Reposición ---
+    @FXML private TableView<SugerenciaReposicion> replenishmentTable;
+    @FXML private TableColumn<SugerenciaReposicion, String> colReplProduct;
+    @FXML private TableColumn<SugerenciaReposicion, Integer> colReplStock;
+    @FXML private TableColumn<SugerenciaReposicion, Integer> colReplMinimum;
+    @FXML private TableColumn<SugerenciaReposicion, String> colReplSpeed7;
+    @FXML private TableColumn<SugerenciaReposicion, String> colReplSpeed30;
+    @FXML private TableColumn<SugerenciaReposicion, String> colReplSpeed90;
+    @FXML private TableColumn<SugerenciaReposicion, String> colReplCoverage;
+    @FXML private TableColumn<SugerenciaReposicion, Integer> colReplSuggested;
+    @FXML private Label replenishmentTotalLabel;
+
+    // --- Exportación ---
+    @FXML private ProgressBar exportProgressBar;
+    @FXML private Label exportStatusLabel;
+    @FXML private Button cancelExportButton;
+    @FXML private Button exportSalesButton;
+    @FXML private Button exportStockMovementsButton;
+    @FXML private Button exportCommissionsButton;
+
     private final ReporteService reporteService;
-    private ObservableList<Usuario> usuarios;
+    private final ExportacionService exportacionService = new ExportacionService();
+    private final ObservableList<Usuario> usuarios = FXCollections.observableArrayList();
+    private static final String TIPO_PRODUCTOS = "Productos";
+    private static final String TIPO_SERVICIOS = "Servicios";
+    private static final int LIMITE_DETALLE_ANALISIS = 500;
+    private final ObservableList<Integer> categoriasAnalisis = FXCollections.observableArrayList();
+    private Map<Integer, String> nombresCategoriaAnalisis = Map.of();
+    // Mientras se limpian filtros o se rellenan opciones, los cambios no disparan recargas
+    private boolean suspenderRecargas = false;
+
+    // Carga en curso de cada sección (para cancelarla si se vuelve a pedir)
+    private Task<?> cargaVentas;
+    private Task<?> cargaComisiones;
+    private Task<?> cargaProductos;
+    private Task<?> cargaServicios;
+    private Task<?> cargaResumen;
+    private Task<?> cargaRentabilidad;
+    private Task<?> cargaAnalisis;
+    private Task<?> cargaReposicion;
+    private Task<Long> tareaExportacion;
+    // Hilo que escribe el archivo: tras cancelar sigue vivo hasta cerrar el archivo, y hasta entonces no se admite otra exportación
+    private Thread hiloExportacion;
+
+    /**
+     * Una exportación concreta (qué datos y con qué filtros), a ejecutar en segundo plano.
+     */
+    @FunctionalInterface
+    private interface Exportacion {
+        long ejecutar(Path destino, FormatoExportacion formato, ExportacionService.Progreso progreso);
+    }
 
     public ReportsController() {
         this.reporteService = new ReporteService();
@@ -64,8 +186,7 @@ public class ReportsController {
 
     @FXML
     private void initialize() {
-        // Configurar ComboBoxes
-        usuarios = FXCollections.observableArrayList(reporteService.obtenerTodosLosUsuarios());
+        // Configurar ComboBoxes (los usuarios se cargan en segundo plano)
         userFilterCombo.setItems(usuarios);
         commissionUserCombo.setItems(usuarios);
 
@@ -86,9 +207,28 @@ public class ReportsController {
         });
         commissionUserCombo.setCellFactory(userFilterCombo.getCellFactory());
         commissionUserCombo.setButtonCell(userFilterCombo.getButtonCell());
+        profitUserCombo.setItems(usuarios);
+        profitUserCombo.setCellFactory(userFilterCombo.getCellFactory());
+        profitUserCombo.setButtonCell(userFilterCombo.getButtonCell());
+        profitGroupingCombo.setItems(FXCollections.observableArrayList(AgrupacionRentabilidad.values()));
+        profitGroupingCombo.setValue(AgrupacionRentabilidad.PRODUCTO);
 
         commissionStateCombo.setItems(FXCollections.observableArrayList("Pendiente", "Aprobado", "Rechazado", "Pagado"));
 
+        analysisUserCombo.setItems(usuarios);
+        analysisUserCombo.setCellFactory(userFilterCombo.getCellFactory());
+        analysisUserCombo.setButtonCell(userFilterCombo.getButtonCell());
+        analysisTypeCombo.setItems(FXCollections.observableArrayList(TIPO_PRODUCTOS, TIPO_SERVICIOS));
+        analysisCategoryCombo.setItems(categoriasAnalisis);
+        analysisCategoryCombo.setCellFactory(lv -> new ListCell<>() {
+            @Override
+            protected void updateItem(Integer codigo, boolean empty) {
+                super.updateItem(codigo, empty);
+                setText((codigo == null || empty) ? "" : nombresCategoriaAnalisis.getOrDefault(codigo, ""));
+            }
+        });
+        analysisCategoryCombo.setButtonCell(analysisCategoryCombo.getCellFactory().call(null));
+
         // Configuración de columnas de ventas
         colSaleId.setCellValueFactory(new PropertyValueFactory<>("idVenta"));
         colSaleUser.setCellValueFactory(cellData -> new SimpleObjectProperty<>(
@@ -110,19 +250,178 @@ public class ReportsController {
         colServName.setCellValueFactory(data -> new SimpleObjectProperty<>(data.getValue().getKey()));
         colServCount.setCellValueFactory(data -> new SimpleObjectProperty<>(data.getValue().getValue()));
 
-        // Inicializar datos
+        // Columnas de rentabilidad
+        colProfitConcept.setCellValueFactory(new PropertyValueFactory<>("concepto"));
+        colProfitUnits.setCellValueFactory(new PropertyValueFactory<>("unidades"));
+        colProfitRevenue.setCellValueFactory(new PropertyValueFactory<>("ingresos"));
+        colProfitCost.setCellValueFactory(new PropertyValueFactory<>("costo"));
+        colProfitMargin.setCellValueFactory(new PropertyValueFactory<>("margen"));
+        colProfitMarginPct.setCellValueFactory(new PropertyValueFactory<>("margenPorcentaje"));
+        colProfitCommission.setCellValueFactory(new PropertyValueFactory<>("comision"));
+        colProfitNet.setCellValueFactory(new PropertyValueFactory<>("margenNeto"));
+
+        // Columnas del análisis (records: se leen con sus accesores)
+        colAnalysisCategory.setCellValueFactory(data -> new SimpleObjectProperty<>(data.getValue().concepto()));
+        colAnalysisCategoryAmount.setCellValueFactory(data -> new SimpleObjectProperty<>(data.getValue().importe()));
+        colAnalysisUser.setCellValueFactory(data -> new SimpleObjectProperty<>(data.getValue().concepto()));
+        colAnalysisUserAmount.setCellValueFactory(data -> new SimpleObjectProperty<>(data.getValue().importe()));
+        colAnalysisSale.setCellValueFactory(data -> new SimpleObjectProperty<>(data.getValue().idVenta()));
+        colAnalysisDate.setCellValueFactory(data -> new SimpleObjectProperty<>(data.getValue().fecha()));
+        colAnalysisSeller.setCellValueFactory(data -> new SimpleObjectProperty<>(data.getValue().vendedor()));
+        colAnalysisItem.setCellValueFactory(data -> new SimpleObjectProperty<>(data.getValue().item()));
+        colAnalysisItemCategory.setCellValueFactory(data -> new SimpleObjectProperty<>(data.getValue().categoria()));
+        colAnalysisQuantity.setCellValueFactory(data -> new SimpleObjectProperty<>(data.getValue().cantidad()));
+        colAnalysisAmount.setCellValueFactory(data -> new SimpleObjectProperty<>(data.getValue().importe()));
+        colAnalysisCost.setCellValueFactory(data -> new SimpleObjectProperty<>(data.getValue().costo()));
+
+        // Columnas de reposición (velocidades en el orden de las ventanas: 7, 30 y 90 días)
+        colReplProduct.setCellValueFactory(new PropertyValueFactory<>("nombre"));
+        colReplStock.setCellValueFactory(new PropertyValueFactory<>("stock"));
+        colReplMinimum.setCellValueFactory(new PropertyValueFactory<>("stockMinimo"));
+        colReplSpeed7.setCellValueFactory(data -> new SimpleObjectProperty<>(formatearDecimal(data.getValue().getVelocidad(0))));
+        colReplSpeed30.setCellValueFactory(data -> new SimpleObjectProperty<>(formatearDecimal(data.getValue().getVelocidad(1))));
+        colReplSpeed90.setCellValueFactory(data -> new SimpleObjectProperty<>(formatearDecimal(data.getValue().getVelocidad(2))));
+        colReplCoverage.setCellValueFactory(data -> new SimpleObjectProperty<>(
+                Double.isInfinite(data.getValue().getDiasCobertura()) ? "Sin ventas"
+                        : formatearDecimal(data.getValue().getDiasCobertura())));
+        colReplSuggested.setCellValueFactory(new PropertyValueFactory<>("cantidadSugerida"));
+
+        // Doble clic en un grupo del análisis lo usa como filtro
+        analysisCategoryTable.setRowFactory(tv -> {
+            TableRow<ImportePorConcepto> fila = new TableRow<>();
+            fila.setOnMouseClicked(e -> {
+                if (e.getClickCount() == 2 && !fila.isEmpty()) {
+                    analysisCategoryCombo.setValue(fila.getItem().id());
+                }
+            });
+            return fila;
+        });
+        analysisUserTable.setRowFactory(tv -> {
+            TableRow<ImportePorConcepto> fila = new TableRow<>();
+            fila.setOnMouseClicked(e -> {
+                if (e.getClickCount() == 2 && !fila.isEmpty()) {
+                    usuarios.stream()
+                            .filter(u -> u.getIdUsuario() == fila.getItem().id())
+                            .findFirst()
+                            .ifPresent(analysisUserCombo::setValue);
+                }
+            });
+            return fila;
+        });
+
+        // Un cambio de filtro cancela la carga en curso de su sección y la vuelve a pedir
+        recargarAlCambiar(fromDatePicker.valueProperty(), this::refreshSales);
+        recargarAlCambiar(toDatePicker.valueProperty(), this::refreshSales);
+        recargarAlCambiar(userFilterCombo.valueProperty(), this::refreshSales);
+        recargarAlCambiar(commissionUserCombo.valueProperty(), this::refreshCommissions);
+        recargarAlCambiar(commissionStateCombo.valueProperty(), this::refreshCommissions);
+        recargarAlCambiar(profitGroupingCombo.valueProperty(), this::refreshProfitability);
+        recargarAlCambiar(profitFromDatePicker.valueProperty(), this::refreshProfitability);
+        recargarAlCambiar(profitToDatePicker.valueProperty(), this::refreshProfitability);
+        recargarAlCambiar(profitUserCombo.valueProperty(), this::refreshProfitability);
+        recargarAlCambiar(analysisFromDatePicker.valueProperty(), this::refreshAnalysis);
+        recargarAlCambiar(analysisToDatePicker.valueProperty(), this::refreshAnalysis);
+        recargarAlCambiar(analysisUserCombo.valueProperty(), this::refreshAnalysis);
+        recargarAlCambiar(analysisTypeCombo.valueProperty(), this::refreshAnalysis);
+        recargarAlCambiar(analysisCategoryCombo.valueProperty(), this::refreshAnalysis);
+
+        // Inicializar datos: todas las secciones a la vez, sin bloquear la apertura de la vista
+        cargarEnSegundoPlano(null, reporteService::obtenerTodosLosUsuarios, lista -> {
+            usuarios.setAll(lista);
+            // Los nombres de vendedor se resuelven contra esta lista
+            salesTable.refresh();
+            commissionsTable.refresh();
+        }, () -> { });
         refreshSales();
         refreshCommissions();
         refreshStats();
+        refreshProfitability();
+        refreshAnalysis();
+        refreshReplenishment();
+    }
+
+    private void recargarAlCambiar(ObservableValue<?> filtro, Runnable recarga) {
+        filtro.addListener((obs, anterior, nuevo) -> {
+            if (!suspenderRecargas) {
+                recarga.run();
+            }
+        });
+    }
+
+    /**
+     * Cambia varios filtros de una sección y la recarga una sola vez.
+     */
+    private void limpiarFiltros(Runnable limpieza, Runnable recarga) {
+        suspenderRecargas = true;
+        try {
+            limpieza.run();
+        } finally {
+            suspenderRecargas = false;
+        }
+        recarga.run();
+    }
+
+    /**
+     * Carga en segundo plano cuya cancelación también cancela la sentencia JDBC en curso;
+     * si no, la consulta seguiría ocupando un hilo del ejecutor hasta terminar.
+     */
+    private static class Carga<T> extends Task<T> {
+        private final Callable<T> consulta;
+        private final ConsultaCancelable cancelacion = new ConsultaCancelable();
+
+        Carga(Callable<T> consulta) {
+            this.consulta = consulta;
+        }
+
+        @Override
+        protected T call() throws Exception {
+            return cancelacion.ejecutar(consulta);
+        }
+
+        @Override
+        public boolean cancel(boolean interrumpir) {
+            boolean cancelada = super.cancel(interrumpir);
+            cancelacion.cancelar();
+            return cancelada;
+        }
+    }
+
+    /**
+     * Ejecuta una consulta en el ejecutor de reportes y entrega su resultado en el hilo de JavaFX.
+     * @param anterior Carga previa de la misma sección, que se cancela (puede ser null).
+     * @param consulta Consulta a ejecutar fuera del hilo de JavaFX.
+     * @param alTerminar Muestra el resultado; no se llama si la carga fue cancelada.
+     * @param alFallar Muestra el error en la sección.
+     * @return La nueva carga, para poder cancelarla después.
+     */
+    private <T> Task<T> cargarEnSegundoPlano(Task<?> anterior, Callable<T> consulta,
+                                             Consumer<T> alTerminar, Runnable alFallar) {
+        if (anterior != null) {
+            anterior.cancel(true);
+        }
+        Task<T> tarea = new Carga<>(consulta);
+        tarea.setOnSucceeded(e -> alTerminar.accept(tarea.getValue()));
+        tarea.setOnFailed(e -> {
+            System.err.println("Error al cargar reporte: " + tarea.getException().getMessage());
+            alFallar.run();
+        });
+        EJECUTOR_REPORTES.submit(tarea);
+        return tarea;
+    }
+
+    private static void mostrarCargando(TableView<?> tabla, String texto) {
+        tabla.setItems(FXCollections.observableArrayList());
+        tabla.setPlaceholder(new Label(texto));
     }
 
     // --- Métodos para refrescar datos ---
     @FXML private void handleRefreshSales() { refreshSales(); }
     @FXML private void handleClearSalesFilters() {
-        fromDatePicker.setValue(null);
-        toDatePicker.setValue(null);
-        userFilterCombo.getSelectionModel().clearSelection();
-        refreshSales();
+        limpiarFiltros(() -> {
+            fromDatePicker.setValue(null);
+            toDatePicker.setValue(null);
+            userFilterCombo.getSelectionModel().clearSelection();
+        }, this::refreshSales);
     }
 
     private void refreshSales() {
@@ -135,21 +434,24 @@ public class ReportsController {
                 .map(Usuario::getIdUsuario)
                 .orElse(null);
 
-        ObservableList<Venta> ventas = FXCollections.observableArrayList(
-                reporteService.obtenerTodasLasVentasFiltradas(desde, hasta, idUsuario));
-        salesTable.setItems(ventas);
-
-        BigDecimal total = ventas.stream()
-                .map(Venta::getTotalVenta)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-        salesTotalLabel.setText("Total: " + total);
+        mostrarCargando(salesTable, "Cargando ventas...");
+        salesTotalLabel.setText("Total: ...");
+        cargaVentas = cargarEnSegundoPlano(cargaVentas,
+                () -> reporteService.obtenerVentasFiltradasConTotales(desde, hasta, idUsuario),
+                (VentaDAO.VentasFiltradas resultado) -> {
+                    salesTable.setPlaceholder(new Label("No hay ventas para los filtros seleccionados."));
+                    salesTable.setItems(FXCollections.observableArrayList(resultado.ventas()));
+                    salesTotalLabel.setText("Total: " + resultado.total() + " (" + resultado.cantidad() + " ventas)");
+                },
+                () -> salesTable.setPlaceholder(new Label("No se pudieron cargar las ventas.")));
     }
 
     @FXML private void handleRefreshCommissions() { refreshCommissions(); }
     @FXML private void handleClearCommissionsFilters() {
-        commissionUserCombo.getSelectionModel().clearSelection();
-        commissionStateCombo.getSelectionModel().clearSelection();
-        refreshCommissions();
+        limpiarFiltros(() -> {
+            commissionUserCombo.getSelectionModel().clearSelection();
+            commissionStateCombo.getSelectionModel().clearSelection();
+        }, this::refreshCommissions);
     }
 
     private void refreshCommissions() {
@@ -158,29 +460,290 @@ public class ReportsController {
                 .orElse(null);
         String estado = commissionStateCombo.getValue();
 
-        ObservableList<Comision> comisiones = FXCollections.observableArrayList(
-                reporteService.obtenerTodasLasComisionesFiltradas(idUsuario, estado));
-        commissionsTable.setItems(comisiones);
+        mostrarCargando(commissionsTable, "Cargando comisiones...");
+        commissionsTotalLabel.setText("Total: ...");
+        cargaComisiones = cargarEnSegundoPlano(cargaComisiones,
+                () -> reporteService.obtenerTodasLasComisionesFiltradas(idUsuario, estado),
+                lista -> {
+                    ObservableList<Comision> comisiones = FXCollections.observableArrayList(lista);
+                    commissionsTable.setPlaceholder(new Label("No hay comisiones para los filtros seleccionados."));
+                    commissionsTable.setItems(comisiones);
 
-        BigDecimal total = comisiones.stream()
-                .map(Comision::getMontoComision)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-        commissionsTotalLabel.setText("Total: " + total);
+                    BigDecimal total = comisiones.stream()
+                            .map(Comision::getMontoComision)
+                            .reduce(BigDecimal.ZERO, BigDecimal::add);
+                    commissionsTotalLabel.setText("Total: " + total);
+                },
+                () -> commissionsTable.setPlaceholder(new Label("No se pudieron cargar las comisiones.")));
     }
 
     @FXML private void handleRefreshStats() { refreshStats(); }
     private void refreshStats() {
-        ObservableList<Map.Entry<String, Integer>> productos = FXCollections.observableArrayList(
-                reporteService.obtenerProductosMasVendidos(5).entrySet());
-        ObservableList<Map.Entry<String, Integer>> servicios = FXCollections.observableArrayList(
-                reporteService.obtenerServiciosMasVendidos(5).entrySet());
-        topProductsTable.setItems(productos);
-        topServicesTable.setItems(servicios);
-
-        Map<String, BigDecimal> resumen = reporteService.obtenerResumenFinanciero();
-        incomeLabel.setText("Ingresos: " + resumen.get("totalIngresos"));
-        expensesLabel.setText("Egresos: " + resumen.get("totalEgresos"));
-        balanceLabel.setText("Balance: " + resumen.get("balanceTotal"));
+        mostrarCargando(topProductsTable, "Cargando...");
+        mostrarCargando(topServicesTable, "Cargando...");
+        incomeLabel.setText("Ingresos: ...");
+        expensesLabel.setText("Egresos: ...");
+        balanceLabel.setText("Balance: ...");
+
+        cargaProductos = cargarEnSegundoPlano(cargaProductos,
+                () -> reporteService.obtenerProductosMasVendidos(5),
+                mapa -> {
+                    topProductsTable.setPlaceholder(new Label("Sin ventas de productos."));
+                    topProductsTable.setItems(FXCollections.observableArrayList(mapa.entrySet()));
+                },
+                () -> topProductsTable.setPlaceholder(new Label("No se pudo cargar.")));
+        cargaServicios = cargarEnSegundoPlano(cargaServicios,
+                () -> reporteService.obtenerServiciosMasVendidos(5),
+                mapa -> {
+                    topServicesTable.setPlaceholder(new Label("Sin ventas de servicios."));
+                    topServicesTable.setItems(FXCollections.observableArrayList(mapa.entrySet()));
+                },
+                () -> topServicesTable.setPlaceholder(new Label("No se pudo cargar.")));
+        cargaResumen = cargarEnSegundoPlano(cargaResumen,
+                reporteService::obtenerResumenFinanciero,
+                resumen -> {
+                    incomeLabel.setText("Ingresos: " + resumen.get("totalIngresos"));
+                    expensesLabel.setText("Egresos: " + resumen.get("totalEgresos"));
+                    balanceLabel.setText("Balance: " + resumen.get("balanceTotal"));
+                },
+                () -> incomeLabel.setText("Ingresos: no disponible"));
+    }
+
+    @FXML private void handleRefreshProfitability() { refreshProfitability(); }
+    @FXML private void handleClearProfitabilityFilters() {
+        limpiarFiltros(() -> {
+            profitFromDatePicker.setValue(null);
+            profitToDatePicker.setValue(null);
+            profitUserCombo.getSelectionModel().clearSelection();
+        }, this::refreshProfitability);
+    }
+
+    private void refreshProfitability() {
+        AgrupacionRentabilidad agrupacion = Optional.ofNullable(profitGroupingCombo.getValue())
+                .orElse(AgrupacionRentabilidad.PRODUCTO);
+        LocalDate desde = profitFromDatePicker.getValue();
+        LocalDate hasta = profitToDatePicker.getValue();
+        Integer idUsuario = Optional.ofNullable(profitUserCombo.getValue())
+                .map(Usuario::getIdUsuario)
+                .orElse(null);
+
+        mostrarCargando(profitTable, "Cargando rentabilidad...");
+        profitTotalLabel.setText("Total: ...");
+        cargaRentabilidad = cargarEnSegundoPlano(cargaRentabilidad,
+                () -> reporteService.obtenerRentabilidad(agrupacion, desde, hasta, idUsuario),
+                filas -> {
+                    profitTable.setPlaceholder(new Label("No hay ventas para los filtros seleccionados."));
+                    profitTable.setItems(FXCollections.observableArrayList(filas));
+
+                    // El total es la suma de los grupos; se presenta con la misma fórmula de margen
+                    FilaRentabilidad total = new FilaRentabilidad("Total",
+                            filas.stream().mapToInt(FilaRentabilidad::getUnidades).sum(),
+                            filas.stream().map(FilaRentabilidad::getIngresos).reduce(BigDecimal.ZERO, BigDecimal::add),
+                            filas.stream().map(FilaRentabilidad::getCosto).reduce(BigDecimal.ZERO, BigDecimal::add),
+                            filas.stream().map(FilaRentabilidad::getComision).reduce(BigDecimal.ZERO, BigDecimal::add));
+                    profitTotalLabel.setText("Ingresos: " + total.getIngresos() + " | Costo: " + total.getCosto()
+                            + " | Margen: " + total.getMargen() + " (" + total.getMargenPorcentaje() + "%)"
+                            + " | Comisión: " + total.getComision() + " | Margen neto: " + total.getMargenNeto());
+                },
+                () -> profitTable.setPlaceholder(new Label("No se pudo cargar la rentabilidad.")));
+    }
+
+    @FXML private void handleRefreshAnalysis() { refreshAnalysis(); }
+    @FXML private void handleClearAnalysisFilters() {
+        limpiarFiltros(() -> {
+            analysisFromDatePicker.setValue(null);
+            analysisToDatePicker.setValue(null);
+            analysisUserCombo.getSelectionModel().clearSelection();
+            analysisTypeCombo.getSelectionModel().clearSelection();
+            analysisCategoryCombo.getSelectionModel().clearSelection();
+        }, this::refreshAnalysis);
+    }
+
+    private void refreshAnalysis() {
+        LocalDate desde = analysisFromDatePicker.getValue();
+        LocalDate hasta = analysisToDatePicker.getValue();
+        Integer idUsuario = Optional.ofNullable(analysisUserCombo.getValue())
+                .map(Usuario::getIdUsuario)
+                .orElse(null);
+        Integer tipo = TIPO_PRODUCTOS.equals(analysisTypeCombo.getValue()) ? Integer.valueOf(AnalisisVentasDAO.TIPO_PRODUCTO)
+                : TIPO_SERVICIOS.equals(analysisTypeCombo.getValue()) ? Integer.valueOf(AnalisisVentasDAO.TIPO_SERVICIO)
+                : null;
+        Integer codigoCategoria = analysisCategoryCombo.getValue();
+
+        mostrarCargando(analysisCategoryTable, "Cargando...");
+        mostrarCargando(analysisUserTable, "Cargando...");
+        mostrarCargando(analysisDetailTable, "Cargando análisis...");
+        analysisTotalLabel.setText("Total: ...");
+        cargaAnalisis = cargarEnSegundoPlano(cargaAnalisis,
+                () -> reporteService.analizarVentas(desde, hasta, idUsuario, tipo, codigoCategoria, LIMITE_DETALLE_ANALISIS),
+                (AnalisisVentas analisis) -> {
+                    if (analisis == null) {
+                        analysisDetailTable.setPlaceholder(new Label("No se pudo cargar el análisis."));
+                        analysisTotalLabel.setText("Total: no disponible");
+                        return;
+                    }
+                    mostrarCategoriasAnalisis(analisis.categorias());
+                    analysisCategoryTable.setPlaceholder(new Label("Sin ventas."));
+                    analysisCategoryTable.setItems(FXCollections.observableArrayList(analisis.porCategoria()));
+                    analysisUserTable.setPlaceholder(new Label("Sin ventas."));
+                    analysisUserTable.setItems(FXCollections.observableArrayList(analisis.porVendedor()));
+                    analysisDetailTable.setPlaceholder(new Label("No hay ventas para los filtros seleccionados."));
+                    analysisDetailTable.setItems(FXCollections.observableArrayList(analisis.detalle()));
+                    analysisTotalLabel.setText("Importe: " + analisis.importe() + " | Costo: " + analisis.costo()
+                            + " | Margen: " + analisis.margen() + " | " + analisis.unidades() + " unidades en "
+                            + analisis.lineas() + " líneas"
+                            + (analisis.lineas() > analisis.detalle().size()
+                                    ? " (se muestran las primeras " + analisis.detalle().size() + ")" : ""));
+                },
+                () -> analysisDetailTable.setPlaceholder(new Label("No se pudo cargar el análisis.")));
+    }
+
+    /**
+     * Actualiza las opciones del filtro de categoría sin disparar otra carga y conservando la elegida.
+     */
+    private void mostrarCategoriasAnalisis(Map<Integer, String> categorias) {
+        nombresCategoriaAnalisis = categorias;
+        if (categoriasAnalisis.equals(List.copyOf(categorias.keySet()))) {
+            return;
+        }
+        Integer elegida = analysisCategoryCombo.getValue();
+        suspenderRecargas = true;
+        try {
+            categoriasAnalisis.setAll(categorias.keySet());
+            analysisCategoryCombo.setValue(elegida);
+        } finally {
+            suspenderRecargas = false;
+        }
+    }
+
+    @FXML private void handleRefreshReplenishment() { refreshReplenishment(); }
+    private void refreshReplenishment() {
+        mostrarCargando(replenishmentTable, "Calculando plan de reposición...");
+        replenishmentTotalLabel.setText("Productos a pedir: ...");
+        cargaReposicion = cargarEnSegundoPlano(cargaReposicion,
+                reporteService::obtenerPlanReposicion,
+                plan -> {
+                    replenishmentTable.setPlaceholder(new Label("No hay productos activos o no se pudieron leer las ventas."));
+                    replenishmentTable.setItems(FXCollections.observableArrayList(plan));
+                    long aPedir = plan.stream().filter(s -> s.getCantidadSugerida() > 0).count();
+                    replenishmentTotalLabel.setText("Productos a pedir: " + aPedir);
+                },
+                () -> replenishmentTable.setPlaceholder(new Label("No se pudo calcular el plan de reposición.")));
+    }
+
+    private static String formatearDecimal(double valor) {
+        return String.format("%.2f", valor);
+    }
+
+    // --- Exportación a CSV/XLSX (con los filtros actuales de cada pestaña) ---
+    @FXML private void handleExportSales() {
+        LocalDateTime desde = (fromDatePicker.getValue() != null) ? fromDatePicker.getValue().atStartOfDay() : null;
+        LocalDateTime hasta = (toDatePicker.getValue() != null) ? toDatePicker.getValue().atTime(23, 59, 59) : null;
+        Integer idUsuario = Optional.ofNullable(userFilterCombo.getValue()).map(Usuario::getIdUsuario).orElse(null);
+        iniciarExportacion("ventas", (destino, formato, progreso) ->
+                exportacionService.exportarVentas(desde, hasta, idUsuario, destino, formato, progreso));
+    }
+
+    @FXML private void handleExportStockMovements() {
+        LocalDateTime desde = (fromDatePicker.getValue() != null) ? fromDatePicker.getValue().atStartOfDay() : null;
+        LocalDateTime hasta = (toDatePicker.getValue() != null) ? toDatePicker.getValue().atTime(23, 59, 59) : null;
+        iniciarExportacion("movimientos_stock", (destino, formato, progreso) ->
+                exportacionService.exportarMovimientosStock(desde, hasta, destino, formato, progreso));
+    }
+
+    @FXML private void handleExportCommissions() {
+        Integer idUsuario = Optional.ofNullable(commissionUserCombo.getValue()).map(Usuario::getIdUsuario).orElse(null);
+        String estado = commissionStateCombo.getValue();
+        iniciarExportacion("comisiones", (destino, formato, progreso) ->
+                exportacionService.exportarComisiones(idUsuario, estado, destino, formato, progreso));
+    }
+
+    @FXML private void handleCancelExport() {
+        if (tareaExportacion != null) {
+            tareaExportacion.cancel(false); // El recorrido se detiene en el siguiente aviso de progreso
+            exportStatusLabel.textProperty().unbind();
+            exportStatusLabel.setText("Cancelando exportación...");
+            cancelExportButton.setDisable(true);
+        }
+    }
+
+    private void iniciarExportacion(String nombreBase, Exportacion exportacion) {
+        if (hiloExportacion != null && hiloExportacion.isAlive()) {
+            exportStatusLabel.setText("Ya hay una exportación en curso.");
+            return;
+        }
+
+        FileChooser selector = new FileChooser();
+        selector.setTitle("Exportar " + nombreBase.replace('_', ' '));
+        FileChooser.ExtensionFilter filtroXlsx = new FileChooser.ExtensionFilter("Libro de Excel (*.xlsx)", "*.xlsx");
+        FileChooser.ExtensionFilter filtroCsv = new FileChooser.ExtensionFilter("CSV (*.csv)", "*.csv");
+        selector.getExtensionFilters().addAll(filtroXlsx, filtroCsv);
+        selector.setInitialFileName(nombreBase + "_" + LocalDate.now() + ".xlsx");
+        File archivo = selector.showSaveDialog(salesTable.getScene().getWindow());
+        if (archivo == null) {
+            return;
+        }
+        FormatoExportacion formato = archivo.getName().toLowerCase().endsWith(".csv")
+                || (selector.getSelectedExtensionFilter() == filtroCsv && !archivo.getName().toLowerCase().endsWith(".xlsx"))
+                ? FormatoExportacion.CSV : FormatoExportacion.XLSX;
+
+        Task<Long> tarea = new Task<>() {
+            @Override
+            protected Long call() {
+                return exportacion.ejecutar(archivo.toPath(), formato, (filas, total) -> {
+                    if (total > 0) {
+                        updateProgress(filas, Math.max(total, filas));
+                    }
+                    updateMessage("Exportando... " + filas + (total > 0 ? " de " + total : "") + " filas");
+                    return !isCancelled();
+                });
+            }
+        };
+        exportProgressBar.progressProperty().bind(tarea.progressProperty());
+        exportStatusLabel.textProperty().bind(tarea.messageProperty());
+        exportProgressBar.setVisible(true);
+        cancelExportButton.setDisable(false);
+        cancelExportButton.setVisible(true);
+        habilitarExportacion(false);
+
+        // El cierre se decide cuando el hilo termina de verdad, no cuando la tarea pasa a cancelada:
+        // tras cancel() la exportación aún puede estar escribiendo o cerrando el archivo
+        tareaExportacion = tarea;
+        hiloExportacion = new Thread(() -> {
+            tarea.run();
+            String mensaje = mensajeFinalExportacion(tarea, archivo);
+            Platform.runLater(() -> terminarExportacion(mensaje));
+        }, "reportes-exportacion");
+        hiloExportacion.setDaemon(true);
+        hiloExportacion.start();
+    }
+
+    private static String mensajeFinalExportacion(Task<Long> tarea, File archivo) {
+        if (tarea.isCancelled()) {
+            return "Exportación cancelada.";
+        }
+        try {
+            long filas = tarea.get();
+            return (filas >= 0) ? "Exportadas " + filas + " filas a " + archivo.getName()
+                    : "No se pudo completar la exportación.";
+        } catch (InterruptedException | ExecutionException e) {
+            return "No se pudo completar la exportación.";
+        }
+    }
+
+    private void terminarExportacion(String mensaje) {
+        exportProgressBar.progressProperty().unbind();
+        exportStatusLabel.textProperty().unbind();
+        exportProgressBar.setVisible(false);
+        cancelExportButton.setVisible(false);
+        habilitarExportacion(true);
+        exportStatusLabel.setText(mensaje);
+    }
+
+    private void habilitarExportacion(boolean habilitar) {
+        exportSalesButton.setDisable(!habilitar);
+        exportStockMovementsButton.setDisable(!habilitar);
+        exportCommissionsButton.setDisable(!habilitar);
     }
 
     // --- Ayudante para obtener el nombre del usuario ---
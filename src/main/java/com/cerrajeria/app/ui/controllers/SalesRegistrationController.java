@@ -13,9 +13,9 @@ import javafx.scene.control.*;
 import javafx.scene.control.cell.PropertyValueFactory;
 
 import java.math.BigDecimal;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.Map;
 
 public class SalesRegistrationController {
 
@@ -46,13 +46,14 @@ public class SalesRegistrationController {
     @FXML private Label saleMessageLabel;
 
     // --- Servicios ---
-    private final ProductoService productoService = new ProductoService();
-    private final ServicioService servicioService = new ServicioService();
     private final VentaService ventaService = new VentaService();
+    private final CatalogoCache catalogoCache = CatalogoCache.getInstance();
 
     // --- Datos dinámicos ---
     private final ObservableList<Object> searchResultsList = FXCollections.observableArrayList();
     private final ObservableList<VentaItem> cartItems = FXCollections.observableArrayList();
+    private final Carrito carrito = new Carrito();
+    private final Map<Carrito.Clave, VentaItem> itemsPorLinea = new HashMap<>();
     private Object selectedItemInSearch;
 
     @FXML
@@ -122,6 +123,9 @@ public class SalesRegistrationController {
                 deleteButton.setStyle("-fx-background-color: #dc3545; -fx-text-fill: white; -fx-font-size: 10px;");
                 deleteButton.setOnAction(event -> {
                     VentaItem item = getTableView().getItems().get(getIndex());
+                    Carrito.TipoLinea tipo = "Producto".equals(item.getTipo()) ? Carrito.TipoLinea.PRODUCTO : Carrito.TipoLinea.SERVICIO;
+                    carrito.quitarLinea(tipo, item.getId());
+                    itemsPorLinea.remove(new Carrito.Clave(tipo, item.getId()));
                     cartItems.remove(item);
                     calculateTotal();
                     saleMessageLabel.setVisible(false);
@@ -161,10 +165,10 @@ public class SalesRegistrationController {
             return;
         }
 
-        List<Producto> productos = productoService.obtenerTodosLosProductos().stream()
+        List<Producto> productos = catalogoCache.obtenerProductos().stream()
                 .filter(p -> p.isActivo() && (String.valueOf(p.getIdProducto()).contains(searchText) || p.getNombre().toLowerCase().contains(searchText)))
                 .toList();
-        List<Servicio> servicios = servicioService.obtenerTodosLosServicios().stream()
+        List<Servicio> servicios = catalogoCache.obtenerServicios().stream()
                 .filter(s -> s.isActivo() && (String.valueOf(s.getIdServicio()).contains(searchText) || s.getNombre().toLowerCase().contains(searchText)))
                 .toList();
         searchResultsList.addAll(productos);
@@ -198,44 +202,26 @@ public class SalesRegistrationController {
             return;
         }
 
+        Carrito.Linea linea;
         if (selectedItemInSearch instanceof Producto producto) {
-            Optional<VentaItem> existingItem = cartItems.stream()
-                    .filter(i -> i.getId() == producto.getIdProducto() && "Producto".equals(i.getTipo()))
-                    .findFirst();
-            if (existingItem.isPresent()) {
-                VentaItem item = existingItem.get();
-                int nuevaCantidad = item.getCantidad() + cantidad;
-                if (producto.getStock() < nuevaCantidad) {
-                    itemMessageLabel.setText("Stock insuficiente.");
-                    itemMessageLabel.setTextFill(javafx.scene.paint.Color.RED);
-                    itemMessageLabel.setVisible(true);
-                    return;
-                }
-                item.setCantidad(nuevaCantidad);
-                item.setPrecioUnitario(precioVenta);
-                item.setComentario(itemComment);
-            } else {
-                if (producto.getStock() < cantidad) {
-                    itemMessageLabel.setText("Stock insuficiente.");
-                    itemMessageLabel.setTextFill(javafx.scene.paint.Color.RED);
-                    itemMessageLabel.setVisible(true);
-                    return;
-                }
-                cartItems.add(new VentaItem(producto.getIdProducto(), producto.getNombre(), "Producto", cantidad, precioVenta, itemComment));
+            linea = carrito.agregarProducto(producto.getIdProducto(), cantidad, precioVenta, itemComment);
+            if (linea == null) {
+                itemMessageLabel.setText("Stock insuficiente.");
+                itemMessageLabel.setTextFill(javafx.scene.paint.Color.RED);
+                itemMessageLabel.setVisible(true);
+                return;
             }
-        } else if (selectedItemInSearch instanceof Servicio servicio) {
-            Optional<VentaItem> existingItem = cartItems.stream()
-                    .filter(i -> i.getId() == servicio.getIdServicio() && "Servicio".equals(i.getTipo()))
-                    .findFirst();
-            if (existingItem.isPresent()) {
-                VentaItem item = existingItem.get();
-                item.setCantidad(item.getCantidad() + cantidad);
-                item.setPrecioUnitario(precioVenta);
-                item.setComentario(itemComment);
-            } else {
-                cartItems.add(new VentaItem(servicio.getIdServicio(), servicio.getNombre(), "Servicio", cantidad, precioVenta, itemComment));
+        } else {
+            Servicio servicio = (Servicio) selectedItemInSearch;
+            linea = carrito.agregarServicio(servicio.getIdServicio(), cantidad, precioVenta, itemComment);
+            if (linea == null) {
+                itemMessageLabel.setText("El servicio ya no está disponible.");
+                itemMessageLabel.setTextFill(javafx.scene.paint.Color.RED);
+                itemMessageLabel.setVisible(true);
+                return;
             }
         }
+        mostrarLinea(linea);
 
         itemMessageLabel.setText("Añadido al carrito.");
         itemMessageLabel.setTextFill(javafx.scene.paint.Color.GREEN);
@@ -252,17 +238,32 @@ public class SalesRegistrationController {
         commentArea.setManaged(false);
     }
 
+    /**
+     * Refleja en la tabla la línea del carrito recién creada o modificada, sin recorrer el resto.
+     */
+    private void mostrarLinea(Carrito.Linea linea) {
+        VentaItem item = itemsPorLinea.get(linea.getClave());
+        if (item == null) {
+            String tipo = (linea.getTipo() == Carrito.TipoLinea.PRODUCTO) ? "Producto" : "Servicio";
+            item = new VentaItem(linea.getId(), linea.getNombre(), tipo, linea.getCantidad(), linea.getPrecioUnitario(), linea.getComentario());
+            itemsPorLinea.put(linea.getClave(), item);
+            cartItems.add(item);
+        } else {
+            item.setCantidad(linea.getCantidad());
+            item.setPrecioUnitario(linea.getPrecioUnitario());
+            item.setComentario(linea.getComentario());
+            cartTable.refresh();
+        }
+    }
+
     private void calculateTotal() {
-        BigDecimal total = cartItems.stream()
-                .map(VentaItem::getSubtotal)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-        totalLabel.setText("Total: $" + total);
+        totalLabel.setText("Total: $" + carrito.getTotal());
     }
 
     @FXML
     private void handleFinalizeSale(ActionEvent event) {
         saleMessageLabel.setVisible(false);
-        if (cartItems.isEmpty()) {
+        if (carrito.estaVacio()) {
             saleMessageLabel.setText("El carrito está vacío.");
             saleMessageLabel.setTextFill(javafx.scene.paint.Color.RED);
             saleMessageLabel.setVisible(true);
@@ -279,31 +280,15 @@ public class SalesRegistrationController {
 
         int idUsuarioActual = usuarioActual.getIdUsuario();
 
-        List<DetalleVentaProducto> productosParaVenta = cartItems.stream()
-                .filter(i -> "Producto".equals(i.getTipo()))
-                .map(i -> {
-                    DetalleVentaProducto d = new DetalleVentaProducto();
-                    d.setIdProducto(i.getId());
-                    d.setCantidad(i.getCantidad());
-                    d.setPrecioUnitarioFinal(i.getPrecioUnitario());
-                    d.setDescripcion(i.getComentario());
-                    return d;
-                }).collect(Collectors.toList());
-        List<DetalleVentaServicio> serviciosParaVenta = cartItems.stream()
-                .filter(i -> "Servicio".equals(i.getTipo()))
-                .map(i -> {
-                    DetalleVentaServicio d = new DetalleVentaServicio();
-                    d.setIdServicio(i.getId());
-                    d.setCantidad(i.getCantidad());
-                    d.setPrecioUnitarioFinal(i.getPrecioUnitario());
-                    d.setDescripcion(i.getComentario());
-                    return d;
-                }).collect(Collectors.toList());
-
-        Venta venta = ventaService.registrarVenta(idUsuarioActual, productosParaVenta, serviciosParaVenta);
+        Venta venta = ventaService.registrarVenta(idUsuarioActual, carrito);
         if (venta != null) {
-            saleMessageLabel.setText("Venta finalizada. ID: " + venta.getIdVenta());
-            saleMessageLabel.setTextFill(javafx.scene.paint.Color.GREEN);
+            if (venta.estaPendienteDeSincronizar()) {
+                saleMessageLabel.setText("Venta guardada sin conexión. Se registrará al volver la base de datos.");
+                saleMessageLabel.setTextFill(javafx.scene.paint.Color.ORANGE);
+            } else {
+                saleMessageLabel.setText("Venta finalizada. ID: " + venta.getIdVenta());
+                saleMessageLabel.setTextFill(javafx.scene.paint.Color.GREEN);
+            }
             handleClearCart(null);
             searchResultsList.clear();
             searchItemField.clear();
@@ -316,6 +301,8 @@ public class SalesRegistrationController {
 
     @FXML
     private void handleClearCart(ActionEvent event) {
+        carrito.vaciar();
+        itemsPorLinea.clear();
         cartItems.clear();
         calculateTotal();
         saleMessageLabel.setVisible(false);
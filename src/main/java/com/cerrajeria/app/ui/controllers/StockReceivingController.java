@@ -0,0 +1,166 @@
+package com.cerrajeria.app.ui.controllers;
+
+import com.cerrajeria.app.models.LineaRecepcion;
+import com.cerrajeria.app.services.MovimientoStockService;
+
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.collections.transformation.FilteredList;
+import javafx.concurrent.Task;
+import javafx.fxml.FXML;
+import javafx.scene.control.*;
+import javafx.scene.control.cell.PropertyValueFactory;
+import javafx.stage.FileChooser;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * Controlador para la vista de Recepción de Stock.
+ * Carga un albarán (CSV o XLSX), muestra sus líneas validadas contra el catálogo y aplica
+ * todas las entradas válidas de una vez; las líneas con error quedan en la tabla como informe.
+ */
+public class StockReceivingController {
+
+    // --- Componentes de la UI (inyectados desde FXML) ---
+    @FXML private Button selectFileButton;
+    @FXML private Label fileNameLabel;
+    @FXML private TextField commentField;
+    @FXML private Button applyButton;
+    @FXML private TableView<LineaRecepcion> linesTable;
+    @FXML private TableColumn<LineaRecepcion, Integer> colLine;
+    @FXML private TableColumn<LineaRecepcion, Integer> colProductId;
+    @FXML private TableColumn<LineaRecepcion, String> colProductName;
+    @FXML private TableColumn<LineaRecepcion, Integer> colQuantity;
+    @FXML private TableColumn<LineaRecepcion, String> colComment;
+    @FXML private TableColumn<LineaRecepcion, String> colStatus;
+    @FXML private CheckBox onlyErrorsCheck;
+    @FXML private Label summaryLabel;
+
+    // --- Servicios de negocio ---
+    private final MovimientoStockService movimientoStockService;
+    private final ObservableList<LineaRecepcion> lineas;
+    private final FilteredList<LineaRecepcion> lineasVisibles;
+
+    public StockReceivingController() {
+        this.movimientoStockService = new MovimientoStockService();
+        this.lineas = FXCollections.observableArrayList();
+        this.lineasVisibles = new FilteredList<>(lineas);
+    }
+
+    @FXML
+    private void initialize() {
+        colLine.setCellValueFactory(new PropertyValueFactory<>("numeroLinea"));
+        colProductId.setCellValueFactory(new PropertyValueFactory<>("idProducto"));
+        colProductName.setCellValueFactory(new PropertyValueFactory<>("nombreProducto"));
+        colQuantity.setCellValueFactory(new PropertyValueFactory<>("cantidad"));
+        colComment.setCellValueFactory(new PropertyValueFactory<>("comentario"));
+        colStatus.setCellValueFactory(new PropertyValueFactory<>("estado"));
+        colStatus.setCellFactory(columna -> new TableCell<>() {
+            @Override
+            protected void updateItem(String estado, boolean vacia) {
+                super.updateItem(estado, vacia);
+                setText(vacia ? null : estado);
+                setStyle(vacia || estado == null ? "" : estado.startsWith("Error")
+                        ? "-fx-text-fill: #dc3545;" : estado.equals("Aplicada") ? "-fx-text-fill: #28a745;" : "");
+            }
+        });
+        linesTable.setItems(lineasVisibles);
+
+        onlyErrorsCheck.selectedProperty().addListener((obs, anterior, soloErrores) ->
+                lineasVisibles.setPredicate(soloErrores ? linea -> !linea.isValida() : null));
+        applyButton.setDisable(true);
+    }
+
+    @FXML
+    private void handleSelectFile() {
+        FileChooser selector = new FileChooser();
+        selector.setTitle("Seleccionar albarán");
+        selector.getExtensionFilters().addAll(
+                new FileChooser.ExtensionFilter("Albarán (*.csv, *.xlsx)", "*.csv", "*.xlsx"),
+                new FileChooser.ExtensionFilter("Todos los archivos", "*.*"));
+        File archivo = selector.showOpenDialog(linesTable.getScene().getWindow());
+        if (archivo == null) {
+            return;
+        }
+
+        fileNameLabel.setText(archivo.getName());
+        lineas.clear();
+        applyButton.setDisable(true);
+        summaryLabel.setText("Leyendo albarán...");
+
+        Task<List<LineaRecepcion>> tarea = new Task<>() {
+            @Override
+            protected List<LineaRecepcion> call() throws Exception {
+                List<LineaRecepcion> leidas = movimientoStockService.leerAlbaran(archivo.toPath());
+                if (!movimientoStockService.validarLineasRecepcion(leidas)) {
+                    throw new IllegalStateException("No se pudieron validar los productos.");
+                }
+                return leidas;
+            }
+        };
+        tarea.setOnSucceeded(e -> {
+            lineas.setAll(tarea.getValue());
+            actualizarResumen();
+        });
+        tarea.setOnFailed(e -> summaryLabel.setText("No se pudo leer el albarán: " + tarea.getException().getMessage()));
+        ejecutar(tarea);
+    }
+
+    @FXML
+    private void handleApply() {
+        long validas = lineas.stream().filter(LineaRecepcion::isValida).count();
+        Alert confirmacion = new Alert(Alert.AlertType.CONFIRMATION);
+        confirmacion.setTitle("Confirmar Recepción");
+        confirmacion.setHeaderText("¿Aplicar la recepción de " + validas + " líneas?");
+        confirmacion.setContentText("Las líneas con error no se aplicarán.");
+        if (confirmacion.showAndWait().filter(b -> b == ButtonType.OK).isEmpty()) {
+            return;
+        }
+
+        List<LineaRecepcion> aAplicar = List.copyOf(lineas);
+        String comentario = commentField.getText();
+        applyButton.setDisable(true);
+        selectFileButton.setDisable(true);
+        summaryLabel.setText("Aplicando recepción...");
+
+        Task<Integer> tarea = new Task<>() {
+            @Override
+            protected Integer call() {
+                return movimientoStockService.registrarEntradasEnLote(aAplicar, comentario);
+            }
+        };
+        tarea.setOnSucceeded(e -> {
+            selectFileButton.setDisable(false);
+            linesTable.refresh();
+            if (tarea.getValue() < 0) {
+                applyButton.setDisable(false);
+                summaryLabel.setText("No se pudo registrar la recepción; no se aplicó ninguna línea.");
+            } else {
+                actualizarResumen();
+            }
+        });
+        tarea.setOnFailed(e -> {
+            selectFileButton.setDisable(false);
+            applyButton.setDisable(false);
+            summaryLabel.setText("No se pudo registrar la recepción; no se aplicó ninguna línea.");
+        });
+        ejecutar(tarea);
+    }
+
+    private void actualizarResumen() {
+        long aplicadas = lineas.stream().filter(LineaRecepcion::isAplicada).count();
+        long errores = lineas.stream().filter(l -> !l.isValida()).count();
+        long pendientes = lineas.size() - aplicadas - errores;
+        int unidades = lineas.stream().filter(LineaRecepcion::isValida).mapToInt(LineaRecepcion::getCantidad).sum();
+        summaryLabel.setText(lineas.size() + " líneas: " + (aplicadas > 0 ? aplicadas + " aplicadas" : pendientes + " listas")
+                + ", " + errores + " con error (" + unidades + " unidades)");
+        applyButton.setDisable(pendientes == 0);
+    }
+
+    private static void ejecutar(Task<?> tarea) {
+        Thread hilo = new Thread(tarea, "recepcion-stock");
+        hilo.setDaemon(true);
+        hilo.start();
+    }
+}
@@ -4,6 +4,7 @@ import com.cerrajeria.app.models.CategoriaProducto;
 import com.cerrajeria.app.models.Producto;
 import com.cerrajeria.app.services.CategoriaProductoService;
 import com.cerrajeria.app.services.ProductoService;
+import javafx.beans.property.ReadOnlyObjectWrapper;
 import javafx.beans.property.ReadOnlyStringWrapper;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
@@ -13,6 +14,7 @@ import javafx.scene.control.*;
 import javafx.scene.control.cell.PropertyValueFactory;
 
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 /**
@@ -31,6 +33,8 @@ public class VendedorProductsController {
     private TableColumn<Producto, java.math.BigDecimal> colPrice;
     @FXML
     private TableColumn<Producto, Integer> colStock;
+    @FXML
+    private TableColumn<Producto, Integer> colOtherBranches;
 
     @FXML
     private TextField searchField;
@@ -43,6 +47,8 @@ public class VendedorProductsController {
     private final CategoriaProductoService categoriaProductoService;
     private final ObservableList<Producto> productList;
     private final ObservableList<String> categoryList;
+    // ID -> unidades en las demás sucursales de los productos listados
+    private Map<Integer, Integer> stockOtrasSucursales = Map.of();
 
     public VendedorProductsController() {
         this.productoService = new ProductoService();
@@ -57,6 +63,8 @@ public class VendedorProductsController {
         colName.setCellValueFactory(new PropertyValueFactory<>("nombre"));
         colPrice.setCellValueFactory(new PropertyValueFactory<>("precio"));
         colStock.setCellValueFactory(new PropertyValueFactory<>("stock"));
+        colOtherBranches.setCellValueFactory(cellData -> new ReadOnlyObjectWrapper<>(
+                stockOtrasSucursales.getOrDefault(cellData.getValue().getIdProducto(), 0)));
         colCategory.setCellValueFactory(cellData -> {
             int idCat = cellData.getValue().getIdCategoriaProducto();
             CategoriaProducto cat = categoriaProductoService.obtenerCategoriaProductoPorId(idCat);
@@ -76,6 +84,15 @@ public class VendedorProductsController {
 
     private void loadProducts() {
         List<Producto> productos = productoService.obtenerProductosActivos();
+        mostrarProductos(productos);
+    }
+
+    /**
+     * Muestra los productos con su stock en las demás sucursales, obtenido en una sola consulta.
+     */
+    private void mostrarProductos(List<Producto> productos) {
+        stockOtrasSucursales = productoService.obtenerStockEnOtrasSucursales(
+                productos.stream().map(Producto::getIdProducto).toList());
         productList.setAll(productos);
     }
 
@@ -108,7 +125,7 @@ public class VendedorProductsController {
                 })
                 .collect(Collectors.toList());
 
-        productList.setAll(productosFiltrados);
+        mostrarProductos(productosFiltrados);
 
         if (productosFiltrados.isEmpty()) {
             statusLabel.setText("No se encontraron productos que coincidan.");
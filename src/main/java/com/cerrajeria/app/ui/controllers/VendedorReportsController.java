@@ -2,13 +2,17 @@ package com.cerrajeria.app.ui.controllers;
 
 import com.cerrajeria.app.SessionManager;
 import com.cerrajeria.app.models.Comision;
+import com.cerrajeria.app.models.LineaVenta;
 import com.cerrajeria.app.models.Usuario;
 import com.cerrajeria.app.models.Venta;
+import com.cerrajeria.app.models.VentaResumen;
 import com.cerrajeria.app.services.ReporteService;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableView;
 import javafx.scene.control.cell.PropertyValueFactory;
@@ -21,22 +25,36 @@ import java.util.Map;
 /**
  * Controlador para la vista de reportes del vendedor.
  * Muestra el historial de ventas y comisiones del vendedor logueado.
+ * Las líneas de una venta se cargan al seleccionarla, por páginas.
  */
 public class VendedorReportsController {
 
     @FXML private TableView<Venta> salesTable;
     @FXML private TableColumn<Venta, Integer> colSaleId;
     @FXML private TableColumn<Venta, LocalDateTime> colSaleDate;
+    @FXML private TableColumn<Venta, Integer> colSaleLines;
+    @FXML private TableColumn<Venta, Integer> colSaleUnits;
     @FXML private TableColumn<Venta, BigDecimal> colSaleTotal;
 
+    @FXML private TableView<LineaVenta> linesTable;
+    @FXML private TableColumn<LineaVenta, String> colLineType;
+    @FXML private TableColumn<LineaVenta, String> colLineName;
+    @FXML private TableColumn<LineaVenta, Integer> colLineQty;
+    @FXML private TableColumn<LineaVenta, BigDecimal> colLinePrice;
+    @FXML private TableColumn<LineaVenta, BigDecimal> colLineSubtotal;
+    @FXML private Button moreLinesButton;
+
     @FXML private TableView<Comision> commissionsTable;
     @FXML private TableColumn<Comision, Integer> colComId;
     @FXML private TableColumn<Comision, BigDecimal> colComAmount;
     @FXML private TableColumn<Comision, String> colComState;
     @FXML private TableColumn<Comision, LocalDateTime> colComDate;
 
+    private static final int LINEAS_POR_PAGINA = 50;
+
     private final ReporteService reporteService = new ReporteService();
     private int idVendedor;
+    private int paginaLineas; // Última página de líneas cargada para la venta seleccionada
 
     @FXML
     private void initialize() {
@@ -45,8 +63,20 @@ public class VendedorReportsController {
 
         colSaleId.setCellValueFactory(new PropertyValueFactory<>("idVenta"));
         colSaleDate.setCellValueFactory(new PropertyValueFactory<>("fechaCreacion"));
+        colSaleLines.setCellValueFactory(new PropertyValueFactory<>("cantidadLineas"));
+        colSaleUnits.setCellValueFactory(new PropertyValueFactory<>("unidades"));
         colSaleTotal.setCellValueFactory(new PropertyValueFactory<>("totalVenta"));
 
+        colLineType.setCellValueFactory(new PropertyValueFactory<>("tipo"));
+        colLineName.setCellValueFactory(new PropertyValueFactory<>("nombre"));
+        colLineQty.setCellValueFactory(new PropertyValueFactory<>("cantidad"));
+        colLinePrice.setCellValueFactory(new PropertyValueFactory<>("precioUnitarioFinal"));
+        colLineSubtotal.setCellValueFactory(new PropertyValueFactory<>("subtotal"));
+        linesTable.setPlaceholder(new Label("Seleccione una venta para ver su detalle."));
+
+        // El detalle se consulta solo al seleccionar una venta
+        salesTable.getSelectionModel().selectedItemProperty().addListener((obs, anterior, venta) -> loadLines(venta));
+
         colComId.setCellValueFactory(new PropertyValueFactory<>("idComision"));
         colComAmount.setCellValueFactory(new PropertyValueFactory<>("montoComision"));
         colComState.setCellValueFactory(new PropertyValueFactory<>("estado"));
@@ -72,6 +102,35 @@ public class VendedorReportsController {
         commissionsTable.setItems(comObs);
     }
 
+    private void loadLines(Venta venta) {
+        paginaLineas = 0;
+        linesTable.setItems(FXCollections.observableArrayList());
+        moreLinesButton.setDisable(true);
+        if (venta == null) {
+            return;
+        }
+        appendLines(venta);
+    }
+
+    private void appendLines(Venta venta) {
+        List<LineaVenta> pagina = reporteService.obtenerLineasDeVenta(venta.getIdVenta(), paginaLineas, LINEAS_POR_PAGINA);
+        linesTable.getItems().addAll(pagina);
+
+        // Con el resumen de la venta se sabe si quedan líneas sin necesidad de otra consulta
+        int totalLineas = (venta instanceof VentaResumen resumen) ? resumen.getCantidadLineas() : Integer.MAX_VALUE;
+        boolean hayMas = pagina.size() == LINEAS_POR_PAGINA && linesTable.getItems().size() < totalLineas;
+        moreLinesButton.setDisable(!hayMas);
+    }
+
+    @FXML
+    private void handleMoreLines(ActionEvent event) {
+        Venta venta = salesTable.getSelectionModel().getSelectedItem();
+        if (venta != null) {
+            paginaLineas++;
+            appendLines(venta);
+        }
+    }
+
     @FXML
     private void handleRefresh(ActionEvent event) {
         loadData();
@@ -0,0 +1,10 @@
+-- Ajuste masivo de precios: AjustePreciosService calcula los precios nuevos en memoria y los envía
+-- todos de una vez como parámetro con valores de tabla. ProductoDAO.actualizarPrecios los aplica con
+-- un único UPDATE ... JOIN, solo donde el precio sigue siendo el que se previsualizó (si otro usuario
+-- lo cambió entretanto, esa fila no se toca y se informa como no aplicada).
+CREATE TYPE tipo_cambio_precio AS TABLE (
+    id_producto     INT            NOT NULL PRIMARY KEY,
+    precio_anterior DECIMAL(10, 2) NOT NULL,
+    precio_nuevo    DECIMAL(10, 2) NOT NULL
+);
+GO
@@ -0,0 +1,17 @@
+-- Cola persistente (outbox) de ventas confirmadas cuyas comisiones automáticas
+-- aún no se han generado. La procesa ComisionWorker en segundo plano.
+-- Cada venta se encola en la misma transacción que la registra (VentaService y sp_registrar_venta_rapida).
+-- id_venta es la clave primaria: una venta solo puede encolarse una vez.
+CREATE TABLE comision_pendiente (
+    id_venta            INT           NOT NULL PRIMARY KEY
+                                      REFERENCES venta (id_venta),
+    intentos            INT           NOT NULL DEFAULT 0,
+    ultimo_error        NVARCHAR(500) NULL,
+    procesada           BIT           NOT NULL DEFAULT 0,
+    fecha_creacion      DATETIME      NOT NULL DEFAULT GETDATE(),
+    fecha_actualizacion DATETIME      NULL
+);
+
+CREATE INDEX ix_comision_pendiente_procesada
+    ON comision_pendiente (procesada, fecha_creacion)
+    INCLUDE (intentos);
@@ -0,0 +1,29 @@
+-- Sesiones de conteo físico de inventario (InventarioFisicoService).
+-- Al abrir un conteo se congela el stock esperado de cada producto activo en una sola sentencia;
+-- las cantidades contadas se guardan por lotes y, al aplicar, los ajustes (contado - esperado)
+-- se llevan a producto y a movimiento_stock con sentencias sobre todo el conjunto.
+-- Cada línea guarda cuándo se contó: al aplicar, el esperado se corrige con los movimientos de
+-- la sucursal entre la apertura y ese momento, porque el producto vendido (o recibido) antes de
+-- contarlo ya no está (o ya está) en el estante contado.
+CREATE TABLE conteo_inventario (
+    id_conteo_inventario INT IDENTITY(1, 1) PRIMARY KEY,
+    estado               VARCHAR(20)  NOT NULL DEFAULT 'Abierto', -- 'Abierto', 'Aplicado' o 'Cancelado'
+    comentario           VARCHAR(255) NULL,
+    fecha_creacion       DATETIME     NOT NULL DEFAULT GETDATE(),
+    fecha_cierre         DATETIME     NULL,
+    CONSTRAINT ck_conteo_inventario_estado CHECK (estado IN ('Abierto', 'Aplicado', 'Cancelado'))
+);
+
+-- Solo puede haber un conteo abierto a la vez.
+CREATE UNIQUE INDEX ux_conteo_inventario_abierto
+    ON conteo_inventario (estado)
+    WHERE estado = 'Abierto';
+
+CREATE TABLE conteo_inventario_detalle (
+    id_conteo_inventario INT NOT NULL REFERENCES conteo_inventario (id_conteo_inventario),
+    id_producto          INT NOT NULL REFERENCES producto (id_producto),
+    stock_esperado       INT NOT NULL,
+    cantidad_contada     INT NULL, -- NULL = aún no contado (no genera ajuste)
+    fecha_conteo         DATETIME NULL, -- Cuándo se contó (hora del servidor)
+    CONSTRAINT pk_conteo_inventario_detalle PRIMARY KEY (id_conteo_inventario, id_producto)
+);
@@ -0,0 +1,17 @@
+-- Costo unitario de cada línea de producto, fijado al registrar la venta con el costo_interno
+-- vigente en ese momento. Los reportes de rentabilidad, el resumen diario (también al
+-- reconstruirlo) y el análisis de ventas usan este costo, así un cambio posterior de
+-- costo_interno no reescribe el margen de las ventas pasadas.
+-- Ejecutar antes de venta_rapida.sql y sucursal.sql: sus procedimientos insertan la columna.
+ALTER TABLE detalle_venta_producto ADD costo_unitario DECIMAL(10, 2) NULL;
+GO
+
+-- Ventas anteriores a este script: el costo de la venta ya no se conoce y se toma el vigente.
+UPDATE d SET costo_unitario = ISNULL(p.costo_interno, 0)
+FROM detalle_venta_producto d
+JOIN producto p ON p.id_producto = d.id_producto
+WHERE d.costo_unitario IS NULL;
+GO
+
+ALTER TABLE detalle_venta_producto ALTER COLUMN costo_unitario DECIMAL(10, 2) NOT NULL;
+GO
@@ -0,0 +1,10 @@
+-- Índices para las estadísticas de más vendidos (DetalleVentaProductoDAO/DetalleVentaServicioDAO.obtenerMasVendidos).
+-- La consulta une cada detalle con su venta (filtros de fecha/vendedor) y agrupa por producto o servicio;
+-- INCLUDE cubre cantidad y precio para no leer la tabla base.
+CREATE INDEX ix_detalle_venta_producto_venta
+    ON detalle_venta_producto (id_venta)
+    INCLUDE (id_producto, cantidad, precio_unitario_final);
+
+CREATE INDEX ix_detalle_venta_servicio_venta
+    ON detalle_venta_servicio (id_venta)
+    INCLUDE (id_servicio, cantidad, precio_unitario_final);
@@ -0,0 +1,38 @@
+-- Importación masiva del catálogo (categorías, productos y servicios) desde CSV o XLSX.
+-- ImportacionCatalogoService lee el archivo en streaming y envía las filas válidas en lotes como
+-- parámetros con valores de tabla; CatalogoImportacionDAO aplica cada lote con un MERGE sobre el
+-- nombre (clave natural del catálogo): los nombres nuevos se insertan y los existentes se actualizan.
+-- El ancho de 'nombre' debe coincidir con el de las tablas; el servicio rechaza los más largos.
+CREATE TYPE tipo_importacion_categoria AS TABLE (
+    nombre NVARCHAR(100) NOT NULL PRIMARY KEY
+);
+GO
+
+CREATE TYPE tipo_importacion_producto AS TABLE (
+    nombre                NVARCHAR(100)  NOT NULL PRIMARY KEY,
+    id_categoria_producto INT            NOT NULL,
+    precio                DECIMAL(10, 2) NOT NULL,
+    costo_interno         DECIMAL(10, 2) NOT NULL,
+    stock_minimo          INT            NOT NULL,
+    stock                 INT            NOT NULL -- Solo para productos nuevos
+);
+GO
+
+CREATE TYPE tipo_importacion_servicio AS TABLE (
+    nombre                NVARCHAR(100)  NOT NULL PRIMARY KEY,
+    id_categoria_servicio INT            NOT NULL,
+    precio                DECIMAL(10, 2) NOT NULL,
+    descripcion           NVARCHAR(255)  NULL
+);
+GO
+
+-- El MERGE busca cada fila del lote por nombre: sin índice recorrería la tabla una vez por lote
+IF NOT EXISTS (SELECT 1 FROM sys.indexes WHERE name = 'ix_producto_nombre' AND object_id = OBJECT_ID('producto'))
+    CREATE INDEX ix_producto_nombre ON producto (nombre);
+IF NOT EXISTS (SELECT 1 FROM sys.indexes WHERE name = 'ix_servicio_nombre' AND object_id = OBJECT_ID('servicio'))
+    CREATE INDEX ix_servicio_nombre ON servicio (nombre);
+IF NOT EXISTS (SELECT 1 FROM sys.indexes WHERE name = 'ix_categoria_producto_nombre' AND object_id = OBJECT_ID('categoria_producto'))
+    CREATE INDEX ix_categoria_producto_nombre ON categoria_producto (nombre);
+IF NOT EXISTS (SELECT 1 FROM sys.indexes WHERE name = 'ix_categoria_servicio_nombre' AND object_id = OBJECT_ID('categoria_servicio'))
+    CREATE INDEX ix_categoria_servicio_nombre ON categoria_servicio (nombre);
+GO
@@ -0,0 +1,50 @@
+-- Libro de stock: el stock de cada producto se deriva de movimiento_stock (solo se insertan filas)
+-- y producto.stock pasa a ser una proyección en caché de ese libro:
+--     stock = stock_compactado.stock_base + SUM(movimientos que siguen en movimiento_stock)
+-- CompactacionStockWorker pliega periódicamente los movimientos antiguos en stock_base y los pasa a
+-- movimiento_stock_archivo en la misma transacción, por lo que la suma anterior no cambia al compactar
+-- y el historial sigue completo en la vista movimiento_stock_historico.
+CREATE TABLE stock_compactado (
+    id_producto         INT      NOT NULL PRIMARY KEY REFERENCES producto (id_producto),
+    stock_base          INT      NOT NULL,
+    fecha_actualizacion DATETIME NOT NULL DEFAULT GETDATE()
+);
+
+-- Punto de partida: el stock actual que no explican los movimientos existentes (cargas iniciales,
+-- ediciones de producto anteriores a este script) se toma como base, así el libro cuadra desde hoy.
+INSERT INTO stock_compactado (id_producto, stock_base)
+SELECT p.id_producto,
+       p.stock - ISNULL(SUM(CASE WHEN m.tipo = 'Entrada' THEN m.cantidad ELSE -m.cantidad END), 0)
+FROM producto p
+LEFT JOIN movimiento_stock m ON m.id_producto = p.id_producto
+GROUP BY p.id_producto, p.stock;
+
+-- La conciliación agrupa todos los movimientos por producto; ix_movimiento_stock_producto_fecha
+-- (sql/stock_snapshot.sql) ya incluye tipo y cantidad, así que la agrupación no lee la tabla base.
+
+-- Movimientos compactados: mismas columnas que movimiento_stock. ISNULL(CAST(...)) evita que SELECT INTO
+-- copie la propiedad IDENTITY y deja la columna NOT NULL para la clave primaria.
+SELECT TOP (0) ISNULL(CAST(id_movimiento_stock AS INT), 0) AS id_movimiento_stock,
+       id_producto, tipo, cantidad, motivo, fecha_creacion, fecha_actualizacion
+INTO movimiento_stock_archivo
+FROM movimiento_stock;
+GO
+ALTER TABLE movimiento_stock_archivo ADD CONSTRAINT pk_movimiento_stock_archivo PRIMARY KEY (id_movimiento_stock);
+
+-- Mismos recorridos que sobre movimiento_stock: inventario a fecha por producto y exportación por fecha
+CREATE INDEX ix_movimiento_stock_archivo_producto_fecha
+    ON movimiento_stock_archivo (id_producto, fecha_creacion)
+    INCLUDE (tipo, cantidad);
+CREATE INDEX ix_movimiento_stock_archivo_fecha
+    ON movimiento_stock_archivo (fecha_creacion);
+GO
+
+-- Historial completo de movimientos. El stock y la conciliación solo necesitan movimiento_stock;
+-- el inventario a fecha y la exportación de movimientos leen esta vista.
+CREATE VIEW movimiento_stock_historico AS
+SELECT id_movimiento_stock, id_producto, tipo, cantidad, motivo, fecha_creacion, fecha_actualizacion
+FROM movimiento_stock
+UNION ALL
+SELECT id_movimiento_stock, id_producto, tipo, cantidad, motivo, fecha_creacion, fecha_actualizacion
+FROM movimiento_stock_archivo;
+GO
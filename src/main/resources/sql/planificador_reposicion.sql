@@ -0,0 +1,5 @@
+-- Índice para el planificador de reposición (PlanificadorReposicion): lee en una sola búsqueda por
+-- rango las salidas por venta de un periodo (tipo = 'Salida', motivo 'Venta ID ...') sin tocar la tabla base.
+CREATE INDEX ix_movimiento_stock_tipo_fecha
+    ON movimiento_stock (tipo, fecha_creacion)
+    INCLUDE (id_producto, cantidad, motivo);
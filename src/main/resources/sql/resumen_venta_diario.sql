@@ -0,0 +1,33 @@
+-- Resumen diario de ventas pre-agregado: una fila por día × vendedor × producto/servicio.
+-- Lo mantiene ComisionWorker a partir de la cola comision_pendiente, en la que toda venta se encola
+-- al registrarse, y se puede reconstruir para cualquier rango con ResumenVentaDiarioDAO.reconstruir.
+-- Tras crear la tabla, el histórico se carga con ReporteService.reconstruirResumenDiario(desde, hasta).
+-- tipo: 'P' = producto, 'S' = servicio. costo usa el costo unitario fijado en cada línea al vender
+-- (detalle_venta_costo.sql; 0 para servicios).
+CREATE TABLE resumen_venta_diario (
+    fecha      DATE           NOT NULL,
+    id_usuario INT            NOT NULL,
+    tipo       CHAR(1)        NOT NULL,
+    id_item    INT            NOT NULL,
+    unidades   INT            NOT NULL DEFAULT 0,
+    ingresos   DECIMAL(18, 2) NOT NULL DEFAULT 0,
+    costo      DECIMAL(18, 2) NOT NULL DEFAULT 0,
+    comision   DECIMAL(18, 2) NOT NULL DEFAULT 0,
+    CONSTRAINT pk_resumen_venta_diario PRIMARY KEY (fecha, id_usuario, tipo, id_item),
+    CONSTRAINT ck_resumen_venta_diario_tipo CHECK (tipo IN ('P', 'S'))
+);
+
+CREATE INDEX ix_resumen_venta_diario_item
+    ON resumen_venta_diario (tipo, id_item, fecha)
+    INCLUDE (unidades, ingresos, costo, comision);
+
+-- Estado del resumen en cada marcador de la cola, independiente del de las comisiones:
+-- una venta cuyas comisiones fallan o se dejan de reintentar se suma igualmente al resumen.
+ALTER TABLE comision_pendiente ADD
+    resumida         BIT NOT NULL CONSTRAINT df_comision_pendiente_resumida DEFAULT 0,
+    intentos_resumen INT NOT NULL CONSTRAINT df_comision_pendiente_intentos_resumen DEFAULT 0;
+GO
+
+CREATE INDEX ix_comision_pendiente_resumida
+    ON comision_pendiente (resumida, fecha_creacion)
+    INCLUDE (intentos_resumen);
@@ -0,0 +1,21 @@
+-- Fotos periódicas del stock: una fila por día × producto con el stock al final del día
+-- y el costo_interno vigente, para consultar el inventario en cualquier fecha pasada
+-- (MovimientoStockService.obtenerInventarioEnFecha) sin recorrer todo movimiento_stock.
+-- Las toma SnapshotStockWorker una vez al día; los días que falten se completan al iniciar la aplicación.
+CREATE TABLE stock_snapshot (
+    fecha          DATE           NOT NULL,
+    id_producto    INT            NOT NULL,
+    stock          INT            NOT NULL,
+    costo_unitario DECIMAL(18, 2) NOT NULL DEFAULT 0,
+    CONSTRAINT pk_stock_snapshot PRIMARY KEY (fecha, id_producto)
+);
+
+-- Movimientos de un producto a partir de una fecha (consulta "a fecha" y cálculo de cada foto).
+CREATE INDEX ix_movimiento_stock_producto_fecha
+    ON movimiento_stock (id_producto, fecha_creacion)
+    INCLUDE (tipo, cantidad);
+
+-- Movimientos de todos los productos a partir de una fecha.
+CREATE INDEX ix_movimiento_stock_fecha
+    ON movimiento_stock (fecha_creacion)
+    INCLUDE (id_producto, tipo, cantidad);
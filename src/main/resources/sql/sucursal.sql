@@ -0,0 +1,166 @@
+-- Sucursales: el stock pasa de un único número por producto (producto.stock) a una fila por
+-- sucursal × producto en stock_sucursal. Cada terminal trabaja con su sucursal
+-- (DatabaseManager.ID_SUCURSAL, -Dcerrajeria.sucursal=N): lee, vende y mueve solo ese stock.
+-- producto.stock y producto.estado quedan como total de la empresa, recalculado por
+-- CompactacionStockWorker; ninguna venta los bloquea.
+CREATE TABLE sucursal (
+    id_sucursal    INT IDENTITY (1, 1) PRIMARY KEY,
+    nombre         NVARCHAR(100) NOT NULL UNIQUE,
+    activo         BIT           NOT NULL DEFAULT 1,
+    fecha_creacion DATETIME      NOT NULL DEFAULT GETDATE()
+);
+
+INSERT INTO sucursal (nombre) VALUES (N'Casa central'); -- id_sucursal = 1
+
+-- La clave agrupada empieza por la sucursal: los bloqueos de fila y de rango de una sucursal
+-- (ventas, recepciones, conteos) nunca caen sobre filas de la otra. Sin escalado de bloqueos,
+-- una recepción grande no puede convertirse en un bloqueo de toda la tabla.
+CREATE TABLE stock_sucursal (
+    id_sucursal         INT      NOT NULL REFERENCES sucursal (id_sucursal),
+    id_producto         INT      NOT NULL REFERENCES producto (id_producto),
+    stock               INT      NOT NULL DEFAULT 0,
+    fecha_actualizacion DATETIME NOT NULL DEFAULT GETDATE(),
+    CONSTRAINT pk_stock_sucursal PRIMARY KEY (id_sucursal, id_producto)
+);
+ALTER TABLE stock_sucursal SET (LOCK_ESCALATION = DISABLE);
+
+-- Disponibilidad de un producto en todas las sucursales: búsqueda por producto sin leer la tabla base
+CREATE INDEX ix_stock_sucursal_producto
+    ON stock_sucursal (id_producto)
+    INCLUDE (stock);
+
+-- Todo el stock actual pertenece a la casa central.
+-- Al dar de alta otra sucursal hay que crear sus filas:
+--     INSERT INTO stock_sucursal (id_sucursal, id_producto) SELECT @id_sucursal, id_producto FROM producto;
+-- (los productos nuevos ya se crean con una fila por sucursal, ver ProductoDAO.insertarProducto).
+INSERT INTO stock_sucursal (id_sucursal, id_producto, stock)
+SELECT 1, id_producto, stock FROM producto;
+
+-- Ventas y movimientos registran la sucursal; los existentes son de la casa central
+ALTER TABLE venta ADD id_sucursal INT NOT NULL
+    CONSTRAINT df_venta_sucursal DEFAULT 1 REFERENCES sucursal (id_sucursal);
+ALTER TABLE movimiento_stock ADD id_sucursal INT NOT NULL
+    CONSTRAINT df_movimiento_stock_sucursal DEFAULT 1 REFERENCES sucursal (id_sucursal);
+GO
+
+-- El archivo de movimientos compactados y la vista del historial también llevan la sucursal
+ALTER TABLE movimiento_stock_archivo ADD id_sucursal INT NOT NULL
+    CONSTRAINT df_movimiento_stock_archivo_sucursal DEFAULT 1 REFERENCES sucursal (id_sucursal);
+GO
+ALTER VIEW movimiento_stock_historico AS
+SELECT id_movimiento_stock, id_sucursal, id_producto, tipo, cantidad, motivo, fecha_creacion, fecha_actualizacion
+FROM movimiento_stock
+UNION ALL
+SELECT id_movimiento_stock, id_sucursal, id_producto, tipo, cantidad, motivo, fecha_creacion, fecha_actualizacion
+FROM movimiento_stock_archivo;
+GO
+
+-- Conciliación del libro por sucursal × producto (ver sql/libro_stock.sql)
+CREATE INDEX ix_movimiento_stock_sucursal_producto
+    ON movimiento_stock (id_sucursal, id_producto)
+    INCLUDE (tipo, cantidad);
+
+-- El planificador de reposición lee solo las salidas de su sucursal (ver sql/planificador_reposicion.sql)
+CREATE INDEX ix_movimiento_stock_tipo_fecha
+    ON movimiento_stock (tipo, fecha_creacion)
+    INCLUDE (id_producto, cantidad, motivo, id_sucursal)
+    WITH (DROP_EXISTING = ON);
+
+-- La base compactada del libro de stock también es por sucursal
+ALTER TABLE stock_compactado ADD id_sucursal INT NOT NULL
+    CONSTRAINT df_stock_compactado_sucursal DEFAULT 1 REFERENCES sucursal (id_sucursal);
+GO
+DECLARE @pk SYSNAME = (SELECT name FROM sys.key_constraints
+                       WHERE parent_object_id = OBJECT_ID('stock_compactado') AND type = 'PK');
+EXEC ('ALTER TABLE stock_compactado DROP CONSTRAINT ' + @pk);
+ALTER TABLE stock_compactado ADD CONSTRAINT pk_stock_compactado PRIMARY KEY (id_sucursal, id_producto);
+
+-- Un conteo de inventario abierto por sucursal (ver sql/conteo_inventario.sql)
+ALTER TABLE conteo_inventario ADD id_sucursal INT NOT NULL
+    CONSTRAINT df_conteo_inventario_sucursal DEFAULT 1 REFERENCES sucursal (id_sucursal);
+GO
+DROP INDEX ux_conteo_inventario_abierto ON conteo_inventario;
+CREATE UNIQUE INDEX ux_conteo_inventario_abierto
+    ON conteo_inventario (id_sucursal)
+    WHERE estado = 'Abierto';
+
+-- Las ventas descuentan el stock de su sucursal desde la aplicación (VentaService) y desde
+-- sp_registrar_venta_rapida; el trigger que restaba producto.stock bloquearía a todas las sucursales.
+-- Se conserva deshabilitado para poder volver atrás con ENABLE TRIGGER.
+DISABLE TRIGGER tr_restar_stock_venta ON detalle_venta_producto;
+GO
+
+ALTER PROCEDURE sp_registrar_venta_rapida
+    @id_usuario         INT,
+    @clave_idempotencia VARCHAR(36),
+    @productos          tipo_linea_venta_producto READONLY,
+    @servicios          tipo_linea_venta_servicio READONLY,
+    @id_sucursal        INT = 1
+AS
+BEGIN
+    SET NOCOUNT ON;
+    SET XACT_ABORT ON;
+
+    -- Reintento de una venta ya confirmada: se devuelve la existente
+    IF @clave_idempotencia IS NOT NULL
+    BEGIN
+        DECLARE @id_existente INT = (SELECT id_venta FROM venta WHERE clave_idempotencia = @clave_idempotencia);
+        IF @id_existente IS NOT NULL
+        BEGIN
+            SELECT id_venta, total_venta, CAST(1 AS BIT) AS ya_existia FROM venta WHERE id_venta = @id_existente;
+            RETURN;
+        END
+    END
+
+    BEGIN TRANSACTION;
+
+    -- Validación de stock con bloqueo de las filas de la sucursal implicadas
+    IF EXISTS (
+        SELECT 1
+        FROM (SELECT id_producto, SUM(cantidad) AS cantidad FROM @productos GROUP BY id_producto) l
+        LEFT JOIN stock_sucursal s WITH (UPDLOCK, HOLDLOCK)
+            ON s.id_sucursal = @id_sucursal AND s.id_producto = l.id_producto
+        WHERE s.id_producto IS NULL OR s.stock < l.cantidad
+    )
+    BEGIN
+        ROLLBACK TRANSACTION;
+        THROW 50001, 'Stock insuficiente o producto inexistente en la venta.', 1;
+    END
+
+    -- Total calculado una sola vez a partir de las líneas (ver total_venta_aplicacion.sql)
+    DECLARE @total DECIMAL(10, 2) =
+        ISNULL((SELECT SUM(cantidad * precio_unitario_final) FROM @productos), 0) +
+        ISNULL((SELECT SUM(cantidad * precio_unitario_final) FROM @servicios), 0);
+
+    INSERT INTO venta (id_usuario, clave_idempotencia, total_venta, id_sucursal)
+    VALUES (@id_usuario, @clave_idempotencia, @total, @id_sucursal);
+    DECLARE @id_venta INT = CAST(SCOPE_IDENTITY() AS INT);
+
+    -- El costo unitario se fija con el de este momento (ver detalle_venta_costo.sql)
+    INSERT INTO detalle_venta_producto (id_venta, id_producto, cantidad, precio_unitario_final, descripcion, costo_unitario)
+    SELECT @id_venta, l.id_producto, l.cantidad, l.precio_unitario_final, l.descripcion, ISNULL(p.costo_interno, 0)
+    FROM @productos l
+    JOIN producto p ON p.id_producto = l.id_producto;
+
+    UPDATE s SET stock = s.stock - l.cantidad, fecha_actualizacion = GETDATE()
+    FROM stock_sucursal s
+    JOIN (SELECT id_producto, SUM(cantidad) AS cantidad FROM @productos GROUP BY id_producto) l
+        ON s.id_sucursal = @id_sucursal AND s.id_producto = l.id_producto;
+
+    INSERT INTO movimiento_stock (id_producto, tipo, cantidad, motivo, id_sucursal)
+    SELECT l.id_producto, 'Salida', l.cantidad,
+           'Venta ID ' + CAST(@id_venta AS VARCHAR(12)) + ' - Producto: ' + p.nombre, @id_sucursal
+    FROM @productos l
+    JOIN producto p ON p.id_producto = l.id_producto;
+
+    INSERT INTO detalle_venta_servicio (id_venta, id_servicio, cantidad, precio_unitario_final, descripcion)
+    SELECT @id_venta, id_servicio, cantidad, precio_unitario_final, descripcion FROM @servicios;
+
+    -- Marcador de comisiones en la misma transacción (ver comision_pendiente.sql)
+    INSERT INTO comision_pendiente (id_venta) VALUES (@id_venta);
+
+    COMMIT TRANSACTION;
+
+    SELECT id_venta, total_venta, CAST(0 AS BIT) AS ya_existia FROM venta WHERE id_venta = @id_venta;
+END
+GO
@@ -0,0 +1,8 @@
+-- El total de la venta lo calcula la aplicación una sola vez y lo escribe con la cabecera
+-- (VentaService / sp_registrar_venta_rapida). Los triggers que lo recalculaban sumando
+-- toda la venta tras cada detalle insertado (trabajo O(n²) por ticket) se desactivan.
+-- Se conservan deshabilitados para poder volver atrás con ENABLE TRIGGER.
+-- Los detalles que se insertan, modifican o eliminan fuera del registro de la venta recalculan el
+-- total en su misma transacción (DetalleVentaProductoDAO / DetalleVentaServicioDAO).
+DISABLE TRIGGER trg_actualizar_total_venta_producto ON detalle_venta_producto;
+DISABLE TRIGGER trg_actualizar_total_venta_servicio ON detalle_venta_servicio;
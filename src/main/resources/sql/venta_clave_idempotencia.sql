@@ -0,0 +1,9 @@
+-- Clave de idempotencia generada por el cliente al crear el carrito.
+-- Un reintento de la misma venta (por ejemplo, tras un timeout) encuentra la venta
+-- ya confirmada en lugar de crear un duplicado.
+ALTER TABLE venta ADD clave_idempotencia VARCHAR(36) NULL;
+
+-- Índice único filtrado: las ventas antiguas (sin clave) no entran en conflicto.
+CREATE UNIQUE INDEX ux_venta_clave_idempotencia
+    ON venta (clave_idempotencia)
+    WHERE clave_idempotencia IS NOT NULL;
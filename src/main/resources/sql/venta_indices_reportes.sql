@@ -0,0 +1,10 @@
+-- Índices para los reportes de ventas filtrados en la base de datos
+-- (VentaDAO.obtenerVentasFiltradas): rango de fechas y, opcionalmente, vendedor.
+-- INCLUDE cubre las columnas devueltas para evitar búsquedas en la tabla base.
+CREATE INDEX ix_venta_fecha_creacion
+    ON venta (fecha_creacion DESC)
+    INCLUDE (id_usuario, fecha_actualizacion, total_venta);
+
+CREATE INDEX ix_venta_usuario_fecha
+    ON venta (id_usuario, fecha_creacion DESC)
+    INCLUDE (fecha_actualizacion, total_venta);
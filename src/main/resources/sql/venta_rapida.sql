@@ -0,0 +1,90 @@
+-- Registro de una venta completa en un solo viaje a la base de datos.
+-- VentaService.registrarVentaRapida envía la cabecera y todas las líneas como
+-- parámetros con valores de tabla (TVP) y recibe id_venta y total_venta
+-- (ya_existia = 1 si la clave de idempotencia ya estaba registrada).
+-- Requiere venta_clave_idempotencia.sql, comision_pendiente.sql y detalle_venta_costo.sql.
+-- Nota: los detalles se insertan en bloque (INSERT ... SELECT), por lo que los
+-- triggers de detalle deben procesar la pseudo-tabla 'inserted' como conjunto.
+
+CREATE TYPE tipo_linea_venta_producto AS TABLE (
+    id_producto           INT            NOT NULL,
+    cantidad              INT            NOT NULL,
+    precio_unitario_final DECIMAL(10, 2) NOT NULL,
+    descripcion           NVARCHAR(255)  NULL
+);
+GO
+
+CREATE TYPE tipo_linea_venta_servicio AS TABLE (
+    id_servicio           INT            NOT NULL,
+    cantidad              INT            NOT NULL,
+    precio_unitario_final DECIMAL(10, 2) NOT NULL,
+    descripcion           NVARCHAR(255)  NULL
+);
+GO
+
+CREATE PROCEDURE sp_registrar_venta_rapida
+    @id_usuario         INT,
+    @clave_idempotencia VARCHAR(36),
+    @productos          tipo_linea_venta_producto READONLY,
+    @servicios          tipo_linea_venta_servicio READONLY
+AS
+BEGIN
+    SET NOCOUNT ON;
+    SET XACT_ABORT ON;
+
+    -- Reintento de una venta ya confirmada: se devuelve la existente
+    IF @clave_idempotencia IS NOT NULL
+    BEGIN
+        DECLARE @id_existente INT = (SELECT id_venta FROM venta WHERE clave_idempotencia = @clave_idempotencia);
+        IF @id_existente IS NOT NULL
+        BEGIN
+            SELECT id_venta, total_venta, CAST(1 AS BIT) AS ya_existia FROM venta WHERE id_venta = @id_existente;
+            RETURN;
+        END
+    END
+
+    BEGIN TRANSACTION;
+
+    -- Validación de stock con bloqueo de las filas de producto implicadas
+    IF EXISTS (
+        SELECT 1
+        FROM (SELECT id_producto, SUM(cantidad) AS cantidad FROM @productos GROUP BY id_producto) l
+        LEFT JOIN producto p WITH (UPDLOCK, HOLDLOCK) ON p.id_producto = l.id_producto
+        WHERE p.id_producto IS NULL OR p.stock < l.cantidad
+    )
+    BEGIN
+        ROLLBACK TRANSACTION;
+        THROW 50001, 'Stock insuficiente o producto inexistente en la venta.', 1;
+    END
+
+    -- Total calculado una sola vez a partir de las líneas (ver total_venta_aplicacion.sql)
+    DECLARE @total DECIMAL(10, 2) =
+        ISNULL((SELECT SUM(cantidad * precio_unitario_final) FROM @productos), 0) +
+        ISNULL((SELECT SUM(cantidad * precio_unitario_final) FROM @servicios), 0);
+
+    INSERT INTO venta (id_usuario, clave_idempotencia, total_venta) VALUES (@id_usuario, @clave_idempotencia, @total);
+    DECLARE @id_venta INT = CAST(SCOPE_IDENTITY() AS INT);
+
+    -- El costo unitario se fija con el de este momento (ver detalle_venta_costo.sql)
+    INSERT INTO detalle_venta_producto (id_venta, id_producto, cantidad, precio_unitario_final, descripcion, costo_unitario)
+    SELECT @id_venta, l.id_producto, l.cantidad, l.precio_unitario_final, l.descripcion, ISNULL(p.costo_interno, 0)
+    FROM @productos l
+    JOIN producto p ON p.id_producto = l.id_producto;
+
+    INSERT INTO movimiento_stock (id_producto, tipo, cantidad, motivo)
+    SELECT l.id_producto, 'Salida', l.cantidad,
+           'Venta ID ' + CAST(@id_venta AS VARCHAR(12)) + ' - Producto: ' + p.nombre
+    FROM @productos l
+    JOIN producto p ON p.id_producto = l.id_producto;
+
+    INSERT INTO detalle_venta_servicio (id_venta, id_servicio, cantidad, precio_unitario_final, descripcion)
+    SELECT @id_venta, id_servicio, cantidad, precio_unitario_final, descripcion FROM @servicios;
+
+    -- Marcador de comisiones en la misma transacción (ver comision_pendiente.sql)
+    INSERT INTO comision_pendiente (id_venta) VALUES (@id_venta);
+
+    COMMIT TRANSACTION;
+
+    SELECT id_venta, total_venta, CAST(0 AS BIT) AS ya_existia FROM venta WHERE id_venta = @id_venta;
+END
+GO